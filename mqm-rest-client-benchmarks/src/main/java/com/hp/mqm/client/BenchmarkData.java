@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+/**
+ * Payloads shared by the benchmarks.
+ */
+class BenchmarkData {
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @return test result report with given number of runs, referencing build {@code 1} of given job
+	 */
+	static String testResultXml(String serverIdentity, String jobName, int runs) {
+		StringBuilder xml = new StringBuilder(200 + runs * 200);
+		xml.append("<?xml version='1.0' encoding='UTF-8'?>\n<test_result>\n");
+		xml.append("    <build server=\"").append(serverIdentity).append("\" build_type=\"").append(jobName).append("\" build_sid=\"1\"/>\n");
+		xml.append("    <test_runs>\n");
+		for (int i = 0; i < runs; i++) {
+			xml.append("        <test_run module=\"module").append(i % 10).append("\" package=\"com.hp.mqm.package").append(i % 50)
+					.append("\" class=\"BenchmarkTest").append(i % 200).append("\" name=\"testMethod").append(i)
+					.append("\" duration=\"").append(i % 1000).append("\" status=\"Passed\" started=\"1431527285551\"/>\n");
+		}
+		xml.append("    </test_runs>\n</test_result>\n");
+		return xml.toString();
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar. Delegates to the JMH launcher, enabling the GC profiler unless other profilers
+ * are requested so that every run reports the allocation rate next to the throughput.
+ */
+public class BenchmarkRunner {
+
+	private static final List<String> NO_RUN_OPTIONS = Arrays.asList("-h", "-l", "-lp", "-lprof", "-lrf");
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<String>(Arrays.asList(args));
+		if (!options.contains("-prof") && !containsAny(options, NO_RUN_OPTIONS)) {
+			options.add(0, "-prof");
+			options.add(1, "gc");
+		}
+		Main.main(options.toArray(new String[options.size()]));
+	}
+
+	private static boolean containsAny(List<String> options, List<String> candidates) {
+		for (String candidate : candidates) {
+			if (options.contains(candidate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
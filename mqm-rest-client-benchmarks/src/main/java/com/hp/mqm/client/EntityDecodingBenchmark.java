@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.model.PagedList;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of collection responses into {@link PagedList} with every {@link AbstractMqmRestClient.EntityFactory} of the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityDecodingBenchmark {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Param({"release", "workspace", "listItem", "taxonomy", "fieldMetadata", "entity"})
+	public String factory;
+
+	@Param({"100", "1000"})
+	public int pageSize;
+
+	private MqmRestClientImpl client;
+	private AbstractMqmRestClient.EntityFactory<?> entityFactory;
+	private HttpResponse response;
+
+	@Setup
+	public void setUp() {
+		client = new MqmRestClientImpl(new MqmConnectionConfig("http://octane.example.com:8080", "1001", "user", "password", "benchmark"));
+		entityFactory = createFactory();
+		JSONArray data = new JSONArray();
+		for (int i = 0; i < pageSize; i++) {
+			data.add(createItem(i));
+		}
+		JSONObject page = new JSONObject();
+		page.put("total_count", pageSize * 10);
+		page.put("data", data);
+		page.put("exceeds_total_count", false);
+
+		response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+		// ByteArrayEntity hands out a fresh stream on every getContent(), the response can be decoded repeatedly
+		response.setEntity(new ByteArrayEntity(page.toString().getBytes(UTF_8), ContentType.APPLICATION_JSON));
+	}
+
+	@Benchmark
+	public PagedList<?> decode() throws IOException {
+		return client.convertResponceToPagedList(entityFactory, 0, response);
+	}
+
+	private AbstractMqmRestClient.EntityFactory<?> createFactory() {
+		if ("release".equals(factory)) {
+			return new MqmRestClientImpl.ReleaseEntityFactory();
+		} else if ("workspace".equals(factory)) {
+			return new MqmRestClientImpl.WorkspaceEntityFactory();
+		} else if ("listItem".equals(factory)) {
+			return new MqmRestClientImpl.ListItemEntityFactory();
+		} else if ("taxonomy".equals(factory)) {
+			return new MqmRestClientImpl.TaxonomyEntityFactory();
+		} else if ("fieldMetadata".equals(factory)) {
+			return new MqmRestClientImpl.FieldMetadataFactory();
+		} else if ("entity".equals(factory)) {
+			return new MqmRestClientImpl.GeneralEntityFactory();
+		} else {
+			throw new IllegalArgumentException("Unknown factory: " + factory);
+		}
+	}
+
+	private JSONObject createItem(int i) {
+		JSONObject item = new JSONObject();
+		item.put("type", "entity");
+		item.put("id", String.valueOf(1000 + i));
+		item.put("name", "Item " + i);
+		if ("release".equals(factory)) {
+			item.put("type", "release");
+		} else if ("workspace".equals(factory)) {
+			item.put("type", "workspace");
+		} else if ("listItem".equals(factory)) {
+			JSONObject root = new JSONObject();
+			root.put("type", "list_node");
+			root.put("id", "1");
+			root.put("name", "Testing_Framework");
+			root.put("logical_name", "list_node.testing_framework");
+			item.put("type", "list_node");
+			item.put("logical_name", "list_node.testing_framework.item_" + i);
+			item.put("list_root", root);
+		} else if ("taxonomy".equals(factory)) {
+			JSONObject category = new JSONObject();
+			category.put("type", "taxonomy_category_node");
+			category.put("id", "1");
+			category.put("name", "OS");
+			item.put("type", "taxonomy_item_node");
+			item.put("category", category);
+		} else if ("fieldMetadata".equals(factory)) {
+			JSONObject feature = new JSONObject();
+			feature.put("name", "pipeline_tagging");
+			feature.put("extensibility", true);
+			feature.put("order", i);
+			JSONObject target = new JSONObject();
+			target.put("type", "list_node");
+			target.put("logical_name", "list_node.field_" + i);
+			JSONObject typeData = new JSONObject();
+			typeData.put("multiple", false);
+			typeData.put("targets", JSONArray.fromObject(new Object[]{target}));
+			item.put("type", "field_metadata");
+			item.put("label", "Field " + i);
+			item.put("field_features", JSONArray.fromObject(new Object[]{feature}));
+			item.put("field_type_data", typeData);
+		} else {
+			JSONObject parent = new JSONObject();
+			parent.put("type", "work_item_root");
+			parent.put("id", "1001");
+			item.put("type", "test_automated");
+			item.put("package", "com.hp.mqm.tests");
+			item.put("class_name", "EntityDecodingTest" + i);
+			item.put("parent", parent);
+		}
+		return item;
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.ExceptionStackTraceParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of server stack traces carried by error responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExceptionStackTraceParserBenchmark {
+
+	@Param({"10", "100"})
+	public int depth;
+
+	private String stackTrace;
+
+	@Setup
+	public void setUp() {
+		StringWriter writer = new StringWriter();
+		Throwable cause = new IllegalStateException("QueueItem id=1001 does not exist");
+		cause.setStackTrace(createStackTrace("com.hp.mqm.testbox.ItemNotFound", depth));
+		Throwable exception = new RuntimeException("Failed to process request", cause);
+		exception.setStackTrace(createStackTrace("com.hp.mqm.rest.Resource", depth));
+		exception.printStackTrace(new PrintWriter(writer));
+		stackTrace = writer.toString();
+	}
+
+	@Benchmark
+	public Throwable parseException() {
+		return ExceptionStackTraceParser.parseException(stackTrace);
+	}
+
+	private static StackTraceElement[] createStackTrace(String classPrefix, int depth) {
+		StackTraceElement[] elements = new StackTraceElement[depth];
+		for (int i = 0; i < depth; i++) {
+			elements[i] = new StackTraceElement(classPrefix + i, "method" + i, classPrefix.substring(classPrefix.lastIndexOf('.') + 1) + i + ".java", i + 1);
+		}
+		return elements;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.internal.GZipInputStreamSourceEntity;
+import org.apache.http.HttpEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packaging of test result reports: in-memory {@link MqmRestClientImpl#createGZipEntity(InputStream)} compared with
+ * {@link GZipInputStreamSourceEntity} compressing while the request body is written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GZipBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int runs;
+
+	private byte[] report;
+	private InputStreamSource source;
+
+	@Setup
+	public void setUp() {
+		report = BenchmarkData.testResultXml("server", "job", runs).getBytes(Charset.forName("UTF-8"));
+		source = new InputStreamSource() {
+			@Override
+			public InputStream getInputStream() {
+				return new ByteArrayInputStream(report);
+			}
+		};
+	}
+
+	@Benchmark
+	public long buffered() throws IOException {
+		HttpEntity entity = MqmRestClientImpl.createGZipEntity(new ByteArrayInputStream(report));
+		CountingOutputStream out = new CountingOutputStream();
+		entity.writeTo(out);
+		return out.count;
+	}
+
+	@Benchmark
+	public long streaming() throws IOException {
+		HttpEntity entity = new GZipInputStreamSourceEntity(source);
+		CountingOutputStream out = new CountingOutputStream();
+		entity.writeTo(out);
+		return out.count;
+	}
+
+	/**
+	 * Stands for the connection, discards everything.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of query conditions by {@link QueryHelper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryHelperBenchmark {
+
+	private final List<Long> ids = new ArrayList<Long>();
+	private final List<String> logicalNames = new ArrayList<String>();
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < 100; i++) {
+			ids.add(1000L + i);
+			logicalNames.add("list_node.testing_framework.item_" + i);
+		}
+	}
+
+	@Benchmark
+	public String condition() {
+		return QueryHelper.condition("name", "Release 1");
+	}
+
+	@Benchmark
+	public String conditionEscaped() {
+		return QueryHelper.condition("name", "It's \"quoted\" \\ escaped");
+	}
+
+	@Benchmark
+	public String conditionRef() {
+		return QueryHelper.conditionRef("list_root", "logical_name", "list_node.testing_framework");
+	}
+
+	@Benchmark
+	public String conditionInNumbers() {
+		return QueryHelper.conditionIn("id", ids, true);
+	}
+
+	@Benchmark
+	public String conditionInStrings() {
+		return QueryHelper.conditionIn("logical_name", logicalNames, false);
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.model.Entity;
+import com.hp.mqm.client.model.PagedList;
+import com.hp.mqm.client.model.Release;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full request round trips (URI building, execution, decoding) of {@link MqmRestClientImpl} against the in-process
+ * {@link StubOctaneServer}. Run with {@code -t <threads>} to measure the client under concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+	private static final long WORKSPACE = StubOctaneServer.DEFAULT_WORKSPACE;
+	private static final String COLLECTION = "defects";
+
+	private StubOctaneServer stub;
+	private MqmRestClientImpl client;
+	private long entityId;
+	private InputStreamSource testResult;
+
+	@Setup
+	public void setUp() {
+		stub = new StubOctaneServer();
+		stub.start();
+		stub.setMaxPageSize(MqmRestClientImpl.DEFAULT_LIMIT);
+		for (int i = 0; i < 100; i++) {
+			JSONObject release = new JSONObject();
+			release.put("name", "Release " + i);
+			stub.addEntity(WORKSPACE, "releases", 5000 + i, release);
+		}
+		entityId = stub.addEntities(WORKSPACE, COLLECTION, 500, 64).get(0);
+
+		final String xml = BenchmarkData.testResultXml("server", "job", 100);
+		testResult = new InputStreamSource() {
+			@Override
+			public InputStream getInputStream() {
+				return IOUtils.toInputStream(xml);
+			}
+		};
+
+		client = new MqmRestClientImpl(stub.createConnectionConfig("benchmark"));
+		client.validateConfiguration();
+	}
+
+	@TearDown(Level.Iteration)
+	public void clearTestResults() {
+		stub.clearTestResults();
+	}
+
+	@TearDown
+	public void tearDown() {
+		stub.stop();
+	}
+
+	@Benchmark
+	public PagedList<Release> queryReleases() {
+		return client.queryReleases(null, WORKSPACE, 0, MqmRestClientImpl.DEFAULT_LIMIT);
+	}
+
+	@Benchmark
+	public List<Entity> getEntitiesPaged() {
+		return client.getEntities(WORKSPACE, COLLECTION, null, null);
+	}
+
+	@Benchmark
+	public JSONObject updateEntity() {
+		return client.updateEntity(WORKSPACE, COLLECTION, entityId, "{\"name\":\"updated\"}");
+	}
+
+	@Benchmark
+	public long postTestResult() {
+		return client.postTestResult(testResult, true);
+	}
+}
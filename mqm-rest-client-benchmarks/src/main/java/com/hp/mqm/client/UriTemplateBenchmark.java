@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares URI building through {@link UriTemplate} with the former regex based template resolution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UriTemplateBenchmark {
+
+	private static final String LOCATION = "http://octane.example.com:8080";
+	private static final String SHARED_SPACE = "1001";
+	private static final long WORKSPACE_ID = 1002;
+
+	private final List<String> conditions = Arrays.asList(QueryHelper.condition("name", "*Release 1*"), QueryHelper.condition("id", 1234));
+
+	private MqmRestClientImpl client;
+	private LegacyUriResolver legacy;
+
+	@Setup
+	public void setUp() {
+		client = new MqmRestClientImpl(new MqmConnectionConfig(LOCATION, SHARED_SPACE, "user", "password", "benchmark"));
+		legacy = new LegacyUriResolver(LOCATION, SHARED_SPACE);
+	}
+
+	@Benchmark
+	public URI testResultStatus() {
+		return client.createSharedSpaceInternalApiUri(MqmRestClientImpl.URI_TEST_RESULT_STATUS, 12345L);
+	}
+
+	@Benchmark
+	public URI testResultStatusLegacy() {
+		return legacy.createSharedSpaceInternalApiUri(MqmRestClientImpl.URI_TEST_RESULT_STATUS, 12345L);
+	}
+
+	@Benchmark
+	public URI entityQuery() {
+		return client.getEntityURI(MqmRestClientImpl.URI_RELEASES, conditions, null, WORKSPACE_ID, 0, 100, "name");
+	}
+
+	@Benchmark
+	public URI entityQueryLegacy() {
+		return legacy.getEntityURI(MqmRestClientImpl.URI_RELEASES, conditions, null, WORKSPACE_ID, 0, 100, "name");
+	}
+}
@@ -17,23 +17,45 @@ package com.hp.mqm.client;
 
 public class ConnectionProperties {
 
+	/**
+	 * @return true when tests should run against {@link StubOctaneServer} instead of live Octane
+	 */
+	public static boolean isStub() {
+		return Boolean.parseBoolean(getStringValue("mqm.stub", "false"));
+	}
+
 	public static String getLocation() {
+		if (isStub()) {
+			return StubOctaneServer.shared().getLocation();
+		}
 		return getStringValue("mqm.location", "http://localhost:8080/qcbin");
 	}
 
 	public static String getSharedSpace() {
+		if (isStub()) {
+			return StubOctaneServer.DEFAULT_SHARED_SPACE;
+		}
 		return getStringValue("mqm.sharedSpace", "DEFAULT");
 	}
 
 	public static long getWorkspaceId() {
+		if (isStub()) {
+			return StubOctaneServer.DEFAULT_WORKSPACE;
+		}
 		return getIntValue("mqm.workspace", 1001);
 	}
 
 	public static String getUsername() {
+		if (isStub()) {
+			return StubOctaneServer.DEFAULT_USER;
+		}
 		return getStringValue("mqm.user", "admin");
 	}
 
 	public static String getPassword() {
+		if (isStub()) {
+			return StubOctaneServer.DEFAULT_PASSWORD;
+		}
 		return getStringValue("mqm.password", "changeit");
 	}
 
@@ -21,6 +21,7 @@ import com.hp.mqm.client.exception.LoginErrorException;
 import com.hp.mqm.client.exception.LoginException;
 import com.hp.mqm.client.exception.RequestException;
 import com.hp.mqm.client.exception.SharedSpaceNotExistException;
+import com.hp.mqm.client.model.ConnectionPoolStats;
 import com.hp.mqm.client.model.FieldMetadata;
 import com.hp.mqm.client.model.JobConfiguration;
 import com.hp.mqm.client.model.ListField;
@@ -56,6 +57,7 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 public class MqmRestClientImplTest {
 
@@ -716,6 +718,50 @@ public class MqmRestClientImplTest {
         }
     }
 
+	@Test
+	public void testConnectionPoolStats() {
+		MqmConnectionConfig poolConfig = new MqmConnectionConfig(
+				LOCATION, SHARED_SPACE, USERNAME, PASSWORD, CLIENT_TYPE, PROXY_HOST, PROXY_PORT);
+		poolConfig.setProxyCredentials(connectionConfig.getProxyCredentials());
+		poolConfig.setMaxConnectionsTotal(5);
+		poolConfig.setMaxConnectionsPerRoute(5);
+		poolConfig.setDefaultConnectionRequestTimeout(1000);
+		MqmRestClientImpl client = new MqmRestClientImpl(poolConfig);
+		client.validateConfiguration();
+
+		ConnectionPoolStats stats = client.getConnectionPoolStats();
+		Assert.assertEquals(5, stats.getMax());
+		Assert.assertEquals(0, stats.getLeased());
+		Assert.assertEquals(0, stats.getPending());
+		Assert.assertTrue(stats.getAvailable() > 0);
+	}
+
+	@Test
+	public void testAsyncClient() throws Exception {
+		long timestamp = System.currentTimeMillis();
+		String releaseName = "Release" + timestamp;
+		Release release = testSupportClient.createRelease(releaseName, WORKSPACE);
+
+		AsyncMqmRestClientImpl asyncClient = new AsyncMqmRestClientImpl(connectionConfig);
+		try {
+			PagedList<Release> releases = asyncClient.queryReleases(releaseName, WORKSPACE, 0, 100, null).get();
+			Assert.assertEquals(1, releases.getItems().size());
+			Assert.assertEquals(release.getId(), releases.getItems().get(0).getId());
+
+			Release rel = asyncClient.getRelease(release.getId(), WORKSPACE, null).get();
+			Assert.assertEquals(release.getName(), rel.getName());
+
+			try {
+				asyncClient.getTestResultStatus(1234567890l, null).get();
+				Assert.fail("should have failed");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RequestException);
+			}
+		} finally {
+			asyncClient.close();
+		}
+	}
+
     private Pipeline getSinglePipeline(String serverIdentity, String jobName) {
         JobConfiguration jobConfiguration = client.getJobConfiguration(serverIdentity, jobName);
         Assert.assertEquals(1, jobConfiguration.getRelatedPipelines().size());
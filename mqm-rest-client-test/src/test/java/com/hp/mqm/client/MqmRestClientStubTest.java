@@ -0,0 +1,1084 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.AuthenticationException;
+import com.hp.mqm.client.exception.RequestException;
+import com.hp.mqm.client.exception.SharedSpaceNotExistException;
+import com.hp.mqm.client.exception.TemporarilyUnavailableException;
+import com.hp.mqm.client.internal.GZipInputStreamSourceEntity;
+import com.hp.mqm.client.model.CacheStats;
+import com.hp.mqm.client.model.CircuitBreakerStats;
+import com.hp.mqm.client.model.ConnectionPoolStats;
+import com.hp.mqm.client.model.EndpointMetrics;
+import com.hp.mqm.client.model.Entity;
+import com.hp.mqm.client.model.FieldMetadata;
+import com.hp.mqm.client.model.JobConfiguration;
+import com.hp.mqm.client.model.JobReference;
+import com.hp.mqm.client.model.ListItem;
+import com.hp.mqm.client.model.MetricsSnapshot;
+import com.hp.mqm.client.model.PagedList;
+import com.hp.mqm.client.model.Pipeline;
+import com.hp.mqm.client.model.Release;
+import com.hp.mqm.client.model.Taxonomy;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs the client against {@link StubOctaneServer}, no Octane installation or network is needed.
+ */
+public class MqmRestClientStubTest {
+
+	private static final String CLIENT_TYPE = "test";
+	private static final long WORKSPACE = StubOctaneServer.DEFAULT_WORKSPACE;
+
+	private static StubOctaneServer stub;
+
+	private MqmRestClientImpl client;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@BeforeClass
+	public static void startStub() {
+		stub = new StubOctaneServer();
+		stub.start();
+	}
+
+	@AfterClass
+	public static void stopStub() {
+		stub.stop();
+	}
+
+	@Before
+	public void init() {
+		stub.reset();
+		client = new MqmRestClientImpl(stub.createConnectionConfig(CLIENT_TYPE));
+	}
+
+	@After
+	public void closeClient() throws IOException {
+		client.close();
+	}
+
+	@Test
+	public void testValidateConfiguration() {
+		client.validateConfiguration();
+		Assert.assertEquals(1, stub.getLoginCount());
+
+		MqmConnectionConfig badCredentials = new MqmConnectionConfig(stub.getLocation(), StubOctaneServer.DEFAULT_SHARED_SPACE,
+				"nonuser", "xxxbadxxxpasswordxxx", CLIENT_TYPE, null, null);
+		try {
+			new MqmRestClientImpl(badCredentials).validateConfiguration();
+			Assert.fail("Login should fail because of bad credentials.");
+		} catch (AuthenticationException e) {
+			Assert.assertNotNull(e);
+		}
+
+		MqmConnectionConfig badSharedSpace = new MqmConnectionConfig(stub.getLocation(), "nonexisting",
+				StubOctaneServer.DEFAULT_USER, StubOctaneServer.DEFAULT_PASSWORD, CLIENT_TYPE, null, null);
+		try {
+			new MqmRestClientImpl(badSharedSpace).validateConfiguration();
+			Assert.fail("Shared space should not exist.");
+		} catch (SharedSpaceNotExistException e) {
+			Assert.assertNotNull(e);
+		}
+	}
+
+	@Test
+	public void testQueryReleases() {
+		String prefix = "Release" + UUID.randomUUID();
+		long releaseId = createRelease(prefix + "-1");
+		createRelease(prefix + "-2");
+
+		PagedList<Release> releases = client.queryReleases(prefix, WORKSPACE, 0, 10);
+		Assert.assertEquals(2, releases.getTotalCount());
+		Assert.assertEquals(prefix + "-1", releases.getItems().get(0).getName());
+		Assert.assertEquals(prefix + "-2", releases.getItems().get(1).getName());
+
+		releases = client.queryReleases(prefix, WORKSPACE, 1, 10);
+		Assert.assertEquals(1, releases.getItems().size());
+		Assert.assertEquals(1, releases.getOffset());
+
+		Assert.assertEquals(prefix + "-1", client.getRelease(releaseId, WORKSPACE).getName());
+		Assert.assertNull(client.getRelease(123456789, WORKSPACE));
+	}
+
+	@Test
+	public void testGetEntitiesPaged() {
+		String collection = "stub_defects";
+		List<Long> ids = stub.addEntities(WORKSPACE, collection, 250, 64);
+		stub.setMaxPageSize(100);
+
+		List<Entity> sequential = client.getEntities(WORKSPACE, collection, null, Arrays.asList("name"));
+		List<Entity> parallel = client.getEntities(WORKSPACE, collection, null, Arrays.asList("name"), 4);
+		List<Long> iterated = new ArrayList<>();
+		CloseableIterator<Entity> iterator = client.iterateEntities(WORKSPACE, collection, null, null);
+		try {
+			while (iterator.hasNext()) {
+				iterated.add(iterator.next().getId());
+			}
+		} finally {
+			iterator.close();
+		}
+
+		Assert.assertEquals(ids, entityIds(sequential));
+		Assert.assertEquals(ids, entityIds(parallel));
+		Assert.assertEquals(ids, iterated);
+		Assert.assertFalse(sequential.get(0).containsField("description"));
+	}
+
+	@Test
+	public void testEntityLifecycle() {
+		String collection = "stub_work_items";
+		JSONObject created = client.postEntities(WORKSPACE, collection, "{\"data\":[{\"name\":\"first\"},{\"name\":\"second\"}]}");
+		Assert.assertEquals(2, created.getInt("total_count"));
+		long firstId = created.getJSONArray("data").getJSONObject(0).getLong("id");
+		long secondId = created.getJSONArray("data").getJSONObject(1).getLong("id");
+
+		client.updateEntity(WORKSPACE, collection, firstId, "{\"name\":\"renamed\"}");
+		List<Entity> entities = client.getEntities(WORKSPACE, collection, Collections.singletonList(QueryHelper.condition("name", "renamed")), null);
+		Assert.assertEquals(1, entities.size());
+		Assert.assertEquals(Long.valueOf(firstId), entities.get(0).getId());
+
+		PagedList<Entity> deleted = client.deleteEntities(WORKSPACE, collection, Arrays.asList(firstId, secondId));
+		Assert.assertEquals(2, deleted.getItems().size());
+		Assert.assertTrue(stub.getEntities(WORKSPACE, collection).isEmpty());
+	}
+
+	@Test
+	public void testDeleteEntitiesChunked() throws Exception {
+		String collection = "work_items";
+		List<Long> ids = stub.addEntities(WORKSPACE, collection, 250, 0);
+		List<Long> requested = new ArrayList<>(ids);
+		requested.add(ids.get(0));
+
+		int requests = stub.getRequestCount("/" + collection);
+		PagedList<Entity> deleted = client.deleteEntities(WORKSPACE, collection, requested);
+		Assert.assertEquals(3, stub.getRequestCount("/" + collection) - requests);
+		Assert.assertEquals(ids.size(), deleted.getItems().size());
+		Assert.assertEquals(ids.size(), deleted.getTotalCount());
+		Assert.assertTrue(stub.getEntities(WORKSPACE, collection).isEmpty());
+
+		ids = stub.addEntities(WORKSPACE, collection, 150, 0);
+		AsyncMqmRestClientImpl asyncClient = new AsyncMqmRestClientImpl(stub.createConnectionConfig(CLIENT_TYPE));
+		try {
+			Assert.assertEquals(ids.size(), asyncClient.deleteEntities(WORKSPACE, collection, ids, null).get(10, TimeUnit.SECONDS).getItems().size());
+		} finally {
+			asyncClient.close();
+		}
+		Assert.assertTrue(stub.getEntities(WORKSPACE, collection).isEmpty());
+
+		stub.addEntities(WORKSPACE, collection, 2, 0);
+		deleted = client.deleteEntitiesByQuery(WORKSPACE, collection, Collections.singletonList(QueryHelper.condition("name", collection + "-1")));
+		Assert.assertEquals(1, deleted.getItems().size());
+		Assert.assertEquals(1, stub.getEntities(WORKSPACE, collection).size());
+		stub.clearEntities(WORKSPACE, collection);
+	}
+
+	@Test
+	public void testAsyncDeleteEntitiesChunkFailed() throws Exception {
+		String collection = "work_items";
+		List<Long> ids = stub.addEntities(WORKSPACE, collection, 2000, 0);
+		stub.setLatency(100);
+		stub.failNext("/" + collection, 400, 1);
+		AsyncMqmRestClientImpl asyncClient = new AsyncMqmRestClientImpl(stub.createConnectionConfig(CLIENT_TYPE));
+		try {
+			asyncClient.deleteEntities(WORKSPACE, collection, ids, null).get(10, TimeUnit.SECONDS);
+			Assert.fail("Failed chunk should fail the delete");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RequestException);
+		} finally {
+			asyncClient.close();
+		}
+
+		// chunks are requested a few at a time, the failure stops the remaining ones
+		Assert.assertTrue(stub.getRequestCount("/" + collection) < 2 * MqmRestClientImpl.DELETE_BY_IDS_PARALLELISM);
+		Assert.assertFalse(stub.getEntities(WORKSPACE, collection).isEmpty());
+		stub.clearEntities(WORKSPACE, collection);
+	}
+
+	@Test
+	public void testPostTestResult() throws IOException {
+		String serverIdentity = UUID.randomUUID().toString();
+		String jobName = "Job " + serverIdentity;
+		client.createPipeline(serverIdentity, jobName, "Pipeline", WORKSPACE, null, "{}", "{}");
+		client.putEvents("{\"server\":{\"instanceId\":\"" + serverIdentity + "\"},\"events\":[{\"eventType\":\"finished\",\"project\":\"" + jobName + "\",\"number\":1}]}");
+
+		final String testResultsXml = ResourceUtils.readContent("TestResults.xml")
+				.replaceAll("%%%SERVER_IDENTITY%%%", serverIdentity)
+				.replaceAll("%%%TIMESTAMP%%%", "")
+				.replaceAll("%%%JOB_NAME%%%", jobName);
+		long id = client.postTestResult(new InputStreamSource() {
+			@Override
+			public InputStream getInputStream() {
+				return IOUtils.toInputStream(testResultsXml);
+			}
+		}, false);
+
+		Assert.assertEquals(testResultsXml, new String(stub.getTestResults().get(id), "UTF-8"));
+		Assert.assertEquals("success", client.getTestResultStatus(id).getStatus());
+		Assert.assertFalse(stub.getEntities(WORKSPACE, "runs").isEmpty());
+	}
+
+	@Test
+	public void testPostLargeTestResult() throws Exception {
+		StringBuilder builder = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?><test_result>")
+				.append("<build server=\"").append(UUID.randomUUID()).append("\" build_type=\"job\" build_sid=\"1\"/><test_runs>");
+		for (int i = 0; i < 20000; i++) {
+			builder.append("<test_run module=\"module\" package=\"package\" class=\"Test").append(i % 100)
+					.append("\" name=\"test").append(i).append("\" duration=\"2\" status=\"Passed\" started=\"1431527285551\"/>");
+		}
+		final byte[] testResultsXml = builder.append("</test_runs></test_result>").toString().getBytes("UTF-8");
+		InputStreamSource source = new InputStreamSource() {
+			@Override
+			public InputStream getInputStream() {
+				return new ByteArrayInputStream(testResultsXml);
+			}
+		};
+
+		// request goes out gzip compressed and decodes to the original
+		long id = client.postTestResult(source, true);
+		byte[] received = stub.getReceivedTestResult(id);
+		Assert.assertTrue(received.length < testResultsXml.length / 10);
+		Assert.assertArrayEquals(testResultsXml, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(received))));
+		Assert.assertArrayEquals(testResultsXml, stub.getTestResults().get(id));
+
+		// entity content matches the declared gzip encoding
+		GZipInputStreamSourceEntity entity = new GZipInputStreamSourceEntity(source);
+		Assert.assertEquals("gzip", entity.getContentEncoding().getValue());
+		InputStream content = new GZIPInputStream(entity.getContent());
+		try {
+			Assert.assertArrayEquals(testResultsXml, IOUtils.toByteArray(content));
+		} finally {
+			content.close();
+		}
+
+		// asynchronous client streams the same entity, the source is re-opened when the post is replayed after re-login
+		AsyncMqmRestClientImpl asyncClient = new AsyncMqmRestClientImpl(stub.createConnectionConfig(CLIENT_TYPE));
+		try {
+			asyncClient.postTestResult(source, true, null).get(10, TimeUnit.SECONDS);
+			int logins = stub.getLoginCount();
+			stub.expireSessions();
+			id = asyncClient.postTestResult(source, true, null).get(10, TimeUnit.SECONDS);
+			Assert.assertEquals(logins + 1, stub.getLoginCount());
+			Assert.assertArrayEquals(testResultsXml, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(stub.getReceivedTestResult(id)))));
+			Assert.assertArrayEquals(testResultsXml, stub.getTestResults().get(id));
+		} finally {
+			asyncClient.close();
+		}
+	}
+
+	@Test
+	public void testPipeline() {
+		String serverIdentity = UUID.randomUUID().toString();
+		String jobName = "Job " + serverIdentity;
+		Pipeline pipeline = client.createPipeline(serverIdentity, jobName, "Pipeline", WORKSPACE, null, "{}", "{}");
+		Assert.assertTrue(pipeline.getId() > 0);
+
+		pipeline.setName("Renamed");
+		pipeline.setTaxonomies(Collections.singletonList(new Taxonomy(null, "Chrome", new Taxonomy(null, "Browser", null))));
+		Pipeline updated = client.updatePipeline(serverIdentity, jobName, pipeline);
+		Assert.assertEquals("Renamed", updated.getName());
+		Assert.assertNotNull(updated.getTaxonomies().get(0).getId());
+
+		JobConfiguration configuration = client.getJobConfiguration(serverIdentity, jobName);
+		Assert.assertEquals(1, configuration.getRelatedPipelines().size());
+		Assert.assertEquals(Collections.singletonList(String.valueOf(WORKSPACE)), client.getJobWorkspaceId(serverIdentity, jobName));
+	}
+
+	@Test
+	public void testEventsAndTasks() {
+		Assert.assertTrue(client.putEvents("{\"server\":{},\"events\":[{\"eventType\":\"STARTED\"}]}"));
+		Assert.assertEquals(1, stub.getEvents().size());
+
+		String taskId = stub.addTask("GET", "/nga/api/v1/status", null);
+		JSONArray tasks = JSONArray.fromObject(client.getAbridgedTasks("self", "jenkins", "http://localhost", 1, "1.0"));
+		Assert.assertEquals(taskId, tasks.getJSONObject(0).getString("id"));
+		Assert.assertEquals(204, client.putAbridgedResult("self", taskId, "{\"status\":200}"));
+		Assert.assertEquals("{\"status\":200}", stub.getTaskResults().get(taskId));
+
+		stub.setTaskPollTimeout(50);
+		Assert.assertNull(client.getAbridgedTasks("self", "jenkins", "http://localhost", 1, "1.0"));
+	}
+
+	@Test
+	public void testAsyncEventsRedirectCancelled() throws Exception {
+		String eventsJSON = "{\"server\":{},\"events\":[{\"eventType\":\"STARTED\"}]}";
+		AsyncMqmRestClientImpl asyncClient = new AsyncMqmRestClientImpl(stub.createConnectionConfig(CLIENT_TYPE));
+		try {
+			Assert.assertTrue(asyncClient.putEvents(eventsJSON, null).get(10, TimeUnit.SECONDS));
+			int events = stub.getEvents().size();
+			int requests = stub.getRequestCount("/analytics/ci/events");
+
+			// redirect makes the client sign in again and replay the events, cancelling the result stops the replay
+			int logins = stub.getRequestCount("/authentication/sign_in");
+			stub.failNext("/analytics/ci/events", 307, 1);
+			stub.hold("/authentication/sign_in");
+			Future<Boolean> result = asyncClient.putEvents(eventsJSON, null);
+			Assert.assertTrue(stub.awaitRequestCount("/authentication/sign_in", logins + 1, 10000));
+			Assert.assertTrue(result.cancel(true));
+			stub.release();
+
+			// sign-ins are serialized, once the next redirected events are replayed the cancelled ones had their turn
+			stub.failNext("/analytics/ci/events", 307, 1);
+			Assert.assertTrue(asyncClient.putEvents(eventsJSON, null).get(10, TimeUnit.SECONDS));
+			Assert.assertEquals(requests + 3, stub.getRequestCount("/analytics/ci/events"));
+			Assert.assertEquals(events + 1, stub.getEvents().size());
+		} finally {
+			stub.release();
+			asyncClient.close();
+		}
+	}
+
+	@Test
+	public void testEventPublisher() throws InterruptedException {
+		JSONObject server = new JSONObject();
+		server.put("instanceId", UUID.randomUUID().toString());
+		EventPublisher publisher = new EventPublisher(client, server, 1000, 100, 60000);
+		stub.failNext("/analytics/ci/events", 503, 1);
+		for (int i = 0; i < 250; i++) {
+			JSONObject event = new JSONObject();
+			event.put("eventType", "started");
+			event.put("number", i);
+			publisher.publish(event);
+		}
+		Assert.assertTrue(publisher.close(30, TimeUnit.SECONDS));
+		Assert.assertEquals(250, publisher.getDeliveredCount());
+		Assert.assertEquals(0, publisher.getPendingCount());
+
+		// first batch was rejected and carried over, nothing is lost or duplicated
+		Set<Integer> numbers = new HashSet<>();
+		for (JSONObject payload : stub.getEvents()) {
+			Assert.assertEquals(server, payload.getJSONObject("server"));
+			JSONArray events = payload.getJSONArray("events");
+			Assert.assertTrue(events.size() <= 100);
+			for (int i = 0; i < events.size(); i++) {
+				Assert.assertTrue(numbers.add(events.getJSONObject(i).getInt("number")));
+			}
+		}
+		Assert.assertEquals(250, numbers.size());
+		Assert.assertEquals(3, stub.getEvents().size());
+	}
+
+	@Test
+	public void testEventPublisherRejected() throws InterruptedException {
+		JSONObject server = new JSONObject();
+		server.put("instanceId", UUID.randomUUID().toString());
+		int eventsBefore = stub.getEvents().size();
+		EventPublisher publisher = new EventPublisher(client, server, 1000, 100, 60000);
+		stub.failNext("/analytics/ci/events", 400, 1);
+		for (int i = 0; i < 150; i++) {
+			JSONObject event = new JSONObject();
+			event.put("eventType", "started");
+			event.put("number", i);
+			publisher.publish(event);
+		}
+
+		// rejected batch is dropped right away instead of blocking the following ones
+		Assert.assertTrue(publisher.close(10, TimeUnit.SECONDS));
+		Assert.assertEquals(100, publisher.getRejectedCount());
+		Assert.assertEquals(50, publisher.getDeliveredCount());
+		Assert.assertEquals(0, publisher.getPendingCount());
+		Assert.assertEquals(eventsBefore + 1, stub.getEvents().size());
+	}
+
+	@Test
+	public void testOutbox() throws Exception {
+		File directory = temporaryFolder.newFolder();
+		int testResultsBefore = stub.getTestResults().size();
+
+		// Octane is down: nothing is delivered, the outbox is closed with payloads on disk
+		stub.failNext("/analytics/ci/", 503, 1000);
+		Outbox outbox = new Outbox(client, directory, 4096);
+		outbox.postTestResult(new File(getClass().getResource("TestResults.xml").toURI()), true);
+		for (int i = 0; i < 20; i++) {
+			outbox.putEvents("{\"server\":{},\"events\":[{\"eventType\":\"started\",\"number\":" + i + "}]}");
+		}
+		Assert.assertEquals(21, outbox.getPendingCount());
+		outbox.close();
+		Assert.assertTrue(stub.getEvents().isEmpty());
+
+		// reopened outbox delivers everything in order once Octane is back
+		stub.reset();
+		outbox = new Outbox(client, directory, 4096);
+		try {
+			Assert.assertEquals(21, outbox.getPendingCount());
+			outbox.putEvents("{\"server\":{},\"events\":[{\"eventType\":\"finished\",\"number\":20}]}");
+			long deadline = System.currentTimeMillis() + 10000;
+			while (outbox.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			Assert.assertEquals(0, outbox.getPendingCount());
+		} finally {
+			outbox.close();
+		}
+		Assert.assertEquals(testResultsBefore + 1, stub.getTestResults().size());
+		List<JSONObject> events = stub.getEvents();
+		Assert.assertEquals(21, events.size());
+		for (int i = 0; i < events.size(); i++) {
+			Assert.assertEquals(i, events.get(i).getJSONArray("events").getJSONObject(0).getInt("number"));
+		}
+		Assert.assertEquals("finished", events.get(20).getJSONArray("events").getJSONObject(0).getString("eventType"));
+	}
+
+	@Test
+	public void testOutboxBackOff() throws Exception {
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setRetryPolicy(RetryPolicy.NONE);
+		config.setCircuitBreakerPolicy(CircuitBreakerPolicy.NONE);
+		MqmRestClientImpl outboxClient = new MqmRestClientImpl(config);
+		final Outbox outbox = new Outbox(outboxClient, temporaryFolder.newFolder(), 4096);
+		final AtomicBoolean submitting = new AtomicBoolean(true);
+		Thread submitter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; submitting.get(); i++) {
+						outbox.putEvents("{\"server\":{},\"events\":[{\"eventType\":\"started\",\"number\":" + i + "}]}");
+						Thread.sleep(50);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		try {
+			// steady submissions during the outage do not cut the back-off short: attempts at 0, 1 s and 3 s
+			stub.failNext("/analytics/ci/events", 503, 1000);
+			submitter.start();
+			Assert.assertTrue(stub.awaitRequestCount("/analytics/ci/events", 1, 10000));
+			long first = System.currentTimeMillis();
+			Assert.assertTrue(stub.awaitRequestCount("/analytics/ci/events", 2, 10000));
+			long second = System.currentTimeMillis();
+			Assert.assertTrue(stub.awaitRequestCount("/analytics/ci/events", 3, 10000));
+			long third = System.currentTimeMillis();
+			// waking up the test thread takes a while, the gaps are measured with a tolerance
+			Assert.assertTrue(second - first > Outbox.MIN_RETRY_DELAY - 100);
+			Assert.assertTrue(third - second > 2 * Outbox.MIN_RETRY_DELAY - 100);
+		} finally {
+			submitting.set(false);
+			submitter.join();
+			outbox.close();
+			outboxClient.close();
+		}
+
+		// events rejected as invalid are dropped, they do not block the payloads behind them
+		stub.reset();
+		stub.failNext("/analytics/ci/events", 400, 1);
+		outboxClient = new MqmRestClientImpl(config);
+		Outbox droppingOutbox = new Outbox(outboxClient, temporaryFolder.newFolder(), 4096);
+		try {
+			for (int i = 0; i < 3; i++) {
+				droppingOutbox.putEvents("{\"server\":{},\"events\":[{\"eventType\":\"started\",\"number\":" + i + "}]}");
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (droppingOutbox.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			Assert.assertEquals(0, droppingOutbox.getPendingCount());
+		} finally {
+			droppingOutbox.close();
+			outboxClient.close();
+		}
+		List<JSONObject> events = stub.getEvents();
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals(1, events.get(0).getJSONArray("events").getJSONObject(0).getInt("number"));
+	}
+
+	@Test
+	public void testTaskChannel() throws InterruptedException {
+		stub.setTaskPollTimeout(200);
+		TaskChannel channel = client.openTaskChannel("self", "jenkins", "http://localhost", 1, "1.0", new TaskHandler() {
+			@Override
+			public String handle(JSONObject task) {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "{\"status\":200,\"body\":\"" + task.getString("url") + "\"}";
+			}
+		}, 4);
+		try {
+			List<String> taskIds = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				taskIds.add(stub.addTask("GET", "/nga/api/v1/jobs/" + i, null));
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (stub.getTaskResults().size() < taskIds.size() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			for (int i = 0; i < taskIds.size(); i++) {
+				Assert.assertEquals("{\"status\":200,\"body\":\"/nga/api/v1/jobs/" + i + "\"}", stub.getTaskResults().get(taskIds.get(i)));
+			}
+			// the long poll does not hold pooled connection, the last result may still be finishing its response
+			while (client.getConnectionPoolStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			Assert.assertEquals(0, client.getConnectionPoolStats().getLeased());
+		} finally {
+			channel.close();
+		}
+	}
+
+	@Test
+	public void testMetadataCache() throws Exception {
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setMetadataCacheTimeToLive(60000);
+		config.setMetadataCacheSize(3);
+		final MqmRestClientImpl cachingClient = new MqmRestClientImpl(config);
+		try {
+			createRelease("Release" + UUID.randomUUID());
+
+			int releaseRequests = stub.getRequestCount("/releases");
+			PagedList<Release> releases = cachingClient.queryReleases(null, WORKSPACE, 0, 100);
+			releases.getItems().clear();
+			Assert.assertFalse(cachingClient.queryReleases(null, WORKSPACE, 0, 100).getItems().isEmpty());
+			Assert.assertEquals(releaseRequests + 1, stub.getRequestCount("/releases"));
+
+			// concurrent lookups share a single load
+			stub.setLatency(100);
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				List<Future<List<FieldMetadata>>> results = new ArrayList<>();
+				for (int i = 0; i < 8; i++) {
+					results.add(executor.submit(new Callable<List<FieldMetadata>>() {
+						@Override
+						public List<FieldMetadata> call() {
+							return cachingClient.getFieldsMetadata(WORKSPACE);
+						}
+					}));
+				}
+				for (Future<List<FieldMetadata>> result : results) {
+					Assert.assertEquals(4, result.get().size());
+				}
+			} finally {
+				executor.shutdown();
+				stub.setLatency(0);
+			}
+			Assert.assertEquals(1, stub.getRequestCount("/metadata/fields"));
+			CacheStats stats = cachingClient.getMetadataCacheStats();
+			Assert.assertEquals(2, stats.getLoads());
+			Assert.assertEquals(10, stats.getHits() + stats.getMisses());
+
+			// pipeline change invalidates cached lookups
+			String serverIdentity = UUID.randomUUID().toString();
+			cachingClient.createPipeline(serverIdentity, "Job " + serverIdentity, "Pipeline", WORKSPACE, null, "{}", "{}");
+			Assert.assertEquals(0, cachingClient.getMetadataCacheStats().getSize());
+			cachingClient.queryReleases(null, WORKSPACE, 0, 100);
+			Assert.assertEquals(releaseRequests + 2, stub.getRequestCount("/releases"));
+
+			// least recently used lookup is evicted
+			for (int i = 0; i < 3; i++) {
+				cachingClient.queryWorkspaces("workspace" + i, 0, 10);
+			}
+			Assert.assertEquals(3, cachingClient.getMetadataCacheStats().getSize());
+			Assert.assertEquals(1, cachingClient.getMetadataCacheStats().getEvictions());
+		} finally {
+			cachingClient.close();
+		}
+	}
+
+	@Test
+	public void testTestResultPreflight() throws Exception {
+		MqmRestClientImpl preflightClient = new MqmRestClientImpl(stub.createConnectionConfig(CLIENT_TYPE));
+		try {
+			int probes = stub.getRequestCount("/tests-result-preflight-base64");
+			for (int i = 0; i < 3; i++) {
+				Assert.assertTrue(preflightClient.isTestResultRelevant("server", "job" + i));
+			}
+			Assert.assertEquals(probes + 1, stub.getRequestCount("/tests-result-preflight-base64"));
+
+			List<JobReference> jobs = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				jobs.add(new JobReference("server", "job" + i));
+			}
+			Map<JobReference, Boolean> relevant = preflightClient.areTestResultsRelevant(jobs, 4);
+			Assert.assertEquals(jobs, new ArrayList<>(relevant.keySet()));
+			Assert.assertFalse(relevant.containsValue(false));
+			Assert.assertEquals(probes + 1, stub.getRequestCount("/tests-result-preflight-base64"));
+
+			// capability is probed again in the new session
+			stub.expireSessions();
+			preflightClient.isTestResultRelevant("server", "job");
+			preflightClient.isTestResultRelevant("server", "job");
+			Assert.assertEquals(probes + 2, stub.getRequestCount("/tests-result-preflight-base64"));
+
+			// failed probe is not taken as a definite answer
+			stub.expireSessions();
+			stub.failNext("/tests-result-preflight-base64", 500, 1);
+			for (int i = 0; i < 3; i++) {
+				preflightClient.isTestResultRelevant("server", "job");
+			}
+			Assert.assertEquals(probes + 4, stub.getRequestCount("/tests-result-preflight-base64"));
+			preflightClient.isTestResultRelevant("server", "job");
+			Assert.assertEquals(probes + 4, stub.getRequestCount("/tests-result-preflight-base64"));
+		} finally {
+			preflightClient.close();
+		}
+	}
+
+	@Test
+	public void testGetTaxonomiesChunked() {
+		List<Long> ids = stub.addEntities(WORKSPACE, "taxonomy_nodes", 250, 0);
+		Collections.shuffle(ids);
+		List<Long> requested = new ArrayList<>(ids);
+		requested.add(ids.get(0));
+		requested.add(-1L);
+
+		int requests = stub.getRequestCount("/taxonomy_nodes");
+		List<Taxonomy> taxonomies = client.getTaxonomies(requested, WORKSPACE);
+		Assert.assertEquals(3, stub.getRequestCount("/taxonomy_nodes") - requests);
+		Assert.assertEquals(ids.size(), taxonomies.size());
+		for (int i = 0; i < ids.size(); i++) {
+			Assert.assertEquals(ids.get(i), taxonomies.get(i).getId());
+		}
+	}
+
+	@Test
+	public void testTypedQueriesProjectFields() throws Exception {
+		List<Long> ids = stub.addEntities(WORKSPACE, "taxonomy_nodes", 20, 10000);
+		InMemoryMetricsListener metrics = new InMemoryMetricsListener();
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setMetricsListener(metrics);
+		config.setResponseCompression(false);
+		MqmRestClientImpl projectingClient = new MqmRestClientImpl(config);
+		try {
+			List<Taxonomy> taxonomies = projectingClient.getTaxonomies(ids, WORKSPACE);
+			Assert.assertEquals(ids.size(), taxonomies.size());
+			Assert.assertEquals("taxonomy_nodes-0", taxonomies.get(0).getName());
+			// descriptions are not part of the projection
+			Assert.assertTrue(metrics.getSnapshot().getEndpoint("GET", "workspaces/{workspaceId}/taxonomy_nodes").getBytesReceived() < 10000);
+
+			PagedList<ListItem> items = projectingClient.queryListItems("list_node.testing_framework", "JUnit", WORKSPACE, 0, 10);
+			Assert.assertEquals(1, items.getItems().size());
+			ListItem root = items.getItems().get(0).getRoot();
+			Assert.assertNotNull(root);
+			Assert.assertEquals("list_node.testing_framework", root.getLogicalName());
+			Assert.assertEquals("Testing_Framework", root.getName());
+		} finally {
+			projectingClient.close();
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		InMemoryMetricsListener metrics = new InMemoryMetricsListener();
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setMetricsListener(metrics);
+		MqmRestClientImpl meteredClient = new MqmRestClientImpl(config);
+		try {
+			String serverIdentity = UUID.randomUUID().toString();
+			long releaseId = createRelease("Release" + UUID.randomUUID());
+
+			meteredClient.getRelease(releaseId, WORKSPACE);
+			meteredClient.getJobConfiguration(serverIdentity, "job");
+			meteredClient.putEvents("{\"server\":{\"instanceId\":\"" + serverIdentity + "\"},\"events\":[]}");
+			stub.expireSessions();
+			meteredClient.getJobConfiguration(serverIdentity, "job");
+
+			MetricsSnapshot snapshot = metrics.getSnapshot();
+			Assert.assertEquals(2, snapshot.getLogins());
+			EndpointMetrics releases = snapshot.getEndpoint("GET", "workspaces/{workspaceId}/releases");
+			Assert.assertEquals(1, releases.getCount());
+			Assert.assertEquals(Long.valueOf(1), releases.getStatusCodes().get(200));
+			Assert.assertTrue(releases.getBytesReceived() > 0);
+			EndpointMetrics jobConfiguration = snapshot.getEndpoint("GET", "analytics/ci/servers/{0}/jobs/{1}/configuration");
+			Assert.assertEquals(3, jobConfiguration.getCount());
+			Assert.assertEquals(1, jobConfiguration.getErrors());
+			Assert.assertEquals(1, jobConfiguration.getRetries());
+			Assert.assertTrue(jobConfiguration.getLatencyPercentile(99) <= jobConfiguration.getMaxLatency());
+			Assert.assertTrue(snapshot.getEndpoint("PUT", "analytics/ci/events").getBytesSent() > 0);
+			Assert.assertTrue(snapshot.getConnectionLeases() >= 5);
+		} finally {
+			meteredClient.close();
+		}
+	}
+
+	@Test
+	public void testRetryPolicy() throws Exception {
+		InMemoryMetricsListener metrics = new InMemoryMetricsListener();
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setRetryPolicy(new RetryPolicy(3, 10, 100));
+		config.setRetryPolicy(EndpointCategory.CI, new RetryPolicy(2, 10, 1000));
+		config.setMetricsListener(metrics);
+		MqmRestClientImpl retryingClient = new MqmRestClientImpl(config);
+		try {
+			long releaseId = createRelease("Release" + UUID.randomUUID());
+
+			// transient failures of idempotent requests are repeated
+			stub.failNext("/releases", 503, 2);
+			Assert.assertNotNull(retryingClient.getRelease(releaseId, WORKSPACE));
+			Assert.assertEquals(2, metrics.getSnapshot().getEndpoint("GET", "workspaces/{workspaceId}/releases").getRetries());
+
+			// Retry-After is honored, unless it asks for more than the maximum delay
+			String serverIdentity = UUID.randomUUID().toString();
+			stub.failNext("/configuration", 429, 1, "1");
+			long start = System.currentTimeMillis();
+			retryingClient.getJobConfiguration(serverIdentity, "job");
+			Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+			stub.failNext("/configuration", 503, 1, "60");
+			try {
+				retryingClient.getJobConfiguration(serverIdentity, "job");
+				Assert.fail("Request should fail.");
+			} catch (RequestException e) {
+				Assert.assertEquals(503, e.getStatusCode());
+			}
+
+			// neither POST nor permanent failures are repeated
+			stub.failNext("/stub_work_items", 503, 1);
+			try {
+				retryingClient.postEntities(WORKSPACE, "stub_work_items", "{\"data\":[{\"name\":\"first\"}]}");
+				Assert.fail("Request should fail.");
+			} catch (TemporarilyUnavailableException e) {
+				Assert.assertNotNull(e);
+			}
+			stub.failNext("/releases", 500, 1);
+			try {
+				retryingClient.getRelease(releaseId, WORKSPACE);
+				Assert.fail("Request should fail.");
+			} catch (RequestException e) {
+				Assert.assertEquals(500, e.getStatusCode());
+			}
+			Assert.assertEquals(2, metrics.getSnapshot().getEndpoint("GET", "workspaces/{workspaceId}/releases").getRetries());
+		} finally {
+			retryingClient.close();
+		}
+	}
+
+	@Test
+	public void testCircuitBreaker() throws Exception {
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setRetryPolicy(RetryPolicy.NONE);
+		config.setCircuitBreakerPolicy(new CircuitBreakerPolicy(0.5, 1.1, 0, 200, 4, 4, 1));
+		MqmRestClientImpl guardedClient = new MqmRestClientImpl(config);
+		try {
+			long releaseId = createRelease("Release" + UUID.randomUUID());
+			Assert.assertNotNull(guardedClient.getRelease(releaseId, WORKSPACE));
+
+			// overloaded server opens the breaker once enough calls failed
+			stub.failNext("/releases", 503, 3);
+			for (int i = 0; i < 3; i++) {
+				try {
+					guardedClient.getRelease(releaseId, WORKSPACE);
+					Assert.fail("Request should fail.");
+				} catch (RequestException e) {
+					Assert.assertEquals(503, e.getStatusCode());
+				}
+			}
+			Assert.assertEquals(CircuitBreakerStats.State.OPEN, guardedClient.getCircuitBreakerStats().get(EndpointCategory.ENTITIES).getState());
+
+			// open breaker fails fast without reaching the server
+			int requests = stub.getRequestCount("/releases");
+			try {
+				guardedClient.getRelease(releaseId, WORKSPACE);
+				Assert.fail("Request should be rejected.");
+			} catch (TemporarilyUnavailableException e) {
+				Assert.assertEquals(requests, stub.getRequestCount("/releases"));
+			}
+			Assert.assertEquals(1, guardedClient.getCircuitBreakerStats().get(EndpointCategory.ENTITIES).getRejectedCalls());
+			Assert.assertEquals(CircuitBreakerStats.State.CLOSED, guardedClient.getCircuitBreakerStats().get(EndpointCategory.CI).getState());
+
+			// successful probe closes the breaker
+			Thread.sleep(200);
+			Assert.assertEquals(CircuitBreakerStats.State.HALF_OPEN, guardedClient.getCircuitBreakerStats().get(EndpointCategory.ENTITIES).getState());
+			Assert.assertNotNull(guardedClient.getRelease(releaseId, WORKSPACE));
+			Assert.assertEquals(CircuitBreakerStats.State.CLOSED, guardedClient.getCircuitBreakerStats().get(EndpointCategory.ENTITIES).getState());
+		} finally {
+			guardedClient.close();
+		}
+	}
+
+	@Test
+	public void testConnectionLeaks() throws Exception {
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setMaxConnectionsTotal(2);
+		config.setMaxConnectionsPerRoute(2);
+		config.setDefaultConnectionRequestTimeout(5000);
+		config.setRetryPolicy(RetryPolicy.NONE);
+		config.setCircuitBreakerPolicy(CircuitBreakerPolicy.NONE);
+		config.setConnectionLeakThreshold(100);
+		MqmRestClientImpl leakCheckingClient = new MqmRestClientImpl(config);
+		try {
+
+			// failed calls release their connections, a small pool would be exhausted otherwise
+			stub.failNext("/stub_work_items", 503, 5);
+			for (int i = 0; i < 5; i++) {
+				try {
+					leakCheckingClient.postEntities(WORKSPACE, "stub_work_items", "{\"data\":[{\"name\":\"item" + i + "\"}]}");
+					Assert.fail("Request should fail.");
+				} catch (TemporarilyUnavailableException e) {
+					Assert.assertNotNull(e);
+				}
+			}
+			stub.failNext("/stub_work_items", 500, 5);
+			for (int i = 0; i < 5; i++) {
+				try {
+					leakCheckingClient.updateEntities(WORKSPACE, "stub_work_items", "{\"data\":[{\"id\":\"1\"}]}");
+					Assert.fail("Request should fail.");
+				} catch (RequestException e) {
+					Assert.assertEquals(500, e.getStatusCode());
+				}
+			}
+			Assert.assertEquals(0, leakCheckingClient.getConnectionPoolStats().getLeased());
+
+			// response which is never closed is reported
+			HttpResponse response = leakCheckingClient.execute(new HttpGet(leakCheckingClient.createWorkspaceApiUri(MqmRestClientImpl.URI_RELEASES, WORKSPACE)));
+			Thread.sleep(200);
+			Assert.assertEquals(1, leakCheckingClient.getConnectionPoolStats().getLeaked());
+			HttpClientUtils.closeQuietly(response);
+			Assert.assertEquals(0, leakCheckingClient.getConnectionPoolStats().getLeaked());
+			Assert.assertEquals(0, leakCheckingClient.getConnectionPoolStats().getLeased());
+		} finally {
+			leakCheckingClient.close();
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setIdleConnectionTimeout(200);
+		final MqmRestClientImpl closingClient = new MqmRestClientImpl(config);
+		final String serverIdentity = UUID.randomUUID().toString();
+
+		// idle connections are evicted in background
+		Assert.assertNotNull(closingClient.getJobConfiguration(serverIdentity, "job"));
+		Assert.assertTrue(closingClient.getConnectionPoolStats().getAvailable() > 0);
+		Thread.sleep(500);
+		Assert.assertEquals(0, closingClient.getConnectionPoolStats().getAvailable());
+
+		// request in flight completes, new ones are rejected
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		stub.setLatency(300);
+		try {
+			Future<JobConfiguration> inFlight = executor.submit(new Callable<JobConfiguration>() {
+				@Override
+				public JobConfiguration call() {
+					return closingClient.getJobConfiguration(serverIdentity, "job");
+				}
+			});
+			Thread.sleep(100);
+			closingClient.close();
+			Assert.assertNotNull(inFlight.get());
+		} finally {
+			stub.setLatency(0);
+			executor.shutdownNow();
+		}
+		try {
+			closingClient.getJobConfiguration(serverIdentity, "job");
+			Assert.fail("Closed client should reject requests.");
+		} catch (IllegalStateException e) {
+			Assert.assertNotNull(e);
+		}
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		String collection = "stub_compressed";
+		List<Long> ids = stub.addEntities(WORKSPACE, collection, 50, 256);
+		InMemoryMetricsListener metrics = new InMemoryMetricsListener();
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setRequestCompressionThreshold(1024);
+		config.setMetricsListener(metrics);
+		MqmRestClientImpl compressingClient = new MqmRestClientImpl(config);
+		try {
+
+			// large responses come compressed, small request bodies are sent as they are
+			Assert.assertEquals(ids, entityIds(compressingClient.getEntities(WORKSPACE, collection, null, Arrays.asList("name", "description"))));
+			compressingClient.postEntities(WORKSPACE, collection, "{\"data\":[{\"name\":\"small\"}]}");
+			EndpointMetrics get = metrics.getSnapshot().getEndpoint("GET", "workspaces/{workspaceId}/" + collection);
+			Assert.assertTrue(get.getResponseBytesSaved() > 0);
+			Assert.assertEquals(0, metrics.getSnapshot().getEndpoint("POST", "workspaces/{workspaceId}/" + collection).getRequestBytesSaved());
+
+			// large request bodies are compressed
+			JSONArray data = new JSONArray();
+			for (int i = 0; i < 20; i++) {
+				JSONObject entity = new JSONObject();
+				entity.put("name", "compressed-" + i);
+				entity.put("description", StringUtils.repeat("x", 100));
+				data.add(entity);
+			}
+			JSONObject body = new JSONObject();
+			body.put("data", data);
+			JSONObject created = compressingClient.postEntities(WORKSPACE, collection, body.toString());
+			Assert.assertEquals(20, created.getJSONArray("data").size());
+			Assert.assertTrue(metrics.getSnapshot().getEndpoint("POST", "workspaces/{workspaceId}/" + collection).getRequestBytesSaved() > 0);
+
+			// async client decompresses as well
+			AsyncMqmRestClientImpl asyncClient = new AsyncMqmRestClientImpl(config);
+			try {
+				Assert.assertEquals(71, asyncClient.getEntities(WORKSPACE, collection, null, null, null).get(10, TimeUnit.SECONDS).size());
+			} finally {
+				asyncClient.close();
+			}
+		} finally {
+			compressingClient.close();
+		}
+	}
+
+	@Test
+	public void testSessionExpired() {
+		long releaseId = createRelease("Release" + UUID.randomUUID());
+		client.getRelease(releaseId, WORKSPACE);
+		stub.expireSessions();
+
+		Assert.assertNotNull(client.getRelease(releaseId, WORKSPACE));
+		Assert.assertEquals(2, stub.getLoginCount());
+		Assert.assertEquals(1, stub.getRejectedCount());
+	}
+
+	@Test
+	public void testSessionRefresh() throws Exception {
+		long releaseId = createRelease("Release" + UUID.randomUUID());
+		stub.setSessionLifetime(4000);
+		MqmConnectionConfig config = stub.createConnectionConfig(CLIENT_TYPE);
+		config.setSessionRefreshMargin(2000);
+		MqmRestClientImpl refreshingClient = new MqmRestClientImpl(config);
+		try {
+			int logins = stub.getLoginCount();
+			refreshingClient.validateConfiguration();
+			long signedIn = System.currentTimeMillis();
+			Assert.assertEquals(logins + 1, stub.getLoginCount());
+
+			// session is refreshed in background before it expires, requests keep using a valid one
+			long refreshed = 0;
+			while (System.currentTimeMillis() - signedIn < 9000) {
+				Assert.assertNotNull(refreshingClient.getRelease(releaseId, WORKSPACE));
+				if (refreshed == 0 && stub.getLoginCount() > logins + 1) {
+					refreshed = System.currentTimeMillis();
+				}
+				Thread.sleep(100);
+			}
+			Assert.assertTrue("Session was not refreshed before expiry", refreshed > 0 && refreshed - signedIn < 4000);
+			Assert.assertTrue(stub.getLoginCount() >= logins + 3);
+			Assert.assertEquals(0, stub.getRejectedCount());
+		} finally {
+			refreshingClient.close();
+		}
+	}
+
+	@Test
+	public void testInjectedFaults() {
+		long releaseId = createRelease("Release" + UUID.randomUUID());
+		stub.failNext("/releases", 500, 1);
+		try {
+			client.getRelease(releaseId, WORKSPACE);
+			Assert.fail("Request should fail.");
+		} catch (RequestException e) {
+			Assert.assertEquals(500, e.getStatusCode());
+		}
+		Assert.assertNotNull(client.getRelease(releaseId, WORKSPACE));
+
+		stub.failNext("/stub_work_items", 503, 1);
+		try {
+			client.postEntities(WORKSPACE, "stub_work_items", "{\"data\":[{\"name\":\"first\"}]}");
+			Assert.fail("Request should fail.");
+		} catch (TemporarilyUnavailableException e) {
+			Assert.assertNotNull(e);
+		}
+	}
+
+	@Test
+	public void testConcurrentLoad() throws Exception {
+		final long releaseId = createRelease("Release" + UUID.randomUUID());
+		int requestsBefore = stub.getRequestCount("/releases");
+		stub.setLatency(5);
+		int threads = 16;
+		final int requestsPerThread = 25;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int found = 0;
+						for (int j = 0; j < requestsPerThread; j++) {
+							if (client.getRelease(releaseId, WORKSPACE) != null) {
+								found++;
+							}
+						}
+						return found;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				Assert.assertEquals(Integer.valueOf(requestsPerThread), result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(threads * requestsPerThread, stub.getRequestCount("/releases") - requestsBefore);
+		Assert.assertEquals(1, stub.getLoginCount());
+		ConnectionPoolStats stats = client.getConnectionPoolStats();
+		Assert.assertEquals(0, stats.getLeased());
+		Assert.assertEquals(0, stats.getPending());
+	}
+
+	private long createRelease(String name) {
+		JSONObject release = new JSONObject();
+		release.put("name", name);
+		JSONArray data = new JSONArray();
+		data.add(release);
+		JSONObject payload = new JSONObject();
+		payload.put("data", data);
+		return client.postEntities(WORKSPACE, "releases", payload.toString()).getJSONArray("data").getJSONObject(0).getLong("id");
+	}
+
+	private static List<Long> entityIds(List<Entity> entities) {
+		List<Long> ids = new ArrayList<>(entities.size());
+		for (Entity entity : entities) {
+			ids.add(entity.getId());
+		}
+		return ids;
+	}
+}
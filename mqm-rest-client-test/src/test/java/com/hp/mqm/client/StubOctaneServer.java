@@ -0,0 +1,1523 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * In-process stand-in for the Octane endpoints used by {@link MqmRestClientImpl}, so that the client can be exercised
+ * (functionally and under load) without a live server or network.
+ * <p>
+ * Entities are kept in memory per workspace and collection and can be queried with the subset of the query language
+ * produced by the client (and, or, negation, wildcards, references, null and IN). The server can be slowed down,
+ * made to fail, capped in page size and made to expire sessions to simulate a real installation.
+ * <p>
+ * Just enough of the server side logic is present for {@link MqmRestClientImplTest} to pass: references are resolved
+ * to named entities, finished build events create CI server, job and build entities of the pipeline workspaces and
+ * test results are matched against those builds and turned into runs.
+ */
+public class StubOctaneServer {
+
+	public static final String DEFAULT_SHARED_SPACE = "DEFAULT";
+	public static final long DEFAULT_WORKSPACE = 1001;
+	public static final String DEFAULT_USER = "admin";
+	public static final String DEFAULT_PASSWORD = "changeit";
+
+	private static final String LWSSO_COOKIE_NAME = "LWSSO_COOKIE_KEY";
+	private static final String SIGN_IN = "authentication/sign_in";
+	private static final String API = "api";
+	private static final String INTERNAL_API = "internal-api";
+	private static final String SHARED_SPACES = "shared_spaces";
+	private static final String WORKSPACES = "workspaces";
+	private static final String DATETIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
+	private static final String COOKIE_EXPIRES_FORMAT = "EEE, dd-MMM-yy HH:mm:ss zzz";
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	private static final int MIN_COMPRESSED_SIZE = 1024;
+
+	private static StubOctaneServer shared;
+
+	private final Map<String, String> users = new ConcurrentHashMap<>();
+	private final Collection<String> sharedSpaces = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<String, Long> sessions = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ConcurrentSkipListMap<Long, JSONObject>> collections = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, List<JSONObject>> pipelines = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Long, byte[]> testResults = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Long, byte[]> receivedTestResults = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Long, String[]> testResultStatuses = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<JSONObject> events = new ConcurrentLinkedQueue<>();
+	private final BlockingQueue<JSONObject> tasks = new LinkedBlockingQueue<>();
+	private final ConcurrentMap<String, String> taskResults = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+	// notified on every request, guards the held path fragments
+	private final Object requestMonitor = new Object();
+	private final List<String> held = new ArrayList<>();
+	private final List<Fault> faults = new LinkedList<>();
+	private final AtomicLong idSequence = new AtomicLong(2000);
+	private final AtomicInteger loginCount = new AtomicInteger();
+	private final AtomicInteger rejectedCount = new AtomicInteger();
+	private final Random random = new Random();
+
+	private volatile long latency;
+	private volatile double failureRate;
+	private volatile int failureStatus = 503;
+	private volatile int maxPageSize = Integer.MAX_VALUE;
+	private volatile long sessionLifetime;
+	private volatile long taskPollTimeout = 1000;
+	private volatile boolean base64Supported = true;
+	private volatile String bdiConfiguration;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public StubOctaneServer() {
+		users.put(DEFAULT_USER, DEFAULT_PASSWORD);
+		sharedSpaces.add(DEFAULT_SHARED_SPACE);
+		JSONObject workspace = new JSONObject();
+		workspace.put("name", "default_workspace");
+		addEntity(null, WORKSPACES, DEFAULT_WORKSPACE, workspace);
+		addList(DEFAULT_WORKSPACE, "test_tool_type", "Testing_Tool_Type", "list_node.testing_tool_type", 1,
+				"Manual Runner", "UFT", "LoadRunner", "Selenium", "SoapUI", "Protractor");
+		addList(DEFAULT_WORKSPACE, "test_framework", "Testing_Framework", "list_node.testing_framework", 2,
+				"JUnit", "TestNG", "NUnit", "Cucumber");
+		addList(DEFAULT_WORKSPACE, "test_level", "Testing_Level", "list_node.testing_level", 3,
+				"Unit Test", "System Test", "Integration Test");
+		addList(DEFAULT_WORKSPACE, "test_type", "Test_Type", "list_node.test_type", 4,
+				"Acceptance", "End to End", "Regression", "Sanity", "Security", "Performance");
+	}
+
+	/**
+	 * @return server shared by all tests in the JVM, started on first use
+	 */
+	public static synchronized StubOctaneServer shared() {
+		if (shared == null) {
+			shared = new StubOctaneServer();
+			shared.start();
+		}
+		return shared;
+	}
+
+	public synchronized void start() {
+		// without TCP_NODELAY every response waits for the delayed ACK of its headers (~40ms per request)
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to start stub server", e);
+		}
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "stub-octane-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					dispatch(exchange);
+				} catch (StubException e) {
+					respondError(exchange, e);
+				} catch (RuntimeException e) {
+					respondError(exchange, new StubException(500, String.valueOf(e)));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		// dispatcher thread inherits the daemon flag of the starting thread, it must not keep the JVM alive
+		final HttpServer httpServer = server;
+		Thread starter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				httpServer.start();
+			}
+		}, "stub-octane-start");
+		starter.setDaemon(true);
+		starter.start();
+		try {
+			starter.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * @return location to be used in {@link MqmConnectionConfig}
+	 */
+	public String getLocation() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	public MqmConnectionConfig createConnectionConfig(String clientType) {
+		return new MqmConnectionConfig(getLocation(), DEFAULT_SHARED_SPACE, DEFAULT_USER, DEFAULT_PASSWORD, clientType, null, null);
+	}
+
+	public void addUser(String username, String password) {
+		users.put(username, password);
+	}
+
+	public void addSharedSpace(String sharedSpace) {
+		sharedSpaces.add(sharedSpace);
+	}
+
+	/**
+	 * Delays every response by given time.
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Fails given share of requests (sign-in excluded) with given status.
+	 */
+	public void setFailureRate(double failureRate, int status) {
+		this.failureRate = failureRate;
+		this.failureStatus = status;
+	}
+
+	/**
+	 * Fails next requests whose path contains given fragment with given status.
+	 */
+	public void failNext(String pathFragment, int status, int times) {
+		failNext(pathFragment, status, times, null);
+	}
+
+	/**
+	 * Same as {@link #failNext(String, int, int)}, the failed responses carry given <code>Retry-After</code> header.
+	 */
+	public void failNext(String pathFragment, int status, int times, String retryAfter) {
+		synchronized (faults) {
+			faults.add(new Fault(pathFragment, status, times, retryAfter));
+		}
+	}
+
+	/**
+	 * Caps number of entities returned in one page regardless of requested limit.
+	 */
+	public void setMaxPageSize(int maxPageSize) {
+		this.maxPageSize = maxPageSize;
+	}
+
+	/**
+	 * Makes sessions expire given time after sign-in, the expiration is announced in the LWSSO cookie. Zero means
+	 * sessions never expire.
+	 */
+	public void setSessionLifetime(long sessionLifetime) {
+		this.sessionLifetime = sessionLifetime;
+	}
+
+	/**
+	 * Invalidates all sessions, next requests are rejected until the client signs in again.
+	 */
+	public void expireSessions() {
+		sessions.clear();
+	}
+
+	public void setTaskPollTimeout(long taskPollTimeout) {
+		this.taskPollTimeout = taskPollTimeout;
+	}
+
+	public void setBase64Supported(boolean base64Supported) {
+		this.base64Supported = base64Supported;
+	}
+
+	public void setBdiConfiguration(String bdiConfiguration) {
+		this.bdiConfiguration = bdiConfiguration;
+	}
+
+	/**
+	 * Queues task to be handed out on next abridged tasks poll.
+	 *
+	 * @return id of the task
+	 */
+	public String addTask(String method, String url, String body) {
+		JSONObject task = new JSONObject();
+		task.put("id", UUID.randomUUID().toString());
+		task.put("method", method);
+		task.put("url", url);
+		task.put("body", body);
+		tasks.add(task);
+		return task.getString("id");
+	}
+
+	public Map<String, String> getTaskResults() {
+		return Collections.unmodifiableMap(taskResults);
+	}
+
+	/**
+	 * Stores entity with explicit id.
+	 *
+	 * @param workspaceId workspace of the collection, null for shared space collections (workspaces)
+	 */
+	public JSONObject addEntity(Long workspaceId, String collection, long id, JSONObject entity) {
+		JSONObject stored = JSONObject.fromObject(entity);
+		stored.put("id", String.valueOf(id));
+		if (!stored.has("type")) {
+			stored.put("type", entityType(collection));
+		}
+		resolveReferences(workspaceId, stored);
+		getCollection(workspaceId, collection).put(id, stored);
+		return stored;
+	}
+
+	/**
+	 * Generates entities named {@code <collection>-<n>} each carrying description of given size.
+	 *
+	 * @return ids of created entities
+	 */
+	public List<Long> addEntities(Long workspaceId, String collection, int count, int payloadSize) {
+		List<Long> ids = new ArrayList<>(count);
+		String description = StringUtils.repeat("x", payloadSize);
+		for (int i = 0; i < count; i++) {
+			JSONObject entity = new JSONObject();
+			entity.put("name", collection + "-" + i);
+			entity.put("description", description);
+			long id = idSequence.incrementAndGet();
+			addEntity(workspaceId, collection, id, entity);
+			ids.add(id);
+		}
+		return ids;
+	}
+
+	public List<JSONObject> getEntities(Long workspaceId, String collection) {
+		return new ArrayList<>(getCollection(workspaceId, collection).values());
+	}
+
+	public void clearEntities(Long workspaceId, String collection) {
+		getCollection(workspaceId, collection).clear();
+	}
+
+	public void clearTestResults() {
+		testResults.clear();
+		receivedTestResults.clear();
+		testResultStatuses.clear();
+	}
+
+	public List<JSONObject> getEvents() {
+		return new ArrayList<>(events);
+	}
+
+	public Map<Long, byte[]> getTestResults() {
+		return Collections.unmodifiableMap(testResults);
+	}
+
+	/**
+	 * @return test result body as it came over the wire, before the content encoding was decoded
+	 */
+	public byte[] getReceivedTestResult(long id) {
+		return receivedTestResults.get(id);
+	}
+
+	public int getLoginCount() {
+		return loginCount.get();
+	}
+
+	/**
+	 * @return number of requests rejected for missing or expired session
+	 */
+	public int getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return number of requests whose path contains given fragment
+	 */
+	public int getRequestCount(String pathFragment) {
+		int count = 0;
+		for (Map.Entry<String, AtomicInteger> entry : requestCounts.entrySet()) {
+			if (entry.getKey().contains(pathFragment)) {
+				count += entry.getValue().get();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Waits until the number of requests whose path contains given fragment reaches given count.
+	 *
+	 * @return false if the count was not reached within given time in milliseconds
+	 */
+	public boolean awaitRequestCount(String pathFragment, int count, long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (requestMonitor) {
+			while (getRequestCount(pathFragment) < count) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				requestMonitor.wait(remaining);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Holds requests whose path contains given fragment until {@link #release()}, they are counted before being held.
+	 */
+	public void hold(String pathFragment) {
+		synchronized (requestMonitor) {
+			held.add(pathFragment);
+		}
+	}
+
+	/**
+	 * Lets the held requests continue.
+	 */
+	public void release() {
+		synchronized (requestMonitor) {
+			held.clear();
+			requestMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Restores default behavior and clears counters, stored data are kept.
+	 */
+	public void reset() {
+		latency = 0;
+		failureRate = 0;
+		maxPageSize = Integer.MAX_VALUE;
+		sessionLifetime = 0;
+		taskPollTimeout = 1000;
+		base64Supported = true;
+		bdiConfiguration = null;
+		synchronized (faults) {
+			faults.clear();
+		}
+		tasks.clear();
+		taskResults.clear();
+		events.clear();
+		requestCounts.clear();
+		release();
+		loginCount.set(0);
+		rejectedCount.set(0);
+	}
+
+	private void dispatch(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getRawPath();
+		AtomicInteger counter = requestCounts.get(path);
+		if (counter == null) {
+			requestCounts.putIfAbsent(path, new AtomicInteger());
+			counter = requestCounts.get(path);
+		}
+		counter.incrementAndGet();
+		synchronized (requestMonitor) {
+			requestMonitor.notifyAll();
+			while (isHeld(path)) {
+				try {
+					requestMonitor.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		injectFault(path);
+
+		List<String> segments = new ArrayList<>();
+		for (String segment : StringUtils.split(path, '/')) {
+			segments.add(URLDecoder.decode(segment, "UTF-8"));
+		}
+		String method = exchange.getRequestMethod();
+		if (SIGN_IN.equals(StringUtils.join(segments, '/')) && "POST".equals(method)) {
+			signIn(exchange);
+			return;
+		}
+		if (failureRate > 0 && random.nextDouble() < failureRate) {
+			throw new StubException(failureStatus, "Random fault");
+		}
+		if (!isAuthenticated(exchange)) {
+			rejectedCount.incrementAndGet();
+			respondError(exchange, new StubException(401, "Session expired"));
+			return;
+		}
+		if (segments.size() < 3 || !SHARED_SPACES.equals(segments.get(1))) {
+			throw new StubException(404, "Unknown resource " + path);
+		}
+		if (!sharedSpaces.contains(segments.get(2))) {
+			throw new StubException(404, "Shared space " + segments.get(2) + " not found");
+		}
+		Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+		if (API.equals(segments.get(0))) {
+			handleEntities(exchange, method, segments.subList(3, segments.size()), params);
+		} else if (INTERNAL_API.equals(segments.get(0))) {
+			handleInternal(exchange, method, segments.subList(3, segments.size()), params);
+		} else {
+			throw new StubException(404, "Unknown resource " + path);
+		}
+	}
+
+	private boolean isHeld(String path) {
+		for (String pathFragment : held) {
+			if (path.contains(pathFragment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void injectFault(String path) {
+		synchronized (faults) {
+			for (Iterator<Fault> iterator = faults.iterator(); iterator.hasNext(); ) {
+				Fault fault = iterator.next();
+				if (path.contains(fault.pathFragment)) {
+					if (--fault.remaining <= 0) {
+						iterator.remove();
+					}
+					StubException e = new StubException(fault.status, "Injected fault");
+					e.retryAfter = fault.retryAfter;
+					throw e;
+				}
+			}
+		}
+	}
+
+	private void signIn(HttpExchange exchange) throws IOException {
+		JSONObject credentials = JSONObject.fromObject(readBody(exchange));
+		String password = users.get(credentials.optString("user"));
+		if (password == null || !password.equals(credentials.optString("password"))) {
+			throw new StubException(401, "Authentication failed");
+		}
+		loginCount.incrementAndGet();
+		String token = UUID.randomUUID().toString();
+		StringBuilder cookie = new StringBuilder(LWSSO_COOKIE_NAME).append('=').append(token).append("; Path=/");
+		long lifetime = sessionLifetime;
+		if (lifetime > 0) {
+			long expiresAt = System.currentTimeMillis() + lifetime;
+			SimpleDateFormat format = new SimpleDateFormat(COOKIE_EXPIRES_FORMAT, Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			cookie.append("; Expires=").append(format.format(new Date(expiresAt)));
+			sessions.put(token, expiresAt);
+		} else {
+			sessions.put(token, Long.MAX_VALUE);
+		}
+		exchange.getResponseHeaders().add("Set-Cookie", cookie.toString());
+		respond(exchange, 200, null);
+	}
+
+	private boolean isAuthenticated(HttpExchange exchange) {
+		List<String> cookieHeaders = exchange.getRequestHeaders().get("Cookie");
+		if (cookieHeaders == null) {
+			return false;
+		}
+		for (String header : cookieHeaders) {
+			for (String cookie : header.split(";")) {
+				String[] pair = cookie.trim().split("=", 2);
+				if (pair.length == 2 && LWSSO_COOKIE_NAME.equals(pair[0])) {
+					Long expiresAt = sessions.get(pair[1]);
+					if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private void handleEntities(HttpExchange exchange, String method, List<String> segments, Map<String, String> params) throws IOException {
+		Long workspaceId = null;
+		List<String> rest = segments;
+		if (segments.size() >= 3 && WORKSPACES.equals(segments.get(0))) {
+			workspaceId = Long.valueOf(segments.get(1));
+			if (!getCollection(null, WORKSPACES).containsKey(workspaceId)) {
+				throw new StubException(404, "Workspace " + workspaceId + " not found");
+			}
+			rest = segments.subList(2, segments.size());
+		}
+		if (rest.isEmpty()) {
+			throw new StubException(404, "Collection not specified");
+		}
+		Long entityId = null;
+		String last = rest.get(rest.size() - 1);
+		if (rest.size() > 1 && StringUtils.isNumeric(last)) {
+			entityId = Long.valueOf(last);
+			rest = rest.subList(0, rest.size() - 1);
+		}
+		String collection = StringUtils.join(rest, '/');
+		ConcurrentSkipListMap<Long, JSONObject> entities = getCollection(workspaceId, collection);
+
+		if ("GET".equals(method)) {
+			if (entityId != null) {
+				JSONObject entity = entities.get(entityId);
+				if (entity == null) {
+					throw new StubException(404, "Entity " + entityId + " not found");
+				}
+				respond(exchange, 200, project(entity, params.get("fields")));
+			} else {
+				respondPage(exchange, entities, params);
+			}
+		} else if ("POST".equals(method)) {
+			List<JSONObject> created = new ArrayList<>();
+			for (JSONObject entity : readData(exchange)) {
+				created.add(addEntity(workspaceId, collection, idSequence.incrementAndGet(), entity));
+			}
+			respond(exchange, 201, collectionResponse(created, created.size()));
+		} else if ("PUT".equals(method)) {
+			List<JSONObject> updated = new ArrayList<>();
+			if (entityId != null) {
+				updated.add(update(entities, entityId, JSONObject.fromObject(readBody(exchange))));
+				respond(exchange, 200, updated.get(0));
+			} else {
+				for (JSONObject entity : readData(exchange)) {
+					updated.add(update(entities, Long.valueOf(entity.getString("id")), entity));
+				}
+				respond(exchange, 200, collectionResponse(updated, updated.size()));
+			}
+		} else if ("DELETE".equals(method)) {
+			List<JSONObject> deleted = new ArrayList<>();
+			if (entityId != null) {
+				JSONObject entity = entities.remove(entityId);
+				if (entity != null) {
+					deleted.add(entity);
+				}
+			} else {
+				Query query = Query.parse(params.get("query"));
+				for (Iterator<JSONObject> iterator = entities.values().iterator(); iterator.hasNext(); ) {
+					JSONObject entity = iterator.next();
+					if (query.matches(entity)) {
+						iterator.remove();
+						deleted.add(entity);
+					}
+				}
+			}
+			respond(exchange, 200, collectionResponse(deleted, deleted.size()));
+		} else {
+			throw new StubException(405, "Method " + method + " not supported");
+		}
+	}
+
+	private void respondPage(HttpExchange exchange, ConcurrentSkipListMap<Long, JSONObject> entities, Map<String, String> params) throws IOException {
+		Query query = Query.parse(params.get("query"));
+		List<JSONObject> matching = new ArrayList<>();
+		for (JSONObject entity : entities.values()) {
+			if (query.matches(entity)) {
+				matching.add(entity);
+			}
+		}
+		String orderBy = params.get("order_by");
+		if (!StringUtils.isEmpty(orderBy) && !"id".equals(orderBy)) {
+			final boolean descending = orderBy.startsWith("-");
+			final String field = descending ? orderBy.substring(1) : orderBy;
+			Collections.sort(matching, new Comparator<JSONObject>() {
+				@Override
+				public int compare(JSONObject o1, JSONObject o2) {
+					int result = o1.optString(field).compareTo(o2.optString(field));
+					return descending ? -result : result;
+				}
+			});
+		}
+		int offset = params.containsKey("offset") ? Integer.parseInt(params.get("offset")) : 0;
+		int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : DEFAULT_PAGE_SIZE;
+		limit = Math.min(limit, maxPageSize);
+		List<JSONObject> page = new ArrayList<>();
+		for (int i = offset; i < matching.size() && i < offset + limit; i++) {
+			page.add(project(matching.get(i), params.get("fields")));
+		}
+		respond(exchange, 200, collectionResponse(page, matching.size()));
+	}
+
+	private JSONObject update(ConcurrentSkipListMap<Long, JSONObject> entities, long id, JSONObject changes) {
+		JSONObject entity = entities.get(id);
+		if (entity == null) {
+			throw new StubException(404, "Entity " + id + " not found");
+		}
+		JSONObject updated = JSONObject.fromObject(entity);
+		for (Object key : changes.keySet()) {
+			if (!"id".equals(key)) {
+				updated.put(key, changes.get(key));
+			}
+		}
+		entities.put(id, updated);
+		return updated;
+	}
+
+	private void handleInternal(HttpExchange exchange, String method, List<String> segments, Map<String, String> params) throws IOException {
+		String path = StringUtils.join(segments, '/');
+		if (segments.size() >= 3 && WORKSPACES.equals(segments.get(0))) {
+			// analytics/ci/pipelines/{pipeline}/jobs/{job}/tests
+			if ("DELETE".equals(method) && segments.size() == 9 && "tests".equals(segments.get(8))) {
+				respond(exchange, 200, null);
+				return;
+			}
+			throw new StubException(404, "Unknown resource " + path);
+		}
+		if ("analytics/ci/servers/connectivity/status".equals(path)) {
+			respond(exchange, 200, null);
+		} else if ("analytics/ci/test-results".equals(path) && "POST".equals(method)) {
+			byte[] received = IOUtils.toByteArray(exchange.getRequestBody());
+			byte[] content = decode(exchange, received);
+			String[] statusAndLog = processTestResult(content, Boolean.parseBoolean(params.get("skip-errors")));
+			long id = idSequence.incrementAndGet();
+			testResults.put(id, content);
+			receivedTestResults.put(id, received);
+			testResultStatuses.put(id, statusAndLog);
+			JSONObject result = new JSONObject();
+			result.put("id", id);
+			respond(exchange, 202, result);
+		} else if (path.startsWith("analytics/ci/test-results/") && segments.size() == 4) {
+			long id = Long.parseLong(segments.get(3));
+			JSONObject status = new JSONObject();
+			status.put("id", id);
+			status.put("status", getTestResultStatus(id)[0]);
+			SimpleDateFormat format = new SimpleDateFormat(DATETIME_FORMAT);
+			status.put("until", format.format(new Date()));
+			respond(exchange, 200, status);
+		} else if (path.startsWith("analytics/ci/test-results/") && path.endsWith("/log")) {
+			respond(exchange, 200, "text/plain", getTestResultStatus(Long.parseLong(segments.get(3)))[1]);
+		} else if ("analytics/ci/servers/tests-result-preflight-base64".equals(path)) {
+			respond(exchange, base64Supported ? 200 : 404, null);
+		} else if ("analytics/ci/events".equals(path) && "PUT".equals(method)) {
+			JSONObject payload = JSONObject.fromObject(readBody(exchange));
+			events.add(payload);
+			registerBuilds(payload);
+			respond(exchange, 200, null);
+		} else if ("analytics/bdi/configuration".equals(path)) {
+			if (bdiConfiguration == null) {
+				respond(exchange, 204, null);
+			} else {
+				respond(exchange, 200, "application/json;charset=UTF-8", bdiConfiguration);
+			}
+		} else if ("analytics/bdi/token".equals(path)) {
+			respond(exchange, 200, "text/plain", "stub-bdi-token");
+		} else if (segments.size() >= 4 && "analytics/ci/servers".equals(StringUtils.join(segments.subList(0, 3), '/'))) {
+			handleServer(exchange, method, segments.get(3), segments.subList(4, segments.size()), params);
+		} else {
+			throw new StubException(404, "Unknown resource " + path);
+		}
+	}
+
+	private void handleServer(HttpExchange exchange, String method, String serverId, List<String> segments, Map<String, String> params) throws IOException {
+		if (segments.size() == 1 && "tasks".equals(segments.get(0))) {
+			JSONObject task;
+			try {
+				task = tasks.poll(taskPollTimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (task == null) {
+				respond(exchange, 408, "text/plain", "no tasks");
+			} else {
+				JSONArray array = new JSONArray();
+				array.add(task);
+				tasks.drainTo(array);
+				respond(exchange, 200, "application/json;charset=UTF-8", array.toString());
+			}
+		} else if (segments.size() == 3 && "tasks".equals(segments.get(0)) && "result".equals(segments.get(2))) {
+			taskResults.put(segments.get(1), readBody(exchange));
+			respond(exchange, 204, null);
+		} else if (segments.size() == 3 && "jobs".equals(segments.get(0))) {
+			String jobName = segments.get(1);
+			String resource = segments.get(2);
+			if ("configuration".equals(resource)) {
+				handleJobConfiguration(exchange, method, serverId + "/" + jobName);
+			} else if ("tests-result-preflight".equals(resource)) {
+				respond(exchange, 200, "text/plain", "true");
+			} else if ("workspaceId".equals(resource)) {
+				JSONArray workspaces = new JSONArray();
+				List<JSONObject> jobPipelines = pipelines.get(serverId + "/" + jobName);
+				if (jobPipelines != null) {
+					synchronized (jobPipelines) {
+						for (JSONObject pipeline : jobPipelines) {
+							workspaces.add(pipeline.getString("workspaceId"));
+						}
+					}
+				}
+				if (workspaces.isEmpty()) {
+					respond(exchange, 204, null);
+				} else {
+					respond(exchange, 200, "application/json;charset=UTF-8", workspaces.toString());
+				}
+			} else {
+				throw new StubException(404, "Unknown job resource " + resource);
+			}
+		} else {
+			throw new StubException(404, "Unknown server resource " + StringUtils.join(segments, '/'));
+		}
+	}
+
+	private void handleJobConfiguration(HttpExchange exchange, String method, String jobKey) throws IOException {
+		List<JSONObject> jobPipelines = pipelines.get(jobKey);
+		if (jobPipelines == null) {
+			pipelines.putIfAbsent(jobKey, new ArrayList<JSONObject>());
+			jobPipelines = pipelines.get(jobKey);
+		}
+		synchronized (jobPipelines) {
+			if ("POST".equals(method)) {
+				JSONObject request = JSONObject.fromObject(readBody(exchange));
+				JSONObject pipeline = new JSONObject();
+				pipeline.put("contextEntityType", "pipeline");
+				pipeline.put("contextEntityId", idSequence.incrementAndGet());
+				pipeline.put("contextEntityName", request.getString("contextEntityName"));
+				pipeline.put("workspaceId", request.getLong("workspaceId"));
+				pipeline.put("releaseId", request.opt("releaseId"));
+				pipeline.put("pipelineRoot", true);
+				pipeline.put("ignoreTests", false);
+				pipeline.put("taxonomies", new JSONArray());
+				JSONObject listFields = new JSONObject();
+				for (JSONObject field : getEntities(request.getLong("workspaceId"), "metadata/fields")) {
+					listFields.put(field.getString("name"), new JSONArray());
+				}
+				pipeline.put("listFields", listFields);
+				jobPipelines.add(pipeline);
+				respond(exchange, 201, collectionResponse(Collections.singletonList(pipeline), 1));
+			} else if ("PUT".equals(method)) {
+				for (JSONObject changes : readData(exchange)) {
+					JSONObject pipeline = findPipeline(jobPipelines, changes.getLong("contextEntityId"));
+					for (String field : Arrays.asList("contextEntityName", "releaseId", "ignoreTests", "listFields")) {
+						if (changes.has(field)) {
+							pipeline.put(field, changes.get(field));
+						}
+					}
+					if (changes.has("taxonomies")) {
+						JSONArray taxonomies = changes.getJSONArray("taxonomies");
+						for (int i = 0; i < taxonomies.size(); i++) {
+							assignTaxonomyIds(taxonomies.getJSONObject(i));
+						}
+						pipeline.put("taxonomies", taxonomies);
+					}
+				}
+				respond(exchange, 200, collectionResponse(jobPipelines, jobPipelines.size()));
+			} else {
+				respond(exchange, 200, collectionResponse(jobPipelines, jobPipelines.size()));
+			}
+		}
+	}
+
+	private JSONObject findPipeline(List<JSONObject> jobPipelines, long pipelineId) {
+		for (JSONObject pipeline : jobPipelines) {
+			if (pipeline.getLong("contextEntityId") == pipelineId) {
+				return pipeline;
+			}
+		}
+		throw new StubException(404, "Pipeline " + pipelineId + " not found");
+	}
+
+	private void assignTaxonomyIds(JSONObject taxonomy) {
+		if (!taxonomy.has("id")) {
+			taxonomy.put("id", idSequence.incrementAndGet());
+		}
+		Object parent = taxonomy.opt("parent");
+		if (parent instanceof JSONObject && !((JSONObject) parent).isNullObject()) {
+			assignTaxonomyIds((JSONObject) parent);
+		}
+	}
+
+	private String[] getTestResultStatus(long id) {
+		String[] statusAndLog = testResultStatuses.get(id);
+		if (statusAndLog == null) {
+			String message = "QueueItem id=" + id + " does not exist";
+			throw new StubException(404, "testbox.not_found", message,
+					"com.hp.mqm.testbox.exception.ItemNotFoundException: " + message + "\n\tat " + StubOctaneServer.class.getName() + ".getTestResultStatus(StubOctaneServer.java)");
+		}
+		return statusAndLog;
+	}
+
+	/**
+	 * Matches test result against builds reported by events and stores its runs.
+	 *
+	 * @return final status of the processing and its log
+	 */
+	private String[] processTestResult(byte[] content, boolean skipErrors) {
+		Element root;
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setExpandEntityReferences(false);
+			Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(content));
+			root = document.getDocumentElement();
+		} catch (ParserConfigurationException | SAXException | IOException e) {
+			throw new StubException(400, "Invalid test result payload: " + e.getMessage());
+		}
+		NodeList builds = root.getElementsByTagName("build");
+		Element build = builds.getLength() > 0 ? (Element) builds.item(0) : null;
+		if (!"test_result".equals(root.getTagName()) || build == null || !build.hasAttribute("server") || !build.hasAttribute("build_type") || !build.hasAttribute("build_sid")) {
+			throw new StubException(400, "Invalid test result payload: build reference missing");
+		}
+
+		List<String> errors = new ArrayList<>();
+		String status;
+		Set<Long> workspaceIds = findBuildWorkspaces(build.getAttribute("server"), build.getAttribute("build_type"), build.getAttribute("build_sid"));
+		if (workspaceIds.isEmpty()) {
+			errors.add("Build reference {server: " + build.getAttribute("server") + "; build_type: " + build.getAttribute("build_type") +
+					"; build_sid: " + build.getAttribute("build_sid") + "} not resolved");
+			status = "failed";
+		} else {
+			NodeList releases = root.getElementsByTagName("release_ref");
+			for (int i = 0; i < releases.getLength(); i++) {
+				String releaseId = ((Element) releases.item(i)).getAttribute("id");
+				for (Long workspaceId : workspaceIds) {
+					if (!StringUtils.isNumeric(releaseId) || !getCollection(workspaceId, "releases").containsKey(Long.valueOf(releaseId))) {
+						errors.add("Release reference {id: " + releaseId + "} not resolved");
+					}
+				}
+			}
+			status = errors.isEmpty() ? "success" : skipErrors ? "warning" : "failed";
+		}
+
+		if (!"failed".equals(status)) {
+			NodeList runs = root.getElementsByTagName("test_run");
+			for (Long workspaceId : workspaceIds) {
+				for (int i = 0; i < runs.getLength(); i++) {
+					Element run = (Element) runs.item(i);
+					JSONObject entity = new JSONObject();
+					for (String attribute : Arrays.asList("name", "module", "package", "class", "status", "duration", "started")) {
+						entity.put(attribute, run.getAttribute(attribute));
+					}
+					addEntity(workspaceId, "runs", idSequence.incrementAndGet(), entity);
+				}
+			}
+		}
+
+		StringBuilder log = new StringBuilder("status: ").append(status).append('\n');
+		if (!errors.isEmpty()) {
+			log.append('\n');
+			for (String error : errors) {
+				log.append(error).append('\n');
+			}
+		}
+		return new String[]{status, log.toString()};
+	}
+
+	private Set<Long> findBuildWorkspaces(String serverIdentity, String jobName, String buildNumber) {
+		Set<Long> workspaceIds = new HashSet<>();
+		for (JSONObject workspace : getEntities(null, WORKSPACES)) {
+			long workspaceId = workspace.getLong("id");
+			JSONObject ciServer = findEntity(workspaceId, "ci_servers", "instance_id", serverIdentity, null, null);
+			JSONObject ciJob = ciServer != null ? findEntity(workspaceId, "ci_jobs", "name", jobName, "ci_server", ciServer) : null;
+			if (ciJob != null && findEntity(workspaceId, "ci_builds", "name", buildNumber, "ci_job", ciJob) != null) {
+				workspaceIds.add(workspaceId);
+			}
+		}
+		return workspaceIds;
+	}
+
+	/**
+	 * Creates CI server, job and build entities for finished builds in all workspaces where the job has pipeline.
+	 */
+	private void registerBuilds(JSONObject payload) {
+		JSONObject server = payload.optJSONObject("server");
+		JSONArray list = payload.optJSONArray("events");
+		if (server == null || list == null) {
+			return;
+		}
+		String serverIdentity = server.optString("instanceId");
+		for (int i = 0; i < list.size(); i++) {
+			JSONObject event = list.getJSONObject(i);
+			List<JSONObject> jobPipelines = pipelines.get(serverIdentity + "/" + event.optString("project"));
+			if (!"finished".equals(event.optString("eventType")) || jobPipelines == null) {
+				continue;
+			}
+			Set<Long> workspaceIds = new HashSet<>();
+			synchronized (jobPipelines) {
+				for (JSONObject pipeline : jobPipelines) {
+					workspaceIds.add(pipeline.getLong("workspaceId"));
+				}
+			}
+			synchronized (collections) {
+				for (Long workspaceId : workspaceIds) {
+					JSONObject ciServer = findEntity(workspaceId, "ci_servers", "instance_id", serverIdentity, null, null);
+					if (ciServer == null) {
+						JSONObject entity = new JSONObject();
+						entity.put("instance_id", serverIdentity);
+						entity.put("name", server.optString("url"));
+						ciServer = addEntity(workspaceId, "ci_servers", idSequence.incrementAndGet(), entity);
+					}
+					JSONObject ciJob = findEntity(workspaceId, "ci_jobs", "name", event.getString("project"), "ci_server", ciServer);
+					if (ciJob == null) {
+						JSONObject entity = new JSONObject();
+						entity.put("name", event.getString("project"));
+						entity.put("ci_server", reference(ciServer));
+						ciJob = addEntity(workspaceId, "ci_jobs", idSequence.incrementAndGet(), entity);
+					}
+					String number = event.optString("number");
+					if (findEntity(workspaceId, "ci_builds", "name", number, "ci_job", ciJob) == null) {
+						JSONObject entity = new JSONObject();
+						entity.put("name", number);
+						entity.put("ci_job", reference(ciJob));
+						addEntity(workspaceId, "ci_builds", idSequence.incrementAndGet(), entity);
+					}
+				}
+			}
+		}
+	}
+
+	private JSONObject findEntity(Long workspaceId, String collection, String field, String value, String referenceField, JSONObject referenced) {
+		for (JSONObject entity : getCollection(workspaceId, collection).values()) {
+			if (!value.equals(entity.optString(field))) {
+				continue;
+			}
+			if (referenceField != null) {
+				JSONObject reference = entity.optJSONObject(referenceField);
+				if (reference == null || !referenced.getString("id").equals(reference.optString("id"))) {
+					continue;
+				}
+			}
+			return entity;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds name and logical name of the referenced entities, the way the server returns references.
+	 */
+	private void resolveReferences(Long workspaceId, JSONObject entity) {
+		for (Object key : entity.keySet()) {
+			Object value = entity.get(key);
+			if (!(value instanceof JSONObject) || ((JSONObject) value).isNullObject() || !((JSONObject) value).has("id")) {
+				continue;
+			}
+			JSONObject reference = (JSONObject) value;
+			long id = reference.getLong("id");
+			String prefix = (workspaceId != null ? workspaceId : "") + "/";
+			for (Map.Entry<String, ConcurrentSkipListMap<Long, JSONObject>> collection : collections.entrySet()) {
+				JSONObject referenced = collection.getKey().startsWith(prefix) ? collection.getValue().get(id) : null;
+				if (referenced != null) {
+					for (String field : Arrays.asList("type", "name", "logical_name")) {
+						if (referenced.has(field)) {
+							reference.put(field, referenced.get(field));
+						}
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	private void addList(long workspaceId, String fieldName, String rootName, String logicalName, int order, String... items) {
+		addEntity(workspaceId, "metadata/fields", idSequence.incrementAndGet(), createFieldMetadata(fieldName, rootName.replace('_', ' '), logicalName, order));
+		JSONObject root = new JSONObject();
+		root.put("name", rootName);
+		root.put("logical_name", logicalName);
+		root = addEntity(workspaceId, "list_nodes", idSequence.incrementAndGet(), root);
+		for (String item : items) {
+			JSONObject node = new JSONObject();
+			node.put("name", item);
+			node.put("logical_name", logicalName + "." + item.toLowerCase(Locale.US).replace(' ', '_'));
+			node.put("list_root", reference(root));
+			addEntity(workspaceId, "list_nodes", idSequence.incrementAndGet(), node);
+		}
+	}
+
+	private static JSONObject reference(JSONObject entity) {
+		JSONObject reference = new JSONObject();
+		reference.put("type", entity.get("type"));
+		reference.put("id", entity.get("id"));
+		return reference;
+	}
+
+	private ConcurrentSkipListMap<Long, JSONObject> getCollection(Long workspaceId, String collection) {
+		String key = (workspaceId != null ? workspaceId : "") + "/" + collection;
+		ConcurrentSkipListMap<Long, JSONObject> entities = collections.get(key);
+		if (entities == null) {
+			collections.putIfAbsent(key, new ConcurrentSkipListMap<Long, JSONObject>());
+			entities = collections.get(key);
+		}
+		return entities;
+	}
+
+	private static JSONObject project(JSONObject entity, String fields) {
+		if (StringUtils.isEmpty(fields)) {
+			return entity;
+		}
+		JSONObject projected = new JSONObject();
+		projected.put("id", entity.get("id"));
+		projected.put("type", entity.get("type"));
+		for (String field : splitFields(fields)) {
+			int nested = field.indexOf('{');
+			String name = nested < 0 ? field : field.substring(0, nested);
+			if (!entity.has(name)) {
+				continue;
+			}
+			Object value = entity.get(name);
+			if (nested >= 0 && value instanceof JSONObject && !((JSONObject) value).isNullObject()) {
+				value = project((JSONObject) value, field.substring(nested + 1, field.length() - 1));
+			}
+			projected.put(name, value);
+		}
+		return projected;
+	}
+
+	/**
+	 * Splits field list on top level commas, keeping nested projections like {@code list_root{name,logical_name}} whole.
+	 */
+	private static List<String> splitFields(String fields) {
+		List<String> result = new ArrayList<>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < fields.length(); i++) {
+			char c = fields.charAt(i);
+			if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(fields.substring(start, i));
+				start = i + 1;
+			}
+		}
+		result.add(fields.substring(start));
+		return result;
+	}
+
+	private static JSONObject collectionResponse(Collection<JSONObject> items, int totalCount) {
+		JSONArray data = new JSONArray();
+		data.addAll(items);
+		JSONObject response = new JSONObject();
+		response.put("total_count", totalCount);
+		response.put("data", data);
+		return response;
+	}
+
+	private static JSONObject createFieldMetadata(String name, String label, String logicalName, int order) {
+		JSONObject feature = new JSONObject();
+		feature.put("name", "pipeline_tagging");
+		feature.put("extensibility", true);
+		feature.put("order", order);
+		JSONObject target = new JSONObject();
+		target.put("type", "list_node");
+		target.put("logical_name", logicalName);
+		JSONObject typeData = new JSONObject();
+		typeData.put("multiple", false);
+		typeData.put("targets", Collections.singletonList(target));
+		JSONObject field = new JSONObject();
+		field.put("name", name);
+		field.put("label", label);
+		field.put("entity_name", "pipeline_node");
+		field.put("field_features", Collections.singletonList(feature));
+		field.put("field_type_data", typeData);
+		return field;
+	}
+
+	private static String entityType(String collection) {
+		if (collection.endsWith("ies")) {
+			return collection.substring(0, collection.length() - 3) + "y";
+		}
+		return StringUtils.removeEnd(collection, "s");
+	}
+
+	private static List<JSONObject> readData(HttpExchange exchange) throws IOException {
+		JSONObject body = JSONObject.fromObject(readBody(exchange));
+		List<JSONObject> data = new ArrayList<>();
+		JSONArray array = body.getJSONArray("data");
+		for (int i = 0; i < array.size(); i++) {
+			data.add(array.getJSONObject(i));
+		}
+		return data;
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		return new String(readBytes(exchange), "UTF-8");
+	}
+
+	private static byte[] readBytes(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		try {
+			return decode(exchange, IOUtils.toByteArray(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] decode(HttpExchange exchange, byte[] body) throws IOException {
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+			try {
+				return IOUtils.toByteArray(in);
+			} finally {
+				in.close();
+			}
+		}
+		return body;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<>();
+		if (rawQuery != null) {
+			for (String param : rawQuery.split("&")) {
+				if (param.isEmpty()) {
+					continue;
+				}
+				String[] pair = param.split("=", 2);
+				params.put(URLDecoder.decode(pair[0], "UTF-8"), pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+			}
+		}
+		return params;
+	}
+
+	private static void respond(HttpExchange exchange, int status, JSONObject body) throws IOException {
+		respond(exchange, status, "application/json;charset=UTF-8", body != null ? body.toString() : null);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		if (body == null) {
+			// empty but chunked, the server drops the connection after responses sent without body
+			exchange.sendResponseHeaders(status, status == 204 ? -1 : 0);
+			return;
+		}
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (bytes.length >= MIN_COMPRESSED_SIZE && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(bytes);
+			gzip.close();
+			bytes = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.flush();
+	}
+
+	private static void respondError(HttpExchange exchange, StubException e) throws IOException {
+		JSONObject error = new JSONObject();
+		error.put("error_code", e.errorCode);
+		error.put("description", e.getMessage());
+		if (e.stackTrace != null) {
+			error.put("stack_trace", e.stackTrace);
+		}
+		if (e.retryAfter != null) {
+			exchange.getResponseHeaders().set("Retry-After", e.retryAfter);
+		}
+		respond(exchange, e.status, error);
+	}
+
+	private static final class Fault {
+
+		private final String pathFragment;
+		private final int status;
+		private final String retryAfter;
+		private int remaining;
+
+		private Fault(String pathFragment, int status, int remaining, String retryAfter) {
+			this.pathFragment = pathFragment;
+			this.status = status;
+			this.remaining = remaining;
+			this.retryAfter = retryAfter;
+		}
+	}
+
+	private static final class StubException extends RuntimeException {
+
+		private final int status;
+		private final String errorCode;
+		private final String stackTrace;
+		private String retryAfter;
+
+		private StubException(int status, String message) {
+			this(status, "platform.stub_error", message, null);
+		}
+
+		private StubException(int status, String errorCode, String message, String stackTrace) {
+			super(message);
+			this.status = status;
+			this.errorCode = errorCode;
+			this.stackTrace = stackTrace;
+		}
+	}
+
+	/**
+	 * Entity filter parsed from the {@code query} parameter. Conditions separated by ';' must all hold, '||' separates
+	 * alternatives.
+	 */
+	private static final class Query {
+
+		private static final Query ALL = new Query(null, null, null, null, false);
+
+		private final List<List<Query>> conjunction;
+		private final String field;
+		private final String operator;
+		private final Object value;
+		private final boolean negated;
+
+		private Query(List<List<Query>> conjunction, String field, String operator, Object value, boolean negated) {
+			this.conjunction = conjunction;
+			this.field = field;
+			this.operator = operator;
+			this.value = value;
+			this.negated = negated;
+		}
+
+		static Query parse(String query) {
+			if (StringUtils.isEmpty(query)) {
+				return ALL;
+			}
+			String expression = query.trim();
+			if (expression.length() >= 2 && expression.startsWith("\"") && expression.endsWith("\"")) {
+				expression = expression.substring(1, expression.length() - 1);
+			}
+			Parser parser = new Parser(expression);
+			Query result = parser.expression();
+			if (parser.position != expression.length()) {
+				throw new StubException(400, "Unsupported query: " + query);
+			}
+			return result;
+		}
+
+		boolean matches(JSONObject entity) {
+			boolean result;
+			if (this == ALL) {
+				result = true;
+			} else if (conjunction != null) {
+				result = true;
+				for (List<Query> alternatives : conjunction) {
+					boolean any = false;
+					for (Query alternative : alternatives) {
+						if (alternative.matches(entity)) {
+							any = true;
+							break;
+						}
+					}
+					if (!any) {
+						result = false;
+						break;
+					}
+				}
+			} else {
+				result = matchesField(entity.opt(field));
+			}
+			return negated != result;
+		}
+
+		private boolean matchesField(Object actual) {
+			boolean isNull = actual == null || JSONNull.getInstance().equals(actual);
+			if (value == null) {
+				return isNull;
+			}
+			if (isNull) {
+				return false;
+			}
+			if (value instanceof Query) {
+				return actual instanceof JSONObject && ((Query) value).matches((JSONObject) actual);
+			}
+			if ("IN".equals(operator)) {
+				for (Object candidate : (List<?>) value) {
+					if (candidate.equals(String.valueOf(actual))) {
+						return true;
+					}
+				}
+				return false;
+			}
+			return ((Pattern) value).matcher(String.valueOf(actual)).matches();
+		}
+
+		private static final class Parser {
+
+			private final String expression;
+			private int position;
+
+			private Parser(String expression) {
+				this.expression = expression;
+			}
+
+			private Query expression() {
+				List<List<Query>> conjunction = new ArrayList<>();
+				List<Query> alternatives = new ArrayList<>();
+				alternatives.add(atom());
+				while (position < expression.length()) {
+					if (expression.startsWith("||", position)) {
+						position += 2;
+						alternatives.add(atom());
+					} else if (expression.charAt(position) == ';') {
+						position++;
+						conjunction.add(alternatives);
+						alternatives = new ArrayList<>();
+						alternatives.add(atom());
+					} else {
+						break;
+					}
+				}
+				conjunction.add(alternatives);
+				return new Query(conjunction, null, null, null, false);
+			}
+
+			private Query atom() {
+				skipSpaces();
+				if (expression.startsWith("!", position)) {
+					position++;
+					Query inner = atom();
+					return new Query(inner.conjunction, inner.field, inner.operator, inner.value, !inner.negated);
+				}
+				if (expression.startsWith("(", position)) {
+					position++;
+					Query inner = expression();
+					expect(')');
+					return inner;
+				}
+				int start = position;
+				while (position < expression.length() && (Character.isLetterOrDigit(expression.charAt(position)) || expression.charAt(position) == '_' || expression.charAt(position) == '.')) {
+					position++;
+				}
+				String field = expression.substring(start, position);
+				if (field.isEmpty()) {
+					throw new StubException(400, "Unsupported query: " + expression);
+				}
+				skipSpaces();
+				if (expression.startsWith("IN ", position)) {
+					position += 3;
+					List<String> values = new ArrayList<>();
+					values.add(literal());
+					while (expression.startsWith(",", position)) {
+						position++;
+						values.add(literal());
+					}
+					return new Query(null, field, "IN", values, false);
+				}
+				expect('=');
+				if (expression.startsWith("{null}", position)) {
+					position += 6;
+					return new Query(null, field, "=", null, false);
+				}
+				if (expression.startsWith("{", position)) {
+					position++;
+					Query reference = expression();
+					expect('}');
+					return new Query(null, field, "=", reference, false);
+				}
+				boolean quoted = expression.startsWith("'", position);
+				String literal = literal();
+				return new Query(null, field, "=", quoted ? wildcard(literal) : Pattern.compile(Pattern.quote(literal)), false);
+			}
+
+			private String literal() {
+				skipSpaces();
+				StringBuilder literal = new StringBuilder();
+				if (expression.startsWith("'", position)) {
+					position++;
+					while (position < expression.length() && expression.charAt(position) != '\'') {
+						if (expression.charAt(position) == '\\' && position + 1 < expression.length()) {
+							position++;
+						}
+						literal.append(expression.charAt(position++));
+					}
+					expect('\'');
+				} else {
+					while (position < expression.length() && ";|)},".indexOf(expression.charAt(position)) < 0) {
+						literal.append(expression.charAt(position++));
+					}
+				}
+				return literal.toString().trim();
+			}
+
+			private void expect(char c) {
+				skipSpaces();
+				if (position >= expression.length() || expression.charAt(position) != c) {
+					throw new StubException(400, "Unsupported query, expected '" + c + "': " + expression);
+				}
+				position++;
+			}
+
+			private void skipSpaces() {
+				while (position < expression.length() && expression.charAt(position) == ' ') {
+					position++;
+				}
+			}
+
+			private static Pattern wildcard(String value) {
+				StringBuilder regex = new StringBuilder();
+				for (String part : value.split("\\*", -1)) {
+					if (regex.length() > 0) {
+						regex.append(".*");
+					}
+					regex.append(Pattern.quote(part));
+				}
+				return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+			}
+		}
+	}
+}
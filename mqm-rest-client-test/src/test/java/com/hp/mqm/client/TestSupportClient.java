@@ -158,8 +158,7 @@ class TestSupportClient extends AbstractMqmRestClient {
 	private static class TestRunEntityFactory implements EntityFactory<TestRun> {
 
 		@Override
-		public TestRun create(String json) {
-			JSONObject entityObject = JSONObject.fromObject(json);
+		public TestRun create(JSONObject entityObject) {
 			return new TestRun(
 					entityObject.getInt("id"),
 					entityObject.getString("name"));
@@ -169,11 +168,10 @@ class TestSupportClient extends AbstractMqmRestClient {
 	private static class ListItemEntityFactory implements EntityFactory<ListItem> {
 
 		@Override
-		public ListItem create(String json) {
-			JSONObject entityObject = JSONObject.fromObject(json);
+		public ListItem create(JSONObject entityObject) {
 			JSONObject list_root = entityObject.optJSONObject("list_root");
 			if (list_root != null) {
-				return new ListItem(entityObject.getString("id"), entityObject.getString("logical_name"), entityObject.getString("name"), create(list_root.toString()));
+				return new ListItem(entityObject.getString("id"), entityObject.getString("logical_name"), entityObject.getString("name"), create(list_root));
 			} else {
 				return new ListItem(entityObject.getString("id"), entityObject.getString("logical_name"), entityObject.getString("name"), null);
 			}
@@ -183,8 +181,8 @@ class TestSupportClient extends AbstractMqmRestClient {
 	private static class JsonEntityFactory implements EntityFactory<JSONObject> {
 
 		@Override
-		public JSONObject create(String json) {
-			return JSONObject.fromObject(json);
+		public JSONObject create(JSONObject entityObject) {
+			return entityObject;
 		}
 	}
 }
\ No newline at end of file
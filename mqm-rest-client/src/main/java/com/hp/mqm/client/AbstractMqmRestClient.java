@@ -23,10 +23,13 @@ import com.hp.mqm.client.exception.RequestErrorException;
 import com.hp.mqm.client.exception.RequestException;
 import com.hp.mqm.client.exception.ServerException;
 import com.hp.mqm.client.exception.SharedSpaceNotExistException;
+import com.hp.mqm.client.model.CircuitBreakerStats;
+import com.hp.mqm.client.model.ConnectionPoolStats;
 import com.hp.mqm.client.model.PagedList;
 import org.apache.http.*;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -36,64 +39,123 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.HttpEntityWrapper;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 	private static final Logger logger = Logger.getLogger(AbstractMqmRestClient.class.getName());
 	private static final String URI_AUTHENTICATION = "authentication/sign_in";
 	private static final String HEADER_CLIENT_TYPE = "HPECLIENTTYPE";
+	private static final String HEADER_RETRY_AFTER = "Retry-After";
 	private static final String LWSSO_COOKIE_NAME = "LWSSO_COOKIE_KEY";
 
-	private Cookie LWSSO_TOKEN = null;
 
-	private static final String PROJECT_API_URI = "api/shared_spaces/{0}";
 	private static final String SHARED_SPACE_INTERNAL_API_URI = "internal-api/shared_spaces/{0}";
 	private static final String SHARED_SPACE_API_URI = "api/shared_spaces/{0}";
 	private static final String CONNECTIVITY_API_URI = "analytics/ci/servers/connectivity/status";
 	private static final String WORKSPACE_API_URI = SHARED_SPACE_API_URI + "/workspaces/{1}";
+	private static final String WORKSPACES_SEGMENT = "workspaces/";
+	private static final String WORKSPACE_ENDPOINT_PREFIX = WORKSPACES_SEGMENT + "{workspaceId}/";
 	private static final String WORKSPACE_INTERNAL_API_URI = SHARED_SPACE_INTERNAL_API_URI + "/workspaces/{1}";
-	private static final String FILTERING_FRAGMENT = "query={query}";
-	private static final String FIELDS_FRAGMENT = "fields={fields}";
-	private static final String PAGING_FRAGMENT = "offset={offset}&limit={limit}";
-	private static final String ORDER_BY_FRAGMENT = "order_by={order}";
-
-	private static final String URI_PARAM_ENCODING = "UTF-8";
 
 	private static final int DEFAULT_CONNECTION_TIMEOUT = 20 * 1000;     // in milliseconds
 	private static final int DEFAULT_SO_TIMEOUT = 2 * 60 * 1000;         // in milliseconds
 
+	static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 20;
+	static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+	private static final int DEFAULT_CONNECTION_TIME_TO_LIVE = -1;   // in milliseconds, infinite
+	private static final int DEFAULT_SESSION_REFRESH_MARGIN = 60 * 1000;    // in milliseconds
+	private static final long HOUSEKEEPING_THREAD_KEEP_ALIVE = 60;           // in seconds
+	private static final long CONCURRENT_CALL_THREAD_KEEP_ALIVE = 60;        // in seconds
+	private static final int DEFAULT_SERVER_CAPABILITIES_TIME_TO_LIVE = 60 * 60 * 1000;     // in milliseconds
+	private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60 * 1000;   // in milliseconds
+	private static final int MIN_EVICTION_PERIOD = 100;                    // in milliseconds
+	private static final int DEFAULT_CLOSE_TIMEOUT = 30 * 1000;            // in milliseconds
+
+	private PoolingHttpClientConnectionManager connectionManager;
 	private CloseableHttpClient httpClient;
-	private CookieStore cookieStore;
+	private RequestConfig defaultRequestConfig;
+	private CredentialsProvider credentialsProvider;
+	private final ScheduledThreadPoolExecutor housekeeping;
+	private final SessionManager sessionManager;
 	private final String clientType;
 	private final String location;
 	private final String sharedSpace;
+	private final String sharedSpaceApiPrefix;
+	private final String sharedSpaceInternalApiPrefix;
 	private final String username;
 	private final String password;
+	private final long serverCapabilitiesTimeToLive;
+	private volatile Capability base64Support;
+	private final MetricsListener metricsListener;
+	private final ConnectionLeakDetector leakDetector;
+	// URI created last by the calling thread with the endpoint it belongs to, used while metrics are recorded
+	private final ThreadLocal<CreatedUri> createdUri = new ThreadLocal<CreatedUri>() {
+		@Override
+		protected CreatedUri initialValue() {
+			return new CreatedUri();
+		}
+	};
+	private final boolean responseCompression;
+	private final int requestCompressionThreshold;
+	private final int idleConnectionTimeout;
+	private final int closeTimeout;
+	private final Object drainLock = new Object();
+	private int requestsInFlight;
+	private boolean closed;
+	private ExecutorService concurrentCallExecutor;
+	private final Map<EndpointCategory, RetryPolicy> retryPolicies = new EnumMap<>(EndpointCategory.class);
+	private final Map<EndpointCategory, CircuitBreaker> circuitBreakers = new EnumMap<>(EndpointCategory.class);
 
 	/**
 	 * Constructor for AbstractMqmRestClient.
@@ -107,55 +169,230 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 		clientType = connectionConfig.getClientType();
 		location = connectionConfig.getLocation();
 		sharedSpace = connectionConfig.getSharedSpace();
+		sharedSpaceApiPrefix = createBaseUriPrefix(SHARED_SPACE_API_URI, sharedSpace);
+		sharedSpaceInternalApiPrefix = createBaseUriPrefix(SHARED_SPACE_INTERNAL_API_URI, sharedSpace);
 		username = connectionConfig.getUsername();
 		password = connectionConfig.getPassword();
+		metricsListener = connectionConfig.getMetricsListener();
+		responseCompression = connectionConfig.getResponseCompression() == null || connectionConfig.getResponseCompression();
+		requestCompressionThreshold = connectionConfig.getRequestCompressionThreshold() != null ? connectionConfig.getRequestCompressionThreshold() : 0;
+		leakDetector = connectionConfig.getConnectionLeakThreshold() != null && connectionConfig.getConnectionLeakThreshold() > 0 ?
+				new ConnectionLeakDetector(connectionConfig.getConnectionLeakThreshold()) : null;
 
-		PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
-		cm.setMaxTotal(20);
-		cm.setDefaultMaxPerRoute(20);
-		cookieStore = new BasicCookieStore();
+		connectionManager = new PoolingHttpClientConnectionManager(
+				connectionConfig.getConnectionTimeToLive() != null ? connectionConfig.getConnectionTimeToLive() : DEFAULT_CONNECTION_TIME_TO_LIVE,
+				TimeUnit.MILLISECONDS) {
+			@Override
+			public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+				ConnectionRequest connectionRequest = super.requestConnection(route, state);
+				return metricsListener != null || leakDetector != null ? new TrackedConnectionRequest(connectionRequest) : connectionRequest;
+			}
+
+			@Override
+			public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit tunit) {
+				if (leakDetector != null) {
+					leakDetector.released(managedConn);
+				}
+				super.releaseConnection(managedConn, state, keepalive, tunit);
+			}
+		};
+		connectionManager.setMaxTotal(connectionConfig.getMaxConnectionsTotal() != null ? connectionConfig.getMaxConnectionsTotal() : DEFAULT_MAX_CONNECTIONS_TOTAL);
+		connectionManager.setDefaultMaxPerRoute(connectionConfig.getMaxConnectionsPerRoute() != null ? connectionConfig.getMaxConnectionsPerRoute() : DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+		if (connectionConfig.getValidateAfterInactivity() != null) {
+			connectionManager.setValidateAfterInactivity(connectionConfig.getValidateAfterInactivity());
+		}
+		RequestConfig.Builder requestConfigBuilder = RequestConfig.custom()
+				.setConnectTimeout(connectionConfig.getDefaultConnectionTimeout() != null ? connectionConfig.getDefaultConnectionTimeout() : DEFAULT_CONNECTION_TIMEOUT)
+				.setSocketTimeout(connectionConfig.getDefaultSocketTimeout() != null ? connectionConfig.getDefaultSocketTimeout() : DEFAULT_SO_TIMEOUT);
+		if (connectionConfig.getDefaultConnectionRequestTimeout() != null) {
+			requestConfigBuilder.setConnectionRequestTimeout(connectionConfig.getDefaultConnectionRequestTimeout());
+		}
+
+		// compression is handled by the client itself, see addRequestHeaders(HttpRequest) and decompressResponse(...)
+		HttpClientBuilder httpClientBuilder = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.disableContentCompression();
 
 		if (connectionConfig.getProxyHost() != null && !connectionConfig.getProxyHost().isEmpty()) {
 			HttpHost proxy = new HttpHost(connectionConfig.getProxyHost(), connectionConfig.getProxyPort());
-
-			RequestConfig requestConfig = RequestConfig.custom()
-					.setProxy(proxy)
-					.setConnectTimeout(connectionConfig.getDefaultConnectionTimeout() != null ? connectionConfig.getDefaultConnectionTimeout() : DEFAULT_CONNECTION_TIMEOUT)
-					.setSocketTimeout(connectionConfig.getDefaultSocketTimeout() != null ? connectionConfig.getDefaultSocketTimeout() : DEFAULT_SO_TIMEOUT).build();
+			requestConfigBuilder.setProxy(proxy);
 
 			if (connectionConfig.getProxyCredentials() != null) {
 				AuthScope proxyAuthScope = new AuthScope(connectionConfig.getProxyHost(), connectionConfig.getProxyPort());
 				Credentials credentials = proxyCredentialsToCredentials(connectionConfig.getProxyCredentials());
 
-				CredentialsProvider credsProvider = new BasicCredentialsProvider();
-				credsProvider.setCredentials(proxyAuthScope, credentials);
+				credentialsProvider = new BasicCredentialsProvider();
+				credentialsProvider.setCredentials(proxyAuthScope, credentials);
+				httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+			}
+		}
+		defaultRequestConfig = requestConfigBuilder.build();
+		httpClient = httpClientBuilder
+				.setDefaultRequestConfig(defaultRequestConfig)
+				.build();
+		housekeeping = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "mqm-housekeeping");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		housekeeping.setKeepAliveTime(HOUSEKEEPING_THREAD_KEEP_ALIVE, TimeUnit.SECONDS);
+		housekeeping.allowCoreThreadTimeOut(true);
+		housekeeping.setRemoveOnCancelPolicy(true);
+		if (leakDetector != null) {
+			housekeeping.scheduleWithFixedDelay(leakDetector, leakDetector.getThreshold(), leakDetector.getThreshold(), TimeUnit.MILLISECONDS);
+		}
+		idleConnectionTimeout = connectionConfig.getIdleConnectionTimeout() != null ? connectionConfig.getIdleConnectionTimeout() : DEFAULT_IDLE_CONNECTION_TIMEOUT;
+		scheduleConnectionEviction(new Runnable() {
+			@Override
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+			}
+		});
+		closeTimeout = connectionConfig.getCloseTimeout() != null ? connectionConfig.getCloseTimeout() : DEFAULT_CLOSE_TIMEOUT;
+		sessionManager = new SessionManager(new SessionManager.Authenticator() {
+			@Override
+			public Cookie authenticate() {
+				if (metricsListener == null) {
+					return AbstractMqmRestClient.this.authenticate();
+				}
+				long start = System.nanoTime();
+				boolean successful = false;
+				try {
+					Cookie token = AbstractMqmRestClient.this.authenticate();
+					successful = true;
+					return token;
+				} finally {
+					recordLogin(System.nanoTime() - start, successful);
+				}
+			}
+		}, housekeeping,
+				connectionConfig.getSessionLifetime() != null ? connectionConfig.getSessionLifetime() : 0,
+				connectionConfig.getSessionRefreshMargin() != null ? connectionConfig.getSessionRefreshMargin() : DEFAULT_SESSION_REFRESH_MARGIN);
+		serverCapabilitiesTimeToLive = connectionConfig.getServerCapabilitiesTimeToLive() != null ?
+				connectionConfig.getServerCapabilitiesTimeToLive() : DEFAULT_SERVER_CAPABILITIES_TIME_TO_LIVE;
+		RetryPolicy commonRetryPolicy = connectionConfig.getRetryPolicy() != null ? connectionConfig.getRetryPolicy() : RetryPolicy.DEFAULT;
+		for (EndpointCategory category : EndpointCategory.values()) {
+			RetryPolicy retryPolicy = connectionConfig.getRetryPolicy(category);
+			if (retryPolicy == null) {
+				// task polling is a loop of its own
+				retryPolicy = category == EndpointCategory.TASKS ? RetryPolicy.NONE : commonRetryPolicy;
+			}
+			retryPolicies.put(category, retryPolicy);
+		}
+		CircuitBreakerPolicy commonCircuitBreakerPolicy = connectionConfig.getCircuitBreakerPolicy() != null ?
+				connectionConfig.getCircuitBreakerPolicy() : CircuitBreakerPolicy.DEFAULT;
+		for (EndpointCategory category : EndpointCategory.values()) {
+			CircuitBreakerPolicy circuitBreakerPolicy = connectionConfig.getCircuitBreakerPolicy(category);
+			if (circuitBreakerPolicy == null) {
+				// long poll is slow by design, duration of test result upload includes streaming of the (possibly large) report
+				circuitBreakerPolicy = category == EndpointCategory.TASKS || category == EndpointCategory.TEST_RESULTS ?
+						commonCircuitBreakerPolicy.withoutSlowCalls() : commonCircuitBreakerPolicy;
+			}
+			circuitBreakers.put(category, new CircuitBreaker(category, circuitBreakerPolicy));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (drainLock) {
+			closed = true;
+			long deadline = System.currentTimeMillis() + closeTimeout;
+			long remaining = closeTimeout;
+			while (requestsInFlight > 0 && remaining > 0) {
+				try {
+					drainLock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			if (requestsInFlight > 0) {
+				logger.log(Level.WARNING, "Client closed with " + requestsInFlight + " requests in flight");
+			}
+			if (concurrentCallExecutor != null) {
+				concurrentCallExecutor.shutdownNow();
+			}
+		}
+		housekeeping.shutdownNow();
+		httpClient.close();
+	}
 
-				httpClient = HttpClients.custom()
-						.setConnectionManager(cm)
-						.setDefaultCookieStore(cookieStore)
-						.setDefaultCredentialsProvider(credsProvider)
-						.setDefaultRequestConfig(requestConfig)
-						.build();
-			} else {
-				httpClient = HttpClients.custom()
-						.setConnectionManager(cm)
-						.setDefaultCookieStore(cookieStore)
-						.setDefaultRequestConfig(requestConfig)
-						.build();
+	/**
+	 * Registers a request in flight, so that {@link #close()} waits for it.
+	 *
+	 * @throws IllegalStateException when the client is closed
+	 */
+	void beginRequest() {
+		synchronized (drainLock) {
+			if (closed) {
+				throw new IllegalStateException("Client is closed");
 			}
-		} else {
-			RequestConfig requestConfig = RequestConfig.custom()
-					.setConnectTimeout(connectionConfig.getDefaultConnectionTimeout() != null ? connectionConfig.getDefaultConnectionTimeout() : DEFAULT_CONNECTION_TIMEOUT)
-					.setSocketTimeout(connectionConfig.getDefaultSocketTimeout() != null ? connectionConfig.getDefaultSocketTimeout() : DEFAULT_SO_TIMEOUT)
-					.build();
-			httpClient = HttpClients.custom()
-					.setConnectionManager(cm)
-					.setDefaultCookieStore(cookieStore)
-					.setDefaultRequestConfig(requestConfig)
-					.build();
+			requestsInFlight++;
 		}
 	}
 
+	void endRequest() {
+		synchronized (drainLock) {
+			if (--requestsInFlight == 0) {
+				drainLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Runs the evictor of a connection pool on the housekeeping thread repeatedly, unless idle connections are kept
+	 * (see {@link MqmConnectionConfig#setIdleConnectionTimeout(Integer)}).
+	 */
+	void scheduleConnectionEviction(Runnable task) {
+		if (idleConnectionTimeout > 0) {
+			long period = Math.max(idleConnectionTimeout / 2, MIN_EVICTION_PERIOD);
+			housekeeping.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return period of inactivity in milliseconds after which pooled connections are closed, 0 if they are kept
+	 */
+	int getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	/**
+	 * Creates HTTP client with a single connection of its own, e.g. for a long poll which would otherwise hold one of
+	 * the pooled connections. Proxy settings are shared with the client, the caller is responsible for closing it.
+	 *
+	 * @param socketTimeout socket timeout of the connection in milliseconds
+	 */
+	CloseableHttpClient createDedicatedHttpClient(int socketTimeout) {
+		HttpClientBuilder httpClientBuilder = HttpClients.custom()
+				.setConnectionManager(new BasicHttpClientConnectionManager())
+				.disableContentCompression()
+				.setDefaultRequestConfig(RequestConfig.copy(defaultRequestConfig).setSocketTimeout(socketTimeout).build());
+		if (credentialsProvider != null) {
+			httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+		}
+		return httpClientBuilder.build();
+	}
+
+	/**
+	 * @return request configuration (timeouts, proxy) derived from the connection configuration
+	 */
+	RequestConfig getDefaultRequestConfig() {
+		return defaultRequestConfig;
+	}
+
+	/**
+	 * @return proxy credentials provider or null when no proxy credentials are configured
+	 */
+	CredentialsProvider getCredentialsProvider() {
+		return credentialsProvider;
+	}
+
 	private Credentials proxyCredentialsToCredentials(ProxyCredentials credentials) {
 		if (credentials instanceof UsernamePasswordProxyCredentials) {
 			return new UsernamePasswordCredentials(((UsernamePasswordProxyCredentials) credentials).getUsername(),
@@ -170,11 +407,56 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 	 *
 	 * @throws com.hp.mqm.client.exception.LoginException when authentication failed
 	 */
-	protected synchronized void login() {
-		authenticate();
+	protected void login() {
+		sessionManager.renew();
+	}
+
+	/**
+	 * Returns security token of the current session, login is done first if there is no session yet.
+	 *
+	 * @return LWSSO cookie to be sent along with requests
+	 */
+	Cookie getSessionToken() {
+		return sessionManager.getToken();
+	}
+
+	/**
+	 * @return security token of the current session, null if login has to be done first
+	 */
+	Cookie peekSessionToken() {
+		return sessionManager.peekToken();
+	}
+
+	/**
+	 * Replaces session rejected by the server. Concurrent callers holding the same token share a single login.
+	 *
+	 * @param staleToken token the request was rejected with
+	 * @return LWSSO cookie of the new session
+	 */
+	Cookie renewSession(Cookie staleToken) {
+		return sessionManager.renew(staleToken);
+	}
+
+	/**
+	 * Returns whether the server accepts base64 encoded job names as learned by {@link #setBase64Supported(boolean)}.
+	 * The answer is bound to the session it was obtained in and expires after the configured time to live.
+	 *
+	 * @return the server capability, null if it has to be probed (again)
+	 */
+	Boolean getBase64Supported() {
+		Capability known = base64Support;
+		if (known == null || known.session != sessionManager.peekToken() ||
+				System.currentTimeMillis() - known.probeTime >= serverCapabilitiesTimeToLive) {
+			return null;
+		}
+		return known.supported;
+	}
+
+	void setBase64Supported(boolean supported) {
+		base64Support = new Capability(supported, sessionManager.peekToken(), System.currentTimeMillis());
 	}
 
-	private void authenticate() {
+	private Cookie authenticate() {
 		HttpPost post = new HttpPost(createBaseUri(URI_AUTHENTICATION));
 		StringEntity loginApiJson = new StringEntity(
 				"{\"user\":\"" + (username != null ? username : "") + "\"," +
@@ -184,24 +466,25 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 		post.setEntity(loginApiJson);
 
 		HttpResponse response = null;
-		boolean tokenFound = false;
+		Cookie token = null;
 		try {
-			cookieStore.clear();
-			response = httpClient.execute(post);
+			// cookies of the sign-in are kept apart, requests in flight keep using their own token meanwhile
+			HttpClientContext context = HttpClientContext.create();
+			context.setCookieStore(new BasicCookieStore());
+			response = httpClient.execute(post, context);
 			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-				for (Cookie cookie : cookieStore.getCookies()) {
+				for (Cookie cookie : context.getCookieStore().getCookies()) {
 					if (cookie.getName().equals(LWSSO_COOKIE_NAME)) {
-						LWSSO_TOKEN = cookie;
-						tokenFound = true;
+						token = cookie;
 					}
 				}
 			} else {
 				throw new AuthenticationException("Authentication failed: code=" + response.getStatusLine().getStatusCode() + "; reason=" + response.getStatusLine().getReasonPhrase());
 			}
-			if (!tokenFound) {
-				LWSSO_TOKEN = null;
+			if (token == null) {
 				throw new AuthenticationException("Authentication failed: status code was OK, but no security token found");
 			}
+			return token;
 		} catch (IOException e) {
 			throw new LoginErrorException("Error occurred during authentication", e);
 		} finally {
@@ -221,22 +504,40 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 		checkAuthorization();
 	}
 
+	@Override
+	public Map<EndpointCategory, CircuitBreakerStats> getCircuitBreakerStats() {
+		Map<EndpointCategory, CircuitBreakerStats> stats = new EnumMap<>(EndpointCategory.class);
+		for (Map.Entry<EndpointCategory, CircuitBreaker> circuitBreaker : circuitBreakers.entrySet()) {
+			stats.put(circuitBreaker.getKey(), circuitBreaker.getValue().getStats());
+		}
+		return stats;
+	}
+
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		PoolStats stats = connectionManager.getTotalStats();
+		return new ConnectionPoolStats(stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax(),
+				leakDetector != null ? leakDetector.getLeakedConnections() : 0);
+	}
+
 	private void checkAuthorization() {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(CONNECTIVITY_API_URI));
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-				throw new SharedSpaceNotExistException("Cannot connect to given shared space.");
-			} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_FORBIDDEN) {
-				throw new AuthorizationException("Provided credentials are not sufficient for requested resource");
-			} else if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw new AuthorizationException("Authorization failed with unexpected response " + response.getStatusLine().getStatusCode());
-			}
+			execute(request, new ResponseHandler<Void>() {
+				@Override
+				public Void handleResponse(HttpResponse response) {
+					if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+						throw new SharedSpaceNotExistException("Cannot connect to given shared space.");
+					} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_FORBIDDEN) {
+						throw new AuthorizationException("Provided credentials are not sufficient for requested resource");
+					} else if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw new AuthorizationException("Authorization failed with unexpected response " + response.getStatusLine().getStatusCode());
+					}
+					return null;
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Shared space check failed", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
@@ -252,8 +553,16 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 	 * @return absolute URI of endpoint with all parameters which are URI encoded. Example: http://mqm.hp.com/qcbin/test/J%20Unit?id=123
 	 */
 	private URI createBaseUri(String template, Object... params) {
-		String result = location + "/" + resolveTemplate(template, asMap(params));
-		return URI.create(result);
+		StringBuilder uri = UriTemplate.borrowBuilder().append(location).append('/');
+		UriTemplate uriTemplate = UriTemplate.of(template);
+		uriTemplate.expand(uri, params);
+		return createUri(uri, uriTemplate.getPath());
+	}
+
+	private String createBaseUriPrefix(String template, Object... params) {
+		StringBuilder uri = UriTemplate.borrowBuilder().append(location).append('/');
+		UriTemplate.of(template).expand(uri, params);
+		return uri.append('/').toString();
 	}
 
 	/**
@@ -268,23 +577,28 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 	 * @return absolute URI of endpoint with all parameters which are URI encoded. Example: http://mqm.hp.com/qcbin/domains/DEFAULT/projects/MAIN/rest/test/J%20Unit?id=123
 	 */
 	protected URI createProjectApiUri(String template, Object... params) {
-		return createProjectUri(PROJECT_API_URI, template, asMap(params));
+		return createSharedSpaceApiUri(template, params);
 	}
 
 	URI createSharedSpaceApiUri(String template, Object... params) {
-		return createSharedSpaceApiUriMap(template, asMap(params));
+		StringBuilder uri = UriTemplate.borrowBuilder().append(sharedSpaceApiPrefix);
+		UriTemplate uriTemplate = UriTemplate.of(template);
+		uriTemplate.expand(uri, params);
+		return createUri(uri, uriTemplate.getPath());
 	}
 
 	private URI createSharedSpaceApiUriMap(String template, Map<String, ?> params) {
-		return URI.create(createBaseUri(SHARED_SPACE_API_URI, sharedSpace).toString() + "/" + resolveTemplate(template, params));
+		StringBuilder uri = UriTemplate.borrowBuilder().append(sharedSpaceApiPrefix);
+		UriTemplate uriTemplate = UriTemplate.of(template);
+		uriTemplate.expand(uri, params);
+		return createUri(uri, uriTemplate.getPath());
 	}
 
 	URI createSharedSpaceInternalApiUri(String template, Object... params) {
-		return createSharedSpaceInternalApiUriMap(template, asMap(params));
-	}
-
-	private URI createSharedSpaceInternalApiUriMap(String template, Map<String, ?> params) {
-		return URI.create(createBaseUri(SHARED_SPACE_INTERNAL_API_URI, sharedSpace).toString() + "/" + resolveTemplate(template, params));
+		StringBuilder uri = UriTemplate.borrowBuilder().append(sharedSpaceInternalApiPrefix);
+		UriTemplate uriTemplate = UriTemplate.of(template);
+		uriTemplate.expand(uri, params);
+		return createUri(uri, uriTemplate.getPath());
 	}
 
 	/**
@@ -297,152 +611,409 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 	 * @return absolute URI of endpoint with all parameters which are URI encoded
 	 */
 	protected URI createProjectApiUriMap(String template, Map<String, ?> params) {
-		return createProjectUri(PROJECT_API_URI, template, params);
+		return createSharedSpaceApiUriMap(template, params);
 	}
 
 	// don't remove (used in test-support)
 	URI createWorkspaceInternalApiUriMap(String template, long workspaceId, Object... params) {
-		return URI.create(createBaseUri(WORKSPACE_INTERNAL_API_URI, sharedSpace, workspaceId).toString() + "/" + resolveTemplate(template, asMap(params)));
+		StringBuilder uri = workspaceUriPrefix(WORKSPACE_INTERNAL_API_URI, workspaceId);
+		UriTemplate uriTemplate = UriTemplate.of(template);
+		uriTemplate.expand(uri, params);
+		return createUri(uri, WORKSPACE_ENDPOINT_PREFIX + uriTemplate.getPath());
 	}
 
 	URI createWorkspaceApiUri(String template, long workspaceId, Object... params) {
-		return createWorkspaceApiUriMap(template, workspaceId, asMap(params));
-	}
-
-	private URI createWorkspaceApiUriMap(String template, long workspaceId, Map<String, ?> params) {
-		return URI.create(createBaseUri(WORKSPACE_API_URI, sharedSpace, workspaceId).toString() + "/" + resolveTemplate(template, params));
+		StringBuilder uri = workspaceUriPrefix(WORKSPACE_API_URI, workspaceId);
+		UriTemplate uriTemplate = UriTemplate.of(template);
+		uriTemplate.expand(uri, params);
+		return createUri(uri, WORKSPACE_ENDPOINT_PREFIX + uriTemplate.getPath());
 	}
 
-	private URI createProjectUri(String projectPartTemplate, String template, Map<String, ?> params) {
-		return URI.create(createBaseUri(projectPartTemplate, sharedSpace).toString() + "/" + resolveTemplate(template, params));
+	private StringBuilder workspaceUriPrefix(String workspaceTemplate, long workspaceId) {
+		StringBuilder uri = UriTemplate.borrowBuilder().append(location).append('/');
+		UriTemplate.of(workspaceTemplate).expand(uri, sharedSpace, workspaceId);
+		return uri.append('/');
 	}
 
 	/**
-	 * Resolves all placeholders in template according to their order in params. All parameters are URI encoded before
-	 * they are used for template resolving.
-	 * This method works properly only if method {@link #encodeParam(String)} encodes parameters correctly (replace '{' and '}' by some other character(s)).
+	 * Executes the request (see {@link #execute(HttpUriRequest)}) and lets the handler process the response. The response
+	 * is released however the handler ends (a result, an exception or the content left unread), so the pooled connection
+	 * is always returned to the pool. Calls should go through this method rather than handle the response themselves.
 	 *
-	 * @param template URI template
-	 * @param params   URI parameters
-	 * @return resolved URI template
+	 * @param request which should be executed
+	 * @param handler maps the response, exceptions of the handler are propagated
+	 * @return result of the handler
 	 */
-	private String resolveTemplate(String template, Map<String, ?> params) {
-		String result = template;
-		for (String param : params.keySet()) {
-			Object value = params.get(param);
-			result = result.replaceAll(Pattern.quote("{" + param + "}"), encodeParam(value == null ? "" : value.toString()));
-		}
-		return result;
-	}
-
-	private Map<String, Object> asMap(Object... params) {
-		Map<String, Object> map = new HashMap<>();
-		for (int i = 0; i < params.length; i++) {
-			map.put(String.valueOf(i), params[i]);
-		}
-		return map;
+	protected <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> handler) throws IOException {
+		return execute(request, httpClient, handler);
 	}
 
-	private String encodeParam(String param) {
+	/**
+	 * Same as {@link #execute(HttpUriRequest, ResponseHandler)}, but the request is sent through given HTTP client.
+	 */
+	<T> T execute(HttpUriRequest request, CloseableHttpClient httpClient, ResponseHandler<? extends T> handler) throws IOException {
+		// the response is still being read after the request itself is done
+		beginRequest();
 		try {
-			return URLEncoder.encode(param, URI_PARAM_ENCODING).replace("+", "%20");
-		} catch (UnsupportedEncodingException e) {
-			throw new IllegalStateException("Unsupported encoding used for URI parameter encoding.", e);
+			HttpResponse response = execute(request, httpClient);
+			try {
+				return handler.handleResponse(response);
+			} finally {
+				HttpClientUtils.closeQuietly(response);
+			}
+		} finally {
+			endRequest();
 		}
 	}
 
 	/**
 	 * Invokes {@link org.apache.http.client.HttpClient#execute(org.apache.http.client.methods.HttpUriRequest)}
-	 * with given request and it does login if it is necessary.
+	 * with given request and it does login if it is necessary. Requests failing with a transient error are repeated
+	 * according to the {@link RetryPolicy} of their endpoint category. While the circuit breaker of the category is open,
+	 * {@link com.hp.mqm.client.exception.TemporarilyUnavailableException} is thrown without sending the request.
 	 *
 	 * Method does not support request with non-repeatable entity (see {@link HttpEntity#isRepeatable()}).
 	 *
+	 * The caller has to close the response, {@link #execute(HttpUriRequest, ResponseHandler)} does it on its own.
+	 *
 	 * @param request which should be executed
 	 * @return response for given request
 	 * @throws IllegalArgumentException when request entity is not repeatable
 	 */
 	protected HttpResponse execute(HttpUriRequest request) throws IOException {
-		HttpResponse response;
+		return execute(request, httpClient);
+	}
 
-		if (LWSSO_TOKEN == null) {
-			login();
+	/**
+	 * Same as {@link #execute(HttpUriRequest)}, but the request is sent through given HTTP client (see
+	 * {@link #createDedicatedHttpClient(int)}) instead of the shared connection pool.
+	 */
+	HttpResponse execute(HttpUriRequest request, CloseableHttpClient httpClient) throws IOException {
+		beginRequest();
+		try {
+			return executeWithRetries(request, getEndpoint(request), httpClient);
+		} finally {
+			endRequest();
 		}
+	}
+
+	private HttpResponse executeWithRetries(HttpUriRequest request, String endpoint, CloseableHttpClient httpClient) throws IOException {
+		compressRequest(request, endpoint);
+		CircuitBreaker circuitBreaker = getCircuitBreaker(request);
+		for (int attempt = 1; ; attempt++) {
+			HttpResponse response;
+			circuitBreaker.acquirePermission();
+			long start = System.currentTimeMillis();
+			try {
+				response = executeAttempt(request, endpoint, httpClient);
+			} catch (IOException e) {
+				circuitBreaker.onResult(true, System.currentTimeMillis() - start);
+				long delay = getRetryDelay(request, attempt, -1, e, -1);
+				if (delay < 0) {
+					throw e;
+				}
+				logger.log(Level.INFO, "Request " + request.getMethod() + " " + request.getURI().getPath() + " failed (" + e + "), repeating in " + delay + " ms");
+				recordRetry(request, endpoint, -1);
+				sleep(delay);
+				continue;
+			} catch (RuntimeException e) {
+				circuitBreaker.onIgnored();
+				throw e;
+			}
+			int statusCode = response.getStatusLine().getStatusCode();
+			circuitBreaker.onResult(isOverloaded(statusCode), System.currentTimeMillis() - start);
+			long delay = getRetryDelay(request, attempt, statusCode, null, getRetryAfter(response));
+			if (delay < 0) {
+				decompressResponse(request, endpoint, response);
+				return response;
+			}
+			HttpClientUtils.closeQuietly(response);
+			logger.log(Level.INFO, "Request " + request.getMethod() + " " + request.getURI().getPath() + " failed with status " + statusCode + ", repeating in " + delay + " ms");
+			recordRetry(request, endpoint, statusCode);
+			sleep(delay);
+		}
+	}
+
+	private HttpResponse executeAttempt(HttpUriRequest request, String endpoint, CloseableHttpClient httpClient) throws IOException {
+		HttpResponse response;
+
+		Cookie token = sessionManager.getToken();
 		HttpContext localContext = new BasicHttpContext();
 		CookieStore localCookies = new BasicCookieStore();
-		localCookies.addCookie(LWSSO_TOKEN);
+		localCookies.addCookie(token);
 		localContext.setAttribute(HttpClientContext.COOKIE_STORE, localCookies);
 
 		addRequestHeaders(request);
-		response = httpClient.execute(request, localContext);
+		response = send(request, endpoint, localContext, httpClient);
 		if (response.getStatusLine().getStatusCode() == 401) {
 			HttpClientUtils.closeQuietly(response);
-			login();
+			token = sessionManager.renew(token);
 			localCookies.clear();
-			localCookies.addCookie(LWSSO_TOKEN);
+			localCookies.addCookie(token);
 			localContext.setAttribute(HttpClientContext.COOKIE_STORE, localCookies);
 			addRequestHeaders(request);
-			response = httpClient.execute(request, localContext);
+			recordRetry(request, endpoint, 401);
+			response = send(request, endpoint, localContext, httpClient);
 		}
 		return response;
 	}
 
-	<E> PagedList<E> getEntities(URI uri, int offset, EntityFactory<E> factory) {
-		HttpGet request = new HttpGet(uri);
-		HttpResponse response = null;
+	/**
+	 * Returns how long to wait before the failed attempt is repeated according to the retry policy of the request.
+	 *
+	 * @param attempt    number of the failed attempt, starting with 1
+	 * @param statusCode status code of the response, -1 if the attempt failed with an I/O error
+	 * @param failure    I/O error or null
+	 * @param retryAfter delay requested by the server in milliseconds, -1 if none
+	 * @return delay in milliseconds, -1 if the request should not be repeated
+	 */
+	long getRetryDelay(HttpUriRequest request, int attempt, int statusCode, IOException failure, long retryAfter) {
+		return retryPolicies.get(EndpointCategory.of(request.getURI())).getDelay(request, attempt, statusCode, failure, retryAfter);
+	}
+
+	CircuitBreaker getCircuitBreaker(HttpUriRequest request) {
+		return circuitBreakers.get(EndpointCategory.of(request.getURI()));
+	}
+
+	/**
+	 * @return true for status codes which count as failed calls for circuit breakers
+	 */
+	static boolean isOverloaded(int statusCode) {
+		return statusCode == 429 || statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+	}
+
+	/**
+	 * @return delay requested by <code>Retry-After</code> header of the response in milliseconds, -1 if none
+	 */
+	static long getRetryAfter(HttpResponse response) {
+		Header retryAfter = response.getFirstHeader(HEADER_RETRY_AFTER);
+		if (retryAfter == null || StringUtils.isBlank(retryAfter.getValue())) {
+			return -1;
+		}
+		String value = retryAfter.getValue().trim();
+		if (StringUtils.isNumeric(value)) {
+			return value.length() > 9 ? Long.MAX_VALUE : TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+		}
+		Date date = DateUtils.parseDate(value);
+		return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+	}
+
+	/**
+	 * Runs the task on the housekeeping thread after the given delay in milliseconds.
+	 */
+	ScheduledFuture<?> schedule(Runnable task, long delay) {
+		return housekeeping.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private static void sleep(long delay) throws InterruptedIOException {
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to repeat the request");
+		}
+	}
+
+	private HttpResponse send(HttpUriRequest request, String endpoint, HttpContext localContext, CloseableHttpClient httpClient) throws IOException {
+		if (metricsListener == null) {
+			return httpClient.execute(request, localContext);
+		}
+		HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+		CountingEntity countingEntity = null;
+		if (entity != null) {
+			countingEntity = new CountingEntity(entity);
+			((HttpEntityEnclosingRequest) request).setEntity(countingEntity);
+		}
+		long start = System.nanoTime();
+		int statusCode = -1;
+		long bytesReceived = -1;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Entity retrieval failed", response);
+			HttpResponse response = httpClient.execute(request, localContext);
+			statusCode = response.getStatusLine().getStatusCode();
+			bytesReceived = response.getEntity() != null ? response.getEntity().getContentLength() : 0;
+			return response;
+		} finally {
+			if (countingEntity != null) {
+				((HttpEntityEnclosingRequest) request).setEntity(entity);
 			}
-			return convertResponceToPagedList(factory,offset, response);
+			recordRequest(request, endpoint, statusCode, System.nanoTime() - start, countingEntity != null ? countingEntity.getByteCount() : 0, bytesReceived);
+		}
+	}
+
+	/**
+	 * Reports a finished request to the metrics listener if there is one.
+	 */
+	void recordRequest(HttpUriRequest request, String endpoint, int statusCode, long latency, long bytesSent, long bytesReceived) {
+		if (metricsListener != null) {
+			try {
+				metricsListener.requestCompleted(request.getMethod(), endpoint, statusCode, latency, bytesSent, bytesReceived);
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Metrics listener failed", e);
+			}
+		}
+	}
+
+	void recordRetry(HttpUriRequest request, String endpoint, int statusCode) {
+		if (metricsListener != null) {
+			try {
+				metricsListener.requestRetried(request.getMethod(), endpoint, statusCode);
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Metrics listener failed", e);
+			}
+		}
+	}
+
+	private void recordCompression(HttpUriRequest request, String endpoint, boolean requestBody, long uncompressedBytes, long compressedBytes) {
+		if (metricsListener != null) {
+			try {
+				metricsListener.contentCompressed(request.getMethod(), endpoint, requestBody, uncompressedBytes, compressedBytes);
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Metrics listener failed", e);
+			}
+		}
+	}
+
+	private void recordLogin(long latency, boolean successful) {
+		try {
+			metricsListener.loginCompleted(latency, successful);
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "Metrics listener failed", e);
+		}
+	}
+
+	/**
+	 * Creates URI of the expanded template and remembers it for the calling thread together with the endpoint it
+	 * belongs to, see {@link #getEndpoint(HttpUriRequest)}.
+	 */
+	private URI createUri(StringBuilder uri, String endpoint) {
+		URI created = URI.create(uri.toString());
+		if (metricsListener != null) {
+			CreatedUri last = createdUri.get();
+			last.uri = created;
+			last.endpoint = endpoint;
+		}
+		return created;
+	}
+
+	/**
+	 * Makes URI derived from the one just created (e.g. with a parameter added) report the same endpoint.
+	 */
+	URI sameEndpoint(URI derived, URI original) {
+		if (metricsListener != null) {
+			CreatedUri last = createdUri.get();
+			if (last.uri == original) {
+				last.uri = derived;
+			}
+		}
+		return derived;
+	}
+
+	/**
+	 * Returns the endpoint which tags the request in metrics, null when no metrics are recorded. Resolved once before
+	 * the request is executed and passed along with it: requests of the URI just created by the calling thread take
+	 * over its endpoint, others are matched against the known templates.
+	 */
+	String getEndpoint(HttpUriRequest request) {
+		if (metricsListener == null) {
+			return null;
+		}
+		CreatedUri last = createdUri.get();
+		return last.uri == request.getURI() ? last.endpoint : getEndpoint(request.getURI());
+	}
+
+	/**
+	 * Returns the URI template the request URI was created from (without the query part). Shared space and workspace
+	 * prefixes are omitted or replaced by a placeholder, numeric segments of URIs which don't come from a template
+	 * (e.g. entity ids) are replaced by <code>{id}</code>.
+	 */
+	String getEndpoint(URI uri) {
+		String value = uri.toString();
+		String relative;
+		if (value.startsWith(sharedSpaceInternalApiPrefix)) {
+			relative = value.substring(sharedSpaceInternalApiPrefix.length());
+		} else if (value.startsWith(sharedSpaceApiPrefix)) {
+			relative = value.substring(sharedSpaceApiPrefix.length());
+		} else if (value.startsWith(location + "/")) {
+			relative = value.substring(location.length() + 1);
+		} else {
+			relative = StringUtils.removeStart(uri.getRawPath(), "/");
+		}
+		StringBuilder endpoint = new StringBuilder();
+		if (relative.startsWith(WORKSPACES_SEGMENT)) {
+			int end = relative.indexOf('/', WORKSPACES_SEGMENT.length());
+			if (end > 0) {
+				endpoint.append(WORKSPACE_ENDPOINT_PREFIX);
+				relative = relative.substring(end + 1);
+			}
+		}
+		UriTemplate template = UriTemplate.match(relative);
+		if (template != null) {
+			return endpoint.append(template.getPath()).toString();
+		}
+		int query = relative.indexOf('?');
+		String[] segments = (query < 0 ? relative : relative.substring(0, query)).split("/");
+		for (int i = 0; i < segments.length; i++) {
+			if (i > 0) {
+				endpoint.append('/');
+			}
+			endpoint.append(StringUtils.isNumeric(segments[i]) && !segments[i].isEmpty() ? "{id}" : segments[i]);
+		}
+		return endpoint.toString();
+	}
+
+	<E> PagedList<E> getEntities(URI uri, final int offset, final EntityFactory<E> factory) {
+		HttpGet request = new HttpGet(uri);
+		try {
+			return execute(request, new ResponseHandler<PagedList<E>>() {
+				@Override
+				public PagedList<E> handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Entity retrieval failed", response);
+					}
+					return convertResponceToPagedList(factory, offset, response);
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot retrieve entities from MQM.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
-	protected <E> PagedList<E> deleteEntities(URI uri, EntityFactory<E> factory) {
+	protected <E> PagedList<E> deleteEntities(URI uri, final EntityFactory<E> factory) {
 		HttpDelete request = new HttpDelete(uri);
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Entity delete failed", response);
-			}
-			return convertResponceToPagedList(factory, 0, response);
+			return execute(request, new ResponseHandler<PagedList<E>>() {
+				@Override
+				public PagedList<E> handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Entity delete failed", response);
+					}
+					return convertResponceToPagedList(factory, 0, response);
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot delete entities from MQM.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
-	protected <E> PagedList<E> updateEntities(URI uri, EntityFactory<E> factory) {
+	protected <E> PagedList<E> updateEntities(URI uri, final EntityFactory<E> factory) {
 		HttpPut request = new HttpPut(uri);
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Entity update failed", response);
-			}
-			return convertResponceToPagedList(factory, 0, response);
+			return execute(request, new ResponseHandler<PagedList<E>>() {
+				@Override
+				public PagedList<E> handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Entity update failed", response);
+					}
+					return convertResponceToPagedList(factory, 0, response);
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot update entity.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
-	private <E> PagedList<E> convertResponceToPagedList(EntityFactory<E> factory, int offset, HttpResponse response) throws IOException {
-		String entitiesJson = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-		JSONObject entities = JSONObject.fromObject(entitiesJson);
-
-		LinkedList<E> items = new LinkedList<>();
-		for (JSONObject entityObject : getJSONObjectCollection(entities, "data")) {
-			items.add(factory.create(entityObject.toString()));
-		}
-		return new PagedList<>(items, offset, entities.getInt("total_count"));
+	<E> PagedList<E> convertResponceToPagedList(EntityFactory<E> factory, int offset, HttpResponse response) throws IOException {
+		return PagedListReader.read(response.getEntity().getContent(), factory, offset);
 	}
 
 	protected URI getEntityURI(String collection, List<String> conditions, Long workspaceId, int offset, int limit, String orderBy) {
@@ -450,57 +1021,45 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 	}
 
 	protected URI getEntityURI(String collection, Collection<String> conditions, Collection<String> fields,  Long workspaceId, Integer offset, Integer limit, String orderBy) {
-
-		Map<String, Object> params = new HashMap<>();
-		StringBuilder template = new StringBuilder(collection + "?");
+		StringBuilder uri = workspaceId != null ? workspaceUriPrefix(WORKSPACE_API_URI, workspaceId) : UriTemplate.borrowBuilder().append(sharedSpaceApiPrefix);
+		uri.append(collection).append('?');
 
 		if(offset!=null && limit!=null){
-			params.put("offset", offset);
-			params.put("limit", limit);
-			template.append("&" + PAGING_FRAGMENT);
+			uri.append("&offset=");
+			UriTemplate.appendEncoded(uri, offset);
+			uri.append("&limit=");
+			UriTemplate.appendEncoded(uri, limit);
 		}
 
 		if (conditions!=null && !conditions.isEmpty()) {
-			StringBuilder expr = new StringBuilder();
+			StringBuilder expr = new StringBuilder("\"");
 			for (String condition : conditions) {
-				if (expr.length() > 0) {
+				if (expr.length() > 1) {
 					expr.append(";");
 				}
 				expr.append(condition);
 			}
-			params.put("query", "\"" + expr.toString() + "\"");
-			template.append("&" + FILTERING_FRAGMENT);
+			uri.append("&query=");
+			UriTemplate.appendEncoded(uri, expr.append("\""));
 		}
 
 		if (fields != null && !fields.isEmpty()) {
-			params.put("fields", StringUtils.join(fields, ","));
-			template.append("&" + FIELDS_FRAGMENT);
+			uri.append("&fields=");
+			UriTemplate.appendEncoded(uri, StringUtils.join(fields, ","));
 		}
 
 		if (!StringUtils.isEmpty(orderBy)) {
-			params.put("order", orderBy);
-			template.append("&" + ORDER_BY_FRAGMENT);
+			uri.append("&order_by=");
+			UriTemplate.appendEncoded(uri, orderBy);
 		}
 
-		if (workspaceId != null) {
-			return createWorkspaceApiUriMap(template.toString(), workspaceId, params);
-		} else {
-			return createSharedSpaceApiUriMap(template.toString(), params);
-		}
+		return createUri(uri, workspaceId != null ? WORKSPACE_ENDPOINT_PREFIX + collection : collection);
 	}
 
 	protected URI getEntityIdURI(String collection, Long id,  Long workspaceId) {
-
-		Map<String, Object> params = new HashMap<>();
-		String coll = collection +"/" + id;
-		StringBuilder template = new StringBuilder(coll);
-
-
-		if (workspaceId != null) {
-			return createWorkspaceApiUriMap(template.toString(), workspaceId, params);
-		} else {
-			return createSharedSpaceApiUriMap(template.toString(), params);
-		}
+		StringBuilder uri = workspaceId != null ? workspaceUriPrefix(WORKSPACE_API_URI, workspaceId) : UriTemplate.borrowBuilder().append(sharedSpaceApiPrefix);
+		uri.append(collection).append('/').append(id);
+		return createUri(uri, (workspaceId != null ? WORKSPACE_ENDPOINT_PREFIX : "") + collection + "/{id}");
 	}
 
 	RequestException createRequestException(String message, HttpResponse response) {
@@ -543,8 +1102,136 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 		}
 	}
 
-	private void addRequestHeaders(HttpUriRequest request) {
+	/**
+	 * Runs the given calls with at most <code>parallelism</code> of them in flight and returns their results in the
+	 * order of the calls. The first failure cancels the calls not yet finished and is rethrown to the caller.
+	 * Calls run on the executor shared by the whole client, see {@link #getConcurrentCallExecutor()}.
+	 */
+	<T> List<T> invokeAll(List<? extends Callable<T>> calls, int parallelism) {
+		if (calls.isEmpty()) {
+			return new ArrayList<>();
+		}
+		if (calls.size() == 1 || parallelism <= 1) {
+			List<T> results = new ArrayList<>(calls.size());
+			for (Callable<T> call : calls) {
+				results.add(invoke(call));
+			}
+			return results;
+		}
+
+		CompletionService<T> completionService = new ExecutorCompletionService<>(getConcurrentCallExecutor());
+		Map<Future<T>, Integer> positions = new HashMap<>();
+		try {
+			int next = 0;
+			while (next < Math.min(parallelism, calls.size())) {
+				positions.put(completionService.submit(calls.get(next)), next);
+				next++;
+			}
+			List<T> results = new ArrayList<>(Collections.<T>nCopies(calls.size(), null));
+			for (int i = 0; i < calls.size(); i++) {
+				Future<T> done = completionService.take();
+				results.set(positions.remove(done), done.get());
+				if (next < calls.size()) {
+					positions.put(completionService.submit(calls.get(next)), next);
+					next++;
+				}
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RequestErrorException("Interrupted while waiting for concurrent requests", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RequestErrorException("Concurrent request failed", cause);
+		} catch (RejectedExecutionException e) {
+			throw new IllegalStateException("Client is closed", e);
+		} finally {
+			for (Future<T> pending : positions.keySet()) {
+				pending.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Returns executor of {@link #invokeAll(List, int)} and of page prefetching, created on first use and shut down by {@link #close()}.
+	 * Its threads are bounded by the connections per route, more of them would only wait for a connection.
+	 *
+	 * @throws IllegalStateException when the client is closed
+	 */
+	ExecutorService getConcurrentCallExecutor() {
+		synchronized (drainLock) {
+			if (closed) {
+				throw new IllegalStateException("Client is closed");
+			}
+			if (concurrentCallExecutor == null) {
+				final AtomicInteger threadCounter = new AtomicInteger();
+				int maxThreads = connectionManager.getDefaultMaxPerRoute();
+				ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+						CONCURRENT_CALL_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "mqm-concurrent-call-" + threadCounter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				executor.allowCoreThreadTimeOut(true);
+				concurrentCallExecutor = executor;
+			}
+			return concurrentCallExecutor;
+		}
+	}
+
+	private static <T> T invoke(Callable<T> call) {
+		try {
+			return call.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RequestErrorException("Request failed", e);
+		}
+	}
+
+	void addRequestHeaders(HttpRequest request) {
 		request.setHeader(HEADER_CLIENT_TYPE, clientType);
+		if (responseCompression) {
+			request.setHeader(HttpHeaders.ACCEPT_ENCODING, ContentCompression.GZIP);
+		}
+	}
+
+	/**
+	 * @return true if {@link #compressRequest(HttpUriRequest, String)} is going to compress the request body
+	 */
+	boolean isCompressible(HttpUriRequest request) {
+		return requestCompressionThreshold > 0 && ContentCompression.isCompressible(request, requestCompressionThreshold);
+	}
+
+	/**
+	 * Compresses the request body if it is large enough (see {@link MqmConnectionConfig#setRequestCompressionThreshold(Integer)}).
+	 * Done once per request, before the first attempt.
+	 */
+	void compressRequest(HttpUriRequest request, String endpoint) throws IOException {
+		if (requestCompressionThreshold > 0) {
+			long uncompressedBytes = ContentCompression.compressRequest(request, requestCompressionThreshold);
+			if (uncompressedBytes >= 0) {
+				recordCompression(request, endpoint, true, uncompressedBytes, ((HttpEntityEnclosingRequest) request).getEntity().getContentLength());
+			}
+		}
+	}
+
+	/**
+	 * Lets the response body be decompressed while it is read, if the server compressed it.
+	 */
+	void decompressResponse(final HttpUriRequest request, final String endpoint, HttpResponse response) {
+		ContentCompression.decompressResponse(response, new ContentCompression.Listener() {
+			@Override
+			public void compressed(long uncompressedBytes, long compressedBytes) {
+				recordCompression(request, endpoint, false, uncompressedBytes, compressedBytes);
+			}
+		});
 	}
 
 	private void checkNotEmpty(String msg, String value) {
@@ -553,12 +1240,99 @@ public abstract class AbstractMqmRestClient implements BaseMqmRestClient {
 		}
 	}
 
+	static String readContent(HttpResponse response) throws IOException {
+		HttpEntity entity = response.getEntity();
+		return IOUtils.toString(entity.getContent(), "UTF-8");
+	}
+
 	static Collection<JSONObject> getJSONObjectCollection(JSONObject object, String key) {
 		JSONArray array = object.getJSONArray(key);
 		return (Collection<JSONObject>) array.subList(0, array.size());
 	}
 
+	/**
+	 * Measures how long the caller waits for a pooled connection and registers the lease with the leak detector.
+	 */
+	private final class TrackedConnectionRequest implements ConnectionRequest {
+
+		private final ConnectionRequest connectionRequest;
+
+		private TrackedConnectionRequest(ConnectionRequest connectionRequest) {
+			this.connectionRequest = connectionRequest;
+		}
+
+		@Override
+		public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+			long start = System.nanoTime();
+			try {
+				HttpClientConnection connection = connectionRequest.get(timeout, tunit);
+				if (leakDetector != null) {
+					leakDetector.leased(connection);
+				}
+				return connection;
+			} finally {
+				if (metricsListener != null) {
+					try {
+						metricsListener.connectionLeased(System.nanoTime() - start);
+					} catch (RuntimeException e) {
+						logger.log(Level.WARNING, "Metrics listener failed", e);
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean cancel() {
+			return connectionRequest.cancel();
+		}
+	}
+
+	/**
+	 * Counts bytes of the request body written to the connection.
+	 */
+	private static final class CountingEntity extends HttpEntityWrapper {
+
+		private volatile long byteCount;
+
+		private CountingEntity(HttpEntity wrappedEntity) {
+			super(wrappedEntity);
+		}
+
+		@Override
+		public void writeTo(OutputStream outStream) throws IOException {
+			CountingOutputStream counting = new CountingOutputStream(outStream);
+			try {
+				super.writeTo(counting);
+			} finally {
+				byteCount += counting.getByteCount();
+			}
+		}
+
+		private long getByteCount() {
+			return byteCount;
+		}
+	}
+
+	private static final class Capability {
+
+		private final boolean supported;
+		private final Cookie session;
+		private final long probeTime;
+
+		private Capability(boolean supported, Cookie session, long probeTime) {
+			this.supported = supported;
+			this.session = session;
+			this.probeTime = probeTime;
+		}
+	}
+
 	interface EntityFactory<E> {
-		E create(String json);
+		E create(JSONObject entityObject);
+	}
+
+	private static final class CreatedUri {
+
+		private URI uri;
+		private String endpoint;
 	}
 }
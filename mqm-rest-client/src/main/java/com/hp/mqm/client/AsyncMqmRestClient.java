@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.model.*;
+import net.sf.json.JSONObject;
+import org.apache.http.concurrent.FutureCallback;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Non-blocking counterpart of {@link MqmRestClient}. Requests are executed by a small number of I/O dispatcher threads,
+ * caller's thread is released as soon as the request is dispatched.
+ *
+ * Every method returns {@link Future} of the result and optionally notifies the given {@link FutureCallback} (may be null).
+ * Failures are reported in the same way as by {@link MqmRestClient}: {@link com.hp.mqm.client.exception.RequestException}
+ * when unexpected result is returned from MQM server and {@link com.hp.mqm.client.exception.RequestErrorException} in case
+ * of IO error or error in the HTTP protocol (wrapped by {@link java.util.concurrent.ExecutionException} when obtained via {@link Future#get()}).
+ *
+ * Callbacks are invoked on I/O dispatcher threads and must not block.
+ * When client is not intended to use anymore, method close() must be called to release I/O threads.
+ */
+public interface AsyncMqmRestClient extends BaseMqmRestClient {
+
+	/**
+	 * @see MqmRestClient#postTestResult(InputStreamSource, boolean)
+	 */
+	Future<Long> postTestResult(InputStreamSource inputStreamSource, boolean skipErrors, FutureCallback<Long> callback);
+
+	/**
+	 * @see MqmRestClient#postTestResult(File, boolean)
+	 */
+	Future<Long> postTestResult(File testResultReport, boolean skipErrors, FutureCallback<Long> callback);
+
+	/**
+	 * @see MqmRestClient#isTestResultRelevant(String, String)
+	 */
+	Future<Boolean> isTestResultRelevant(String serverIdentity, String jobName, FutureCallback<Boolean> callback);
+
+	/**
+	 * @see MqmRestClient#getTestResultStatus(long)
+	 */
+	Future<TestResultStatus> getTestResultStatus(long id, FutureCallback<TestResultStatus> callback);
+
+	/**
+	 * @see MqmRestClient#getTestResultLog(long, LogOutput)
+	 */
+	Future<Void> getTestResultLog(long id, LogOutput output, FutureCallback<Void> callback);
+
+	/**
+	 * @see MqmRestClient#getJobConfiguration(String, String)
+	 */
+	Future<JobConfiguration> getJobConfiguration(String serverIdentity, String jobName, FutureCallback<JobConfiguration> callback);
+
+	/**
+	 * @see MqmRestClient#createPipeline(String, String, String, long, Long, String, String)
+	 */
+	Future<Pipeline> createPipeline(String serverIdentity, String projectName, String pipelineName, long workspaceId, Long releaseId, String structureJson, String serverJson, FutureCallback<Pipeline> callback);
+
+	/**
+	 * @see MqmRestClient#updatePipeline(String, String, Pipeline)
+	 */
+	Future<Pipeline> updatePipeline(String serverIdentity, String jobName, Pipeline pipeline, FutureCallback<Pipeline> callback);
+
+	/**
+	 * @see MqmRestClient#deleteTestsFromPipelineNodes(String, Long, Long)
+	 */
+	Future<Void> deleteTestsFromPipelineNodes(String jobName, Long pipelineId, Long workspaceId, FutureCallback<Void> callback);
+
+	/**
+	 * @see MqmRestClient#queryReleases(String, long, int, int)
+	 */
+	Future<PagedList<Release>> queryReleases(String name, long workspaceId, int offset, int limit, FutureCallback<PagedList<Release>> callback);
+
+	/**
+	 * @see MqmRestClient#getRelease(long, long)
+	 */
+	Future<Release> getRelease(long releaseId, long workspaceId, FutureCallback<Release> callback);
+
+	/**
+	 * @see MqmRestClient#queryWorkspaces(String, int, int)
+	 */
+	Future<PagedList<Workspace>> queryWorkspaces(String name, int offset, int limit, FutureCallback<PagedList<Workspace>> callback);
+
+	/**
+	 * @see MqmRestClient#getWorkspaces(List)
+	 */
+	Future<List<Workspace>> getWorkspaces(List<Long> workspaceIds, FutureCallback<List<Workspace>> callback);
+
+	/**
+	 * @see MqmRestClient#queryTaxonomies(String, long, int, int)
+	 */
+	Future<PagedList<Taxonomy>> queryTaxonomies(String name, long workspaceId, int offset, int limit, FutureCallback<PagedList<Taxonomy>> callback);
+
+	/**
+	 * @see MqmRestClient#getTaxonomies(List, long)
+	 */
+	Future<List<Taxonomy>> getTaxonomies(List<Long> taxonomyIds, long workspaceId, FutureCallback<List<Taxonomy>> callback);
+
+	/**
+	 * @see MqmRestClient#queryListItems(String, String, long, int, int)
+	 */
+	Future<PagedList<ListItem>> queryListItems(String logicalListName, String name, long workspaceId, int offset, int limit, FutureCallback<PagedList<ListItem>> callback);
+
+	/**
+	 * @see MqmRestClient#getListItems(List, long)
+	 */
+	Future<List<ListItem>> getListItems(List<String> itemIds, long workspaceId, FutureCallback<List<ListItem>> callback);
+
+	/**
+	 * @see MqmRestClient#getFieldsMetadata(long)
+	 */
+	Future<List<FieldMetadata>> getFieldsMetadata(long workspaceId, FutureCallback<List<FieldMetadata>> callback);
+
+	Future<JSONObject> postEntities(long workspaceId, String entityCollectionName, String entityJson, FutureCallback<JSONObject> callback);
+
+	Future<List<Entity>> getEntities(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields, FutureCallback<List<Entity>> callback);
+
+	/**
+	 * @see MqmRestClient#deleteEntities(long, String, Collection)
+	 */
+	Future<PagedList<Entity>> deleteEntities(long workspaceId, String entityCollectionName, Collection<Long> entitiesIds, FutureCallback<PagedList<Entity>> callback);
+
+	/**
+	 * @see MqmRestClient#deleteEntitiesByQuery(long, String, Collection)
+	 */
+	Future<PagedList<Entity>> deleteEntitiesByQuery(long workspaceId, String entityCollectionName, Collection<String> conditions, FutureCallback<PagedList<Entity>> callback);
+
+	Future<JSONObject> updateEntity(long workspaceId, String entityCollectionName, long id, String entityJson, FutureCallback<JSONObject> callback);
+
+	Future<JSONObject> updateEntities(long workspaceId, String entityCollectionName, String entityJson, FutureCallback<JSONObject> callback);
+
+	/**
+	 * @see MqmRestClient#putEvents(String)
+	 */
+	Future<Boolean> putEvents(String eventsJSON, FutureCallback<Boolean> callback);
+
+	/**
+	 * @see MqmRestClient#getAbridgedTasks(String, String, String, Integer, String)
+	 */
+	Future<String> getAbridgedTasks(String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion, FutureCallback<String> callback);
+
+	/**
+	 * @see MqmRestClient#putAbridgedResult(String, String, String)
+	 */
+	Future<Integer> putAbridgedResult(String selfIdentity, String taskId, String contentJSON, FutureCallback<Integer> callback);
+
+	/**
+	 * @see MqmRestClient#getBdiConfiguration()
+	 */
+	Future<JSONObject> getBdiConfiguration(FutureCallback<JSONObject> callback);
+
+	/**
+	 * @see MqmRestClient#getBdiTokenData()
+	 */
+	Future<String> getBdiTokenData(FutureCallback<String> callback);
+
+	/**
+	 * @see MqmRestClient#getJobWorkspaceId(String, String)
+	 */
+	Future<List<String>> getJobWorkspaceId(String ciServerId, String ciJobName, FutureCallback<List<String>> callback);
+}
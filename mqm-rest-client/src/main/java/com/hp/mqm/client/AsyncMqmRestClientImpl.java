@@ -0,0 +1,1234 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.*;
+import com.hp.mqm.client.internal.GZipInputStreamSourceEntity;
+import com.hp.mqm.client.model.*;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.hp.mqm.client.MqmRestClientImpl.*;
+
+/**
+ * {@link AsyncMqmRestClient} built on top of NIO based Apache HttpAsyncClient. It shares URI construction,
+ * entity factories and error mapping with {@link MqmRestClientImpl}.
+ *
+ * Login is done via the blocking client of {@link AbstractMqmRestClient}: on the caller's thread when there is no session yet,
+ * on a dedicated thread when session expires (I/O dispatcher threads are never blocked).
+ */
+public class AsyncMqmRestClientImpl extends AbstractMqmRestClient implements AsyncMqmRestClient {
+	private static final Logger logger = Logger.getLogger(AsyncMqmRestClientImpl.class.getName());
+
+	private final PoolingNHttpClientConnectionManager connectionManager;
+	private final CloseableHttpAsyncClient httpAsyncClient;
+	private final ExecutorService loginExecutor;
+
+	/**
+	 * Constructor for AsyncMqmRestClientImpl. I/O dispatcher threads are started immediately.
+	 *
+	 * @param connectionConfig MQM connection configuration, Fields 'location', 'domain', 'project' and 'clientType' must not be null or empty.
+	 */
+	public AsyncMqmRestClientImpl(MqmConnectionConfig connectionConfig) {
+		super(connectionConfig);
+
+		IOReactorConfig.Builder ioReactorConfig = IOReactorConfig.custom()
+				.setConnectTimeout(getDefaultRequestConfig().getConnectTimeout())
+				.setSoTimeout(getDefaultRequestConfig().getSocketTimeout());
+		if (connectionConfig.getAsyncIoThreadCount() != null) {
+			ioReactorConfig.setIoThreadCount(connectionConfig.getAsyncIoThreadCount());
+		}
+		try {
+			connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig.build()));
+		} catch (IOReactorException e) {
+			throw new IllegalStateException("Failed to initialize I/O reactor", e);
+		}
+		connectionManager.setMaxTotal(connectionConfig.getMaxConnectionsTotal() != null ? connectionConfig.getMaxConnectionsTotal() : DEFAULT_MAX_CONNECTIONS_TOTAL);
+		connectionManager.setDefaultMaxPerRoute(connectionConfig.getMaxConnectionsPerRoute() != null ? connectionConfig.getMaxConnectionsPerRoute() : DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+
+		HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(getDefaultRequestConfig());
+		if (getCredentialsProvider() != null) {
+			httpAsyncClientBuilder.setDefaultCredentialsProvider(getCredentialsProvider());
+		}
+		httpAsyncClient = httpAsyncClientBuilder.build();
+		httpAsyncClient.start();
+		scheduleConnectionEviction(new Runnable() {
+			@Override
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+			}
+		});
+
+		loginExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "mqm-async-login");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public ConnectionPoolStats getConnectionPoolStats() {
+		PoolStats stats = connectionManager.getTotalStats();
+		// leak detection tracks connections of the blocking pool only, async connections are released by the I/O reactor
+		return new ConnectionPoolStats(stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax(), 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			loginExecutor.shutdownNow();
+			httpAsyncClient.close();
+		}
+	}
+
+	@Override
+	public Future<Long> postTestResult(InputStreamSource inputStreamSource, boolean skipErrors, FutureCallback<Long> callback) {
+		// the report is compressed while the I/O reactor reads the content, the source is re-opened on replay
+		return postTestResult(new GZipInputStreamSourceEntity(inputStreamSource, ContentType.APPLICATION_XML), skipErrors, callback);
+	}
+
+	@Override
+	public Future<Long> postTestResult(final File testResultReport, boolean skipErrors, FutureCallback<Long> callback) {
+		if (!testResultReport.isFile()) {
+			logger.severe("file " + testResultReport + " not found");
+			AsyncResult<Long> result = new AsyncResult<>(callback);
+			result.completed(-1L);
+			return result;
+		}
+		return postTestResult(new InputStreamSource() {
+			@Override
+			public InputStream getInputStream() {
+				try {
+					return new FileInputStream(testResultReport);
+				} catch (java.io.FileNotFoundException e) {
+					throw new FileNotFoundException("Cannot find test result file.", e);
+				}
+			}
+		}, skipErrors, callback);
+	}
+
+	private Future<Long> postTestResult(HttpEntity entity, boolean skipErrors, FutureCallback<Long> callback) {
+		HttpPost request = new HttpPost(createSharedSpaceInternalApiUri(URI_TEST_RESULT_PUSH, skipErrors));
+		request.setHeader(HTTP.CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
+		request.setEntity(entity);
+		return execute(request, new ResponseHandler<Long>() {
+			@Override
+			public Long handleResponse(HttpResponse response) throws IOException {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+					throw new TemporarilyUnavailableException("Service not available");
+				}
+				if (statusCode != HttpStatus.SC_ACCEPTED) {
+					throw createRequestException("Test result post failed", response);
+				}
+				return JSONObject.fromObject(readContent(response)).getLong("id");
+			}
+		}, "Cannot post test results to MQM.", callback);
+	}
+
+	@Override
+	public Future<Boolean> isTestResultRelevant(final String serverIdentity, final String jobName, FutureCallback<Boolean> callback) {
+		final AsyncResult<Boolean> result = new AsyncResult<>(callback);
+		Boolean known = getBase64Supported();
+		if (known != null) {
+			preflight(serverIdentity, jobName, known, result);
+			return result;
+		}
+		logger.log(Level.INFO, "Check if octane support handling of base64");
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_BASE64SUPPORT));
+		result.setCurrent(execute(request, new ResponseHandler<Boolean>() {
+			@Override
+			public Boolean handleResponse(HttpResponse response) {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_OK) {
+					return true;
+				} else if (statusCode == HttpStatus.SC_NOT_FOUND || statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED) {
+					// older server without the endpoint
+					return false;
+				}
+				return null;
+			}
+		}, "Cannot obtain status.", new FutureCallback<Boolean>() {
+			@Override
+			public void completed(Boolean base64Supported) {
+				if (base64Supported == null) {
+					// not remembered, the server may be temporarily failing
+					preflight(serverIdentity, jobName, false, result);
+					return;
+				}
+				setBase64Supported(base64Supported);
+				preflight(serverIdentity, jobName, base64Supported, result);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				preflight(serverIdentity, jobName, false, result);
+			}
+
+			@Override
+			public void cancelled() {
+				result.cancel();
+			}
+		}));
+		return result;
+	}
+
+	private void preflight(String serverIdentity, String jobName, boolean base64Supported, AsyncResult<Boolean> result) {
+		if (result.isDone()) {
+			return;
+		}
+		String jobNameForSending = jobName;
+		if (base64Supported) {
+			logger.log(Level.INFO, "Octane supports base64 encoding");
+			jobNameForSending = Base64.encodeBase64String(jobName.getBytes());
+		} else {
+			logger.log(Level.INFO, "Octane does not support base64 encoding");
+		}
+		logger.log(Level.INFO, String.format("Job name before encoding: %s, after encoding : %s", jobName, jobNameForSending));
+
+		URI getUri = createSharedSpaceInternalApiUri(URI_PREFLIGHT, serverIdentity, jobNameForSending);
+		try {
+			getUri = sameEndpoint(new URIBuilder(getUri).addParameter("isBase64", "true").build(), getUri);
+			logger.log(Level.INFO, String.format("test preflight URI: %s", getUri.getPath()));
+		} catch (URISyntaxException ex) {
+			logger.log(Level.SEVERE, "Error creating uri for test preflight!", ex);
+		}
+
+		result.setCurrent(execute(new HttpGet(getUri), new ResponseHandler<Boolean>() {
+			@Override
+			public Boolean handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Result status retrieval failed", response);
+				}
+				return Boolean.parseBoolean(readContent(response));
+			}
+		}, "Cannot obtain status.", forwardTo(result)));
+	}
+
+	@Override
+	public Future<TestResultStatus> getTestResultStatus(long id, FutureCallback<TestResultStatus> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_TEST_RESULT_STATUS, id));
+		return execute(request, new ResponseHandler<TestResultStatus>() {
+			@Override
+			public TestResultStatus handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Result status retrieval failed", response);
+				}
+				JSONObject jsonObject = JSONObject.fromObject(readContent(response));
+				Date until = null;
+				if (jsonObject.has("until")) {
+					try {
+						until = parseDatetime(jsonObject.getString("until"));
+					} catch (ParseException e) {
+						throw new RequestErrorException("Cannot obtain status", e);
+					}
+				}
+				return new TestResultStatus(jsonObject.getString("status"), until);
+			}
+		}, "Cannot obtain status.", callback);
+	}
+
+	@Override
+	public Future<Void> getTestResultLog(long id, final LogOutput output, FutureCallback<Void> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_TEST_RESULT_LOG, id));
+		return execute(request, new ResponseHandler<Void>() {
+			@Override
+			public Void handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Log retrieval failed", response);
+				}
+				output.setContentType(response.getFirstHeader("Content-type").getValue());
+				InputStream is = response.getEntity().getContent();
+				IOUtils.copy(is, output.getOutputStream());
+				IOUtils.closeQuietly(is);
+				return null;
+			}
+		}, "Cannot obtain log.", callback);
+	}
+
+	@Override
+	public Future<JobConfiguration> getJobConfiguration(String serverIdentity, String jobName, FutureCallback<JobConfiguration> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_JOB_CONFIGURATION, serverIdentity, jobName));
+		return execute(request, new ResponseHandler<JobConfiguration>() {
+			@Override
+			public JobConfiguration handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Job configuration retrieval failed", response);
+				}
+				try {
+					JSONObject jsonObject = JSONObject.fromObject(readContent(response));
+					List<Pipeline> pipelines = new LinkedList<>();
+					for (JSONObject relatedContext : getJSONObjectCollection(jsonObject, "data")) {
+						if ("pipeline".equals(relatedContext.getString("contextEntityType"))) {
+							pipelines.add(toPipeline(relatedContext));
+						} else {
+							logger.info("Context type '" + relatedContext.get("contextEntityType") + "' is not supported");
+						}
+					}
+					return new JobConfiguration(pipelines);
+				} catch (JSONException e) {
+					throw new RequestErrorException("Failed to obtain job configuration", e);
+				}
+			}
+		}, "Cannot retrieve job configuration from MQM.", callback);
+	}
+
+	@Override
+	public Future<Pipeline> createPipeline(String serverIdentity, String projectName, final String pipelineName, final long workspaceId, Long releaseId, String structureJson, String serverJson, FutureCallback<Pipeline> callback) {
+		HttpPost request = new HttpPost(createSharedSpaceInternalApiUri(URI_JOB_CONFIGURATION, serverIdentity, projectName));
+		request.setEntity(new StringEntity(createPipelinePayload(pipelineName, workspaceId, releaseId, structureJson, serverJson), ContentType.APPLICATION_JSON));
+		return execute(request, new ResponseHandler<Pipeline>() {
+			@Override
+			public Pipeline handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
+					throw createRequestException("Pipeline creation failed", response);
+				}
+				return getPipelineByName(readContent(response), pipelineName, workspaceId);
+			}
+		}, "Cannot create pipeline in MQM.", callback);
+	}
+
+	@Override
+	public Future<Pipeline> updatePipeline(String serverIdentity, String jobName, final Pipeline pipeline, FutureCallback<Pipeline> callback) {
+		HttpPut request = new HttpPut(createSharedSpaceInternalApiUri(URI_JOB_CONFIGURATION, serverIdentity, jobName));
+		request.setEntity(new StringEntity(updatePipelinePayload(pipeline), ContentType.APPLICATION_JSON));
+		request.setHeader(HEADER_ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+		return execute(request, new ResponseHandler<Pipeline>() {
+			@Override
+			public Pipeline handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Pipeline update failed", response);
+				}
+				return getPipelineById(readContent(response), pipeline.getId());
+			}
+		}, "Cannot update pipeline.", callback);
+	}
+
+	@Override
+	public Future<Void> deleteTestsFromPipelineNodes(String jobName, Long pipelineId, Long workspaceId, FutureCallback<Void> callback) {
+		HttpDelete request = new HttpDelete(createWorkspaceInternalApiUriMap(URI_DELETE_NODES_TESTS, workspaceId, pipelineId, jobName));
+		return execute(request, new ResponseHandler<Void>() {
+			@Override
+			public Void handleResponse(HttpResponse response) {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("delete tests failed", response);
+				}
+				return null;
+			}
+		}, "Cannot delete tests.", callback);
+	}
+
+	@Override
+	public Future<PagedList<Release>> queryReleases(String name, long workspaceId, int offset, int limit, FutureCallback<PagedList<Release>> callback) {
+		List<String> conditions = new LinkedList<>();
+		if (!StringUtils.isEmpty(name)) {
+			conditions.add(QueryHelper.condition("name", "*" + name + "*"));
+		}
+		return getEntities(getEntityURI(URI_RELEASES, conditions, ReleaseEntityFactory.FIELDS, workspaceId, offset, limit, "name"), offset, new ReleaseEntityFactory(), callback);
+	}
+
+	@Override
+	public Future<Release> getRelease(final long releaseId, final long workspaceId, FutureCallback<Release> callback) {
+		final AsyncResult<Release> result = new AsyncResult<>(callback);
+		List<String> conditions = new LinkedList<>();
+		conditions.add(QueryHelper.condition("id", String.valueOf(releaseId)));
+		result.setCurrent(getEntities(getEntityURI(URI_RELEASES, conditions, ReleaseEntityFactory.FIELDS, workspaceId, 0, 1, null), 0, new ReleaseEntityFactory(),
+				new Continuation<PagedList<Release>, Release>(result) {
+					@Override
+					public void completed(PagedList<Release> releases) {
+						if (releases.getItems().size() == 0) {
+							result.completed(null);
+						} else if (releases.getItems().size() > 1) {
+							result.failed(new RequestErrorException("More than one releases returned for releaseId: " + releaseId + " in workspaceId: " + workspaceId));
+						} else {
+							result.completed(releases.getItems().get(0));
+						}
+					}
+				}));
+		return result;
+	}
+
+	@Override
+	public Future<PagedList<Workspace>> queryWorkspaces(String name, int offset, int limit, FutureCallback<PagedList<Workspace>> callback) {
+		List<String> conditions = new LinkedList<>();
+		if (!StringUtils.isEmpty(name)) {
+			conditions.add(QueryHelper.condition("name", "*" + name + "*"));
+		}
+		return getEntities(getEntityURI(URI_WORKSPACES, conditions, WorkspaceEntityFactory.FIELDS, null, offset, limit, "name"), offset, new WorkspaceEntityFactory(), callback);
+	}
+
+	@Override
+	public Future<List<Workspace>> getWorkspaces(List<Long> workspaceIds, FutureCallback<List<Workspace>> callback) {
+		if (workspaceIds == null || workspaceIds.size() == 0) {
+			return completedResult((List<Workspace>) new LinkedList<Workspace>(), callback);
+		}
+		return getItemsByIds(workspaceIds, URI_WORKSPACES, WorkspaceEntityFactory.FIELDS, null, new WorkspaceEntityFactory(), WORKSPACE_ID, callback);
+	}
+
+	@Override
+	public Future<PagedList<Taxonomy>> queryTaxonomies(String name, long workspaceId, int offset, int limit, FutureCallback<PagedList<Taxonomy>> callback) {
+		List<String> conditions = new LinkedList<>();
+		conditions.add("!category={null}");
+		if (!StringUtils.isEmpty(name)) {
+			conditions.add("(" + QueryHelper.condition("name", "*" + name + "*") + "||" + QueryHelper.conditionRef("category", "name", "*" + name + "*") + ")");
+		}
+		return getEntities(getEntityURI(URI_TAXONOMY_NODES, conditions, TaxonomyEntityFactory.FIELDS, workspaceId, offset, limit, null), offset, new TaxonomyEntityFactory(), callback);
+	}
+
+	@Override
+	public Future<List<Taxonomy>> getTaxonomies(List<Long> taxonomyIds, long workspaceId, FutureCallback<List<Taxonomy>> callback) {
+		if (taxonomyIds == null || taxonomyIds.size() == 0) {
+			return completedResult((List<Taxonomy>) new LinkedList<Taxonomy>(), callback);
+		}
+		return getItemsByIds(taxonomyIds, URI_TAXONOMY_NODES, TaxonomyEntityFactory.FIELDS, workspaceId, new TaxonomyEntityFactory(), TAXONOMY_ID, callback);
+	}
+
+	@Override
+	public Future<PagedList<ListItem>> queryListItems(String logicalListName, String name, long workspaceId, int offset, int limit, FutureCallback<PagedList<ListItem>> callback) {
+		List<String> conditions = new LinkedList<>();
+		if (!StringUtils.isEmpty(name)) {
+			conditions.add(QueryHelper.condition("name", "*" + name + "*"));
+		}
+		if (!StringUtils.isEmpty(logicalListName)) {
+			conditions.add(QueryHelper.conditionRef("list_root", "logical_name", logicalListName));
+		}
+		return getEntities(getEntityURI(URI_LIST_ITEMS, conditions, ListItemEntityFactory.FIELDS, workspaceId, offset, limit, null), offset, new ListItemEntityFactory(), callback);
+	}
+
+	@Override
+	public Future<List<ListItem>> getListItems(List<String> itemIds, long workspaceId, FutureCallback<List<ListItem>> callback) {
+		if (itemIds == null || itemIds.size() == 0) {
+			return completedResult((List<ListItem>) new LinkedList<ListItem>(), callback);
+		}
+		return getItemsByIds(itemIds, URI_LIST_ITEMS, ListItemEntityFactory.FIELDS, workspaceId, new ListItemEntityFactory(), LIST_ITEM_ID, callback);
+	}
+
+	@Override
+	public Future<List<FieldMetadata>> getFieldsMetadata(long workspaceId, FutureCallback<List<FieldMetadata>> callback) {
+		final AsyncResult<List<FieldMetadata>> result = new AsyncResult<>(callback);
+		List<String> conditions = new LinkedList<>();
+		conditions.add(QueryHelper.condition("entity_name", "pipeline_node"));
+
+		result.setCurrent(getEntities(getEntityURI(URI_METADATA_FIELDS, conditions, workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null), DEFAULT_OFFSET, new FieldMetadataFactory(),
+				new Continuation<PagedList<FieldMetadata>, List<FieldMetadata>>(result) {
+					@Override
+					public void completed(PagedList<FieldMetadata> allFieldMetadata) {
+						//filtering metadata fields to only values which we are interested in
+						List<FieldMetadata> ret = new LinkedList<>();
+						for (FieldMetadata fieldMetadata : allFieldMetadata.getItems()) {
+							if (fieldMetadata.isValid()) {
+								ret.add(fieldMetadata);
+							}
+						}
+						result.completed(ret);
+					}
+				}));
+		return result;
+	}
+
+	@Override
+	public Future<JSONObject> postEntities(long workspaceId, String entityCollectionName, String entityJson, FutureCallback<JSONObject> callback) {
+		URI uri = getEntityURI(entityCollectionName, null, null, workspaceId, null, null, null);
+		HttpPost request = new HttpPost(uri);
+		request.setHeader(HTTP.CONTENT_TYPE, "application/json");
+		request.setHeader(HEADER_ACCEPT, "application/json");
+		request.setEntity(createStringEntity(entityJson));
+		return execute(request, new ResponseHandler<JSONObject>() {
+			@Override
+			public JSONObject handleResponse(HttpResponse response) throws IOException {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+					throw new TemporarilyUnavailableException("Service not available");
+				}
+				if (statusCode != HttpStatus.SC_CREATED) {
+					throw createRequestException("Post failed", response);
+				}
+				return JSONObject.fromObject(readContent(response));
+			}
+		}, "Cannot post entities", callback);
+	}
+
+	@Override
+	public Future<List<Entity>> getEntities(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields, FutureCallback<List<Entity>> callback) {
+		AsyncResult<List<Entity>> result = new AsyncResult<>(callback);
+		fetchEntityPage(workspaceId, entityCollectionName, conditions, fields, DEFAULT_OFFSET, new ArrayList<Entity>(), result);
+		return result;
+	}
+
+	private void fetchEntityPage(final long workspaceId, final String entityCollectionName, final Collection<String> conditions, final Collection<String> fields,
+	                             int offset, final List<Entity> fetched, final AsyncResult<List<Entity>> result) {
+		if (result.isDone()) {
+			return;
+		}
+		URI uri = getEntityURI(entityCollectionName, conditions, fields, workspaceId, offset, MAX_GET_LIMIT, null);
+		result.setCurrent(getEntities(uri, offset, new GeneralEntityFactory(), new Continuation<PagedList<Entity>, List<Entity>>(result) {
+			@Override
+			public void completed(PagedList<Entity> found) {
+				fetched.addAll(found.getItems());
+				if (found.getItems().isEmpty() || found.getTotalCount() == fetched.size()) {
+					result.completed(fetched);
+				} else {
+					fetchEntityPage(workspaceId, entityCollectionName, conditions, fields, found.getOffset() + found.getItems().size(), fetched, result);
+				}
+			}
+		}));
+	}
+
+	@Override
+	public Future<PagedList<Entity>> deleteEntities(final long workspaceId, final String entityCollectionName, Collection<Long> entitiesIds, FutureCallback<PagedList<Entity>> callback) {
+		if (entitiesIds == null || entitiesIds.isEmpty()) {
+			return completedResult(null, callback);
+		}
+
+		// chunks by MqmRestClientImpl#idChunks(long[]) are requested with the parallelism of the blocking client
+		AsyncResult<PagedList<Entity>> result = new AsyncResult<>(callback);
+		final long[] distinctIds = distinctIds(entitiesIds);
+		final int[] bounds = idChunks(distinctIds);
+		int chunks = bounds.length - 1;
+		if (chunks == 0) {
+			result.completed(mergePages(Collections.<PagedList<Entity>>emptyList()));
+			return result;
+		}
+		new ChunkedCall<PagedList<Entity>, PagedList<Entity>>(result, chunks) {
+			@Override
+			Future<?> dispatch(int chunk, FutureCallback<PagedList<Entity>> callback) {
+				URI uri = getEntityURI(entityCollectionName, Collections.singletonList(idsCondition(distinctIds, bounds[chunk], bounds[chunk + 1])), null, workspaceId, null, null, null);
+				return deleteEntities(uri, callback);
+			}
+
+			@Override
+			PagedList<Entity> merge(List<PagedList<Entity>> deleted) {
+				return mergePages(deleted);
+			}
+		}.start(DELETE_BY_IDS_PARALLELISM);
+		return result;
+	}
+
+	@Override
+	public Future<PagedList<Entity>> deleteEntitiesByQuery(long workspaceId, String entityCollectionName, Collection<String> conditions, FutureCallback<PagedList<Entity>> callback) {
+		return deleteEntities(getEntityURI(entityCollectionName, deleteConditions(conditions), null, workspaceId, null, null, null), callback);
+	}
+
+	private Future<PagedList<Entity>> deleteEntities(URI uri, FutureCallback<PagedList<Entity>> callback) {
+		final GeneralEntityFactory factory = new GeneralEntityFactory();
+		return execute(new HttpDelete(uri), new ResponseHandler<PagedList<Entity>>() {
+			@Override
+			public PagedList<Entity> handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Entity delete failed", response);
+				}
+				return convertResponceToPagedList(factory, 0, response);
+			}
+		}, "Cannot delete entities from MQM.", callback);
+	}
+
+	@Override
+	public Future<JSONObject> updateEntity(long workspaceId, String entityCollectionName, long id, String entityJson, FutureCallback<JSONObject> callback) {
+		return updateEntities(getEntityIdURI(entityCollectionName, id, workspaceId), entityJson, callback);
+	}
+
+	@Override
+	public Future<JSONObject> updateEntities(long workspaceId, String entityCollectionName, String entityJson, FutureCallback<JSONObject> callback) {
+		return updateEntities(getEntityURI(entityCollectionName, null, null, workspaceId, null, null, null), entityJson, callback);
+	}
+
+	private Future<JSONObject> updateEntities(URI uri, String entityJson, FutureCallback<JSONObject> callback) {
+		HttpPut request = new HttpPut(uri);
+		request.setHeader(HTTP.CONTENT_TYPE, "application/json");
+		request.setHeader(HEADER_ACCEPT, "application/json");
+		request.setEntity(createStringEntity(entityJson));
+		return execute(request, new ResponseHandler<JSONObject>() {
+			@Override
+			public JSONObject handleResponse(HttpResponse response) throws IOException {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+					throw new TemporarilyUnavailableException("Service not available");
+				}
+				if (statusCode != HttpStatus.SC_OK) {
+					throw createRequestException("Put failed", response);
+				}
+				return JSONObject.fromObject(readContent(response));
+			}
+		}, "Cannot put entities to MQM.", callback);
+	}
+
+	@Override
+	public Future<Boolean> putEvents(String eventsJSON, FutureCallback<Boolean> callback) {
+		final AsyncResult<Boolean> result = new AsyncResult<>(callback);
+		final HttpPut request = new HttpPut(createSharedSpaceInternalApiUri(URI_PUT_EVENTS));
+		final String endpoint = getEndpoint(request);
+		request.setEntity(new StringEntity(eventsJSON, ContentType.APPLICATION_JSON));
+		final ResponseHandler<Integer> statusHandler = new ResponseHandler<Integer>() {
+			@Override
+			public Integer handleResponse(HttpResponse response) {
+				return response.getStatusLine().getStatusCode();
+			}
+		};
+		final FutureCallback<Integer> eventsCallback = new FutureCallback<Integer>() {
+			@Override
+			public void completed(Integer statusCode) {
+				if (statusCode != HttpStatus.SC_OK) {
+					logger.severe("put request failed while sending events: " + statusCode);
+				}
+				result.completed(statusCode == HttpStatus.SC_OK);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				logger.severe("put request failed while sending events: " + ex.getClass().getName());
+				result.completed(false);
+			}
+
+			@Override
+			public void cancelled() {
+				result.cancel();
+			}
+		};
+		// request replayed after the redirect, registered upfront so that cancelling the result stops it as well
+		final AsyncResult<Integer> replay = new AsyncResult<>(eventsCallback);
+		result.setCurrent(Arrays.asList(execute(request, statusHandler, "Cannot put events.", new FutureCallback<Integer>() {
+			@Override
+			public void completed(Integer statusCode) {
+				if (statusCode == HttpStatus.SC_TEMPORARY_REDIRECT) {
+					// ad-hoc handling as requested by Jenkins Insight team
+					relogin(request, endpoint, null, statusHandler, "Cannot put events.", replay, 1);
+				} else {
+					eventsCallback.completed(statusCode);
+				}
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				eventsCallback.failed(ex);
+			}
+
+			@Override
+			public void cancelled() {
+				eventsCallback.cancelled();
+			}
+		}), replay));
+		return result;
+	}
+
+	@Override
+	public Future<String> getAbridgedTasks(String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion, FutureCallback<String> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_GET_ABRIDGED_TASKS, selfIdentity, selfType, selfLocation, apiVersion, sdkVersion));
+		return execute(request, new ResponseHandler<String>() {
+			@Override
+			public String handleResponse(HttpResponse response) throws IOException {
+				String responseBody = readContent(response);
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_OK) {
+					return responseBody;
+				} else if (statusCode == HttpStatus.SC_REQUEST_TIMEOUT) {
+					logger.config("expected timeout disconnection on retrieval of abridged tasks");
+					return null;
+				} else if (statusCode == HttpStatus.SC_UNAUTHORIZED) {
+					throw new AuthenticationException();
+				} else if (statusCode == HttpStatus.SC_NOT_FOUND) {
+					throw new TemporarilyUnavailableException("");
+				} else {
+					logger.info("unexpected response; status: " + statusCode + "; content: " + responseBody);
+					throw new ServerException("Server failed to process the request with status " + statusCode);
+				}
+			}
+		}, "failed to retrieve abridged tasks", callback);
+	}
+
+	@Override
+	public Future<Integer> putAbridgedResult(String selfIdentity, String taskId, String contentJSON, FutureCallback<Integer> callback) {
+		HttpPut request = new HttpPut(createSharedSpaceInternalApiUri(URI_PUT_ABRIDGED_RESULT, selfIdentity, taskId));
+		request.setEntity(new StringEntity(contentJSON, ContentType.APPLICATION_JSON));
+		return execute(request, new ResponseHandler<Integer>() {
+			@Override
+			public Integer handleResponse(HttpResponse response) {
+				return response.getStatusLine().getStatusCode();
+			}
+		}, "failed to submit abridged task's result", callback);
+	}
+
+	@Override
+	public Future<JSONObject> getBdiConfiguration(FutureCallback<JSONObject> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_BDI_CONFIGURATION));
+		return execute(request, new ResponseHandler<JSONObject>() {
+			@Override
+			public JSONObject handleResponse(HttpResponse response) throws IOException {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_NO_CONTENT) {
+					logger.config("BDI is not configured in Octane");
+					return null;
+				}
+				if (statusCode != HttpStatus.SC_OK) {
+					throw createRequestException("BDI configuration retrieval failed", response);
+				}
+				return JSONObject.fromObject(readContent(response));
+			}
+		}, "Cannot obtain status.", callback);
+	}
+
+	@Override
+	public Future<String> getBdiTokenData(FutureCallback<String> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_BDI_ACCESS_TOKEN));
+		return execute(request, new ResponseHandler<String>() {
+			@Override
+			public String handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+					return readContent(response);
+				} else {
+					throw createRequestException("BDI token retrieval failed", response);
+				}
+			}
+		}, "failed to parse token data response", callback);
+	}
+
+	@Override
+	public Future<List<String>> getJobWorkspaceId(String ciServerId, final String ciJobName, FutureCallback<List<String>> callback) {
+		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_WORKSPACE_BY_JOB_AND_SERVER, ciServerId, ciJobName));
+		return execute(request, new ResponseHandler<List<String>>() {
+			@Override
+			public List<String> handleResponse(HttpResponse response) throws IOException {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == HttpStatus.SC_NO_CONTENT) {
+					logger.info("Job " + ciJobName + " has no build context in Octane");
+					return new ArrayList<>();
+				}
+				if (statusCode != HttpStatus.SC_OK) {
+					throw createRequestException("workspace retrieval failed", response);
+				}
+				JSONArray workspaces = JSONArray.fromObject(readContent(response));
+				return workspaces.subList(0, workspaces.size());
+			}
+		}, "Cannot obtain status.", callback);
+	}
+
+	private <E> Future<PagedList<E>> getEntities(URI uri, final int offset, final EntityFactory<E> factory, FutureCallback<PagedList<E>> callback) {
+		return execute(new HttpGet(uri), new ResponseHandler<PagedList<E>>() {
+			@Override
+			public PagedList<E> handleResponse(HttpResponse response) throws IOException {
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+					throw createRequestException("Entity retrieval failed", response);
+				}
+				return convertResponceToPagedList(factory, offset, response);
+			}
+		}, "Cannot retrieve entities from MQM.", callback);
+	}
+
+	/**
+	 * Resolves entities by ids of any count: chunks by {@link MqmRestClientImpl#idChunks(long[])} are requested
+	 * with the parallelism of the blocking client and the result follows the order of the requested ids.
+	 */
+	private <E> Future<List<E>> getItemsByIds(final Collection<?> ids, final String collection, final List<String> fields, final Long workspaceId, final EntityFactory<E> factory, final IdAccessor<E> idAccessor, FutureCallback<List<E>> callback) {
+		AsyncResult<List<E>> result = new AsyncResult<>(callback);
+		final long[] distinctIds;
+		try {
+			distinctIds = distinctIds(ids);
+		} catch (IllegalArgumentException e) {
+			result.failed(e);
+			return result;
+		}
+		final int[] bounds = idChunks(distinctIds);
+		int chunks = bounds.length - 1;
+		if (chunks == 0) {
+			result.completed(new ArrayList<E>());
+			return result;
+		}
+		new ChunkedCall<PagedList<E>, List<E>>(result, chunks) {
+			@Override
+			Future<?> dispatch(int chunk, FutureCallback<PagedList<E>> callback) {
+				URI uri = getEntityURI(collection, Collections.singletonList(idsCondition(distinctIds, bounds[chunk], bounds[chunk + 1])), fields, workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null);
+				return getEntities(uri, DEFAULT_OFFSET, factory, callback);
+			}
+
+			@Override
+			List<E> merge(List<PagedList<E>> found) {
+				List<E> items = new ArrayList<>();
+				for (PagedList<E> page : found) {
+					items.addAll(page.getItems());
+				}
+				return orderByIds(ids, items, idAccessor);
+			}
+		}.start(GET_BY_IDS_PARALLELISM);
+		return result;
+	}
+
+	/**
+	 * Dispatches the request and maps the response by the given handler. Response handler runs on I/O dispatcher thread,
+	 * {@link IOException}s (both from the transport and the handler) are reported as {@link RequestErrorException} with given message.
+	 */
+	private <T> AsyncResult<T> execute(HttpUriRequest request, ResponseHandler<T> handler, String errorMessage, FutureCallback<T> callback) {
+		try {
+			beginRequest();
+		} catch (IllegalStateException e) {
+			AsyncResult<T> rejected = new AsyncResult<>(callback);
+			rejected.failed(e);
+			return rejected;
+		}
+		AsyncResult<T> result = new AsyncResult<>(new InFlightCallback<>(callback));
+		String endpoint = getEndpoint(request);
+		Cookie token = peekSessionToken();
+		if (isCompressible(request)) {
+			prepare(getConcurrentCallExecutor(), request, endpoint, handler, errorMessage, result);
+		} else if (token == null) {
+			prepare(loginExecutor, request, endpoint, handler, errorMessage, result);
+		} else {
+			dispatch(request, endpoint, token, handler, errorMessage, result, true, 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Compresses the request and signs in if there is no session yet on the given executor, so that the caller is not
+	 * blocked, then dispatches the request.
+	 */
+	private <T> void prepare(ExecutorService executor, final HttpUriRequest request, final String endpoint, final ResponseHandler<T> handler,
+	                         final String errorMessage, final AsyncResult<T> result) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (result.isDone()) {
+						return;
+					}
+					Cookie token;
+					try {
+						compressRequest(request, endpoint);
+						token = getSessionToken();
+					} catch (IOException e) {
+						result.failed(new RequestErrorException(errorMessage, e));
+						return;
+					} catch (RuntimeException e) {
+						result.failed(e);
+						return;
+					}
+					if (!result.isDone()) {
+						dispatch(request, endpoint, token, handler, errorMessage, result, true, 1);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			result.failed(e);
+		}
+	}
+
+	private <T> void dispatch(final HttpUriRequest request, final String endpoint, final Cookie token, final ResponseHandler<T> handler, final String errorMessage,
+	                          final AsyncResult<T> result, final boolean loginAllowed, final int attempt) {
+		HttpClientContext localContext = HttpClientContext.create();
+		CookieStore localCookies = new BasicCookieStore();
+		localCookies.addCookie(token);
+		localContext.setCookieStore(localCookies);
+		addRequestHeaders(request);
+		final CircuitBreaker circuitBreaker = getCircuitBreaker(request);
+		final long start = System.nanoTime();
+
+		try {
+			circuitBreaker.acquirePermission();
+		} catch (RuntimeException e) {
+			result.failed(e);
+			return;
+		}
+		try {
+			Future<HttpResponse> future = httpAsyncClient.execute(request, localContext, new FutureCallback<HttpResponse>() {
+				@Override
+				public void completed(HttpResponse response) {
+					int statusCode = response.getStatusLine().getStatusCode();
+					long latency = System.nanoTime() - start;
+					recordRequest(request, endpoint, statusCode, latency, getContentLength(request),
+							response.getEntity() != null ? response.getEntity().getContentLength() : 0);
+					circuitBreaker.onResult(isOverloaded(statusCode), TimeUnit.NANOSECONDS.toMillis(latency));
+					if (statusCode == HttpStatus.SC_UNAUTHORIZED && loginAllowed) {
+						EntityUtils.consumeQuietly(response.getEntity());
+						recordRetry(request, endpoint, statusCode);
+						relogin(request, endpoint, token, handler, errorMessage, result, attempt);
+						return;
+					}
+					long delay = getRetryDelay(request, attempt, statusCode, null, getRetryAfter(response));
+					if (delay >= 0) {
+						EntityUtils.consumeQuietly(response.getEntity());
+						logger.log(Level.INFO, "Request " + request.getMethod() + " " + request.getURI().getPath() + " failed with status " + statusCode + ", repeating in " + delay + " ms");
+						recordRetry(request, endpoint, statusCode);
+						redispatch(request, endpoint, token, handler, errorMessage, result, loginAllowed, attempt + 1, delay);
+						return;
+					}
+					decompressResponse(request, endpoint, response);
+					try {
+						result.completed(handler.handleResponse(response));
+					} catch (IOException e) {
+						result.failed(new RequestErrorException(errorMessage, e));
+					} catch (RuntimeException e) {
+						result.failed(e);
+					} finally {
+						EntityUtils.consumeQuietly(response.getEntity());
+					}
+				}
+
+				@Override
+				public void failed(Exception ex) {
+					long latency = System.nanoTime() - start;
+					recordRequest(request, endpoint, -1, latency, getContentLength(request), -1);
+					if (ex instanceof IOException) {
+						circuitBreaker.onResult(true, TimeUnit.NANOSECONDS.toMillis(latency));
+					} else {
+						circuitBreaker.onIgnored();
+					}
+					long delay = ex instanceof IOException ? getRetryDelay(request, attempt, -1, (IOException) ex, -1) : -1;
+					if (delay >= 0) {
+						logger.log(Level.INFO, "Request " + request.getMethod() + " " + request.getURI().getPath() + " failed (" + ex + "), repeating in " + delay + " ms");
+						recordRetry(request, endpoint, -1);
+						redispatch(request, endpoint, token, handler, errorMessage, result, loginAllowed, attempt + 1, delay);
+						return;
+					}
+					result.failed(ex instanceof RuntimeException ? ex : new RequestErrorException(errorMessage, ex));
+				}
+
+				@Override
+				public void cancelled() {
+					circuitBreaker.onIgnored();
+					result.cancel();
+				}
+			});
+			result.setCurrent(future);
+			if (result.isCancelled()) {
+				// cancelled while the request was being prepared or the session renewed
+				future.cancel(true);
+			}
+		} catch (RuntimeException e) {
+			circuitBreaker.onIgnored();
+			result.failed(e);
+		}
+	}
+
+	/**
+	 * Sends the request again after the given delay in milliseconds.
+	 */
+	private <T> void redispatch(final HttpUriRequest request, final String endpoint, final Cookie token, final ResponseHandler<T> handler, final String errorMessage,
+	                            final AsyncResult<T> result, final boolean loginAllowed, final int attempt, long delay) {
+		try {
+			result.setCurrent(schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (!result.isDone()) {
+						dispatch(request, endpoint, token, handler, errorMessage, result, loginAllowed, attempt);
+					}
+				}
+			}, delay));
+		} catch (RuntimeException e) {
+			result.failed(e);
+		}
+	}
+
+	/**
+	 * Repeats login outside of I/O dispatcher threads and replays the request afterwards. Without stale token the
+	 * login is forced.
+	 */
+	private <T> void relogin(final HttpUriRequest request, final String endpoint, final Cookie staleToken, final ResponseHandler<T> handler, final String errorMessage,
+	                         final AsyncResult<T> result, final int attempt) {
+		try {
+			loginExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (result.isDone()) {
+						return;
+					}
+					try {
+						Cookie token;
+						if (staleToken != null) {
+							token = renewSession(staleToken);
+						} else {
+							login();
+							token = getSessionToken();
+						}
+						if (!result.isDone()) {
+							dispatch(request, endpoint, token, handler, errorMessage, result, false, attempt);
+						}
+					} catch (RuntimeException e) {
+						result.failed(e);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			result.failed(e);
+		}
+	}
+
+	private static StringEntity createStringEntity(String json) {
+		try {
+			return new StringEntity(json);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException("Failed to create StringEntity :" + e.getMessage(), e);
+		}
+	}
+
+	private static <T> Future<T> completedResult(T value, FutureCallback<T> callback) {
+		AsyncResult<T> result = new AsyncResult<>(callback);
+		result.completed(value);
+		return result;
+	}
+
+	private static <T> FutureCallback<T> forwardTo(final AsyncResult<T> result) {
+		return new Continuation<T, T>(result) {
+			@Override
+			public void completed(T value) {
+				result.completed(value);
+			}
+		};
+	}
+
+	/**
+	 * Future of an operation which may consist of several consecutive requests; cancellation is propagated
+	 * to the request currently in flight.
+	 */
+	private static class AsyncResult<T> extends BasicFuture<T> {
+
+		private volatile List<? extends Future<?>> current = Collections.emptyList();
+
+		private AsyncResult(FutureCallback<T> callback) {
+			super(callback);
+		}
+
+		private void setCurrent(Future<?> current) {
+			setCurrent(Collections.singletonList(current));
+		}
+
+		private void setCurrent(List<? extends Future<?>> current) {
+			this.current = current;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				for (Future<?> inFlight : current) {
+					if (inFlight != null) {
+						inFlight.cancel(mayInterruptIfRunning);
+					}
+				}
+			}
+			return cancelled;
+		}
+	}
+
+	private static long getContentLength(HttpUriRequest request) {
+		if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+			return Math.max(((HttpEntityEnclosingRequest) request).getEntity().getContentLength(), 0);
+		}
+		return 0;
+	}
+
+	/**
+	 * Ends the request in flight (see {@link #beginRequest()}) once its result is known, then notifies the caller.
+	 */
+	private final class InFlightCallback<T> implements FutureCallback<T> {
+
+		private final FutureCallback<T> callback;
+
+		private InFlightCallback(FutureCallback<T> callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public void completed(T result) {
+			endRequest();
+			if (callback != null) {
+				callback.completed(result);
+			}
+		}
+
+		@Override
+		public void failed(Exception ex) {
+			endRequest();
+			if (callback != null) {
+				callback.failed(ex);
+			}
+		}
+
+		@Override
+		public void cancelled() {
+			endRequest();
+			if (callback != null) {
+				callback.cancelled();
+			}
+		}
+	}
+
+	/**
+	 * Requests chunks of an operation the way {@link AbstractMqmRestClient#invokeAll(List, int)} runs calls: at most <code>parallelism</code>
+	 * chunks are in flight, the next one is dispatched when one completes and the results keep the order of the chunks.
+	 * The first failure fails the overall result and cancels the chunks still in flight, so does cancellation.
+	 */
+	private static abstract class ChunkedCall<S, T> {
+
+		private final AsyncResult<T> result;
+		private final List<S> results;
+		private final Map<Integer, Future<?>> inFlight = new HashMap<>();
+		private int next;
+		private int remaining;
+
+		private ChunkedCall(AsyncResult<T> result, int chunks) {
+			this.result = result;
+			this.results = new ArrayList<>(Collections.<S>nCopies(chunks, null));
+			this.remaining = chunks;
+		}
+
+		/**
+		 * Dispatches request of given chunk, the callback receives its result.
+		 */
+		abstract Future<?> dispatch(int chunk, FutureCallback<S> callback);
+
+		/**
+		 * Combines results of all the chunks, in the order of the chunks.
+		 */
+		abstract T merge(List<S> results);
+
+		synchronized void start(int parallelism) {
+			while (next < Math.min(parallelism, results.size()) && !result.isDone()) {
+				dispatchNext();
+			}
+		}
+
+		// called while holding the lock, so that callback of the chunk finds it among the chunks in flight
+		private void dispatchNext() {
+			final int chunk = next++;
+			Future<?> future = dispatch(chunk, new FutureCallback<S>() {
+				@Override
+				public void completed(S value) {
+					chunkCompleted(chunk, value);
+				}
+
+				@Override
+				public void failed(Exception ex) {
+					result.failed(ex);
+					cancelInFlight();
+				}
+
+				@Override
+				public void cancelled() {
+					result.cancel();
+					cancelInFlight();
+				}
+			});
+			if (!future.isDone()) {
+				inFlight.put(chunk, future);
+			}
+			result.setCurrent(new ArrayList<>(inFlight.values()));
+			if (result.isDone()) {
+				// cancelled meanwhile, it may have missed the chunk just dispatched
+				cancelInFlight();
+			}
+		}
+
+		private void chunkCompleted(int chunk, S value) {
+			boolean last;
+			synchronized (this) {
+				inFlight.remove(chunk);
+				results.set(chunk, value);
+				last = --remaining == 0;
+				if (!last && next < results.size() && !result.isDone()) {
+					dispatchNext();
+				}
+			}
+			if (last) {
+				result.completed(merge(results));
+			}
+		}
+
+		private synchronized void cancelInFlight() {
+			for (Future<?> future : new ArrayList<>(inFlight.values())) {
+				future.cancel(true);
+			}
+			inFlight.clear();
+		}
+	}
+
+	/**
+	 * Callback of an intermediate step, failure and cancellation are propagated to the overall result.
+	 */
+	private static abstract class Continuation<S, T> implements FutureCallback<S> {
+
+		private final AsyncResult<T> result;
+
+		private Continuation(AsyncResult<T> result) {
+			this.result = result;
+		}
+
+		@Override
+		public void failed(Exception ex) {
+			result.failed(ex);
+		}
+
+		@Override
+		public void cancelled() {
+			result.cancel();
+		}
+	}
+}
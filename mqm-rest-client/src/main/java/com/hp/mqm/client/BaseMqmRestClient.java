@@ -16,8 +16,14 @@
 package com.hp.mqm.client;
 
 import com.hp.mqm.client.exception.SharedSpaceNotExistException;
+import com.hp.mqm.client.model.CircuitBreakerStats;
+import com.hp.mqm.client.model.ConnectionPoolStats;
 
-public interface BaseMqmRestClient {
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+public interface BaseMqmRestClient extends Closeable {
 
 	/**
 	 * Tries login and when it passes it tries to connect to project.
@@ -34,4 +40,27 @@ public interface BaseMqmRestClient {
 	void validateConfiguration();
 
 	void validateConfigurationWithoutLogin();
+
+	/**
+	 * Provides live statistics of the underlying HTTP connection pool. Useful for sizing the pool
+	 * (see {@link MqmConnectionConfig#setMaxConnectionsTotal(Integer)} and {@link MqmConnectionConfig#setMaxConnectionsPerRoute(Integer)}).
+	 *
+	 * @return current number of leased, pending and available connections
+	 */
+	ConnectionPoolStats getConnectionPoolStats();
+
+	/**
+	 * Provides state of the circuit breakers (see {@link MqmConnectionConfig#setCircuitBreakerPolicy(CircuitBreakerPolicy)}).
+	 *
+	 * @return state per endpoint category
+	 */
+	Map<EndpointCategory, CircuitBreakerStats> getCircuitBreakerStats();
+
+	/**
+	 * Stops accepting new requests, waits for requests in flight (at most for the close timeout, see
+	 * {@link MqmConnectionConfig#setCloseTimeout(Integer)}) and releases the connections and background threads.
+	 * Requests issued after the client was closed fail with {@link IllegalStateException}.
+	 */
+	@Override
+	void close() throws IOException;
 }
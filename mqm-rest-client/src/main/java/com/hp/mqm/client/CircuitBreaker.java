@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.TemporarilyUnavailableException;
+import com.hp.mqm.client.model.CircuitBreakerStats;
+import com.hp.mqm.client.model.CircuitBreakerStats.State;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker of one endpoint category, see {@link CircuitBreakerPolicy}. Each call has to obtain a permission by
+ * {@link #acquirePermission()} and report its outcome by {@link #onResult(boolean, long)} or {@link #onIgnored()}.
+ */
+final class CircuitBreaker {
+
+	private static final Logger logger = Logger.getLogger(CircuitBreaker.class.getName());
+
+	private static final byte FAILED = 1;
+	private static final byte SLOW = 2;
+
+	private final EndpointCategory category;
+	private final CircuitBreakerPolicy policy;
+	private final byte[] outcomes;      // ring buffer of the last calls
+	private int position;
+	private int calls;
+	private int failedCalls;
+	private int slowCalls;
+	private State state = State.CLOSED;
+	private long stateSince = System.currentTimeMillis();
+	private int probesPermitted;
+	private int probesSucceeded;
+	private long rejectedCalls;
+
+	CircuitBreaker(EndpointCategory category, CircuitBreakerPolicy policy) {
+		this.category = category;
+		this.policy = policy;
+		this.outcomes = new byte[policy.getWindowSize()];
+	}
+
+	/**
+	 * @throws TemporarilyUnavailableException when the breaker is open or all the recovery probes are in flight
+	 */
+	synchronized void acquirePermission() {
+		if (state == State.OPEN && System.currentTimeMillis() - stateSince >= policy.getOpenDuration()) {
+			transition(State.HALF_OPEN);
+		}
+		if (state == State.OPEN || (state == State.HALF_OPEN && probesPermitted >= policy.getProbes())) {
+			rejectedCalls++;
+			throw new TemporarilyUnavailableException("Circuit breaker of " + category + " endpoints is " + state + ", the call is rejected");
+		}
+		if (state == State.HALF_OPEN) {
+			probesPermitted++;
+		}
+	}
+
+	/**
+	 * Reports outcome of a permitted call.
+	 *
+	 * @param failed   true when the call failed with an I/O error or a response indicating overload
+	 * @param duration duration of the call in milliseconds
+	 */
+	synchronized void onResult(boolean failed, long duration) {
+		boolean slow = policy.getSlowCallDuration() > 0 && duration >= policy.getSlowCallDuration();
+		if (state == State.HALF_OPEN) {
+			if (failed || slow) {
+				transition(State.OPEN);
+			} else if (++probesSucceeded >= policy.getProbes()) {
+				transition(State.CLOSED);
+			}
+		} else if (state == State.CLOSED) {
+			record((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+			if (calls >= policy.getMinimumCalls() && (getFailureRate() >= policy.getFailureRateThreshold() ||
+					getSlowCallRate() >= policy.getSlowCallRateThreshold())) {
+				transition(State.OPEN);
+			}
+		}
+		// outcomes of calls permitted before the breaker opened are not relevant any more
+	}
+
+	/**
+	 * Reports a permitted call which ended without telling anything about the endpoints (e.g. failed sign-in).
+	 */
+	synchronized void onIgnored() {
+		if (state == State.HALF_OPEN && probesPermitted > probesSucceeded) {
+			probesPermitted--;
+		}
+	}
+
+	synchronized CircuitBreakerStats getStats() {
+		if (state == State.OPEN && System.currentTimeMillis() - stateSince >= policy.getOpenDuration()) {
+			transition(State.HALF_OPEN);
+		}
+		return new CircuitBreakerStats(state, calls, getFailureRate(), getSlowCallRate(), rejectedCalls, stateSince);
+	}
+
+	private void record(byte outcome) {
+		if (calls == outcomes.length) {
+			byte evicted = outcomes[position];
+			failedCalls -= evicted & FAILED;
+			slowCalls -= (evicted & SLOW) >> 1;
+		} else {
+			calls++;
+		}
+		outcomes[position] = outcome;
+		failedCalls += outcome & FAILED;
+		slowCalls += (outcome & SLOW) >> 1;
+		position = (position + 1) % outcomes.length;
+	}
+
+	private double getFailureRate() {
+		return calls > 0 ? (double) failedCalls / calls : 0;
+	}
+
+	private double getSlowCallRate() {
+		return calls > 0 ? (double) slowCalls / calls : 0;
+	}
+
+	private void transition(State newState) {
+		if (newState == State.OPEN) {
+			logger.log(Level.WARNING, "Circuit breaker of " + category + " endpoints opened (" + state + ", failure rate " +
+					getFailureRate() + ", slow call rate " + getSlowCallRate() + "), calls are rejected for " + policy.getOpenDuration() + " ms");
+		} else if (newState == State.CLOSED) {
+			logger.log(Level.INFO, "Circuit breaker of " + category + " endpoints closed");
+		}
+		state = newState;
+		stateSince = System.currentTimeMillis();
+		probesPermitted = 0;
+		probesSucceeded = 0;
+		if (newState != State.OPEN) {
+			Arrays.fill(outcomes, (byte) 0);
+			position = 0;
+			calls = 0;
+			failedCalls = 0;
+			slowCalls = 0;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+/**
+ * When the circuit breaker of an endpoint category opens. Outcomes of the last <code>windowSize</code> calls are
+ * kept; once at least <code>minimumCalls</code> of them are known and the rate of failed calls (I/O errors, 429 and
+ * 5xx responses) or slow calls reaches its threshold, the breaker opens and calls fail fast with
+ * {@link com.hp.mqm.client.exception.TemporarilyUnavailableException} for <code>openDuration</code>. Then
+ * <code>probes</code> calls are let through; the breaker closes when all of them succeed and opens again otherwise.
+ *
+ * @see MqmConnectionConfig#setCircuitBreakerPolicy(CircuitBreakerPolicy)
+ * @see MqmConnectionConfig#setCircuitBreakerPolicy(EndpointCategory, CircuitBreakerPolicy)
+ */
+public final class CircuitBreakerPolicy {
+
+	/**
+	 * Breaker which never opens.
+	 */
+	public static final CircuitBreakerPolicy NONE = new CircuitBreakerPolicy(1.1, 1.1, 0, 0);
+
+	/**
+	 * Opens for 30 seconds when half of the last 20 calls failed or 80 % of them took 30 seconds or more.
+	 */
+	public static final CircuitBreakerPolicy DEFAULT = new CircuitBreakerPolicy(0.5, 0.8, 30000, 30000);
+
+	private static final int DEFAULT_WINDOW_SIZE = 20;
+	private static final int DEFAULT_MINIMUM_CALLS = 10;
+	private static final int DEFAULT_PROBES = 3;
+
+	private final double failureRateThreshold;
+	private final double slowCallRateThreshold;
+	private final long slowCallDuration;
+	private final long openDuration;
+	private final int windowSize;
+	private final int minimumCalls;
+	private final int probes;
+
+	/**
+	 * Policy evaluating the last 20 calls once 10 of them are known and probing recovery by 3 calls.
+	 *
+	 * @param failureRateThreshold  rate of failed calls (0 to 1) which opens the breaker, more than 1 never opens it
+	 * @param slowCallRateThreshold rate of slow calls (0 to 1) which opens the breaker, more than 1 never opens it
+	 * @param slowCallDuration      duration of a call in milliseconds from which it counts as slow, 0 disables it
+	 * @param openDuration          how long calls are rejected before recovery is probed in milliseconds
+	 */
+	public CircuitBreakerPolicy(double failureRateThreshold, double slowCallRateThreshold, long slowCallDuration, long openDuration) {
+		this(failureRateThreshold, slowCallRateThreshold, slowCallDuration, openDuration, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_PROBES);
+	}
+
+	/**
+	 * @param failureRateThreshold  rate of failed calls (0 to 1) which opens the breaker, more than 1 never opens it
+	 * @param slowCallRateThreshold rate of slow calls (0 to 1) which opens the breaker, more than 1 never opens it
+	 * @param slowCallDuration      duration of a call in milliseconds from which it counts as slow, 0 disables it
+	 * @param openDuration          how long calls are rejected before recovery is probed in milliseconds
+	 * @param windowSize            number of the last calls evaluated
+	 * @param minimumCalls          number of calls needed before the rates are evaluated
+	 * @param probes                number of calls let through to probe recovery
+	 */
+	public CircuitBreakerPolicy(double failureRateThreshold, double slowCallRateThreshold, long slowCallDuration, long openDuration,
+	                            int windowSize, int minimumCalls, int probes) {
+		if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || probes < 1) {
+			throw new IllegalArgumentException("Parameters 'windowSize' and 'probes' must be positive, 'minimumCalls' between 1 and 'windowSize'.");
+		}
+		if (slowCallDuration < 0 || openDuration < 0) {
+			throw new IllegalArgumentException("Durations must not be negative.");
+		}
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.slowCallDuration = slowCallDuration;
+		this.openDuration = openDuration;
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		this.probes = probes;
+	}
+
+	public double getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public double getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	public long getSlowCallDuration() {
+		return slowCallDuration;
+	}
+
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	public int getProbes() {
+		return probes;
+	}
+
+	/**
+	 * @return the same policy without slow call detection
+	 */
+	public CircuitBreakerPolicy withoutSlowCalls() {
+		return new CircuitBreakerPolicy(failureRateThreshold, slowCallRateThreshold, 0, openDuration, windowSize, minimumCalls, probes);
+	}
+}
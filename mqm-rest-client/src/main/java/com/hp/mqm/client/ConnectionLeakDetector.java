@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.apache.http.HttpClientConnection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks connections leased from the pool and reports those held longer than a threshold together with the call
+ * site which acquired them. Each lease captures a stack trace, so the detection is meant for diagnostics only.
+ */
+final class ConnectionLeakDetector implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(ConnectionLeakDetector.class.getName());
+
+	private final long threshold;
+	private final Map<HttpClientConnection, Lease> leases = new ConcurrentHashMap<>();
+
+	/**
+	 * @param threshold how long a connection may be leased before it is reported, in milliseconds
+	 */
+	ConnectionLeakDetector(long threshold) {
+		this.threshold = threshold;
+	}
+
+	long getThreshold() {
+		return threshold;
+	}
+
+	void leased(HttpClientConnection connection) {
+		leases.put(connection, new Lease(Thread.currentThread().getName()));
+	}
+
+	void released(HttpClientConnection connection) {
+		Lease lease = leases.remove(connection);
+		if (lease != null && lease.reported) {
+			logger.log(Level.INFO, "Connection reported as leaked was released after " + (System.currentTimeMillis() - lease.since) + " ms");
+		}
+	}
+
+	/**
+	 * @return number of connections leased longer than the threshold
+	 */
+	int getLeakedConnections() {
+		long now = System.currentTimeMillis();
+		int leaked = 0;
+		for (Lease lease : leases.values()) {
+			if (now - lease.since >= threshold) {
+				leaked++;
+			}
+		}
+		return leaked;
+	}
+
+	/**
+	 * Reports connections which exceeded the threshold since the last run, each of them once.
+	 */
+	@Override
+	public void run() {
+		long now = System.currentTimeMillis();
+		for (Lease lease : leases.values()) {
+			if (!lease.reported && now - lease.since >= threshold) {
+				lease.reported = true;
+				logger.log(Level.WARNING, "Connection leased by thread " + lease.thread + " was not released for " + (now - lease.since) +
+						" ms, the response is probably never closed", lease.callSite);
+			}
+		}
+	}
+
+	private static final class Lease {
+
+		private final long since = System.currentTimeMillis();
+		private final String thread;
+		private final Throwable callSite = new Throwable("Connection acquired here");
+		private volatile boolean reported;
+
+		private Lease(String thread) {
+			this.thread = thread;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HTTP;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of request and response bodies. Request bodies are compressed up front (they have to stay
+ * repeatable for retries), response bodies are decompressed while they are read.
+ */
+final class ContentCompression {
+
+	static final String GZIP = "gzip";
+
+	interface Listener {
+
+		/**
+		 * @param uncompressedBytes size of the body
+		 * @param compressedBytes   size of the body as transferred
+		 */
+		void compressed(long uncompressedBytes, long compressedBytes);
+	}
+
+	private ContentCompression() {
+	}
+
+	/**
+	 * @return true if {@link #compressRequest(HttpRequest, int)} would compress the body of the request
+	 */
+	static boolean isCompressible(HttpRequest request, int threshold) {
+		if (!(request instanceof HttpEntityEnclosingRequest) || request.containsHeader(HTTP.CONTENT_ENCODING)) {
+			return false;
+		}
+		HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+		return entity != null && entity.getContentEncoding() == null && entity.isRepeatable() &&
+				entity.getContentLength() >= threshold && isJson(request, entity);
+	}
+
+	/**
+	 * Replaces JSON body of the request by its gzip compressed form when it is at least as large as the threshold.
+	 * Bodies which are encoded already, not repeatable or of unknown size are left alone.
+	 *
+	 * @return size of the original body, -1 if the body was not compressed
+	 */
+	static long compressRequest(HttpRequest request, int threshold) throws IOException {
+		if (!isCompressible(request, threshold)) {
+			return -1;
+		}
+		HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(entity.getContentLength() / 4, Integer.MAX_VALUE));
+		GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+		entity.writeTo(gzip);
+		gzip.close();
+		ByteArrayEntity compressedEntity = new ByteArrayEntity(compressed.toByteArray());
+		if (entity.getContentType() != null) {
+			compressedEntity.setContentType(entity.getContentType());
+		}
+		((HttpEntityEnclosingRequest) request).setEntity(compressedEntity);
+		request.setHeader(HTTP.CONTENT_ENCODING, GZIP);
+		return entity.getContentLength();
+	}
+
+	/**
+	 * Replaces gzip encoded body of the response by one which decompresses the content while it is read. The listener
+	 * is notified when the content is closed.
+	 */
+	static void decompressResponse(HttpResponse response, Listener listener) {
+		HttpEntity entity = response.getEntity();
+		if (entity == null || entity.getContentEncoding() == null || !GZIP.equalsIgnoreCase(entity.getContentEncoding().getValue())) {
+			return;
+		}
+		response.setEntity(new DecompressingEntity(entity, listener));
+		response.removeHeaders(HTTP.CONTENT_LEN);
+		response.removeHeaders(HTTP.CONTENT_ENCODING);
+	}
+
+	private static boolean isJson(HttpRequest request, HttpEntity entity) {
+		// header of the request takes precedence over the content type of the entity when the request is sent
+		Header contentType = request.containsHeader(HttpHeaders.CONTENT_TYPE) ? request.getFirstHeader(HttpHeaders.CONTENT_TYPE) : entity.getContentType();
+		return contentType != null && contentType.getValue().startsWith(ContentType.APPLICATION_JSON.getMimeType());
+	}
+
+	private static final class DecompressingEntity extends HttpEntityWrapper {
+
+		private final Listener listener;
+		private DecompressingStream content;
+
+		private DecompressingEntity(HttpEntity wrappedEntity, Listener listener) {
+			super(wrappedEntity);
+			this.listener = listener;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			// single stream, so that consuming the entity closes the one being read
+			if (content == null) {
+				content = new DecompressingStream(super.getContent(), listener);
+			}
+			return content;
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public Header getContentEncoding() {
+			return null;
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return true;
+		}
+
+		@Override
+		public void writeTo(OutputStream outStream) throws IOException {
+			InputStream in = getContent();
+			try {
+				byte[] buffer = new byte[4096];
+				int len;
+				while ((len = in.read(buffer)) != -1) {
+					outStream.write(buffer, 0, len);
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Decompresses lazily, so that closing content which was never read does not fail on a missing gzip header.
+	 */
+	private static final class DecompressingStream extends InputStream {
+
+		private final CountingInputStream compressed;
+		private final Listener listener;
+		private InputStream decompressed;
+		private long uncompressedBytes;
+		private boolean closed;
+
+		private DecompressingStream(InputStream compressed, Listener listener) {
+			this.compressed = new CountingInputStream(compressed);
+			this.listener = listener;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = getDecompressed().read();
+			if (b != -1) {
+				uncompressedBytes++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = getDecompressed().read(b, off, len);
+			if (read > 0) {
+				uncompressedBytes += read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return decompressed != null ? decompressed.available() : 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				compressed.close();
+			} finally {
+				if (uncompressedBytes > 0) {
+					listener.compressed(uncompressedBytes, compressed.getByteCount());
+				}
+			}
+		}
+
+		private InputStream getDecompressed() throws IOException {
+			if (decompressed == null) {
+				decompressed = new GZIPInputStream(compressed);
+			}
+			return decompressed;
+		}
+	}
+}
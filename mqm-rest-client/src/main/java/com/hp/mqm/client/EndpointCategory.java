@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import java.net.URI;
+
+/**
+ * Groups of REST endpoints which can be given their own {@link RetryPolicy}.
+ */
+public enum EndpointCategory {
+
+	/**
+	 * Entities, metadata and other REST API resources.
+	 */
+	ENTITIES,
+
+	/**
+	 * CI analytics resources not listed below (job configuration, preflight, BDI, ...).
+	 */
+	CI,
+
+	/**
+	 * Test result push and its status.
+	 */
+	TEST_RESULTS,
+
+	/**
+	 * CI events.
+	 */
+	EVENTS,
+
+	/**
+	 * Abridged task polling and task results.
+	 */
+	TASKS;
+
+	static EndpointCategory of(URI uri) {
+		String path = uri.getRawPath();
+		if (path == null || !path.contains("/analytics/")) {
+			return ENTITIES;
+		} else if (path.contains("/analytics/ci/test-results")) {
+			return TEST_RESULTS;
+		} else if (path.contains("/analytics/ci/events")) {
+			return EVENTS;
+		} else if (path.contains("/analytics/ci/servers/") && path.contains("/tasks")) {
+			return TASKS;
+		} else {
+			return CI;
+		}
+	}
+}
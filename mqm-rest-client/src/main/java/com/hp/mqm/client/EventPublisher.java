@@ -0,0 +1,367 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.RequestException;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes CI events in batches through {@link MqmRestClient#putEvents(String)}.
+ * <p>
+ * Events are accepted into a bounded queue and sent by a background thread as soon as {@code maxBatchSize} events
+ * are waiting or the oldest of them has waited for {@code flushInterval}. When the queue is full, {@link #publish}
+ * blocks until the server catches up. A batch which could not be delivered is not dropped: it is sent again (together
+ * with events queued meanwhile) after a back-off which grows from {@link #MIN_RETRY_DELAY} up to {@link #MAX_RETRY_DELAY}.
+ * Only a batch the server rejected (4xx response, see {@link Outbox}) is dropped, sending it again would fail the same way.
+ */
+public class EventPublisher implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(EventPublisher.class.getName());
+
+	public static final int DEFAULT_CAPACITY = 10000;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;     // in milliseconds
+	public static final long MIN_RETRY_DELAY = 1000;            // in milliseconds
+	public static final long MAX_RETRY_DELAY = 60000;           // in milliseconds
+
+	private final MqmRestClient client;
+	private final JSONObject server;
+	private final int capacity;
+	private final int maxBatchSize;
+	private final long flushInterval;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final Condition wakeUp = lock.newCondition();
+	private final Condition done = lock.newCondition();
+	private final ArrayDeque<JSONObject> queue = new ArrayDeque<>();
+	private final List<JSONObject> carryOver = new ArrayList<>();
+	private final Thread worker;
+	private long oldestEventTime;
+	private long retryDelay;
+	private long deliveredCount;
+	private long rejectedCount;
+	private boolean flushRequested;
+	private int inFlightCount;
+	private boolean closed;
+	private boolean abandoned;
+
+	/**
+	 * Same as {@link #EventPublisher(MqmRestClient, JSONObject, int, int, long)} with default capacity, batch size
+	 * and flush interval.
+	 */
+	public EventPublisher(MqmRestClient client, JSONObject server) {
+		this(client, server, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * @param client        client sending the events
+	 * @param server        descriptor of the CI server sent along with every batch
+	 * @param capacity      maximum number of queued events, publishers are blocked beyond it
+	 * @param maxBatchSize  maximum number of events sent in one request
+	 * @param flushInterval how long an event may wait for the batch to fill in milliseconds
+	 */
+	public EventPublisher(MqmRestClient client, JSONObject server, int capacity, int maxBatchSize, long flushInterval) {
+		if (capacity < 1 || maxBatchSize < 1 || flushInterval < 0) {
+			throw new IllegalArgumentException("Capacity and batch size must be positive, flush interval must not be negative");
+		}
+		this.client = client;
+		this.server = server;
+		this.capacity = capacity;
+		this.maxBatchSize = maxBatchSize;
+		this.flushInterval = flushInterval;
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				sendBatches();
+			}
+		}, "mqm-event-publisher");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Queues the event, waits while the queue is full.
+	 *
+	 * @throws IllegalStateException if the publisher is closed
+	 */
+	public void publish(JSONObject event) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (queue.size() >= capacity && !closed) {
+				notFull.await();
+			}
+			enqueue(event);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues the event, waits at most given time while the queue is full.
+	 *
+	 * @return false if the event was not queued because the queue stayed full
+	 * @throws IllegalStateException if the publisher is closed
+	 */
+	public boolean offer(JSONObject event, long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (queue.size() >= capacity && !closed) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = notFull.awaitNanos(remaining);
+			}
+			enqueue(event);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends queued events right away without waiting for the batch to fill (and without waiting for pending retry).
+	 */
+	public void flush() {
+		lock.lock();
+		try {
+			flushRequested = true;
+			wakeUp.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of events which were not delivered yet (queued, being sent or waiting for retry)
+	 */
+	public int getPendingCount() {
+		lock.lock();
+		try {
+			return queue.size() + carryOver.size() + inFlightCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of events delivered so far
+	 */
+	public long getDeliveredCount() {
+		lock.lock();
+		try {
+			return deliveredCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of events dropped because the server rejected them
+	 */
+	public long getRejectedCount() {
+		lock.lock();
+		try {
+			return rejectedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting events and waits at most given time until all pending events are delivered. Events which are
+	 * still pending after the time elapses are discarded.
+	 *
+	 * @return true if all events were delivered
+	 */
+	public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			closed = true;
+			wakeUp.signal();
+			notFull.signalAll();
+			while (!queue.isEmpty() || !carryOver.isEmpty() || inFlightCount > 0) {
+				if (remaining <= 0) {
+					logger.warning("Event publisher closed, " + (queue.size() + carryOver.size() + inFlightCount) + " events were not delivered");
+					abandoned = true;
+					wakeUp.signal();
+					return false;
+				}
+				remaining = done.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the publisher, waiting for the pending events for at most {@link #MAX_RETRY_DELAY}.
+	 */
+	@Override
+	public void close() {
+		try {
+			close(MAX_RETRY_DELAY, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void enqueue(JSONObject event) {
+		if (closed) {
+			throw new IllegalStateException("Event publisher is closed");
+		}
+		if (queue.isEmpty()) {
+			oldestEventTime = System.currentTimeMillis();
+		}
+		queue.add(event);
+		if (queue.size() + carryOver.size() >= maxBatchSize) {
+			wakeUp.signal();
+		}
+	}
+
+	private void sendBatches() {
+		while (true) {
+			List<JSONObject> batch;
+			try {
+				batch = takeBatch();
+			} catch (InterruptedException e) {
+				logger.warning("Event publisher interrupted, pending events were not delivered");
+				return;
+			}
+			if (batch == null) {
+				return;
+			}
+
+			boolean delivered = false;
+			boolean rejected = false;
+			try {
+				String payload = createPayload(batch);
+				if (client instanceof MqmRestClientImpl) {
+					// unlike putEvents tells rejected events from unavailable server
+					((MqmRestClientImpl) client).sendEvents(payload);
+					delivered = true;
+				} else {
+					delivered = client.putEvents(payload);
+				}
+			} catch (RequestException e) {
+				if (Outbox.isRejected(e)) {
+					logger.log(Level.SEVERE, "Batch of " + batch.size() + " events rejected by the server and dropped", e);
+					rejected = true;
+				} else {
+					logger.warning("Failed to send events: " + e.getMessage());
+				}
+			} catch (RuntimeException e) {
+				logger.warning("Failed to send events: " + e.getClass().getName());
+			}
+
+			lock.lock();
+			try {
+				inFlightCount = 0;
+				if (delivered) {
+					deliveredCount += batch.size();
+					retryDelay = 0;
+				} else if (rejected) {
+					rejectedCount += batch.size();
+					retryDelay = 0;
+				} else {
+					carryOver.addAll(batch);
+					retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+					logger.warning("Failed to send " + batch.size() + " events, retrying in " + retryDelay + " ms");
+				}
+				done.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Waits until a batch is due and removes it from the queue.
+	 *
+	 * @return events to send or null if the publisher is closed and there is nothing left to send
+	 */
+	private List<JSONObject> takeBatch() throws InterruptedException {
+		lock.lock();
+		try {
+			long retryAt = retryDelay > 0 ? System.currentTimeMillis() + retryDelay : 0;
+			while (true) {
+				if (abandoned || (closed && queue.isEmpty() && carryOver.isEmpty())) {
+					queue.clear();
+					carryOver.clear();
+					done.signalAll();
+					return null;
+				}
+				long now = System.currentTimeMillis();
+				long wait;
+				if (!carryOver.isEmpty()) {
+					// failed batch is retried after back-off, closing or flush do not skip it not to hammer the server
+					wait = flushRequested ? 0 : retryAt - now;
+				} else if (queue.isEmpty()) {
+					wait = Long.MAX_VALUE;
+				} else if (closed || flushRequested || queue.size() >= maxBatchSize) {
+					wait = 0;
+				} else {
+					wait = oldestEventTime + flushInterval - now;
+				}
+				if (wait <= 0) {
+					break;
+				}
+				if (wait == Long.MAX_VALUE) {
+					wakeUp.await();
+				} else {
+					wakeUp.await(wait, TimeUnit.MILLISECONDS);
+				}
+			}
+
+			flushRequested = false;
+			List<JSONObject> batch = new ArrayList<>(carryOver);
+			carryOver.clear();
+			while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+				batch.add(queue.poll());
+			}
+			if (!queue.isEmpty()) {
+				// remaining events got their turn only now
+				oldestEventTime = System.currentTimeMillis();
+			}
+			inFlightCount = batch.size();
+			notFull.signalAll();
+			return batch;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private String createPayload(List<JSONObject> batch) {
+		JSONObject payload = new JSONObject();
+		payload.put("server", server);
+		payload.put("events", JSONArray.fromObject(batch));
+		return payload.toString();
+	}
+}
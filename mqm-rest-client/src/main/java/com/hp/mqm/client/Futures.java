@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Waiting for single-flight tasks shared by several callers.
+ */
+final class Futures {
+
+	interface CauseMapper {
+
+		/**
+		 * @return exception reporting checked exception the task failed with
+		 */
+		RuntimeException map(Throwable cause);
+	}
+
+	private Futures() {
+	}
+
+	/**
+	 * Waits for the task result. The task runs requests bounded by connection timeouts, so interruption does not stop
+	 * the waiting, it is restored once the task completed. Unchecked failure of the task is rethrown as it is, checked
+	 * one is reported by the exception given by <code>causeMapper</code>.
+	 */
+	static <T> T awaitUninterruptibly(Future<T> task, CauseMapper causeMapper) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw causeMapper.map(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
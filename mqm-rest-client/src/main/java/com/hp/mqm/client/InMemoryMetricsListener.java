@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.model.EndpointMetrics;
+import com.hp.mqm.client.model.MetricsSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics listener keeping counters and latency histograms per endpoint in memory. Recording is lock free and does
+ * not allocate once an endpoint has been seen; {@link #getSnapshot()} exports the current state.
+ */
+public class InMemoryMetricsListener implements MetricsListener {
+
+	private static final int STATUS_CODE_SLOTS = 600;
+
+	// endpoint stats by method and endpoint
+	private final ConcurrentMap<String, ConcurrentMap<String, EndpointStats>> endpoints = new ConcurrentHashMap<>();
+	private final AtomicLong logins = new AtomicLong();
+	private final AtomicLong failedLogins = new AtomicLong();
+	private final AtomicLong totalLoginTime = new AtomicLong();
+	private final AtomicLong connectionLeases = new AtomicLong();
+	private final AtomicLong totalConnectionWait = new AtomicLong();
+	private final AtomicLong maxConnectionWait = new AtomicLong();
+
+	@Override
+	public void requestCompleted(String method, String endpoint, int statusCode, long latency, long bytesSent, long bytesReceived) {
+		EndpointStats stats = getStats(method, endpoint);
+		stats.count.incrementAndGet();
+		if (statusCode < 0 || statusCode >= 400) {
+			stats.errors.incrementAndGet();
+		}
+		// slot 0 counts requests without a valid response
+		stats.statusCodes.incrementAndGet(statusCode > 0 && statusCode < STATUS_CODE_SLOTS ? statusCode : 0);
+		stats.totalLatency.addAndGet(latency);
+		updateMax(stats.maxLatency, latency);
+		stats.latencyHistogram.incrementAndGet(EndpointMetrics.getLatencyBucket(latency));
+		stats.bytesSent.addAndGet(bytesSent);
+		if (bytesReceived > 0) {
+			stats.bytesReceived.addAndGet(bytesReceived);
+		}
+	}
+
+	@Override
+	public void requestRetried(String method, String endpoint, int statusCode) {
+		getStats(method, endpoint).retries.incrementAndGet();
+	}
+
+	@Override
+	public void contentCompressed(String method, String endpoint, boolean request, long uncompressedBytes, long compressedBytes) {
+		EndpointStats stats = getStats(method, endpoint);
+		(request ? stats.requestBytesSaved : stats.responseBytesSaved).addAndGet(uncompressedBytes - compressedBytes);
+	}
+
+	@Override
+	public void loginCompleted(long latency, boolean successful) {
+		logins.incrementAndGet();
+		if (!successful) {
+			failedLogins.incrementAndGet();
+		}
+		totalLoginTime.addAndGet(latency);
+	}
+
+	@Override
+	public void connectionLeased(long waitTime) {
+		connectionLeases.incrementAndGet();
+		totalConnectionWait.addAndGet(waitTime);
+		updateMax(maxConnectionWait, waitTime);
+	}
+
+	/**
+	 * @return copy of the current counters; counters of a single endpoint are not read atomically
+	 */
+	public MetricsSnapshot getSnapshot() {
+		List<EndpointMetrics> endpointMetrics = new ArrayList<>();
+		for (EndpointStats stats : getAllStats()) {
+			Map<Integer, Long> statusCodes = new HashMap<>();
+			for (int i = 0; i < STATUS_CODE_SLOTS; i++) {
+				long statusCount = stats.statusCodes.get(i);
+				if (statusCount > 0) {
+					statusCodes.put(i > 0 ? i : -1, statusCount);
+				}
+			}
+			long[] latencyHistogram = new long[stats.latencyHistogram.length()];
+			for (int i = 0; i < latencyHistogram.length; i++) {
+				latencyHistogram[i] = stats.latencyHistogram.get(i);
+			}
+			endpointMetrics.add(new EndpointMetrics(stats.method, stats.endpoint, stats.count.get(), stats.errors.get(),
+					stats.retries.get(), statusCodes, stats.totalLatency.get(), stats.maxLatency.get(), latencyHistogram,
+					stats.bytesSent.get(), stats.bytesReceived.get(), stats.requestBytesSaved.get(), stats.responseBytesSaved.get()));
+		}
+		Collections.sort(endpointMetrics, new Comparator<EndpointMetrics>() {
+			@Override
+			public int compare(EndpointMetrics o1, EndpointMetrics o2) {
+				int byEndpoint = o1.getEndpoint().compareTo(o2.getEndpoint());
+				return byEndpoint != 0 ? byEndpoint : o1.getMethod().compareTo(o2.getMethod());
+			}
+		});
+		return new MetricsSnapshot(System.currentTimeMillis(), endpointMetrics, logins.get(), failedLogins.get(),
+				totalLoginTime.get(), connectionLeases.get(), totalConnectionWait.get(), maxConnectionWait.get());
+	}
+
+	/**
+	 * Clears all the counters.
+	 */
+	public void reset() {
+		endpoints.clear();
+		logins.set(0);
+		failedLogins.set(0);
+		totalLoginTime.set(0);
+		connectionLeases.set(0);
+		totalConnectionWait.set(0);
+		maxConnectionWait.set(0);
+	}
+
+	private EndpointStats getStats(String method, String endpoint) {
+		ConcurrentMap<String, EndpointStats> methodEndpoints = endpoints.get(method);
+		if (methodEndpoints == null) {
+			ConcurrentMap<String, EndpointStats> created = new ConcurrentHashMap<>();
+			methodEndpoints = endpoints.putIfAbsent(method, created);
+			if (methodEndpoints == null) {
+				methodEndpoints = created;
+			}
+		}
+		EndpointStats stats = methodEndpoints.get(endpoint);
+		if (stats == null) {
+			EndpointStats created = new EndpointStats(method, endpoint);
+			stats = methodEndpoints.putIfAbsent(endpoint, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		return stats;
+	}
+
+	private List<EndpointStats> getAllStats() {
+		List<EndpointStats> stats = new ArrayList<>();
+		for (ConcurrentMap<String, EndpointStats> methodEndpoints : endpoints.values()) {
+			stats.addAll(methodEndpoints.values());
+		}
+		return stats;
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	private static final class EndpointStats {
+
+		private final String method;
+		private final String endpoint;
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLongArray statusCodes = new AtomicLongArray(STATUS_CODE_SLOTS);
+		private final AtomicLong totalLatency = new AtomicLong();
+		private final AtomicLong maxLatency = new AtomicLong();
+		private final AtomicLongArray latencyHistogram = new AtomicLongArray(EndpointMetrics.getLatencyBuckets().length + 1);
+		private final AtomicLong bytesSent = new AtomicLong();
+		private final AtomicLong bytesReceived = new AtomicLong();
+		private final AtomicLong requestBytesSaved = new AtomicLong();
+		private final AtomicLong responseBytesSaved = new AtomicLong();
+
+		private EndpointStats(String method, String endpoint) {
+			this.method = method;
+			this.endpoint = endpoint;
+		}
+	}
+}
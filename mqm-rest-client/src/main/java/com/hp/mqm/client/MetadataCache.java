@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.model.CacheStats;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Read-through cache of metadata lookups. Values expire after the configured time to live and the least recently
+ * used value is evicted when the cache is full. Loading is single-flight: concurrent lookups of a missing key wait
+ * for one load instead of sending the same request several times.
+ */
+final class MetadataCache {
+
+	private static final Futures.CauseMapper ILLEGAL_STATE = new Futures.CauseMapper() {
+		@Override
+		public RuntimeException map(Throwable cause) {
+			return new IllegalStateException(cause);
+		}
+	};
+
+	private final long timeToLive;
+	private final int maxSize;
+	private final Map<String, CachedValue> entries;
+	private final Map<String, FutureTask<Object>> loading = new HashMap<>();
+	private long generation;
+	private long hits;
+	private long misses;
+	private long loads;
+	private long evictions;
+
+	/**
+	 * @param timeToLive how long values are kept in milliseconds
+	 * @param maxSize    maximum number of cached values
+	 */
+	MetadataCache(long timeToLive, final int maxSize) {
+		this.timeToLive = timeToLive;
+		this.maxSize = maxSize;
+		entries = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+				if (size() > MetadataCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns cached value of the key, loads it first when it is missing or expired. Failed load is not cached, the
+	 * exception is thrown to all callers waiting for it.
+	 */
+	@SuppressWarnings("unchecked")
+	<V> V get(String key, final Callable<V> loader) {
+		FutureTask<Object> task;
+		boolean owner = false;
+		long loadGeneration;
+		synchronized (this) {
+			CachedValue entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expiry > System.currentTimeMillis()) {
+					hits++;
+					return (V) entry.value;
+				}
+				entries.remove(key);
+			}
+			misses++;
+			loadGeneration = generation;
+			task = loading.get(key);
+			if (task == null) {
+				task = new FutureTask<>(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return loader.call();
+					}
+				});
+				loading.put(key, task);
+				loads++;
+				owner = true;
+			}
+		}
+		if (owner) {
+			task.run();
+			Object value = null;
+			boolean loaded = false;
+			try {
+				value = task.get();
+				loaded = true;
+			} catch (ExecutionException | InterruptedException e) {
+				// failure is reported to every caller by Futures.awaitUninterruptibly()
+			}
+			synchronized (this) {
+				loading.remove(key);
+				// value loaded while the cache was being invalidated may be stale already
+				if (loaded && loadGeneration == generation) {
+					entries.put(key, new CachedValue(value, System.currentTimeMillis() + timeToLive));
+				}
+			}
+		}
+		return (V) Futures.awaitUninterruptibly(task, ILLEGAL_STATE);
+	}
+
+	/**
+	 * Drops all cached values; loads in progress are not cached when they complete.
+	 */
+	synchronized void invalidateAll() {
+		entries.clear();
+		generation++;
+	}
+
+	synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, loads, evictions, entries.size());
+	}
+
+	private static class CachedValue {
+
+		private final Object value;
+		private final long expiry;
+
+		private CachedValue(Object value, long expiry) {
+			this.value = value;
+			this.expiry = expiry;
+		}
+	}
+}
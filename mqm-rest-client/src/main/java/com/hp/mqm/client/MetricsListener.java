@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+/**
+ * Receives measurements of the REST calls made by the client (see {@link MqmConnectionConfig#setMetricsListener(MetricsListener)}).
+ * Methods are called on the thread which made the call (or on an I/O dispatcher thread of the async client), so they
+ * have to be fast and thread safe. Exceptions thrown by the listener are logged and ignored.
+ *
+ * Requests are identified by the URI template they were created from rather than by the resolved URI, e.g.
+ * <code>analytics/ci/servers/{0}/jobs/{1}/configuration</code> or <code>workspaces/{workspaceId}/releases</code>,
+ * so that the number of distinct endpoints stays small.
+ *
+ * @see InMemoryMetricsListener
+ */
+public interface MetricsListener {
+
+	/**
+	 * Called once the response headers of a request are received or the request fails with an I/O error.
+	 *
+	 * @param method        HTTP method
+	 * @param endpoint      URI template of the request
+	 * @param statusCode    HTTP status code, -1 if no response was received
+	 * @param latency       time until the response headers were received (or the failure) in nanoseconds
+	 * @param bytesSent     size of the request body as written to the connection (as declared by the entity in the async
+	 *                      client), 0 if there is no body
+	 * @param bytesReceived size of the response body as declared by the server, -1 if unknown
+	 */
+	void requestCompleted(String method, String endpoint, int statusCode, long latency, long bytesSent, long bytesReceived);
+
+	/**
+	 * Called when a request is sent again, e.g. after its session expired.
+	 *
+	 * @param method     HTTP method
+	 * @param endpoint   URI template of the request
+	 * @param statusCode HTTP status code of the previous attempt, -1 if no response was received
+	 */
+	void requestRetried(String method, String endpoint, int statusCode);
+
+	/**
+	 * Called when a request body was sent compressed or a compressed response body was read.
+	 *
+	 * @param method            HTTP method
+	 * @param endpoint          URI template of the request
+	 * @param request           true for the request body, false for the response body
+	 * @param uncompressedBytes size of the body
+	 * @param compressedBytes   size of the body as transferred
+	 */
+	void contentCompressed(String method, String endpoint, boolean request, long uncompressedBytes, long compressedBytes);
+
+	/**
+	 * Called after each sign-in.
+	 *
+	 * @param latency    duration of the sign-in in nanoseconds
+	 * @param successful false if the sign-in failed
+	 */
+	void loginCompleted(long latency, boolean successful);
+
+	/**
+	 * Called when a connection is leased from the pool of the blocking client.
+	 *
+	 * @param waitTime time spent waiting for the connection in nanoseconds
+	 */
+	void connectionLeased(long waitTime);
+}
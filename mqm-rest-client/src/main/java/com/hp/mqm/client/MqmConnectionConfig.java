@@ -15,6 +15,9 @@
 
 package com.hp.mqm.client;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 public class MqmConnectionConfig {
 
     private String location;
@@ -30,6 +33,28 @@ public class MqmConnectionConfig {
     private Integer defaultConnectionTimeout;
     private Integer defaultConnectionRequestTimeout;
 
+    private Integer maxConnectionsTotal;
+    private Integer maxConnectionsPerRoute;
+    private Integer validateAfterInactivity;
+    private Integer connectionTimeToLive;
+    private Integer idleConnectionTimeout;
+    private Integer closeTimeout;
+    private Integer asyncIoThreadCount;
+    private Integer sessionLifetime;
+    private Integer sessionRefreshMargin;
+    private Integer taskPollSocketTimeout;
+    private Integer metadataCacheTimeToLive;
+    private Integer metadataCacheSize;
+    private Integer serverCapabilitiesTimeToLive;
+    private MetricsListener metricsListener;
+    private Integer connectionLeakThreshold;
+    private Boolean responseCompression;
+    private Integer requestCompressionThreshold;
+    private RetryPolicy retryPolicy;
+    private final Map<EndpointCategory, RetryPolicy> retryPolicies = new EnumMap<>(EndpointCategory.class);
+    private CircuitBreakerPolicy circuitBreakerPolicy;
+    private final Map<EndpointCategory, CircuitBreakerPolicy> circuitBreakerPolicies = new EnumMap<>(EndpointCategory.class);
+
     public MqmConnectionConfig(String location, String sharedSpace, String username, String password, String clientType) {
         this.location = location;
         this.sharedSpace = sharedSpace;
@@ -135,4 +160,273 @@ public class MqmConnectionConfig {
     public void setProxyCredentials(ProxyCredentials proxyCredentials) {
         this.proxyCredentials = proxyCredentials;
     }
+
+    public Integer getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    /**
+     * @param maxConnectionsTotal maximum number of pooled connections (all routes together)
+     */
+    public void setMaxConnectionsTotal(Integer maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    public Integer getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute maximum number of pooled connections to a single route (MQM server, possibly via proxy)
+     */
+    public void setMaxConnectionsPerRoute(Integer maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Integer getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * @param validateAfterInactivity period of inactivity in milliseconds after which a pooled connection is re-validated
+     *                                before it is leased again
+     */
+    public void setValidateAfterInactivity(Integer validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public Integer getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    /**
+     * @param connectionTimeToLive maximum life time of a pooled connection in milliseconds, regardless of keep-alive
+     */
+    public void setConnectionTimeToLive(Integer connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    public Integer getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * @param idleConnectionTimeout period of inactivity in milliseconds after which a pooled connection is closed in
+     *                              background, together with connections past their time to live; 0 disables the
+     *                              eviction; defaults to 1 minute
+     */
+    public void setIdleConnectionTimeout(Integer idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    public Integer getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    /**
+     * @param closeTimeout how long in milliseconds <code>close()</code> of the client waits for requests in flight
+     *                     before the connections are shut down; defaults to 30 seconds
+     */
+    public void setCloseTimeout(Integer closeTimeout) {
+        this.closeTimeout = closeTimeout;
+    }
+
+    public Integer getAsyncIoThreadCount() {
+        return asyncIoThreadCount;
+    }
+
+    /**
+     * @param asyncIoThreadCount number of I/O dispatcher threads used by {@link AsyncMqmRestClient}
+     *                           (defaults to number of available processors)
+     */
+    public void setAsyncIoThreadCount(Integer asyncIoThreadCount) {
+        this.asyncIoThreadCount = asyncIoThreadCount;
+    }
+
+    public Integer getSessionLifetime() {
+        return sessionLifetime;
+    }
+
+    /**
+     * @param sessionLifetime life time of MQM session in milliseconds; used to plan session refresh when the security
+     *                        cookie carries no expiry
+     */
+    public void setSessionLifetime(Integer sessionLifetime) {
+        this.sessionLifetime = sessionLifetime;
+    }
+
+    public Integer getSessionRefreshMargin() {
+        return sessionRefreshMargin;
+    }
+
+    /**
+     * @param sessionRefreshMargin how many milliseconds before the session expires it is refreshed in background
+     *                             (defaults to 60 seconds); 0 disables the proactive refresh
+     */
+    public void setSessionRefreshMargin(Integer sessionRefreshMargin) {
+        this.sessionRefreshMargin = sessionRefreshMargin;
+    }
+
+    public Integer getTaskPollSocketTimeout() {
+        return taskPollSocketTimeout;
+    }
+
+    /**
+     * @param taskPollSocketTimeout socket timeout in milliseconds of the dedicated connection polling for tasks
+     *                              (see {@link TaskChannel}, defaults to 2 minutes); should exceed the time the
+     *                              server holds the poll
+     */
+    public void setTaskPollSocketTimeout(Integer taskPollSocketTimeout) {
+        this.taskPollSocketTimeout = taskPollSocketTimeout;
+    }
+
+    public Integer getMetadataCacheTimeToLive() {
+        return metadataCacheTimeToLive;
+    }
+
+    /**
+     * @param metadataCacheTimeToLive how long results of release, workspace, taxonomy, list item and field metadata
+     *                                lookups are cached in milliseconds; caching is disabled by default
+     */
+    public void setMetadataCacheTimeToLive(Integer metadataCacheTimeToLive) {
+        this.metadataCacheTimeToLive = metadataCacheTimeToLive;
+    }
+
+    public Integer getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * @param metadataCacheSize maximum number of cached lookup results (defaults to 1000), the least recently used
+     *                          result is evicted first
+     */
+    public void setMetadataCacheSize(Integer metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    public Integer getServerCapabilitiesTimeToLive() {
+        return serverCapabilitiesTimeToLive;
+    }
+
+    /**
+     * @param serverCapabilitiesTimeToLive how long server capabilities (e.g. support of base64 encoded job names) are
+     *                                     remembered in milliseconds (defaults to 1 hour), they are probed again after
+     *                                     re-login anyway; 0 probes them on every use
+     */
+    public void setServerCapabilitiesTimeToLive(Integer serverCapabilitiesTimeToLive) {
+        this.serverCapabilitiesTimeToLive = serverCapabilitiesTimeToLive;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * @param metricsListener receives latency, status code and payload size of every REST call, re-logins and
+     *                        connection pool waits (e.g. {@link InMemoryMetricsListener}); none by default
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    public Integer getConnectionLeakThreshold() {
+        return connectionLeakThreshold;
+    }
+
+    /**
+     * @param connectionLeakThreshold time in milliseconds after which a connection still leased from the pool is logged
+     *                                as leaked together with the call site which acquired it; each lease captures a
+     *                                stack trace, so it is meant for diagnostics; disabled by default
+     */
+    public void setConnectionLeakThreshold(Integer connectionLeakThreshold) {
+        this.connectionLeakThreshold = connectionLeakThreshold;
+    }
+
+    public Boolean getResponseCompression() {
+        return responseCompression;
+    }
+
+    /**
+     * @param responseCompression whether gzip compressed responses are accepted; enabled by default
+     */
+    public void setResponseCompression(Boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    public Integer getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+     * @param requestCompressionThreshold size in bytes from which JSON request bodies are sent gzip compressed;
+     *                                    disabled by default as the server has to accept compressed bodies
+     */
+    public void setRequestCompressionThreshold(Integer requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param retryPolicy how requests failing with a transient error are repeated unless their endpoint category has
+     *                    a policy of its own; defaults to {@link RetryPolicy#DEFAULT}
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return policy set for the given endpoint category, null if the category uses the common one
+     */
+    public RetryPolicy getRetryPolicy(EndpointCategory category) {
+        return retryPolicies.get(category);
+    }
+
+    /**
+     * @param category    endpoint category
+     * @param retryPolicy how requests of the category failing with a transient error are repeated, null to use the
+     *                    common policy; task polling is not repeated by default as its callers poll in a loop anyway
+     */
+    public void setRetryPolicy(EndpointCategory category, RetryPolicy retryPolicy) {
+        if (retryPolicy != null) {
+            retryPolicies.put(category, retryPolicy);
+        } else {
+            retryPolicies.remove(category);
+        }
+    }
+
+    public CircuitBreakerPolicy getCircuitBreakerPolicy() {
+        return circuitBreakerPolicy;
+    }
+
+    /**
+     * @param circuitBreakerPolicy when calls to endpoints of a category fail fast instead of waiting for the timeouts,
+     *                             unless the category has a policy of its own; defaults to {@link CircuitBreakerPolicy#DEFAULT}
+     */
+    public void setCircuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+        this.circuitBreakerPolicy = circuitBreakerPolicy;
+    }
+
+    /**
+     * @return policy set for the given endpoint category, null if the category uses the common one
+     */
+    public CircuitBreakerPolicy getCircuitBreakerPolicy(EndpointCategory category) {
+        return circuitBreakerPolicies.get(category);
+    }
+
+    /**
+     * @param category             endpoint category
+     * @param circuitBreakerPolicy when calls to endpoints of the category fail fast, null to use the common policy;
+     *                             slow calls are not considered for task polling (the server holds the poll) and for
+     *                             test results (the call includes upload of the report) by default
+     */
+    public void setCircuitBreakerPolicy(EndpointCategory category, CircuitBreakerPolicy circuitBreakerPolicy) {
+        if (circuitBreakerPolicy != null) {
+            circuitBreakerPolicies.put(category, circuitBreakerPolicy);
+        } else {
+            circuitBreakerPolicies.remove(category);
+        }
+    }
 }
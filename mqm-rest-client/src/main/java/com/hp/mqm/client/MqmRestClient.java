@@ -21,13 +21,14 @@ import net.sf.json.JSONObject;
 import java.io.File;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Client for connection to MQM public API. It wraps whole http communication with MQM server. Client handles login automatically.
- * When client is not intended to use anymore or for a long time, method release() must be called.
+ * When client is not intended to use anymore, method close() must be called to release pooled connections.
  * All methods can throw {@link com.hp.mqm.client.exception.RequestException} when unexpected result is returned from
  * MQM server and {@link com.hp.mqm.client.exception.RequestErrorException} in case of IO error or error in the HTTP protocol.
- * Because client cares about login automatically all methods (except release()) can
+ * Because client cares about login automatically all methods (except close()) can
  * throw {@link com.hp.mqm.client.exception.LoginException} (as a special case of RequestException) in case authentication failure and
  * {@link com.hp.mqm.client.exception.LoginErrorException} (as a special case of RequestErrorException) in case of IO error or
  * error in the HTTP protocol during authentication.
@@ -66,6 +67,16 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	 */
 	Boolean isTestResultRelevant(String serverIdentity, String jobName);
 
+	/**
+	 * Same as {@link #isTestResultRelevant(String, String)} for many jobs at once, the preflight requests are sent
+	 * concurrently. The first failed request cancels the ones still in flight and its exception is thrown.
+	 *
+	 * @param jobs        jobs to check
+	 * @param parallelism maximum number of requests in flight, values lower than 2 check jobs one by one
+	 * @return relevance of the test results per job, in the order of the given jobs
+	 */
+	Map<JobReference, Boolean> areTestResultsRelevant(Collection<JobReference> jobs, int parallelism);
+
 
 	/**
 	 * Get status of the test result post operation
@@ -175,10 +186,10 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	PagedList<Workspace> queryWorkspaces(String name, int offset, int limit);
 
 	/**
-	 * Get workspaces of given IDs
+	 * Get workspaces of given IDs. Long lists are split into several requests sent concurrently.
 	 *
-	 * @param workspaceIds list of workspaceIds - maximum size of list is 100 values
-	 * @return workspaces matching given IDs
+	 * @param workspaceIds list of workspaceIds
+	 * @return workspaces matching given IDs, in the order of the IDs
 	 */
 	List<Workspace> getWorkspaces(List<Long> workspaceIds);
 
@@ -197,11 +208,11 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	PagedList<Taxonomy> queryTaxonomies(String name, long workspaceId, int offset, int limit);
 
 	/**
-	 * Get taxonomies with given IDs
+	 * Get taxonomies with given IDs. Long lists are split into several requests sent concurrently.
 	 *
-	 * @param taxonomyIds list of taxonomyIds - maximum size of list is 100 values
+	 * @param taxonomyIds list of taxonomyIds
 	 * @param workspaceId workspace
-	 * @return taxonomies matching given IDs
+	 * @return taxonomies matching given IDs, in the order of the IDs
 	 */
 	List<Taxonomy> getTaxonomies(List<Long> taxonomyIds, long workspaceId);
 
@@ -220,11 +231,11 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	PagedList<ListItem> queryListItems(String logicalListName, String name, long workspaceId, int offset, int limit);
 
 	/**
-	 * Get listItems of given IDs in given workspace
+	 * Get listItems of given IDs in given workspace. Long lists are split into several requests sent concurrently.
 	 *
-	 * @param itemIds
-	 * @param workspaceId
-	 * @return
+	 * @param itemIds     list of itemIds
+	 * @param workspaceId workspace
+	 * @return list items matching given IDs, in the order of the IDs
 	 */
 	List<ListItem> getListItems(List<String> itemIds, long workspaceId);
 
@@ -236,11 +247,61 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	 */
 	List<FieldMetadata> getFieldsMetadata(long workspaceId);
 
+	/**
+	 * @return counters of the cache of release, workspace, taxonomy, list item and field metadata lookups (all zero
+	 * when caching is disabled, see {@link MqmConnectionConfig#setMetadataCacheTimeToLive(Integer)})
+	 */
+	CacheStats getMetadataCacheStats();
+
+	/**
+	 * Drops all cached lookup results. Done automatically when a pipeline is created or updated.
+	 */
+	void invalidateMetadataCache();
+
     JSONObject postEntities(long workspaceId, String entityCollectionName, String entityJson) ;
 
 	List<Entity> getEntities(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields);
 
-    PagedList<Entity> deleteEntities(long workspaceId, String entityCollectionName, Collection<Long> entitiesIds);
+	/**
+	 * Same as {@link #getEntities(long, String, Collection, Collection)}, but once the first page reports the total
+	 * count, the remaining pages are fetched concurrently. Items are returned in offset order; the first failed page
+	 * cancels the pages still in flight and its exception is thrown.
+	 *
+	 * @param parallelism maximum number of page requests in flight, values lower than 2 fetch pages one by one
+	 */
+	List<Entity> getEntities(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields, int parallelism);
+
+	/**
+	 * Lazily pages through entities of given collection. The next page is prefetched while the current one is being
+	 * consumed, so at most two pages are held in memory regardless of the collection size. Close the iterator when
+	 * abandoning the iteration early.
+	 *
+	 * @return iterator over all entities matching the conditions, ordered by id
+	 */
+	CloseableIterator<Entity> iterateEntities(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields);
+
+	/**
+	 * Same as {@link #iterateEntities(long, String, Collection, Collection)}, passing every entity to the callback.
+	 * Exception thrown by the callback stops the iteration and is propagated.
+	 */
+	void forEachEntity(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields, EntityCallback callback);
+
+	/**
+	 * Deletes entities by ids of any count. Ids are de-duplicated and split into chunks that fit in a single request,
+	 * chunks are deleted concurrently. The first failed chunk cancels the chunks still in flight and its exception is
+	 * thrown, entities of the chunks already done stay deleted.
+	 *
+	 * @return all deleted entities, null when no ids are given
+	 */
+	PagedList<Entity> deleteEntities(long workspaceId, String entityCollectionName, Collection<Long> entitiesIds);
+
+	/**
+	 * Deletes all entities matching the conditions (see {@link QueryHelper}) by a single request.
+	 *
+	 * @param conditions conditions that must all hold, at least one is required
+	 * @return deleted entities
+	 */
+	PagedList<Entity> deleteEntitiesByQuery(long workspaceId, String entityCollectionName, Collection<String> conditions);
 
     JSONObject updateEntity(long workspaceId, String entityCollectionName, long id, String entityJson);
 
@@ -253,6 +314,7 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	 *
 	 * @param eventsJSON JSON serialized events list
 	 * @return notifies the consumer about the final result of an action
+	 * @see EventPublisher for batched sending of individual events
 	 */
 	boolean putEvents(String eventsJSON);
 
@@ -278,6 +340,16 @@ public interface MqmRestClient extends BaseMqmRestClient {
 	 */
 	int putAbridgedResult(String selfIdentity, String taskId, String contentJSON);
 
+	/**
+	 * Starts receiving tasks of the Abridged Connectivity Mode, see {@link TaskChannel}. Tasks are passed to the handler
+	 * by given number of workers and the results returned by the handler are submitted to the server.
+	 * Close the channel to stop receiving tasks.
+	 *
+	 * @param workers number of tasks executed concurrently
+	 * @return started channel
+	 */
+	TaskChannel openTaskChannel(String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion, TaskHandler handler, int workers);
+
 	/**
 	 * @return BDI configuration of the current tenant
 	 */
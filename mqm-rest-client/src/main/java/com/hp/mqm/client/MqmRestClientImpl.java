@@ -17,6 +17,7 @@ package com.hp.mqm.client;
 
 import com.hp.mqm.client.exception.*;
 import com.hp.mqm.client.exception.FileNotFoundException;
+import com.hp.mqm.client.internal.GZipInputStreamSourceEntity;
 import com.hp.mqm.client.model.*;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
@@ -24,14 +25,16 @@ import net.sf.json.JSONNull;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
@@ -43,6 +46,7 @@ import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPOutputStream;
@@ -50,34 +54,48 @@ import java.util.zip.GZIPOutputStream;
 public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestClient {
 	private static final Logger logger = Logger.getLogger(MqmRestClientImpl.class.getName());
 
-	private static final String DATETIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
-	private static final String PREFIX_CI = "analytics/ci/";
-	private static final String PREFIX_BDI = "analytics/bdi/";
-	private static final String URI_TEST_RESULT_PUSH = PREFIX_CI + "test-results?skip-errors={0}";
-	private static final String URI_TEST_RESULT_STATUS = PREFIX_CI + "test-results/{0}";
-	private static final String URI_TEST_RESULT_LOG = URI_TEST_RESULT_STATUS + "/log";
-	private static final String URI_JOB_CONFIGURATION = "analytics/ci/servers/{0}/jobs/{1}/configuration";
-	private static final String URI_DELETE_NODES_TESTS = "analytics/ci/pipelines/{0}/jobs/{1}/tests";
-	private static final String URI_PREFLIGHT = "analytics/ci/servers/{0}/jobs/{1}/tests-result-preflight";
-	private static final String URI_BASE64SUPPORT = "analytics/ci/servers/tests-result-preflight-base64";
-	private static final String URI_WORKSPACE_BY_JOB_AND_SERVER = PREFIX_CI + "servers/{0}/jobs/{1}/workspaceId";
-	private static final String URI_BDI_CONFIGURATION = PREFIX_BDI + "configuration";
-	private static final String URI_BDI_ACCESS_TOKEN = PREFIX_BDI + "token";
-	private static final String URI_RELEASES = "releases";
-	private static final String URI_WORKSPACES = "workspaces";
-	private static final String URI_LIST_ITEMS = "list_nodes";
-	private static final String URI_METADATA_FIELDS = "metadata/fields";
-	private static final String URI_PUT_EVENTS = "analytics/ci/events";
-	private static final String URI_GET_ABRIDGED_TASKS = "analytics/ci/servers/{0}/tasks?self-type={1}&self-url={2}&api-version={3}&sdk-version={4}";
-	private static final String URI_PUT_ABRIDGED_RESULT = "analytics/ci/servers/{0}/tasks/{1}/result";
-	private static final String URI_TAXONOMY_NODES = "taxonomy_nodes";
-
-	private static final String HEADER_ACCEPT = "Accept";
-
-	private static final int DEFAULT_OFFSET = 0;
-	private static final int DEFAULT_LIMIT = 100;
-	private static final int MAX_GET_LIMIT = 1000;
-	private static final String CONTENT_ENCODING_GZIP = "gzip";
+	static final String DATETIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
+	static final String PREFIX_CI = "analytics/ci/";
+	static final String PREFIX_BDI = "analytics/bdi/";
+	static final String URI_TEST_RESULT_PUSH = PREFIX_CI + "test-results?skip-errors={0}";
+	static final String URI_TEST_RESULT_STATUS = PREFIX_CI + "test-results/{0}";
+	static final String URI_TEST_RESULT_LOG = URI_TEST_RESULT_STATUS + "/log";
+	static final String URI_JOB_CONFIGURATION = "analytics/ci/servers/{0}/jobs/{1}/configuration";
+	static final String URI_DELETE_NODES_TESTS = "analytics/ci/pipelines/{0}/jobs/{1}/tests";
+	static final String URI_PREFLIGHT = "analytics/ci/servers/{0}/jobs/{1}/tests-result-preflight";
+	static final String URI_BASE64SUPPORT = "analytics/ci/servers/tests-result-preflight-base64";
+	static final String URI_WORKSPACE_BY_JOB_AND_SERVER = PREFIX_CI + "servers/{0}/jobs/{1}/workspaceId";
+	static final String URI_BDI_CONFIGURATION = PREFIX_BDI + "configuration";
+	static final String URI_BDI_ACCESS_TOKEN = PREFIX_BDI + "token";
+	static final String URI_RELEASES = "releases";
+	static final String URI_WORKSPACES = "workspaces";
+	static final String URI_LIST_ITEMS = "list_nodes";
+	static final String URI_METADATA_FIELDS = "metadata/fields";
+	static final String URI_PUT_EVENTS = "analytics/ci/events";
+	static final String URI_GET_ABRIDGED_TASKS = "analytics/ci/servers/{0}/tasks?self-type={1}&self-url={2}&api-version={3}&sdk-version={4}";
+	static final String URI_PUT_ABRIDGED_RESULT = "analytics/ci/servers/{0}/tasks/{1}/result";
+	static final String URI_TAXONOMY_NODES = "taxonomy_nodes";
+
+	static final String HEADER_ACCEPT = "Accept";
+
+	static final int DEFAULT_OFFSET = 0;
+	static final int DEFAULT_LIMIT = 100;
+	static final int MAX_GET_LIMIT = 1000;
+	static final String CONTENT_ENCODING_GZIP = "gzip";
+	static final int DEFAULT_METADATA_CACHE_SIZE = 1000;
+	static final int MAX_IDS_CONDITION_LENGTH = 2000;
+	static final int GET_BY_IDS_PARALLELISM = 4;
+	static final int DELETE_BY_IDS_PARALLELISM = 4;
+
+	private static final ResponseHandler<Integer> STATUS_CODE_HANDLER = new ResponseHandler<Integer>() {
+		@Override
+		public Integer handleResponse(HttpResponse response) {
+			return response.getStatusLine().getStatusCode();
+		}
+	};
+
+	private final Integer taskPollSocketTimeout;
+	private final MetadataCache metadataCache;
 
 	/**
 	 * Constructor for AbstractMqmRestClient.
@@ -86,139 +104,200 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 	 */
 	public MqmRestClientImpl(MqmConnectionConfig connectionConfig) {
 		super(connectionConfig);
+		taskPollSocketTimeout = connectionConfig.getTaskPollSocketTimeout();
+		if (connectionConfig.getMetadataCacheTimeToLive() != null && connectionConfig.getMetadataCacheTimeToLive() > 0) {
+			metadataCache = new MetadataCache(connectionConfig.getMetadataCacheTimeToLive(),
+					connectionConfig.getMetadataCacheSize() != null ? connectionConfig.getMetadataCacheSize() : DEFAULT_METADATA_CACHE_SIZE);
+		} else {
+			metadataCache = null;
+		}
 	}
 
 	@Override
 	public long postTestResult(InputStreamSource inputStreamSource, boolean skipErrors) {
-		return postTestResult(createGZipEntity(inputStreamSource.getInputStream()), skipErrors);
+		return postTestResult(new GZipInputStreamSourceEntity(inputStreamSource, ContentType.APPLICATION_XML), skipErrors);
 	}
 
 	@Override
-	public long postTestResult(File testResultReport, boolean skipErrors) {
-		try {
-			return postTestResult(createGZipEntity(new FileInputStream(testResultReport)), skipErrors);
-		} catch (java.io.FileNotFoundException fnfe) {
+	public long postTestResult(final File testResultReport, boolean skipErrors) {
+		if (!testResultReport.isFile()) {
 			logger.severe("file " + testResultReport + " not found");
 			return -1;
 		}
+		return postTestResult(new InputStreamSource() {
+			@Override
+			public InputStream getInputStream() {
+				try {
+					return new FileInputStream(testResultReport);
+				} catch (java.io.FileNotFoundException e) {
+					throw new FileNotFoundException("Cannot find test result file.", e);
+				}
+			}
+		}, skipErrors);
 	}
 
 	@Override
 	public Boolean isTestResultRelevant(String serverIdentity, String jobName) {
+		return isTestResultRelevant(serverIdentity, jobName, isBase64Supported());
+	}
 
-		URI supportsBase64Uri =createSharedSpaceInternalApiUri(URI_BASE64SUPPORT);
-		HttpGet request = new HttpGet(supportsBase64Uri);
-		HttpResponse response = null;
-		String jobNameForSending = jobName;
+	@Override
+	public Map<JobReference, Boolean> areTestResultsRelevant(Collection<JobReference> jobs, int parallelism) {
+		final boolean base64Supported = isBase64Supported();
+		List<JobReference> distinctJobs = new ArrayList<>(new LinkedHashSet<>(jobs));
+		List<Callable<Boolean>> calls = new ArrayList<>(distinctJobs.size());
+		for (final JobReference job : distinctJobs) {
+			calls.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return isTestResultRelevant(job.getServerIdentity(), job.getJobName(), base64Supported);
+				}
+			});
+		}
+		List<Boolean> relevant = invokeAll(calls, parallelism);
+		Map<JobReference, Boolean> ret = new LinkedHashMap<>();
+		for (int i = 0; i < distinctJobs.size(); i++) {
+			ret.put(distinctJobs.get(i), relevant.get(i));
+		}
+		return ret;
+	}
+
+	/**
+	 * Probes whether the server accepts base64 encoded job names, definite answer is remembered for the session.
+	 */
+	private boolean isBase64Supported() {
+		Boolean known = getBase64Supported();
+		if (known != null) {
+			return known;
+		}
 		logger.log(Level.INFO,"Check if octane support handling of base64");
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-				logger.log(Level.INFO,"Octane supports base64 encoding");
-				jobNameForSending = Base64.encodeBase64String(jobName.getBytes());
+			Boolean supported = execute(new HttpGet(createSharedSpaceInternalApiUri(URI_BASE64SUPPORT)), new ResponseHandler<Boolean>() {
+				@Override
+				public Boolean handleResponse(HttpResponse response) {
+					int statusCode = response.getStatusLine().getStatusCode();
+					if (statusCode == HttpStatus.SC_OK) {
+						return true;
+					} else if (statusCode == HttpStatus.SC_NOT_FOUND || statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED) {
+						// older server without the endpoint
+						return false;
+					}
+					return null;
+				}
+			});
+			if (supported == null) {
+				// not remembered, the server may be temporarily failing
+				logger.log(Level.INFO, "Base64 support could not be determined, job name is sent without encoding");
+				return false;
 			}
-		}catch (Exception ex){
+			logger.log(Level.INFO, supported ? "Octane supports base64 encoding" : "Octane does not support base64 encoding");
+			setBase64Supported(supported);
+			return supported;
+		} catch (Exception ex) {
+			// not remembered, the failure may be transient
 			logger.log(Level.INFO,"Octane does not support base64 encoding");
+			return false;
 		}
+	}
 
+	private Boolean isTestResultRelevant(String serverIdentity, String jobName, boolean base64Supported) {
+		String jobNameForSending = base64Supported ? Base64.encodeBase64String(jobName.getBytes()) : jobName;
 		logger.log(Level.INFO,String.format("Job name before encoding: %s, after encoding : %s",jobName,jobNameForSending));
 
 		URI getUri = createSharedSpaceInternalApiUri(URI_PREFLIGHT, serverIdentity, jobNameForSending);
 		try {
-			URIBuilder uriPreflight = new URIBuilder(
-					createSharedSpaceInternalApiUri(URI_PREFLIGHT, serverIdentity, jobNameForSending)
-			).addParameter("isBase64", "true");
+			URIBuilder uriPreflight = new URIBuilder(getUri).addParameter("isBase64", "true");
 
 			logger.log(Level.INFO,String.format("test preflight URI: %s",uriPreflight.build().getPath()));
 
-			getUri = uriPreflight.build();
+			getUri = sameEndpoint(uriPreflight.build(), getUri);
 		}catch (URISyntaxException ex){
 			logger.log(Level.SEVERE,"Error creating uri for test preflight!",ex);
 		}
 
-
-		request = new HttpGet(getUri);
-		response = null;
+		HttpGet request = new HttpGet(getUri);
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Result status retrieval failed", response);
-			}
-			return Boolean.parseBoolean(IOUtils.toString(response.getEntity().getContent(), "UTF-8"));
+			return execute(request, new ResponseHandler<Boolean>() {
+				@Override
+				public Boolean handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Result status retrieval failed", response);
+					}
+					return Boolean.parseBoolean(readContent(response));
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot obtain status.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
 	public JSONObject getBdiConfiguration() {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_BDI_CONFIGURATION));
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-
-			int statusCode = response.getStatusLine().getStatusCode();
-			if (statusCode == HttpStatus.SC_NO_CONTENT) {
-				logger.config("BDI is not configured in Octane");
-				return null;
-			}
+			return execute(request, new ResponseHandler<JSONObject>() {
+				@Override
+				public JSONObject handleResponse(HttpResponse response) throws IOException {
+					int statusCode = response.getStatusLine().getStatusCode();
+					if (statusCode == HttpStatus.SC_NO_CONTENT) {
+						logger.config("BDI is not configured in Octane");
+						return null;
+					}
 
-			if (statusCode != HttpStatus.SC_OK) {
-				throw createRequestException("BDI configuration retrieval failed", response);
-			}
+					if (statusCode != HttpStatus.SC_OK) {
+						throw createRequestException("BDI configuration retrieval failed", response);
+					}
 
-			String bdiConfiguration = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			return JSONObject.fromObject(bdiConfiguration);
+					return JSONObject.fromObject(readContent(response));
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot obtain status.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
 	public String getBdiTokenData() {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_BDI_ACCESS_TOKEN));
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-				return IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			} else {
-				throw createRequestException("BDI token retrieval failed", response);
-			}
+			return execute(request, new ResponseHandler<String>() {
+				@Override
+				public String handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+						return readContent(response);
+					} else {
+						throw createRequestException("BDI token retrieval failed", response);
+					}
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("failed to parse token data response", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
-	public List<String> getJobWorkspaceId(String ciServerId, String ciJobName) {
+	public List<String> getJobWorkspaceId(String ciServerId, final String ciJobName) {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_WORKSPACE_BY_JOB_AND_SERVER, ciServerId, ciJobName));
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-
-			int statusCode = response.getStatusLine().getStatusCode();
-			if (statusCode == HttpStatus.SC_NO_CONTENT) {
-				logger.info("Job " + ciJobName + " has no build context in Octane");
-				return new ArrayList<>();
-			}
+			return execute(request, new ResponseHandler<List<String>>() {
+				@Override
+				public List<String> handleResponse(HttpResponse response) throws IOException {
+					int statusCode = response.getStatusLine().getStatusCode();
+					if (statusCode == HttpStatus.SC_NO_CONTENT) {
+						logger.info("Job " + ciJobName + " has no build context in Octane");
+						return new ArrayList<>();
+					}
 
-			if (statusCode != HttpStatus.SC_OK) {
-				throw createRequestException("workspace retrieval failed", response);
-			}
+					if (statusCode != HttpStatus.SC_OK) {
+						throw createRequestException("workspace retrieval failed", response);
+					}
 
-			JSONArray workspaces = JSONArray.fromObject(IOUtils.toString(response.getEntity().getContent(), "UTF-8"));
-			return workspaces.subList(0, workspaces.size());
+					JSONArray workspaces = JSONArray.fromObject(readContent(response));
+					return workspaces.subList(0, workspaces.size());
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot obtain status.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
@@ -226,112 +305,158 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 	public TestResultStatus getTestResultStatus(long id) {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_TEST_RESULT_STATUS, id));
 
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Result status retrieval failed", response);
-			}
-			String json = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			JSONObject jsonObject = JSONObject.fromObject(json);
-			Date until = null;
-			if (jsonObject.has("until")) {
-				try {
-					until = parseDatetime(jsonObject.getString("until"));
-				} catch (ParseException e) {
-					throw new RequestErrorException("Cannot obtain status", e);
+			return execute(request, new ResponseHandler<TestResultStatus>() {
+				@Override
+				public TestResultStatus handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Result status retrieval failed", response);
+					}
+					JSONObject jsonObject = JSONObject.fromObject(readContent(response));
+					Date until = null;
+					if (jsonObject.has("until")) {
+						try {
+							until = parseDatetime(jsonObject.getString("until"));
+						} catch (ParseException e) {
+							throw new RequestErrorException("Cannot obtain status", e);
+						}
+					}
+					return new TestResultStatus(jsonObject.getString("status"), until);
 				}
-			}
-			return new TestResultStatus(jsonObject.getString("status"), until);
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot obtain status.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
-	public void getTestResultLog(long id, LogOutput output) {
+	public void getTestResultLog(long id, final LogOutput output) {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_TEST_RESULT_LOG, id));
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Log retrieval failed", response);
-			}
-			output.setContentType(response.getFirstHeader("Content-type").getValue());
-			InputStream is = response.getEntity().getContent();
-			IOUtils.copy(is, output.getOutputStream());
-			IOUtils.closeQuietly(is);
+			execute(request, new ResponseHandler<Void>() {
+				@Override
+				public Void handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Log retrieval failed", response);
+					}
+					output.setContentType(response.getFirstHeader("Content-type").getValue());
+					InputStream is = response.getEntity().getContent();
+					IOUtils.copy(is, output.getOutputStream());
+					IOUtils.closeQuietly(is);
+					return null;
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot obtain log.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
 	public JobConfiguration getJobConfiguration(String serverIdentity, String jobName) {
 		HttpGet request = new HttpGet(createSharedSpaceInternalApiUri(URI_JOB_CONFIGURATION, serverIdentity, jobName));
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Job configuration retrieval failed", response);
-			}
-			String json = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			try {
-				JSONObject jsonObject = JSONObject.fromObject(json);
-				List<Pipeline> pipelines = new LinkedList<>();
-				for (JSONObject relatedContext : getJSONObjectCollection(jsonObject, "data")) {
-					if ("pipeline".equals(relatedContext.getString("contextEntityType"))) {
-						pipelines.add(toPipeline(relatedContext));
-					} else {
-						logger.info("Context type '" + relatedContext.get("contextEntityType") + "' is not supported");
+			return execute(request, new ResponseHandler<JobConfiguration>() {
+				@Override
+				public JobConfiguration handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Job configuration retrieval failed", response);
+					}
+					String json = readContent(response);
+					try {
+						JSONObject jsonObject = JSONObject.fromObject(json);
+						List<Pipeline> pipelines = new LinkedList<>();
+						for (JSONObject relatedContext : getJSONObjectCollection(jsonObject, "data")) {
+							if ("pipeline".equals(relatedContext.getString("contextEntityType"))) {
+								pipelines.add(toPipeline(relatedContext));
+							} else {
+								logger.info("Context type '" + relatedContext.get("contextEntityType") + "' is not supported");
+							}
+						}
+						return new JobConfiguration(pipelines);
+					} catch (JSONException e) {
+						throw new RequestErrorException("Failed to obtain job configuration", e);
 					}
 				}
-				return new JobConfiguration(pipelines);
-			} catch (JSONException e) {
-				throw new RequestErrorException("Failed to obtain job configuration", e);
-			}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot retrieve job configuration from MQM.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
-	public Pipeline createPipeline(String serverIdentity, String projectName, String pipelineName, long workspaceId, Long releaseId, String structureJson, String serverJson) {
+	public Pipeline createPipeline(String serverIdentity, String projectName, final String pipelineName, final long workspaceId, Long releaseId, String structureJson, String serverJson) {
 		HttpPost request = new HttpPost(createSharedSpaceInternalApiUri(URI_JOB_CONFIGURATION, serverIdentity, projectName));
-		JSONObject pipelineObject = new JSONObject();
-		pipelineObject.put("contextEntityType", "pipeline");
-		pipelineObject.put("contextEntityName", pipelineName);
-		pipelineObject.put("workspaceId", workspaceId);
-		pipelineObject.put("releaseId", releaseId);
-		pipelineObject.put("server", JSONObject.fromObject(serverJson));
-		pipelineObject.put("structure", JSONObject.fromObject(structureJson));
-		request.setEntity(new StringEntity(pipelineObject.toString(), ContentType.APPLICATION_JSON));
-		HttpResponse response = null;
+		request.setEntity(new StringEntity(createPipelinePayload(pipelineName, workspaceId, releaseId, structureJson, serverJson), ContentType.APPLICATION_JSON));
 		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
-				throw createRequestException("Pipeline creation failed", response);
-			}
-			String json = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			return getPipelineByName(json, pipelineName, workspaceId);
+			return execute(request, new ResponseHandler<Pipeline>() {
+				@Override
+				public Pipeline handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
+						throw createRequestException("Pipeline creation failed", response);
+					}
+					// pipeline may come with new taxonomies or list values
+					invalidateMetadataCache();
+					return getPipelineByName(readContent(response), pipelineName, workspaceId);
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot create pipeline in MQM.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 
 	@Override
-	public Pipeline updatePipeline(String serverIdentity, String jobName, Pipeline pipeline) {
+	public Pipeline updatePipeline(String serverIdentity, String jobName, final Pipeline pipeline) {
 		HttpPut request = new HttpPut(createSharedSpaceInternalApiUri(URI_JOB_CONFIGURATION, serverIdentity, jobName));
+		request.setEntity(new StringEntity(updatePipelinePayload(pipeline), ContentType.APPLICATION_JSON));
+		request.setHeader(HEADER_ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+		try {
+			return execute(request, new ResponseHandler<Pipeline>() {
+				@Override
+				public Pipeline handleResponse(HttpResponse response) throws IOException {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("Pipeline update failed", response);
+					}
+					invalidateMetadataCache();
+					return getPipelineById(readContent(response), pipeline.getId());
+				}
+			});
+		} catch (IOException e) {
+			throw new RequestErrorException("Cannot update pipeline.", e);
+		}
+	}
+
+	@Override
+	public void deleteTestsFromPipelineNodes(String jobName, Long pipelineId, Long workspaceId) {
+		HttpDelete request = new HttpDelete(createWorkspaceInternalApiUriMap(URI_DELETE_NODES_TESTS, workspaceId, pipelineId, jobName));
+
+		try {
+			execute(request, new ResponseHandler<Void>() {
+				@Override
+				public Void handleResponse(HttpResponse response) {
+					if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+						throw createRequestException("delete tests failed", response);
+					}
+					return null;
+				}
+			});
+		} catch (IOException e) {
+			throw new RequestErrorException("Cannot delete tests.", e);
+		}
+	}
+
+	static String createPipelinePayload(String pipelineName, long workspaceId, Long releaseId, String structureJson, String serverJson) {
+		JSONObject pipelineObject = new JSONObject();
+		pipelineObject.put("contextEntityType", "pipeline");
+		pipelineObject.put("contextEntityName", pipelineName);
+		pipelineObject.put("workspaceId", workspaceId);
+		pipelineObject.put("releaseId", releaseId);
+		pipelineObject.put("server", JSONObject.fromObject(serverJson));
+		pipelineObject.put("structure", JSONObject.fromObject(structureJson));
+		return pipelineObject.toString();
+	}
 
+	static String updatePipelinePayload(Pipeline pipeline) {
 		JSONObject pipelineObject = new JSONObject();
 		pipelineObject.put("contextEntityType", "pipeline");
 		pipelineObject.put("contextEntityId", pipeline.getId());
@@ -364,46 +489,124 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		JSONObject payload = new JSONObject();
 		payload.put("data", data);
 
-		request.setEntity(new StringEntity(payload.toString(), ContentType.APPLICATION_JSON));
-		request.setHeader(HEADER_ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
-		HttpResponse response = null;
-		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("Pipeline update failed", response);
+		return payload.toString();
+	}
+
+	/**
+	 * @return condition matching ids from <code>from</code> (inclusive) to <code>to</code> (exclusive)
+	 */
+	static String idsCondition(long[] ids, int from, int to) {
+		StringBuilder conditionBuilder = new StringBuilder();
+		for (int i = from; i < to; i++) {
+			if (conditionBuilder.length() > 0) {
+				conditionBuilder.append("||");
 			}
-			String json = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			return getPipelineById(json, pipeline.getId());
-		} catch (IOException e) {
-			throw new RequestErrorException("Cannot update pipeline.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
+			conditionBuilder.append("id=").append(ids[i]);
 		}
+		return conditionBuilder.toString();
 	}
 
-	@Override
-	public void deleteTestsFromPipelineNodes(String jobName, Long pipelineId, Long workspaceId) {
-		HttpDelete request = new HttpDelete(createWorkspaceInternalApiUriMap(URI_DELETE_NODES_TESTS, workspaceId, pipelineId, jobName));
+	/**
+	 * @return ids without nulls and duplicates, sorted; ids given as strings (list items) are parsed
+	 * @throws IllegalArgumentException when an id is not a number
+	 */
+	static long[] distinctIds(Collection<?> ids) {
+		long[] sorted = new long[ids.size()];
+		int size = 0;
+		for (Object id : ids) {
+			if (id instanceof Number) {
+				sorted[size++] = ((Number) id).longValue();
+			} else if (id != null) {
+				try {
+					sorted[size++] = Long.parseLong(id.toString());
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Entity id " + id + " is not a number.", e);
+				}
+			}
+		}
+		Arrays.sort(sorted, 0, size);
+		int distinct = 0;
+		for (int i = 0; i < size; i++) {
+			if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, distinct);
+	}
 
-		HttpResponse response = null;
-		try {
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				throw createRequestException("delete tests failed", response);
+	/**
+	 * Splits ids made distinct by {@link #distinctIds(Collection)} into chunks that can be queried by a single request:
+	 * at most {@link #DEFAULT_LIMIT} ids per chunk and the URL encoded {@link #idsCondition(long[], int, int)} not
+	 * longer than {@link #MAX_IDS_CONDITION_LENGTH}.
+	 *
+	 * @return chunk boundaries, chunk <code>i</code> spans ids from <code>bounds[i]</code> to <code>bounds[i + 1]</code>
+	 */
+	static int[] idChunks(long[] ids) {
+		int[] bounds = new int[ids.length + 1];
+		int chunks = 0;
+		int start = 0;
+		int length = 0;
+		for (int i = 0; i < ids.length; i++) {
+			// digits and minus sign need no encoding, "id=" and "||" encode to 5 and 6 characters
+			int idLength = String.valueOf(ids[i]).length() + (i == start ? 5 : 11);
+			if (i > start && (i - start >= DEFAULT_LIMIT || length + idLength > MAX_IDS_CONDITION_LENGTH)) {
+				bounds[++chunks] = i;
+				start = i;
+				idLength -= 6;
+				length = 0;
 			}
+			length += idLength;
+		}
+		if (start < ids.length) {
+			bounds[++chunks] = ids.length;
+		}
+		return Arrays.copyOf(bounds, chunks + 1);
+	}
 
-		} catch (IOException e) {
-			throw new RequestErrorException("Cannot delete tests.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
+	/**
+	 * Concatenates results of chunked deletes, total count is the sum of the chunk totals.
+	 */
+	static <E> PagedList<E> mergePages(List<PagedList<E>> pages) {
+		List<E> items = new ArrayList<>();
+		int totalCount = 0;
+		for (PagedList<E> page : pages) {
+			items.addAll(page.getItems());
+			totalCount += page.getTotalCount();
+		}
+		return new PagedList<>(items, DEFAULT_OFFSET, totalCount);
+	}
+
+	/**
+	 * Orders entities by the position of their id in the requested list, ids are compared by their string form.
+	 */
+	static <E> List<E> orderByIds(Collection<?> ids, List<E> entities, IdAccessor<E> idAccessor) {
+		Map<String, Integer> positions = new HashMap<>();
+		for (Object id : ids) {
+			String key = String.valueOf(id);
+			if (!positions.containsKey(key)) {
+				positions.put(key, positions.size());
+			}
+		}
+		List<E> ordered = new ArrayList<>(entities);
+		final Map<E, Integer> entityPositions = new IdentityHashMap<>();
+		for (E entity : ordered) {
+			Integer position = positions.get(String.valueOf(idAccessor.getId(entity)));
+			entityPositions.put(entity, position == null ? Integer.MAX_VALUE : position);
 		}
+		Collections.sort(ordered, new Comparator<E>() {
+			@Override
+			public int compare(E o1, E o2) {
+				return entityPositions.get(o1).compareTo(entityPositions.get(o2));
+			}
+		});
+		return ordered;
 	}
 
-	private Date parseDatetime(String datetime) throws ParseException {
+	static Date parseDatetime(String datetime) throws ParseException {
 		return new SimpleDateFormat(DATETIME_FORMAT).parse(datetime);
 	}
 
-	private JSONArray taxonomiesArray(List<Taxonomy> taxonomies) {
+	static JSONArray taxonomiesArray(List<Taxonomy> taxonomies) {
 		JSONArray ret = new JSONArray();
 		for (Taxonomy taxonomy : taxonomies) {
 			ret.add(fromTaxonomy(taxonomy));
@@ -411,7 +614,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		return ret;
 	}
 
-	private JSONObject listFieldsObject(List<ListField> fields) {
+	static JSONObject listFieldsObject(List<ListField> fields) {
 		JSONObject ret = new JSONObject();
 		for (ListField field : fields) {
 			putListField(ret, field);
@@ -419,7 +622,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		return ret;
 	}
 
-	private void putListField(JSONObject ret, ListField listField) {
+	static void putListField(JSONObject ret, ListField listField) {
 		JSONArray valArray = new JSONArray();
 		for (ListItem value : listField.getValues()) {
 			JSONObject val = new JSONObject();
@@ -433,7 +636,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		ret.put(listField.getName(), valArray);
 	}
 
-	private Taxonomy toTaxonomy(JSONObject t) {
+	static Taxonomy toTaxonomy(JSONObject t) {
 		JSONObject parent = t.optJSONObject("parent");
 		String name = t.has("name") ? t.getString("name") : null;
 		if (parent != null) {
@@ -443,7 +646,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		}
 	}
 
-	private JSONObject fromTaxonomy(Taxonomy taxonomy) {
+	static JSONObject fromTaxonomy(Taxonomy taxonomy) {
 		JSONObject t = new JSONObject();
 		if (taxonomy.getId() != null && taxonomy.getId() != 0) {
 			t.put("id", taxonomy.getId());
@@ -459,7 +662,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		return t;
 	}
 
-	private Pipeline getPipelineByName(String json, String pipelineName, long workspaceId) {
+	static Pipeline getPipelineByName(String json, String pipelineName, long workspaceId) {
 		try {
 			for (JSONObject item : getJSONObjectCollection(JSONObject.fromObject(json), "data")) {
 				if (!"pipeline".equals(item.getString("contextEntityType"))) {
@@ -482,7 +685,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		}
 	}
 
-	private Pipeline getPipelineById(String json, long pipelineId) {
+	static Pipeline getPipelineById(String json, long pipelineId) {
 		try {
 			for (JSONObject item : getJSONObjectCollection(JSONObject.fromObject(json), "data")) {
 				if (!"pipeline".equals(item.getString("contextEntityType"))) {
@@ -499,7 +702,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		}
 	}
 
-	private ListItem toListItem(JSONObject field) {
+	static ListItem toListItem(JSONObject field) {
 		String id = null;
 		String name = null;
 		if (field.has("id")) {
@@ -511,7 +714,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		return new ListItem(id, null, name, null);
 	}
 
-	private Pipeline toPipeline(JSONObject pipelineObject) {
+	static Pipeline toPipeline(JSONObject pipelineObject) {
 		List<Taxonomy> taxonomies = new LinkedList<>();
 		List<ListField> fields = new LinkedList<>();
 
@@ -549,7 +752,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (!StringUtils.isEmpty(name)) {
 			conditions.add(QueryHelper.condition("name", "*" + name + "*"));
 		}
-		return getEntities(getEntityURI(URI_RELEASES, conditions, workspaceId, offset, limit, "name"), offset, new ReleaseEntityFactory());
+		return getCachedEntities(getEntityURI(URI_RELEASES, conditions, ReleaseEntityFactory.FIELDS, workspaceId, offset, limit, "name"), offset, new ReleaseEntityFactory());
 	}
 
 	@Override
@@ -559,7 +762,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		List<String> conditions = new LinkedList<>();
 		conditions.add(QueryHelper.condition("id", String.valueOf(releaseId)));
 
-		List<Release> releases = getEntities(getEntityURI(URI_RELEASES, conditions, workspaceId, offset, limit, null), offset, new ReleaseEntityFactory()).getItems();
+		List<Release> releases = getCachedEntities(getEntityURI(URI_RELEASES, conditions, ReleaseEntityFactory.FIELDS, workspaceId, offset, limit, null), offset, new ReleaseEntityFactory()).getItems();
 		if (releases.size() != 1) {
 			if (releases.size() == 0) {
 				return null;
@@ -577,7 +780,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (!StringUtils.isEmpty(name)) {
 			conditions.add(QueryHelper.condition("name", "*" + name + "*"));
 		}
-		return getEntities(getEntityURI(URI_WORKSPACES, conditions, null, offset, limit, "name"), offset, new WorkspaceEntityFactory());
+		return getCachedEntities(getEntityURI(URI_WORKSPACES, conditions, WorkspaceEntityFactory.FIELDS, null, offset, limit, "name"), offset, new WorkspaceEntityFactory());
 	}
 
 	@Override
@@ -585,23 +788,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (workspaceIds == null || workspaceIds.size() == 0) {
 			return new LinkedList<>();
 		}
-		if (workspaceIds.size() > DEFAULT_LIMIT) {
-			throw new IllegalArgumentException("List of workspaceIds is too long. Only " + DEFAULT_LIMIT + " values are allowed.");
-		}
-
-		Set<Long> workspaceIdsSet = new LinkedHashSet<>(workspaceIds);
-		StringBuilder conditionBuilder = new StringBuilder();
-		for (Long workspaceId : workspaceIdsSet) {
-			if (conditionBuilder.length() > 0) {
-				conditionBuilder.append("||");
-			}
-			conditionBuilder.append("id=").append(workspaceId);
-		}
-		return getEntities(
-				getEntityURI(URI_WORKSPACES, Collections.singletonList(conditionBuilder.toString()), null, DEFAULT_OFFSET, DEFAULT_LIMIT, null),
-				DEFAULT_OFFSET,
-				new WorkspaceEntityFactory()
-		).getItems();
+		return getEntitiesByIds(workspaceIds, URI_WORKSPACES, WorkspaceEntityFactory.FIELDS, null, new WorkspaceEntityFactory(), WORKSPACE_ID);
 	}
 
 	@Override
@@ -611,8 +798,8 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (!StringUtils.isEmpty(name)) {
 			conditions.add("(" + QueryHelper.condition("name", "*" + name + "*") + "||" + QueryHelper.conditionRef("category", "name", "*" + name + "*") + ")");
 		}
-		return getEntities(
-				getEntityURI(URI_TAXONOMY_NODES, conditions, workspaceId, offset, limit, null),
+		return getCachedEntities(
+				getEntityURI(URI_TAXONOMY_NODES, conditions, TaxonomyEntityFactory.FIELDS, workspaceId, offset, limit, null),
 				offset,
 				new TaxonomyEntityFactory());
 	}
@@ -622,23 +809,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (taxonomyIds == null || taxonomyIds.size() == 0) {
 			return new LinkedList<>();
 		}
-		if (taxonomyIds.size() > DEFAULT_LIMIT) {
-			throw new IllegalArgumentException("List of taxonomyIds is too long. Only " + DEFAULT_LIMIT + " values are allowed.");
-		}
-
-		Set<Long> taxonomyIdsSet = new LinkedHashSet<>(taxonomyIds);
-		StringBuilder conditionBuilder = new StringBuilder();
-		for (Long taxonomyId : taxonomyIdsSet) {
-			if (conditionBuilder.length() > 0) {
-				conditionBuilder.append("||");
-			}
-			conditionBuilder.append("id=").append(taxonomyId);
-		}
-		return getEntities(
-				getEntityURI(URI_TAXONOMY_NODES, Collections.singletonList(conditionBuilder.toString()), workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null),
-				DEFAULT_OFFSET,
-				new TaxonomyEntityFactory()
-		).getItems();
+		return getEntitiesByIds(taxonomyIds, URI_TAXONOMY_NODES, TaxonomyEntityFactory.FIELDS, workspaceId, new TaxonomyEntityFactory(), TAXONOMY_ID);
 	}
 
 	@Override
@@ -650,7 +821,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (!StringUtils.isEmpty(logicalListName)) {
 			conditions.add(QueryHelper.conditionRef("list_root", "logical_name", logicalListName));
 		}
-		return getEntities(getEntityURI(URI_LIST_ITEMS, conditions, workspaceId, offset, limit, null), offset, new ListItemEntityFactory());
+		return getCachedEntities(getEntityURI(URI_LIST_ITEMS, conditions, ListItemEntityFactory.FIELDS, workspaceId, offset, limit, null), offset, new ListItemEntityFactory());
 	}
 
 	@Override
@@ -658,23 +829,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		if (itemIds == null || itemIds.size() == 0) {
 			return new LinkedList<>();
 		}
-		if (itemIds.size() > DEFAULT_LIMIT) {
-			throw new IllegalArgumentException("List of itemIds is too long. Only " + DEFAULT_LIMIT + " values are allowed.");
-		}
-
-		Set<String> itemIdsSet = new LinkedHashSet<>(itemIds);
-		StringBuilder conditionBuilder = new StringBuilder();
-		for (String itemId : itemIdsSet) {
-			if (conditionBuilder.length() > 0) {
-				conditionBuilder.append("||");
-			}
-			conditionBuilder.append("id=").append(itemId);
-		}
-		return getEntities(
-				getEntityURI(URI_LIST_ITEMS, Collections.singletonList(conditionBuilder.toString()), workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null),
-				DEFAULT_OFFSET,
-				new ListItemEntityFactory()
-		).getItems();
+		return getEntitiesByIds(itemIds, URI_LIST_ITEMS, ListItemEntityFactory.FIELDS, workspaceId, new ListItemEntityFactory(), LIST_ITEM_ID);
 	}
 
 	@Override
@@ -685,7 +840,7 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		conditions.add(QueryHelper.condition("entity_name", "pipeline_node"));
 
 		//loading all metadata fields
-		PagedList<FieldMetadata> allFieldMetadata = getEntities(getEntityURI(URI_METADATA_FIELDS, conditions, workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null), DEFAULT_OFFSET, new FieldMetadataFactory());
+		PagedList<FieldMetadata> allFieldMetadata = getCachedEntities(getEntityURI(URI_METADATA_FIELDS, conditions, workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null), DEFAULT_OFFSET, new FieldMetadataFactory());
 
 		//filtering metadata fields to only values which we are interested in
 		for (FieldMetadata fieldMetadata : allFieldMetadata.getItems()) {
@@ -697,29 +852,83 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 	}
 
 
-	private long postTestResult(ByteArrayEntity entity, boolean skipErrors) {
+	@Override
+	public CacheStats getMetadataCacheStats() {
+		return metadataCache != null ? metadataCache.getStats() : new CacheStats(0, 0, 0, 0, 0);
+	}
+
+	@Override
+	public void invalidateMetadataCache() {
+		if (metadataCache != null) {
+			metadataCache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Same as {@link #getEntities(URI, int, EntityFactory)}, but the result is taken from the metadata cache when it is
+	 * enabled. Caller gets its own copy of the item list.
+	 */
+	private <E> PagedList<E> getCachedEntities(final URI uri, final int offset, final EntityFactory<E> factory) {
+		if (metadataCache == null) {
+			return getEntities(uri, offset, factory);
+		}
+		PagedList<E> cached = metadataCache.get(factory.getClass().getName() + ' ' + uri, new Callable<PagedList<E>>() {
+			@Override
+			public PagedList<E> call() {
+				return getEntities(uri, offset, factory);
+			}
+		});
+		return new PagedList<>(new ArrayList<>(cached.getItems()), cached.getOffset(), cached.getTotalCount());
+	}
+
+	/**
+	 * Resolves entities by ids of any count: ids are split by {@link #idChunks(long[])}, chunks are fetched
+	 * concurrently and the result follows the order of the requested ids. Only the given {@code fields} are requested.
+	 */
+	private <E> List<E> getEntitiesByIds(Collection<?> ids, final String collection, final List<String> fields, final Long workspaceId, final EntityFactory<E> factory, IdAccessor<E> idAccessor) {
+		final long[] distinctIds = distinctIds(ids);
+		int[] bounds = idChunks(distinctIds);
+		List<Callable<List<E>>> calls = new ArrayList<>();
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			final int from = bounds[i];
+			final int to = bounds[i + 1];
+			calls.add(new Callable<List<E>>() {
+				@Override
+				public List<E> call() {
+					URI uri = getEntityURI(collection, Collections.singletonList(idsCondition(distinctIds, from, to)), fields, workspaceId, DEFAULT_OFFSET, DEFAULT_LIMIT, null);
+					return getCachedEntities(uri, DEFAULT_OFFSET, factory).getItems();
+				}
+			});
+		}
+		List<E> found = new ArrayList<>();
+		for (List<E> items : invokeAll(calls, GET_BY_IDS_PARALLELISM)) {
+			found.addAll(items);
+		}
+		return orderByIds(ids, found, idAccessor);
+	}
+
+	private long postTestResult(HttpEntity entity, boolean skipErrors) {
 		HttpPost request = new HttpPost(createSharedSpaceInternalApiUri(URI_TEST_RESULT_PUSH, skipErrors));
 		request.setHeader(HTTP.CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
 		request.setEntity(entity);
-		HttpResponse response = null;
 		try {
-			response = execute(request);
-			int statusCode = response.getStatusLine().getStatusCode();
-			if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-				throw new TemporarilyUnavailableException("Service not available");
-			}
-			if (statusCode != HttpStatus.SC_ACCEPTED) {
-				throw createRequestException("Test result post failed", response);
-			}
-			String json = IOUtils.toString(response.getEntity().getContent());
-			JSONObject jsonObject = JSONObject.fromObject(json);
-			return jsonObject.getLong("id");
+			return execute(request, new ResponseHandler<Long>() {
+				@Override
+				public Long handleResponse(HttpResponse response) throws IOException {
+					int statusCode = response.getStatusLine().getStatusCode();
+					if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+						throw new TemporarilyUnavailableException("Service not available");
+					}
+					if (statusCode != HttpStatus.SC_ACCEPTED) {
+						throw createRequestException("Test result post failed", response);
+					}
+					return JSONObject.fromObject(readContent(response)).getLong("id");
+				}
+			});
 		} catch (java.io.FileNotFoundException e) {
 			throw new FileNotFoundException("Cannot find test result file.", e);
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot post test results to MQM.", e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
@@ -735,18 +944,20 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException("Failed to create StringEntity :" + e.getMessage(), e);
 		}
-		HttpResponse response;
 		try {
-			response = execute(request);
-			int statusCode = response.getStatusLine().getStatusCode();
-			if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-				throw new TemporarilyUnavailableException("Service not available");
-			}
-			if (statusCode != HttpStatus.SC_CREATED) {
-				throw createRequestException("Post failed", response);
-			}
-			String json = IOUtils.toString(response.getEntity().getContent());
-			return JSONObject.fromObject(json);
+			return execute(request, new ResponseHandler<JSONObject>() {
+				@Override
+				public JSONObject handleResponse(HttpResponse response) throws IOException {
+					int statusCode = response.getStatusLine().getStatusCode();
+					if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+						throw new TemporarilyUnavailableException("Service not available");
+					}
+					if (statusCode != HttpStatus.SC_CREATED) {
+						throw createRequestException("Post failed", response);
+					}
+					return JSONObject.fromObject(readContent(response));
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot post entities", e);
 		}
@@ -769,6 +980,63 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		return result;
 	}
 
+	@Override
+	public List<Entity> getEntities(final long workspaceId, final String entityCollectionName, final Collection<String> conditions, final Collection<String> fields, int parallelism) {
+		if (parallelism <= 1) {
+			return getEntities(workspaceId, entityCollectionName, conditions, fields);
+		}
+
+		// pages are requested independently, a stable order keeps them from overlapping
+		URI uri = getEntityURI(entityCollectionName, conditions, fields, workspaceId, DEFAULT_OFFSET, MAX_GET_LIMIT, "id");
+		PagedList<Entity> first = getEntities(uri, DEFAULT_OFFSET, new GeneralEntityFactory());
+		List<Entity> result = new ArrayList<>(Math.max(first.getTotalCount(), first.getItems().size()));
+		result.addAll(first.getItems());
+		if (first.getItems().isEmpty() || first.getTotalCount() <= result.size()) {
+			return result;
+		}
+
+		// server may cap the page size below the requested limit, step by what it actually returned
+		int pageSize = first.getItems().size();
+		List<Callable<List<Entity>>> pages = new ArrayList<>();
+		for (int offset = pageSize; offset < first.getTotalCount(); offset += pageSize) {
+			final int pageOffset = offset;
+			pages.add(new Callable<List<Entity>>() {
+				@Override
+				public List<Entity> call() {
+					URI pageUri = getEntityURI(entityCollectionName, conditions, fields, workspaceId, pageOffset, MAX_GET_LIMIT, "id");
+					return getEntities(pageUri, pageOffset, new GeneralEntityFactory()).getItems();
+				}
+			});
+		}
+		for (List<Entity> page : invokeAll(pages, parallelism)) {
+			result.addAll(page);
+		}
+		return result;
+	}
+
+	@Override
+	public CloseableIterator<Entity> iterateEntities(final long workspaceId, final String entityCollectionName, final Collection<String> conditions, final Collection<String> fields) {
+		return new PagingIterator<Entity>(getConcurrentCallExecutor(), DEFAULT_OFFSET) {
+			@Override
+			protected PagedList<Entity> fetchPage(int offset) {
+				URI uri = getEntityURI(entityCollectionName, conditions, fields, workspaceId, offset, MAX_GET_LIMIT, "id");
+				return getEntities(uri, offset, new GeneralEntityFactory());
+			}
+		};
+	}
+
+	@Override
+	public void forEachEntity(long workspaceId, String entityCollectionName, Collection<String> conditions, Collection<String> fields, EntityCallback callback) {
+		CloseableIterator<Entity> iterator = iterateEntities(workspaceId, entityCollectionName, conditions, fields);
+		try {
+			while (iterator.hasNext()) {
+				callback.onEntity(iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+
 	@Override
 	public JSONObject updateEntity(long workspaceId, String entityCollectionName, long entityId, String entityJson) {
 		URI uri = getEntityIdURI(entityCollectionName, entityId, workspaceId);
@@ -791,44 +1059,62 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException("Failed to create StringEntity :" + e.getMessage(), e);
 		}
-		HttpResponse response;
 		try {
-			response = execute(request);
-			int statusCode = response.getStatusLine().getStatusCode();
-			if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-				throw new TemporarilyUnavailableException("Service not available");
-			}
-			if (statusCode != HttpStatus.SC_OK) {
-				throw createRequestException("Put failed", response);
-			}
-			String json = IOUtils.toString(response.getEntity().getContent());
-			return JSONObject.fromObject(json);
+			return execute(request, new ResponseHandler<JSONObject>() {
+				@Override
+				public JSONObject handleResponse(HttpResponse response) throws IOException {
+					int statusCode = response.getStatusLine().getStatusCode();
+					if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+						throw new TemporarilyUnavailableException("Service not available");
+					}
+					if (statusCode != HttpStatus.SC_OK) {
+						throw createRequestException("Put failed", response);
+					}
+					return JSONObject.fromObject(readContent(response));
+				}
+			});
 		} catch (IOException e) {
 			throw new RequestErrorException("Cannot put entities to MQM.", e);
 		}
 	}
 
 	@Override
-	public PagedList<Entity> deleteEntities(long workspaceId, String entityCollectionName, Collection<Long> entitiesIds) {
-		//query="id=3011||id=3012"
-
+	public PagedList<Entity> deleteEntities(final long workspaceId, final String entityCollectionName, Collection<Long> entitiesIds) {
 		if (entitiesIds == null || entitiesIds.isEmpty()) {
 			return null;
 		}
 
-		List<String> idConditions = new ArrayList<>();
-		for (Long id : entitiesIds) {
-			idConditions.add(QueryHelper.condition("id", id));
+		// query="id=3011||id=3012", one per chunk so that the URL stays within limits of servers and proxies
+		final long[] distinctIds = distinctIds(entitiesIds);
+		int[] bounds = idChunks(distinctIds);
+		List<Callable<PagedList<Entity>>> calls = new ArrayList<>();
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			final int from = bounds[i];
+			final int to = bounds[i + 1];
+			calls.add(new Callable<PagedList<Entity>>() {
+				@Override
+				public PagedList<Entity> call() {
+					return deleteEntitiesByQuery(workspaceId, entityCollectionName, Collections.singletonList(idsCondition(distinctIds, from, to)));
+				}
+			});
 		}
-		String finalCondition = StringUtils.join(idConditions, "||");
+		return mergePages(invokeAll(calls, DELETE_BY_IDS_PARALLELISM));
+	}
 
+	@Override
+	public PagedList<Entity> deleteEntitiesByQuery(long workspaceId, String entityCollectionName, Collection<String> conditions) {
+		URI uri = getEntityURI(entityCollectionName, deleteConditions(conditions), null, workspaceId, null, null, null);
+		return deleteEntities(uri, new GeneralEntityFactory());
+	}
 
-		URI uri = getEntityURI(entityCollectionName, Arrays.asList(finalCondition), null, workspaceId, null, null, null);
-		PagedList<Entity> tests = deleteEntities(uri, new GeneralEntityFactory());
-		return tests;
+	static Collection<String> deleteConditions(Collection<String> conditions) {
+		if (conditions == null || conditions.isEmpty()) {
+			throw new IllegalArgumentException("Delete requires at least one condition.");
+		}
+		return conditions;
 	}
 
-	private ByteArrayEntity createGZipEntity(InputStream inputStream) {
+	static ByteArrayEntity createGZipEntity(InputStream inputStream) {
 		try {
 			ByteArrayOutputStream arr = new ByteArrayOutputStream();
 			OutputStream zipper = new GZIPOutputStream(arr);
@@ -858,136 +1144,213 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 
 	@Override
 	public boolean putEvents(String eventsJSON) {
-		HttpPut request;
-		HttpResponse response = null;
-		boolean result = true;
 		try {
-			request = new HttpPut(createSharedSpaceInternalApiUri(URI_PUT_EVENTS));
-			request.setEntity(new StringEntity(eventsJSON, ContentType.APPLICATION_JSON));
-			response = execute(request);
-			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_TEMPORARY_REDIRECT) {
-				// ad-hoc handling as requested by Jenkins Insight team
-				HttpClientUtils.closeQuietly(response);
-				login();
-				response = execute(request);
-			}
-			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-				logger.severe("put request failed while sending events: " + response.getStatusLine().getStatusCode());
-				result = false;
+			sendEvents(eventsJSON);
+		} catch (RequestException e) {
+			if (e.getStatusCode() == 0) {
+				logger.severe("put request failed while sending events: " + e.getClass().getName());
+			} else {
+				logger.severe("put request failed while sending events: " + e.getStatusCode());
 			}
+			return false;
 		} catch (Exception e) {
 			logger.severe("put request failed while sending events: " + e.getClass().getName());
-			result = false;
-		} finally {
-			HttpClientUtils.closeQuietly(response);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Same as {@link #putEvents(String)} but the failure is reported with the status code, so that the caller can
+	 * tell events rejected by the server from the server not being available.
+	 *
+	 * @throws RequestException when the events were not accepted
+	 */
+	void sendEvents(String eventsJSON) {
+		HttpPut request = new HttpPut(createSharedSpaceInternalApiUri(URI_PUT_EVENTS));
+		request.setEntity(new StringEntity(eventsJSON, ContentType.APPLICATION_JSON));
+		ResponseHandler<Integer> handler = new ResponseHandler<Integer>() {
+			@Override
+			public Integer handleResponse(HttpResponse response) {
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_TEMPORARY_REDIRECT) {
+					throw createRequestException("Events put failed", response);
+				}
+				return statusCode;
+			}
+		};
+		try {
+			int statusCode = execute(request, handler);
+			if (statusCode == HttpStatus.SC_TEMPORARY_REDIRECT) {
+				// ad-hoc handling as requested by Jenkins Insight team
+				login();
+				statusCode = execute(request, handler);
+				if (statusCode != HttpStatus.SC_OK) {
+					throw new RequestErrorException("Events put failed with status code " + statusCode);
+				}
+			}
+		} catch (IOException e) {
+			throw new RequestErrorException("Cannot put events to MQM.", e);
 		}
-		return result;
 	}
 
 	@Override
 	public String getAbridgedTasks(String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion) {
-		HttpGet request;
-		HttpResponse response = null;
-		String responseBody;
-		try {
-			request = new HttpGet(createSharedSpaceInternalApiUri(URI_GET_ABRIDGED_TASKS, selfIdentity, selfType, selfLocation, apiVersion, sdkVersion));
-			response = execute(request);
-			responseBody = IOUtils.toString(response.getEntity().getContent(), "UTF-8");
-			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
-				return responseBody;
-			} else {
-				if (response.getStatusLine().getStatusCode() == HttpStatus.SC_REQUEST_TIMEOUT) {
-					logger.config("expected timeout disconnection on retrieval of abridged tasks");
-					return null;
-				} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
-					throw new AuthenticationException();
-				} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-					throw new TemporarilyUnavailableException("");
+		return getAbridgedTasks(createAbridgedTasksRequest(selfIdentity, selfType, selfLocation, apiVersion, sdkVersion), null);
+	}
+
+	HttpGet createAbridgedTasksRequest(String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion) {
+		return new HttpGet(createSharedSpaceInternalApiUri(URI_GET_ABRIDGED_TASKS, selfIdentity, selfType, selfLocation, apiVersion, sdkVersion));
+	}
+
+	/**
+	 * @param dedicatedClient HTTP client holding connection of the poll, null to use the shared connection pool
+	 */
+	String getAbridgedTasks(HttpGet request, CloseableHttpClient dedicatedClient) {
+		ResponseHandler<String> handler = new ResponseHandler<String>() {
+			@Override
+			public String handleResponse(HttpResponse response) throws IOException {
+				String responseBody = readContent(response);
+				if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+					return responseBody;
 				} else {
-					logger.info("unexpected response; status: " + response.getStatusLine().getStatusCode() + "; content: " + responseBody);
-					throw new ServerException("Server failed to process the request with status " + response.getStatusLine().getStatusCode());
+					if (response.getStatusLine().getStatusCode() == HttpStatus.SC_REQUEST_TIMEOUT) {
+						logger.config("expected timeout disconnection on retrieval of abridged tasks");
+						return null;
+					} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+						throw new AuthenticationException();
+					} else if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+						throw new TemporarilyUnavailableException("");
+					} else {
+						logger.info("unexpected response; status: " + response.getStatusLine().getStatusCode() + "; content: " + responseBody);
+						throw new ServerException("Server failed to process the request with status " + response.getStatusLine().getStatusCode());
+					}
 				}
 			}
+		};
+		try {
+			return dedicatedClient != null ? execute(request, dedicatedClient, handler) : execute(request, handler);
 		} catch (IOException ioe) {
 			logger.severe("failed to retrieve abridged tasks: " + ioe.getMessage());
 			throw new RequestErrorException(ioe);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
 	@Override
 	public int putAbridgedResult(String selfIdentity, String taskId, String contentJSON) {
 		HttpPut request;
-		HttpResponse response = null;
 		try {
 			request = new HttpPut(createSharedSpaceInternalApiUri(URI_PUT_ABRIDGED_RESULT, selfIdentity, taskId));
 			request.setEntity(new StringEntity(contentJSON, ContentType.APPLICATION_JSON));
-			response = execute(request);
-			return response.getStatusLine().getStatusCode();
+			return execute(request, STATUS_CODE_HANDLER);
 		} catch (Exception e) {
 			logger.severe("failed to submit abridged task's result: " + e.getMessage());
 			throw new RuntimeException(e);
-		} finally {
-			HttpClientUtils.closeQuietly(response);
 		}
 	}
 
-	private static class ListItemEntityFactory extends AbstractEntityFactory<ListItem> {
+	@Override
+	public TaskChannel openTaskChannel(String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion, TaskHandler handler, int workers) {
+		TaskChannel channel = new TaskChannel(this, selfIdentity, selfType, selfLocation, apiVersion, sdkVersion, handler, workers,
+				taskPollSocketTimeout != null ? taskPollSocketTimeout : TaskChannel.DEFAULT_POLL_SOCKET_TIMEOUT);
+		channel.start();
+		return channel;
+	}
+
+	interface IdAccessor<E> {
+		Object getId(E entity);
+	}
+
+	static final IdAccessor<Workspace> WORKSPACE_ID = new IdAccessor<Workspace>() {
+		@Override
+		public Object getId(Workspace workspace) {
+			return workspace.getId();
+		}
+	};
+
+	static final IdAccessor<Taxonomy> TAXONOMY_ID = new IdAccessor<Taxonomy>() {
+		@Override
+		public Object getId(Taxonomy taxonomy) {
+			return taxonomy.getId();
+		}
+	};
 
+	static final IdAccessor<ListItem> LIST_ITEM_ID = new IdAccessor<ListItem>() {
 		@Override
-		public ListItem doCreate(JSONObject entityObject) {
+		public Object getId(ListItem listItem) {
+			return listItem.getId();
+		}
+	};
+
+	static class ListItemEntityFactory implements EntityFactory<ListItem> {
+
+		/**
+		 * Fields read by {@link #create(JSONObject)}, including the nested list root; id is always returned.
+		 */
+		static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("logical_name", "name", "list_root{logical_name,name}"));
+
+		@Override
+		public ListItem create(JSONObject entityObject) {
 			JSONObject list_root = entityObject.optJSONObject("list_root");
 			if (list_root != null) {
-				return new ListItem(entityObject.getString("id"), entityObject.getString("logical_name"), entityObject.getString("name"), doCreate(list_root));
+				return new ListItem(entityObject.getString("id"), entityObject.getString("logical_name"), entityObject.getString("name"), create(list_root));
 			} else {
 				return new ListItem(entityObject.getString("id"), entityObject.getString("logical_name"), entityObject.getString("name"), null);
 			}
 		}
 	}
 
-	private static class TaxonomyEntityFactory extends AbstractEntityFactory<Taxonomy> {
+	static class TaxonomyEntityFactory implements EntityFactory<Taxonomy> {
+
+		/**
+		 * Fields read by {@link #create(JSONObject)}, including the nested category; id is always returned.
+		 */
+		static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList("name", "category{name}"));
 
 		@Override
-		public Taxonomy doCreate(JSONObject entityObject) {
+		public Taxonomy create(JSONObject entityObject) {
 			JSONObject taxonomy_root = entityObject.optJSONObject("category");
 			if (taxonomy_root != null) {
-				return new Taxonomy(entityObject.getLong("id"), entityObject.getString("name"), doCreate(taxonomy_root));
+				return new Taxonomy(entityObject.getLong("id"), entityObject.getString("name"), create(taxonomy_root));
 			} else {
 				return new Taxonomy(entityObject.getLong("id"), entityObject.getString("name"), null);
 			}
 		}
 	}
 
-	private static class ReleaseEntityFactory extends AbstractEntityFactory<Release> {
+	static class ReleaseEntityFactory implements EntityFactory<Release> {
+
+		static final List<String> FIELDS = Collections.singletonList("name");
 
 		@Override
-		public Release doCreate(JSONObject entityObject) {
+		public Release create(JSONObject entityObject) {
 			return new Release(entityObject.getLong("id"), entityObject.getString("name"));
 		}
 	}
 
-	private static class GeneralEntityFactory extends AbstractEntityFactory<Entity> {
+	static class GeneralEntityFactory implements EntityFactory<Entity> {
 
 		@Override
-		public Entity doCreate(JSONObject entityObject) {
+		public Entity create(JSONObject entityObject) {
 			Entity entity = new Entity(entityObject);
 			return entity;
 		}
 	}
 
-	private static class WorkspaceEntityFactory extends AbstractEntityFactory<Workspace> {
+	static class WorkspaceEntityFactory implements EntityFactory<Workspace> {
+
+		static final List<String> FIELDS = Collections.singletonList("name");
 
 		@Override
-		public Workspace doCreate(JSONObject entityObject) {
+		public Workspace create(JSONObject entityObject) {
 			return new Workspace(entityObject.getLong("id"), entityObject.getString("name"));
 		}
 	}
 
-	private static class FieldMetadataFactory extends AbstractEntityFactory<FieldMetadata> {
+	static class FieldMetadataFactory implements EntityFactory<FieldMetadata> {
 
 		@Override
-		public FieldMetadata doCreate(JSONObject entityObject) {
+		public FieldMetadata create(JSONObject entityObject) {
 			String name = null;
 			String label = null;
 			String logicalName = null;
@@ -1036,16 +1399,4 @@ public class MqmRestClientImpl extends AbstractMqmRestClient implements MqmRestC
 			return new FieldMetadata(name, label, logicalName, isExtensible, multiple, order);
 		}
 	}
-
-	static abstract class AbstractEntityFactory<E> implements EntityFactory<E> {
-
-		@Override
-		public E create(String json) {
-			JSONObject jsonObject = JSONObject.fromObject(json);
-			return doCreate(jsonObject);
-		}
-
-		public abstract E doCreate(JSONObject entityObject);
-
-	}
 }
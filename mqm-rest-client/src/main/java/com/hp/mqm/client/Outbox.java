@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.RequestException;
+import com.hp.mqm.client.internal.SegmentLog;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent outbox for test results and events. Payloads are written to a {@link SegmentLog} on local disk and the
+ * caller returns immediately; a background thread delivers them in the order they were submitted.
+ * <p>
+ * When Octane is not available the delivery is retried after a back-off which grows from {@link #MIN_RETRY_DELAY}
+ * up to {@link #MAX_RETRY_DELAY}, payloads stay on disk and are delivered after restart by outbox opened on the same
+ * directory. Payload rejected by the server as invalid (4xx other than authentication or throttling) is logged and
+ * dropped. Delivery is at-least-once, payload may be sent again if the process stopped right after sending it.
+ */
+public class Outbox implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(Outbox.class.getName());
+
+	public static final long MIN_RETRY_DELAY = 1000;            // in milliseconds
+	public static final long MAX_RETRY_DELAY = 60000;           // in milliseconds
+
+	private static final long CLOSE_TIMEOUT = 10000;            // in milliseconds
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte TYPE_TEST_RESULT = 1;
+	private static final byte TYPE_TEST_RESULT_SKIP_ERRORS = 2;
+	private static final byte TYPE_EVENTS = 3;
+
+	private final MqmRestClient client;
+	private final SegmentLog log;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition wakeUp = lock.newCondition();
+	private final Thread sender;
+	private volatile boolean closed;
+
+	/**
+	 * Opens outbox stored in given directory with default segment size, pending payloads start being delivered.
+	 */
+	public Outbox(MqmRestClient client, File directory) throws IOException {
+		this(client, directory, SegmentLog.DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param segmentSize size of the segment files in bytes
+	 */
+	public Outbox(MqmRestClient client, File directory, int segmentSize) throws IOException {
+		this.client = client;
+		this.log = new SegmentLog(directory, segmentSize);
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				deliver();
+			}
+		}, "mqm-outbox-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * Stores test result to be delivered by {@link MqmRestClient#postTestResult(InputStreamSource, boolean)}.
+	 * The source is read twice, first to find out the size of the report, then it is copied to the outbox.
+	 */
+	public void postTestResult(InputStreamSource inputStreamSource, boolean skipErrors) throws IOException {
+		long length;
+		InputStream inputStream = inputStreamSource.getInputStream();
+		try {
+			length = IOUtils.skip(inputStream, Long.MAX_VALUE);
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+		inputStream = inputStreamSource.getInputStream();
+		try {
+			append(skipErrors ? TYPE_TEST_RESULT_SKIP_ERRORS : TYPE_TEST_RESULT, inputStream, length);
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+	}
+
+	/**
+	 * Stores test result to be delivered by {@link MqmRestClient#postTestResult(File, boolean)}.
+	 */
+	public void postTestResult(File testResultReport, boolean skipErrors) throws IOException {
+		InputStream inputStream = new FileInputStream(testResultReport);
+		try {
+			append(skipErrors ? TYPE_TEST_RESULT_SKIP_ERRORS : TYPE_TEST_RESULT, inputStream, testResultReport.length());
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+	}
+
+	/**
+	 * Stores events list to be delivered by {@link MqmRestClient#putEvents(String)}.
+	 */
+	public void putEvents(String eventsJSON) throws IOException {
+		byte[] payload = eventsJSON.getBytes(UTF_8);
+		append(TYPE_EVENTS, new ByteArrayInputStream(payload), payload.length);
+	}
+
+	/**
+	 * @return number of payloads which were not delivered yet
+	 */
+	public int getPendingCount() {
+		return log.getPendingCount();
+	}
+
+	/**
+	 * Stops the delivery, waiting for the payload which is being sent. Pending payloads are kept on disk. When the
+	 * sender does not stop in time, it closes the log itself once it is done with the payload.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			wakeUp.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			sender.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (sender.isAlive()) {
+			logger.warning("Outbox sender did not stop in time, payload being sent may be delivered again");
+		} else {
+			log.close();
+		}
+	}
+
+	private void append(byte type, InputStream inputStream, long length) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Outbox is closed");
+		}
+		log.append(type, inputStream, length);
+		lock.lock();
+		try {
+			wakeUp.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void deliver() {
+		try {
+			deliverRecords();
+		} finally {
+			// close() leaves the log open while the sender is alive, the record being sent is still committed
+			if (closed) {
+				log.close();
+			}
+		}
+	}
+
+	private void deliverRecords() {
+		long retryDelay = 0;
+		long retryAt = 0;
+		while (true) {
+			SegmentLog.Record record;
+			lock.lock();
+			try {
+				while (true) {
+					if (closed) {
+						return;
+					}
+					record = log.peek();
+					// appends only signal new payload, pending retry still waits for the back-off to pass
+					long wait = record == null ? Long.MAX_VALUE : retryAt - System.currentTimeMillis();
+					if (wait <= 0) {
+						break;
+					}
+					if (wait == Long.MAX_VALUE) {
+						wakeUp.await();
+					} else {
+						wakeUp.await(wait, TimeUnit.MILLISECONDS);
+					}
+				}
+			} catch (IOException e) {
+				logger.log(Level.SEVERE, "Outbox cannot be read, delivery stopped", e);
+				return;
+			} catch (InterruptedException e) {
+				logger.warning("Outbox sender interrupted, delivery stopped");
+				return;
+			} finally {
+				lock.unlock();
+			}
+
+			if (send(record)) {
+				log.commit(record);
+				retryDelay = 0;
+				retryAt = 0;
+			} else {
+				retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+				retryAt = System.currentTimeMillis() + retryDelay;
+				logger.warning("Delivery from outbox failed, retrying in " + retryDelay + " ms");
+			}
+		}
+	}
+
+	/**
+	 * @return true if the payload is done with (delivered or rejected), false if it should be retried
+	 */
+	private boolean send(final SegmentLog.Record record) {
+		try {
+			if (record.getType() == TYPE_EVENTS) {
+				String eventsJSON = new String(record.getBytes(), UTF_8);
+				if (client instanceof MqmRestClientImpl) {
+					// unlike putEvents tells rejected events from unavailable server
+					((MqmRestClientImpl) client).sendEvents(eventsJSON);
+					return true;
+				}
+				return client.putEvents(eventsJSON);
+			} else if (record.getType() == TYPE_TEST_RESULT || record.getType() == TYPE_TEST_RESULT_SKIP_ERRORS) {
+				long id = client.postTestResult(new InputStreamSource() {
+					@Override
+					public InputStream getInputStream() {
+						return record.getInputStream();
+					}
+				}, record.getType() == TYPE_TEST_RESULT_SKIP_ERRORS);
+				logger.fine("Test result from outbox accepted with id " + id);
+				return true;
+			} else {
+				logger.severe("Unknown outbox record type " + record.getType() + " dropped");
+				return true;
+			}
+		} catch (RequestException e) {
+			if (isRejected(e)) {
+				logger.log(Level.SEVERE, "Payload from outbox rejected by the server and dropped", e);
+				return true;
+			}
+			logger.fine("Delivery from outbox failed: " + e.getMessage());
+			return false;
+		} catch (RuntimeException e) {
+			logger.log(Level.WARNING, "Delivery from outbox failed", e);
+			return false;
+		}
+	}
+
+	static boolean isRejected(RequestException e) {
+		int statusCode = e.getStatusCode();
+		return statusCode >= 400 && statusCode < 500 &&
+				statusCode != HttpStatus.SC_UNAUTHORIZED && statusCode != HttpStatus.SC_FORBIDDEN &&
+				statusCode != HttpStatus.SC_REQUEST_TIMEOUT && statusCode != 429;
+	}
+}
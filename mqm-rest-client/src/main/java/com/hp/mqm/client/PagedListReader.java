@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.hp.mqm.client.model.PagedList;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Reads paged collection responses (<code>{"total_count": ..., "data": [...]}</code>) token by token straight off
+ * the response stream. Every element of <code>data</code> is built into a {@link JSONObject} and handed over to the
+ * entity factory, so only a single entity tree is alive at a time besides the already created entities.
+ * <p>
+ * Values are built the same way json-lib built them when the whole response was parsed and every entity was
+ * serialized and parsed again, so factories see no difference.
+ */
+final class PagedListReader {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final String TOTAL_COUNT = "total_count";
+	private static final String DATA = "data";
+
+	private final JsonParser parser;
+	private boolean reprocess;
+
+	private PagedListReader(JsonParser parser) {
+		this.parser = parser;
+	}
+
+	static <E> PagedList<E> read(InputStream inputStream, AbstractMqmRestClient.EntityFactory<E> factory, int offset) throws IOException {
+		JsonParser parser = JSON_FACTORY.createParser(inputStream);
+		try {
+			PagedListReader reader = new PagedListReader(parser);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JSONException("A JSONObject text must begin with '{'");
+			}
+			List<E> items = null;
+			Integer totalCount = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (TOTAL_COUNT.equals(field) && token.isNumeric()) {
+					totalCount = parser.getIntValue();
+				} else if (DATA.equals(field) && token == JsonToken.START_ARRAY) {
+					items = new LinkedList<>();
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+							throw new JSONException("JSONArray[" + items.size() + "] is not a JSONObject.");
+						}
+						items.add(factory.create(reader.readEntity()));
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (items == null) {
+				throw new JSONException("JSONObject[\"" + DATA + "\"] not found.");
+			}
+			if (totalCount == null) {
+				throw new JSONException("JSONObject[\"" + TOTAL_COUNT + "\"] not found.");
+			}
+			return new PagedList<>(items, offset, totalCount);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Reads entity the parser is positioned at (current token is START_OBJECT).
+	 */
+	private JSONObject readEntity() throws IOException {
+		reprocess = false;
+		JSONObject entity = readObject();
+		if (reprocess) {
+			// string values looking like JSON are turned into JSON by json-lib once the entity is nested into the page
+			// and the page into the response; replay both steps so that factories see the same values as before
+			entity = JSONObject.fromObject(JSONObject.fromObject(entity));
+		}
+		return entity;
+	}
+
+	private JSONObject readObject() throws IOException {
+		JSONObject object = new JSONObject();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String key = parser.getCurrentName();
+			parser.nextToken();
+			if (object.has(key)) {
+				object.accumulate(key, readValue(false));
+			} else {
+				object.element(key, readValue(false));
+			}
+		}
+		return object;
+	}
+
+	private JSONArray readArray() throws IOException {
+		JSONArray array = new JSONArray();
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			array.element(readValue(true));
+		}
+		return array;
+	}
+
+	private Object readValue(boolean arrayElement) throws IOException {
+		switch (parser.getCurrentToken()) {
+			case START_OBJECT:
+				return readObject();
+			case START_ARRAY:
+				return readArray();
+			case VALUE_STRING:
+				String value = parser.getText();
+				// json-lib's tokener quotes strings which look like JSON (or a function) to keep them from being parsed
+				if (JSONUtils.mayBeJSON(value)) {
+					reprocess = true;
+					return "\"" + value + "\"";
+				} else if (!arrayElement && JSONUtils.isFunction(value)) {
+					return "\"" + value + "\"";
+				}
+				return value;
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				// same number types as json-lib produces, including the normalization done by JSONObject#toString()
+				return NumberUtils.createNumber(JSONUtils.numberToString(NumberUtils.createNumber(parser.getText())));
+			case VALUE_TRUE:
+				return Boolean.TRUE;
+			case VALUE_FALSE:
+				return Boolean.FALSE;
+			case VALUE_NULL:
+				return JSONNull.getInstance();
+			default:
+				throw new JSONException("Unexpected token " + parser.getCurrentToken());
+		}
+	}
+}
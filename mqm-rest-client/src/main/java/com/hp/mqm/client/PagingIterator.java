@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.RequestErrorException;
+import com.hp.mqm.client.model.PagedList;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Lazily pages through a collection. While the caller consumes the current page, the next one is already being
+ * fetched in background on the executor of the client, so at most two pages are held in memory at once.
+ */
+abstract class PagingIterator<E> implements CloseableIterator<E> {
+
+    private final ExecutorService prefetchExecutor;
+    private Iterator<E> current;
+    private Future<PagedList<E>> next;
+    private int nextOffset;
+    private boolean closed;
+
+    /**
+     * @param prefetchExecutor executor the pages are fetched on, it is shared and therefore never shut down here
+     * @param offset offset of the first page
+     */
+    PagingIterator(ExecutorService prefetchExecutor, int offset) {
+        this.prefetchExecutor = prefetchExecutor;
+        nextOffset = offset;
+        next = prefetch(offset);
+    }
+
+    /**
+     * Fetches single page starting at the given offset. Called from the thread of the prefetch executor.
+     */
+    protected abstract PagedList<E> fetchPage(int offset);
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            PagedList<E> page = await(next);
+            List<E> items = page.getItems();
+            nextOffset += items.size();
+            if (items.isEmpty() || nextOffset >= page.getTotalCount()) {
+                next = null;
+            } else {
+                next = prefetch(nextOffset);
+            }
+            current = items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops prefetching; further calls to {@link #hasNext()} return false once the current page is consumed.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (next != null) {
+                next.cancel(true);
+                next = null;
+            }
+        }
+    }
+
+    private Future<PagedList<E>> prefetch(final int offset) {
+        return prefetchExecutor.submit(new Callable<PagedList<E>>() {
+            @Override
+            public PagedList<E> call() {
+                return fetchPage(offset);
+            }
+        });
+    }
+
+    private PagedList<E> await(Future<PagedList<E>> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RequestErrorException("Interrupted while waiting for the next page", e);
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RequestErrorException("Failed to fetch the next page", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How requests failing with a transient error are repeated: responses 429, 502, 503 and 504 and I/O errors other than
+ * unknown host and SSL failures. Delays grow exponentially from the initial delay up to the maximum delay, each of
+ * them is randomized between its half and its full value so that clients failed at once don't retry at once.
+ * <code>Retry-After</code> sent by the server is honored; when it asks for more than the maximum delay, the request
+ * is not repeated.
+ *
+ * By default only idempotent GET and PUT requests are repeated.
+ *
+ * @see MqmConnectionConfig#setRetryPolicy(RetryPolicy)
+ * @see MqmConnectionConfig#setRetryPolicy(EndpointCategory, RetryPolicy)
+ */
+public final class RetryPolicy {
+
+	/**
+	 * Requests are sent just once.
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+	/**
+	 * Up to 3 attempts, delays from 1 to 30 seconds.
+	 */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(3, 1000, 30000);
+
+	private static final Set<Integer> TRANSIENT_STATUS_CODES = new HashSet<>(Arrays.asList(
+			429, HttpStatus.SC_BAD_GATEWAY, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_GATEWAY_TIMEOUT));
+
+	private final int maxAttempts;
+	private final long initialDelay;
+	private final long maxDelay;
+	private final Set<String> methods;
+
+	/**
+	 * Policy repeating GET and PUT requests.
+	 *
+	 * @param maxAttempts  maximum number of attempts including the first one
+	 * @param initialDelay delay before the second attempt in milliseconds, doubled for each next attempt
+	 * @param maxDelay     maximum delay between attempts in milliseconds
+	 */
+	public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay) {
+		this(maxAttempts, initialDelay, maxDelay, Arrays.asList("GET", "PUT"));
+	}
+
+	/**
+	 * @param maxAttempts  maximum number of attempts including the first one
+	 * @param initialDelay delay before the second attempt in milliseconds, doubled for each next attempt
+	 * @param maxDelay     maximum delay between attempts in milliseconds
+	 * @param methods      HTTP methods of the requests which may be repeated
+	 */
+	public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay, Collection<String> methods) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Parameter 'maxAttempts' must be at least 1.");
+		}
+		if (initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Delays must not be negative and 'maxDelay' must not be less than 'initialDelay'.");
+		}
+		this.maxAttempts = maxAttempts;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+		this.methods = Collections.unmodifiableSet(new HashSet<>(methods));
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	public Set<String> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * Returns how long to wait before the request is sent again.
+	 *
+	 * @param request    the request
+	 * @param attempt    number of the attempt which just failed, starting with 1
+	 * @param statusCode status code of the failed attempt, -1 if it failed with an I/O error
+	 * @param failure    I/O error of the failed attempt or null
+	 * @param retryAfter delay requested by the server in milliseconds, -1 if none
+	 * @return delay in milliseconds, -1 if the request should not be repeated
+	 */
+	long getDelay(HttpRequest request, int attempt, int statusCode, IOException failure, long retryAfter) {
+		if (attempt >= maxAttempts || !isRepeatable(request)) {
+			return -1;
+		}
+		if (failure != null ? !isTransient(failure) : !TRANSIENT_STATUS_CODES.contains(statusCode)) {
+			return -1;
+		}
+		if (retryAfter >= 0) {
+			return retryAfter <= maxDelay ? retryAfter : -1;
+		}
+		long delay = Math.min(maxDelay, initialDelay << Math.min(attempt - 1, 30));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private boolean isRepeatable(HttpRequest request) {
+		if (!methods.contains(request.getRequestLine().getMethod())) {
+			return false;
+		}
+		HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+		return entity == null || entity.isRepeatable();
+	}
+
+	private static boolean isTransient(IOException failure) {
+		if (failure instanceof UnknownHostException || failure instanceof SSLException) {
+			return false;
+		}
+		// interrupted caller, not a timeout
+		return !(failure instanceof InterruptedIOException && Thread.currentThread().isInterrupted());
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.exception.LoginErrorException;
+import org.apache.http.cookie.Cookie;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds security token of the current session. Refresh is single-flight: when several requests find the session
+ * expired at once, only one of them signs in and the others wait for its result.
+ * <p>
+ * When the expiry of the session is known (from the cookie or configured life time), the session is also refreshed
+ * in background shortly before it expires, so that requests do not have to be rejected and replayed.
+ */
+final class SessionManager {
+
+	private static final Logger logger = Logger.getLogger(SessionManager.class.getName());
+
+	private static final long MIN_REFRESH_DELAY = 1000;     // in milliseconds
+
+	private static final Futures.CauseMapper LOGIN_ERROR = new Futures.CauseMapper() {
+		@Override
+		public RuntimeException map(Throwable cause) {
+			return new LoginErrorException("Error occurred during authentication", cause);
+		}
+	};
+
+	interface Authenticator {
+
+		/**
+		 * Signs in and returns the security token of the new session.
+		 */
+		Cookie authenticate();
+	}
+
+	private final Authenticator authenticator;
+	private final ScheduledExecutorService scheduler;
+	private final long sessionLifetime;
+	private final long refreshMargin;
+	private final AtomicReference<Cookie> token = new AtomicReference<>();
+	private final AtomicReference<FutureTask<Cookie>> refresh = new AtomicReference<>();
+	private final AtomicReference<ScheduledFuture<?>> plannedRefresh = new AtomicReference<>();
+
+	/**
+	 * @param scheduler       executor running the proactive refresh
+	 * @param sessionLifetime session life time in milliseconds assumed when the cookie has no expiry, 0 if unknown
+	 * @param refreshMargin   how long before the expiry the session is refreshed in milliseconds, 0 disables the refresh
+	 */
+	SessionManager(Authenticator authenticator, ScheduledExecutorService scheduler, long sessionLifetime, long refreshMargin) {
+		this.authenticator = authenticator;
+		this.scheduler = scheduler;
+		this.sessionLifetime = sessionLifetime;
+		this.refreshMargin = refreshMargin;
+	}
+
+	/**
+	 * Returns token of the current session, signs in first if there is no session yet.
+	 */
+	Cookie getToken() {
+		Cookie current = token.get();
+		if (current != null) {
+			return current;
+		}
+		return renew(null);
+	}
+
+	/**
+	 * Returns token of the current session without signing in, null if there is no session.
+	 */
+	Cookie peekToken() {
+		return token.get();
+	}
+
+	/**
+	 * Replaces session which the given token belongs to. If it was already replaced meanwhile, token of the newer
+	 * session is returned right away; if other thread is signing in, its result is awaited.
+	 *
+	 * @param staleToken token which was rejected by the server (null if none was used)
+	 * @return token of the new session
+	 */
+	Cookie renew(final Cookie staleToken) {
+		while (true) {
+			Cookie current = token.get();
+			if (current != null && current != staleToken) {
+				return current;
+			}
+			FutureTask<Cookie> pending = refresh.get();
+			if (pending == null) {
+				FutureTask<Cookie> task = new FutureTask<>(new Callable<Cookie>() {
+					@Override
+					public Cookie call() {
+						Cookie current = token.get();
+						if (current != null && current != staleToken) {
+							// renewed by a refresh which finished just before this one started
+							return current;
+						}
+						long signInTime = System.currentTimeMillis();
+						Cookie renewed = authenticator.authenticate();
+						token.set(renewed);
+						planRefresh(renewed, signInTime);
+						return renewed;
+					}
+				});
+				if (!refresh.compareAndSet(null, task)) {
+					continue;
+				}
+				try {
+					task.run();
+				} finally {
+					refresh.compareAndSet(task, null);
+				}
+				pending = task;
+			}
+			return Futures.awaitUninterruptibly(pending, LOGIN_ERROR);
+		}
+	}
+
+	/**
+	 * Forces new session regardless of the current one (joins sign-in which is already in progress).
+	 */
+	Cookie renew() {
+		return renew(token.get());
+	}
+
+	/**
+	 * Cancels the planned background refresh.
+	 */
+	void cancelRefresh() {
+		ScheduledFuture<?> planned = plannedRefresh.getAndSet(null);
+		if (planned != null) {
+			planned.cancel(false);
+		}
+	}
+
+	private void planRefresh(final Cookie renewed, long signInTime) {
+		cancelRefresh();
+		if (refreshMargin <= 0) {
+			return;
+		}
+		long expiry;
+		Date expiryDate = renewed.getExpiryDate();
+		if (expiryDate != null) {
+			expiry = expiryDate.getTime();
+		} else if (sessionLifetime > 0) {
+			expiry = signInTime + sessionLifetime;
+		} else {
+			return;
+		}
+
+		long remaining = expiry - System.currentTimeMillis();
+		long delay = remaining - refreshMargin;
+		if (delay < MIN_REFRESH_DELAY) {
+			// session shorter than the margin: refresh half way through
+			delay = Math.max(remaining / 2, MIN_REFRESH_DELAY);
+		}
+		try {
+			plannedRefresh.set(scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (token.get() != renewed) {
+						return;
+					}
+					try {
+						renew(renewed);
+					} catch (RuntimeException e) {
+						logger.log(Level.WARNING, "Background session refresh failed, session will be renewed on demand", e);
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS));
+		} catch (RejectedExecutionException e) {
+			logger.fine("Background session refresh not planned, client is being shut down");
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.Closeable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives tasks of the Abridged Connectivity Mode and submits their results.
+ * <p>
+ * The long poll for tasks runs on a connection of its own (with its own socket timeout), so it does not occupy the
+ * connection pool used by other requests, and it is re-armed as soon as it returns. Received tasks are executed by
+ * a pool of workers which also submit the results, concurrently with each other and with the next poll. When the poll
+ * fails, it is retried after a back-off which grows from {@link #MIN_RETRY_DELAY} up to {@link #MAX_RETRY_DELAY}.
+ */
+public class TaskChannel implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(TaskChannel.class.getName());
+
+	public static final int DEFAULT_WORKERS = 4;
+	public static final int DEFAULT_POLL_SOCKET_TIMEOUT = 2 * 60 * 1000;    // in milliseconds
+	public static final long MIN_RETRY_DELAY = 1000;                        // in milliseconds
+	public static final long MAX_RETRY_DELAY = 60000;                       // in milliseconds
+
+	private static final long CLOSE_TIMEOUT = 10000;                        // in milliseconds
+
+	private final MqmRestClientImpl client;
+	private final String selfIdentity;
+	private final String selfType;
+	private final String selfLocation;
+	private final Integer apiVersion;
+	private final String sdkVersion;
+	private final TaskHandler handler;
+	private final CloseableHttpClient pollClient;
+	private final ThreadPoolExecutor workers;
+	private final Thread poller;
+	private final Object pollLock = new Object();
+	private HttpGet currentPoll;
+	private volatile boolean closed;
+
+	TaskChannel(MqmRestClientImpl client, String selfIdentity, String selfType, String selfLocation, Integer apiVersion, String sdkVersion,
+	            TaskHandler handler, int workerCount, int pollSocketTimeout) {
+		this.client = client;
+		this.selfIdentity = selfIdentity;
+		this.selfType = selfType;
+		this.selfLocation = selfLocation;
+		this.apiVersion = apiVersion;
+		this.sdkVersion = sdkVersion;
+		this.handler = handler;
+		pollClient = client.createDedicatedHttpClient(pollSocketTimeout);
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "mqm-task-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		poller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, "mqm-task-poller");
+		poller.setDaemon(true);
+	}
+
+	void start() {
+		poller.start();
+	}
+
+	/**
+	 * @return number of tasks received but not completed yet
+	 */
+	public int getPendingCount() {
+		return (int) (workers.getTaskCount() - workers.getCompletedTaskCount());
+	}
+
+	/**
+	 * Aborts the poll in progress and waits for the received tasks to complete.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		synchronized (pollLock) {
+			if (currentPoll != null) {
+				currentPoll.abort();
+			}
+		}
+		workers.shutdown();
+		try {
+			poller.join(CLOSE_TIMEOUT);
+			if (!workers.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				logger.warning("Tasks did not complete in time, their results are not submitted");
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		IOUtils.closeQuietly(pollClient);
+	}
+
+	private void poll() {
+		long retryDelay = 0;
+		while (!closed) {
+			String tasks;
+			try {
+				HttpGet request = client.createAbridgedTasksRequest(selfIdentity, selfType, selfLocation, apiVersion, sdkVersion);
+				synchronized (pollLock) {
+					if (closed) {
+						return;
+					}
+					currentPoll = request;
+				}
+				try {
+					tasks = client.getAbridgedTasks(request, pollClient);
+				} finally {
+					synchronized (pollLock) {
+						currentPoll = null;
+					}
+				}
+				retryDelay = 0;
+			} catch (RuntimeException e) {
+				if (closed) {
+					return;
+				}
+				retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+				logger.log(Level.WARNING, "Polling for tasks failed, retrying in " + retryDelay + " ms", e);
+				try {
+					Thread.sleep(retryDelay);
+				} catch (InterruptedException ie) {
+					return;
+				}
+				continue;
+			}
+			if (tasks != null) {
+				dispatch(tasks);
+			}
+		}
+	}
+
+	private void dispatch(String tasks) {
+		JSONArray array;
+		try {
+			array = JSONArray.fromObject(tasks);
+		} catch (JSONException e) {
+			logger.log(Level.SEVERE, "Received tasks cannot be parsed: " + tasks, e);
+			return;
+		}
+		for (int i = 0; i < array.size(); i++) {
+			final JSONObject task = array.getJSONObject(i);
+			try {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						execute(task);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				logger.warning("Task " + task.optString("id") + " dropped, channel is closed");
+			}
+		}
+	}
+
+	private void execute(JSONObject task) {
+		String taskId = task.optString("id");
+		try {
+			String result = handler.handle(task);
+			if (result != null) {
+				int status = client.putAbridgedResult(selfIdentity, taskId, result);
+				if (status >= 300) {
+					logger.warning("Result of task " + taskId + " not accepted: " + status);
+				}
+			}
+		} catch (RuntimeException e) {
+			logger.log(Level.SEVERE, "Task " + taskId + " failed", e);
+		}
+	}
+}
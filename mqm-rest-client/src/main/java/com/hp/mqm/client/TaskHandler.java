@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Executes tasks received through {@link TaskChannel}.
+ */
+public interface TaskHandler {
+
+    /**
+     * @param task task as received from the server
+     * @return JSON serialized result to be submitted for the task, null to submit nothing
+     */
+    String handle(JSONObject task);
+
+}
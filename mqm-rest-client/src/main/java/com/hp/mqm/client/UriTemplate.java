@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * URI template with <code>{name}</code> placeholders, parsed once and expanded in a single pass. Placeholders of
+ * positional templates are parameter indexes (<code>test/{0}?id={1}</code>). All parameter values are URI encoded,
+ * placeholders without a value are kept as they are.
+ */
+final class UriTemplate {
+
+	private static final String URI_PARAM_ENCODING = "UTF-8";
+	private static final int MAX_CACHED_TEMPLATES = 512;
+	private static final int MAX_REUSED_BUILDER_CAPACITY = 8 * 1024;
+
+	private static final ConcurrentMap<String, UriTemplate> templates = new ConcurrentHashMap<>();
+
+	private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	private final String template;
+	private final String path;
+	private final String[] literals;     // literals[i] precedes names[i], last literal follows the last placeholder
+	private final String[] names;
+	private final int[] indexes;        // positional index of names[i] or -1
+	private final int literalLength;
+
+	private UriTemplate(String template) {
+		this.template = template;
+		int query = template.indexOf('?');
+		this.path = query < 0 ? template : template.substring(0, query);
+		List<String> literals = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		int start = 0;
+		int open = template.indexOf('{');
+		while (open >= 0) {
+			int close = template.indexOf('}', open + 1);
+			if (close < 0) {
+				break;
+			}
+			int nested = template.lastIndexOf('{', close);
+			if (nested > open) {
+				// "{{0}" - only the innermost braces form the placeholder
+				open = nested;
+			}
+			literals.add(template.substring(start, open));
+			names.add(template.substring(open + 1, close));
+			start = close + 1;
+			open = template.indexOf('{', start);
+		}
+		literals.add(template.substring(start));
+		this.literals = literals.toArray(new String[literals.size()]);
+		this.names = names.toArray(new String[names.size()]);
+		this.indexes = new int[this.names.length];
+		for (int i = 0; i < this.names.length; i++) {
+			indexes[i] = toIndex(this.names[i]);
+		}
+		int literalLength = 0;
+		for (String literal : this.literals) {
+			literalLength += literal.length();
+		}
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * Returns parsed template. Templates are expected to be constants, so they are cached.
+	 */
+	static UriTemplate of(String template) {
+		UriTemplate uriTemplate = templates.get(template);
+		if (uriTemplate == null) {
+			uriTemplate = new UriTemplate(template);
+			if (templates.size() < MAX_CACHED_TEMPLATES) {
+				templates.putIfAbsent(template, uriTemplate);
+			}
+		}
+		return uriTemplate;
+	}
+
+	/**
+	 * Returns the cached template which the given relative URI was most likely expanded from: the matching template
+	 * with the longest literal text, null if none matches. Templates starting with a placeholder are not considered.
+	 * Placeholders match values up to the next '/', '?' or '&amp;', query parameters following the template are ignored.
+	 */
+	static UriTemplate match(String uri) {
+		UriTemplate best = null;
+		for (UriTemplate candidate : templates.values()) {
+			if (!candidate.literals[0].isEmpty() && (best == null || candidate.literalLength > best.literalLength) && candidate.matches(uri)) {
+				best = candidate;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the template without its query part.
+	 */
+	String getPath() {
+		return path;
+	}
+
+	private boolean matches(String uri) {
+		int position = 0;
+		for (int i = 0; i < literals.length; i++) {
+			if (i > 0) {
+				int valueEnd = position;
+				while (valueEnd < uri.length() && !isDelimiter(uri.charAt(valueEnd))) {
+					valueEnd++;
+				}
+				int next = literals[i].isEmpty() ? valueEnd : uri.indexOf(literals[i], position);
+				if (next < 0 || next > valueEnd) {
+					return false;
+				}
+				position = next;
+			}
+			if (!uri.startsWith(literals[i], position)) {
+				return false;
+			}
+			position += literals[i].length();
+		}
+		return position == uri.length() || uri.charAt(position) == '?' || uri.charAt(position) == '&';
+	}
+
+	private static boolean isDelimiter(char c) {
+		return c == '/' || c == '?' || c == '&';
+	}
+
+	/**
+	 * Returns empty builder of the calling thread. Result has to be turned into string before the builder is borrowed again.
+	 */
+	static StringBuilder borrowBuilder() {
+		StringBuilder builder = builders.get();
+		if (builder.capacity() > MAX_REUSED_BUILDER_CAPACITY) {
+			builder = new StringBuilder(256);
+			builders.set(builder);
+		}
+		builder.setLength(0);
+		return builder;
+	}
+
+	/**
+	 * Appends the template to target with <code>{i}</code> replaced by encoded <code>params[i]</code>.
+	 */
+	void expand(StringBuilder target, Object... params) {
+		for (int i = 0; i < names.length; i++) {
+			target.append(literals[i]);
+			int index = indexes[i];
+			if (index >= 0 && index < params.length) {
+				appendEncoded(target, params[index]);
+			} else {
+				appendPlaceholder(target, i);
+			}
+		}
+		target.append(literals[names.length]);
+	}
+
+	/**
+	 * Appends the template to target with <code>{name}</code> replaced by encoded value of <code>params.get(name)</code>.
+	 */
+	void expand(StringBuilder target, Map<String, ?> params) {
+		for (int i = 0; i < names.length; i++) {
+			target.append(literals[i]);
+			if (params.containsKey(names[i])) {
+				appendEncoded(target, params.get(names[i]));
+			} else {
+				appendPlaceholder(target, i);
+			}
+		}
+		target.append(literals[names.length]);
+	}
+
+	/**
+	 * Appends URI encoded value (<code>null</code> as empty string), space is encoded as <code>%20</code>.
+	 */
+	static void appendEncoded(StringBuilder target, Object value) {
+		if (value == null) {
+			return;
+		}
+		String param = value.toString();
+		for (int i = 0; i < param.length(); i++) {
+			if (!isUnreserved(param.charAt(i))) {
+				target.append(encode(param));
+				return;
+			}
+		}
+		target.append(param);
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+
+	private void appendPlaceholder(StringBuilder target, int i) {
+		target.append('{').append(names[i]).append('}');
+	}
+
+	private static boolean isUnreserved(char c) {
+		// characters left as they are by URLEncoder
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_';
+	}
+
+	private static String encode(String param) {
+		try {
+			return URLEncoder.encode(param, URI_PARAM_ENCODING).replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Unsupported encoding used for URI parameter encoding.", e);
+		}
+	}
+
+	private static int toIndex(String name) {
+		if (name.isEmpty() || name.length() > 9 || (name.length() > 1 && name.charAt(0) == '0')) {
+			return -1;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+				return -1;
+			}
+		}
+		return Integer.parseInt(name);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.internal;
+
+import com.hp.mqm.client.InputStreamSource;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Repeatable entity which compresses the content of an {@link InputStreamSource} while it is being written.
+ * Nothing is buffered besides the compressor state; the source is re-opened on every {@link #writeTo(OutputStream)}
+ * so the request can be replayed (e.g. after re-login). Content length is unknown, the entity is sent chunked.
+ * {@link #getContent()} returns the compressed content as well, matching the declared content encoding.
+ */
+public class GZipInputStreamSourceEntity extends InputStreamSourceEntity {
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    public GZipInputStreamSourceEntity(InputStreamSource inputStreamSource) {
+        this(inputStreamSource, null);
+    }
+
+    public GZipInputStreamSourceEntity(InputStreamSource inputStreamSource, ContentType contentType) {
+        super(inputStreamSource, contentType);
+        setContentEncoding("gzip");
+        setChunked(true);
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new GZipCompressingInputStream(super.getContent());
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (outputStream == null) {
+            throw new IllegalArgumentException("Output stream cannot be null.");
+        }
+        GZIPOutputStream zipper = new GZIPOutputStream(new NonClosingOutputStream(outputStream), GZIP_BUFFER_SIZE);
+        try {
+            // plain source content, getContent() is compressed already
+            writeSource(zipper);
+            zipper.finish();
+        } finally {
+            zipper.close();
+        }
+    }
+
+    private static class NonClosingOutputStream extends OutputStream {
+
+        private final OutputStream delegate;
+
+        private NonClosingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // underlying connection stream is owned by the http client
+        }
+    }
+
+    /**
+     * Compresses the source stream into gzip format as it is being read.
+     */
+    private static class GZipCompressingInputStream extends InputStream {
+
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+        private final CheckedInputStream source;
+        private final Deflater deflater;
+        private final DeflaterInputStream deflated;
+        private byte[] pending = HEADER;
+        private int pendingPosition;
+        private boolean trailerRead;
+
+        private GZipCompressingInputStream(InputStream source) {
+            this.source = new CheckedInputStream(source, new CRC32());
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            this.deflated = new DeflaterInputStream(this.source, deflater, GZIP_BUFFER_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (pending != null) {
+                    int l = Math.min(len, pending.length - pendingPosition);
+                    System.arraycopy(pending, pendingPosition, b, off, l);
+                    pendingPosition += l;
+                    if (pendingPosition == pending.length) {
+                        pending = null;
+                    }
+                    return l;
+                }
+                if (trailerRead) {
+                    return -1;
+                }
+                int l = deflated.read(b, off, len);
+                if (l != -1) {
+                    return l;
+                }
+                pending = trailer();
+                pendingPosition = 0;
+                trailerRead = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                deflated.close();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private byte[] trailer() {
+            long crc = source.getChecksum().getValue();
+            long size = deflater.getBytesRead();
+            return new byte[] {
+                    (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+                    (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+            };
+        }
+    }
+}
@@ -70,6 +70,10 @@ public class InputStreamSourceEntity extends AbstractHttpEntity {
 
     @Override
     public InputStream getContent() throws IOException {
+        return openSource();
+    }
+
+    private InputStream openSource() {
         InputStream inputStream = inputStreamSource.getInputStream();
         if (inputStream == null) {
             throw new IllegalStateException("InputStreamSource#getInputSteam() returns null.");
@@ -82,7 +86,14 @@ public class InputStreamSourceEntity extends AbstractHttpEntity {
         if (outputStream == null) {
             throw new IllegalArgumentException("Output stream cannot be null.");
         }
-        final InputStream inputStream = getContent();
+        writeSource(outputStream);
+    }
+
+    /**
+     * Copies content of the source as it is to given stream.
+     */
+    protected void writeSource(OutputStream outputStream) throws IOException {
+        final InputStream inputStream = openSource();
         try {
             final byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
             int l;
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records kept in memory-mapped segment files of a directory. Records are consumed in the order
+ * they were appended: {@link #peek()} returns the oldest record and {@link #commit(Record)} marks it as consumed.
+ * <p>
+ * Every record is stored as {@code [length][crc32][type][payload]} and flushed to disk when appended; the position
+ * of the oldest record is kept in a checkpoint file, so the log survives restart of the process. Record which was not
+ * completely written (crash during append) is discarded when the log is opened. Segments are deleted once all their
+ * records are consumed; segments which cannot be deleted right away (still mapped on Windows) are removed when the log
+ * is opened next time.
+ * <p>
+ * Consumption is at-least-once: record consumed shortly before the process crashed may be returned again.
+ */
+public class SegmentLog implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SegmentLog.class.getName());
+
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 9;       // length, crc32, type
+    private static final int CHECKPOINT_SIZE = 12;  // segment id, position
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final File directory;
+    private final int segmentSize;
+    private final TreeSet<Long> segmentIds = new TreeSet<>();
+    private final MappedByteBuffer checkpoint;
+    private Segment readSegment;
+    private int readPosition;
+    private Segment writeSegment;
+    private int writePosition;
+    private int pendingCount;
+    private boolean closed;
+
+    /**
+     * Opens the log stored in given directory, creates it if it does not exist.
+     *
+     * @param segmentSize size of segment files in bytes, records which do not fit get a segment of their own
+     */
+    public SegmentLog(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + HEADER_SIZE);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        checkpoint = map(new File(directory, CHECKPOINT_FILE), CHECKPOINT_SIZE);
+        long checkpointSegment = checkpoint.getLong(0);
+        int checkpointPosition = checkpoint.getInt(8);
+
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        for (File file : files) {
+            long id;
+            try {
+                id = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (id < checkpointSegment) {
+                deleteSegmentFile(id);
+            } else {
+                segmentIds.add(id);
+            }
+        }
+
+        if (segmentIds.isEmpty()) {
+            readSegment = createSegment(checkpointSegment, segmentSize);
+            readPosition = 0;
+        } else {
+            readSegment = openSegment(segmentIds.first());
+            readPosition = readSegment.id == checkpointSegment ? checkpointPosition : 0;
+        }
+        storeCheckpoint();
+
+        // count the pending records and find the end of the last segment
+        Segment segment = readSegment;
+        int position = readPosition;
+        while (true) {
+            position = scan(segment, position);
+            Long next = segmentIds.higher(segment.id);
+            if (next == null) {
+                break;
+            }
+            segment = openSegment(next);
+            position = 0;
+        }
+        writeSegment = segment;
+        writePosition = position;
+        // whatever follows is a partially written record, it would hide records appended after it
+        for (int i = writePosition; i < writeSegment.buffer.capacity(); i++) {
+            writeSegment.buffer.put(i, (byte) 0);
+        }
+        writeSegment.buffer.force();
+    }
+
+    /**
+     * Appends a record and flushes it to disk.
+     */
+    public void append(byte type, byte[] payload) throws IOException {
+        append(type, new ByteArrayInputStream(payload), payload.length);
+    }
+
+    /**
+     * Appends a record read from the stream and flushes it to disk. The payload is copied straight into the mapped
+     * segment, the log is locked while the stream is being read.
+     *
+     * @param length number of bytes of the payload, the stream is not read beyond it
+     * @throws EOFException if the stream ends before given number of bytes was read, nothing is appended then
+     */
+    public synchronized void append(byte type, InputStream in, long length) throws IOException {
+        checkOpen();
+        if (length < 0 || length > Integer.MAX_VALUE - 1 - HEADER_SIZE) {
+            throw new IllegalArgumentException("Record length " + length + " out of range");
+        }
+        int size = HEADER_SIZE + (int) length;
+        if (writePosition + size > writeSegment.buffer.capacity()) {
+            Segment next = createSegment(writeSegment.id + 1, Math.max(segmentSize, size));
+            writeSegment = next;
+            writePosition = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(type);
+
+        ByteBuffer buffer = writeSegment.buffer.duplicate();
+        buffer.position(writePosition + HEADER_SIZE);
+        byte[] chunk = new byte[(int) Math.min(length, COPY_BUFFER_SIZE)];
+        long remaining = length;
+        while (remaining > 0) {
+            int count = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (count < 0) {
+                throw new EOFException("Stream ended " + remaining + " bytes before the end of the record");
+            }
+            crc.update(chunk, 0, count);
+            buffer.put(chunk, 0, count);
+            remaining -= count;
+        }
+        buffer.put(writePosition + 8, type);
+        buffer.putInt(writePosition + 4, (int) crc.getValue());
+        // length goes last, zero length means there is no record
+        buffer.putInt(writePosition, (int) length + 1);
+        writeSegment.buffer.force();
+
+        writePosition += size;
+        pendingCount++;
+    }
+
+    /**
+     * @return the oldest record which was not consumed yet or null if there is none
+     */
+    public synchronized Record peek() throws IOException {
+        checkOpen();
+        while (true) {
+            if (readSegment == writeSegment && readPosition >= writePosition) {
+                return null;
+            }
+            Record record = readRecord(readSegment, readPosition);
+            if (record != null) {
+                return record;
+            }
+            if (readSegment == writeSegment) {
+                logger.severe("Corrupted record in " + segmentFile(readSegment.id) + " skipped");
+                readPosition = writePosition;
+                storeCheckpoint();
+                return null;
+            }
+            // end of the segment, all its records were consumed
+            long consumed = readSegment.id;
+            Long next = segmentIds.higher(consumed);
+            readSegment = next == writeSegment.id ? writeSegment : openSegment(next);
+            readPosition = 0;
+            storeCheckpoint();
+            segmentIds.remove(consumed);
+            deleteSegmentFile(consumed);
+        }
+    }
+
+    /**
+     * Marks the record returned by {@link #peek()} as consumed.
+     */
+    public synchronized void commit(Record record) {
+        checkOpen();
+        if (record.segmentId != readSegment.id || record.position != readPosition) {
+            throw new IllegalStateException("Only the oldest record can be committed");
+        }
+        readPosition += HEADER_SIZE + record.payload.capacity();
+        pendingCount--;
+        storeCheckpoint();
+    }
+
+    /**
+     * @return number of records which were not consumed yet
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            checkpoint.force();
+            // mapped buffers cannot be released explicitly, they are unmapped once garbage collected
+            readSegment = null;
+            writeSegment = null;
+        }
+    }
+
+    private int scan(Segment segment, int position) {
+        while (true) {
+            Record record = readRecord(segment, position);
+            if (record == null) {
+                return position;
+            }
+            pendingCount++;
+            position += HEADER_SIZE + record.payload.capacity();
+        }
+    }
+
+    private static Record readRecord(Segment segment, int position) {
+        ByteBuffer buffer = segment.buffer;
+        if (position + HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position) - 1;
+        if (length < 0 || position + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        byte type = buffer.get(position + 8);
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(position + HEADER_SIZE);
+        payload.limit(position + HEADER_SIZE + length);
+        payload = payload.slice().asReadOnlyBuffer();
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        byte[] chunk = new byte[Math.min(length, COPY_BUFFER_SIZE)];
+        ByteBuffer data = payload.duplicate();
+        while (data.hasRemaining()) {
+            int count = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            return null;
+        }
+        return new Record(segment.id, position, type, payload);
+    }
+
+    private Segment createSegment(long id, int size) throws IOException {
+        File file = segmentFile(id);
+        Segment segment = new Segment(id, map(file, size));
+        segmentIds.add(id);
+        return segment;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        File file = segmentFile(id);
+        return new Segment(id, map(file, (int) file.length()));
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // mapping stays valid after the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void storeCheckpoint() {
+        checkpoint.putLong(0, readSegment.id);
+        checkpoint.putInt(8, readPosition);
+    }
+
+    private void deleteSegmentFile(long id) {
+        File file = segmentFile(id);
+        if (!file.delete()) {
+            logger.fine("Consumed segment " + file + " not deleted, will be deleted on next start");
+        }
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Log is closed");
+        }
+    }
+
+    private static class Segment {
+
+        private final long id;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long id, MappedByteBuffer buffer) {
+            this.id = id;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Record of the log, its payload is read directly from the mapped segment.
+     */
+    public static class Record {
+
+        private final long segmentId;
+        private final int position;
+        private final byte type;
+        private final ByteBuffer payload;
+
+        private Record(long segmentId, int position, byte type, ByteBuffer payload) {
+            this.segmentId = segmentId;
+            this.position = position;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public int getLength() {
+            return payload.capacity();
+        }
+
+        public byte[] getBytes() {
+            byte[] bytes = new byte[payload.capacity()];
+            payload.duplicate().get(bytes);
+            return bytes;
+        }
+
+        /**
+         * @return new stream over the payload, can be called repeatedly
+         */
+        public InputStream getInputStream() {
+            final ByteBuffer data = payload.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return data.hasRemaining() ? data.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!data.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(len, data.remaining());
+                    data.get(b, off, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return data.remaining();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.model;
+
+/**
+ * Snapshot of the metadata cache counters.
+ */
+final public class CacheStats {
+
+    final private long hits;
+    final private long misses;
+    final private long loads;
+    final private long evictions;
+    final private int size;
+
+    public CacheStats(long hits, long misses, long loads, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.loads = loads;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of lookups not found in the cache (or expired), including those which joined a load in progress
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of requests sent to the server to load missing values
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return number of values evicted because the cache was full
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of values currently cached
+     */
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.model;
+
+/**
+ * Snapshot of a circuit breaker state.
+ */
+final public class CircuitBreakerStats {
+
+    public enum State {
+        /**
+         * calls pass
+         */
+        CLOSED,
+        /**
+         * calls are rejected
+         */
+        OPEN,
+        /**
+         * a few calls probe whether the endpoints recovered
+         */
+        HALF_OPEN
+    }
+
+    final private State state;
+    final private int calls;
+    final private double failureRate;
+    final private double slowCallRate;
+    final private long rejectedCalls;
+    final private long stateSince;
+
+    public CircuitBreakerStats(State state, int calls, double failureRate, double slowCallRate, long rejectedCalls, long stateSince) {
+        this.state = state;
+        this.calls = calls;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.rejectedCalls = rejectedCalls;
+        this.stateSince = stateSince;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return number of calls in the evaluated window
+     */
+    public int getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return rate of failed calls in the evaluated window (0 to 1)
+     */
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * @return rate of slow calls in the evaluated window (0 to 1)
+     */
+    public double getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    /**
+     * @return number of calls rejected since the client was created
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    /**
+     * @return time of the last state change in milliseconds since the epoch
+     */
+    public long getStateSince() {
+        return stateSince;
+    }
+
+    @Override
+    public String toString() {
+        return "state: " + state + "; calls: " + calls + "; failureRate: " + failureRate + "; slowCallRate: " + slowCallRate +
+                "; rejectedCalls: " + rejectedCalls;
+    }
+}
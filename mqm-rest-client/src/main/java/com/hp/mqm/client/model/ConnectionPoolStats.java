@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.model;
+
+/**
+ * Snapshot of the HTTP connection pool state.
+ */
+final public class ConnectionPoolStats {
+
+    final private int leased;
+    final private int pending;
+    final private int available;
+    final private int max;
+    final private int leaked;
+
+    public ConnectionPoolStats(int leased, int pending, int available, int max) {
+        this(leased, pending, available, max, 0);
+    }
+
+    public ConnectionPoolStats(int leased, int pending, int available, int max, int leaked) {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+        this.leaked = leaked;
+    }
+
+    /**
+     * @return number of connections currently in use
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return number of requests waiting for a connection
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return number of idle connections kept in the pool
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return maximum number of connections the pool allows
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return number of connections leased longer than the leak detection threshold, 0 when the detection is off
+     * and always 0 for {@link com.hp.mqm.client.AsyncMqmRestClient} which does not track its connections
+     */
+    public int getLeaked() {
+        return leaked;
+    }
+
+    @Override
+    public String toString() {
+        return "leased: " + leased + "; pending: " + pending + "; available: " + available + "; max: " + max + "; leaked: " + leaked;
+    }
+}
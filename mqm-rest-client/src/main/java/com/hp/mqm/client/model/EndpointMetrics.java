@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measurements of REST calls to one endpoint (HTTP method and URI template). Latencies are in nanoseconds.
+ */
+final public class EndpointMetrics {
+
+    private static final long[] LATENCY_BUCKETS = {
+            millis(1), millis(2), millis(5), millis(10), millis(25), millis(50), millis(100), millis(250), millis(500),
+            millis(1000), millis(2500), millis(5000), millis(10000), millis(30000), millis(60000)
+    };
+
+    final private String method;
+    final private String endpoint;
+    final private long count;
+    final private long errors;
+    final private long retries;
+    final private Map<Integer, Long> statusCodes;
+    final private long totalLatency;
+    final private long maxLatency;
+    final private long[] latencyHistogram;
+    final private long bytesSent;
+    final private long bytesReceived;
+    final private long requestBytesSaved;
+    final private long responseBytesSaved;
+
+    public EndpointMetrics(String method, String endpoint, long count, long errors, long retries, Map<Integer, Long> statusCodes,
+                           long totalLatency, long maxLatency, long[] latencyHistogram, long bytesSent, long bytesReceived) {
+        this(method, endpoint, count, errors, retries, statusCodes, totalLatency, maxLatency, latencyHistogram, bytesSent, bytesReceived, 0, 0);
+    }
+
+    public EndpointMetrics(String method, String endpoint, long count, long errors, long retries, Map<Integer, Long> statusCodes,
+                           long totalLatency, long maxLatency, long[] latencyHistogram, long bytesSent, long bytesReceived,
+                           long requestBytesSaved, long responseBytesSaved) {
+        if (latencyHistogram.length != LATENCY_BUCKETS.length + 1) {
+            throw new IllegalArgumentException("Latency histogram must have " + (LATENCY_BUCKETS.length + 1) + " buckets");
+        }
+        this.method = method;
+        this.endpoint = endpoint;
+        this.count = count;
+        this.errors = errors;
+        this.retries = retries;
+        this.statusCodes = Collections.unmodifiableMap(statusCodes);
+        this.totalLatency = totalLatency;
+        this.maxLatency = maxLatency;
+        this.latencyHistogram = latencyHistogram.clone();
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.requestBytesSaved = requestBytesSaved;
+        this.responseBytesSaved = responseBytesSaved;
+    }
+
+    /**
+     * @return upper bounds (inclusive) of the latency histogram buckets, the last bucket holds the longer latencies
+     */
+    public static long[] getLatencyBuckets() {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    /**
+     * @return index of the latency histogram bucket the given latency belongs to
+     */
+    public static int getLatencyBucket(long latency) {
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (latency <= LATENCY_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKETS.length;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return number of completed requests (including the failed ones)
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of requests which failed with an I/O error or a status code of 400 or higher
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return number of requests sent again
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return number of responses per HTTP status code, -1 stands for requests which received no response
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        return statusCodes;
+    }
+
+    public long getTotalLatency() {
+        return totalLatency;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public long getMeanLatency() {
+        return count > 0 ? totalLatency / count : 0;
+    }
+
+    /**
+     * @return number of requests per latency bucket (see {@link #getLatencyBuckets()})
+     */
+    public long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    /**
+     * Estimates the latency percentile from the histogram.
+     *
+     * @param percentile value between 0 and 100
+     * @return upper bound of the bucket the percentile falls into, the maximum latency for the last bucket
+     */
+    public long getLatencyPercentile(double percentile) {
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            seen += latencyHistogram[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(LATENCY_BUCKETS[i], maxLatency);
+            }
+        }
+        return maxLatency;
+    }
+
+    /**
+     * @return total size of request bodies in bytes
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return total size of response bodies in bytes, counting only responses which declared their size
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return total number of bytes by which compression reduced the request bodies
+     */
+    public long getRequestBytesSaved() {
+        return requestBytesSaved;
+    }
+
+    /**
+     * @return total number of bytes by which compression reduced the response bodies
+     */
+    public long getResponseBytesSaved() {
+        return responseBytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + endpoint + ": count=" + count + ", errors=" + errors + ", retries=" + retries +
+                ", statusCodes=" + statusCodes + ", meanLatency=" + TimeUnit.NANOSECONDS.toMillis(getMeanLatency()) +
+                "ms, p95=" + TimeUnit.NANOSECONDS.toMillis(getLatencyPercentile(95)) +
+                "ms, maxLatency=" + TimeUnit.NANOSECONDS.toMillis(maxLatency) +
+                "ms, bytesSent=" + bytesSent + ", bytesReceived=" + bytesReceived +
+                ", requestBytesSaved=" + requestBytesSaved + ", responseBytesSaved=" + responseBytesSaved;
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
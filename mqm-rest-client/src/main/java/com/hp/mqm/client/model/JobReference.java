@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.model;
+
+/**
+ * Job of a CI server, identifies the subject of a test result preflight.
+ */
+final public class JobReference {
+
+    final private String serverIdentity;
+    final private String jobName;
+
+    public JobReference(String serverIdentity, String jobName) {
+        this.serverIdentity = serverIdentity;
+        this.jobName = jobName;
+    }
+
+    public String getServerIdentity() {
+        return serverIdentity;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        JobReference that = (JobReference) o;
+        return (serverIdentity != null ? serverIdentity.equals(that.serverIdentity) : that.serverIdentity == null) &&
+                (jobName != null ? jobName.equals(that.jobName) : that.jobName == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = serverIdentity != null ? serverIdentity.hashCode() : 0;
+        return 31 * result + (jobName != null ? jobName.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return serverIdentity + "/" + jobName;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point in time copy of the client metrics (see {@link com.hp.mqm.client.InMemoryMetricsListener}). Durations are
+ * in nanoseconds.
+ */
+final public class MetricsSnapshot {
+
+    final private long timestamp;
+    final private List<EndpointMetrics> endpoints;
+    final private long logins;
+    final private long failedLogins;
+    final private long totalLoginTime;
+    final private long connectionLeases;
+    final private long totalConnectionWait;
+    final private long maxConnectionWait;
+
+    public MetricsSnapshot(long timestamp, List<EndpointMetrics> endpoints, long logins, long failedLogins, long totalLoginTime,
+                           long connectionLeases, long totalConnectionWait, long maxConnectionWait) {
+        this.timestamp = timestamp;
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.logins = logins;
+        this.failedLogins = failedLogins;
+        this.totalLoginTime = totalLoginTime;
+        this.connectionLeases = connectionLeases;
+        this.totalConnectionWait = totalConnectionWait;
+        this.maxConnectionWait = maxConnectionWait;
+    }
+
+    /**
+     * @return time the snapshot was taken at in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return metrics per endpoint sorted by endpoint and method
+     */
+    public List<EndpointMetrics> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return metrics of the given endpoint, null if it was not called
+     */
+    public EndpointMetrics getEndpoint(String method, String endpoint) {
+        for (EndpointMetrics metrics : endpoints) {
+            if (metrics.getMethod().equals(method) && metrics.getEndpoint().equals(endpoint)) {
+                return metrics;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of sign-ins (including the failed ones)
+     */
+    public long getLogins() {
+        return logins;
+    }
+
+    public long getFailedLogins() {
+        return failedLogins;
+    }
+
+    public long getTotalLoginTime() {
+        return totalLoginTime;
+    }
+
+    /**
+     * @return number of connections leased from the pool of the blocking client
+     */
+    public long getConnectionLeases() {
+        return connectionLeases;
+    }
+
+    public long getTotalConnectionWait() {
+        return totalConnectionWait;
+    }
+
+    public long getMaxConnectionWait() {
+        return maxConnectionWait;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Regex based URI resolution as it was done before {@link UriTemplate}, kept as the reference of tests and the benchmark baseline.
+ */
+final class LegacyUriResolver {
+
+	private static final String SHARED_SPACE_API_URI = "api/shared_spaces/{0}";
+	private static final String SHARED_SPACE_INTERNAL_API_URI = "internal-api/shared_spaces/{0}";
+	private static final String WORKSPACE_API_URI = SHARED_SPACE_API_URI + "/workspaces/{1}";
+
+	private final String location;
+	private final String sharedSpace;
+
+	LegacyUriResolver(String location, String sharedSpace) {
+		this.location = location;
+		this.sharedSpace = sharedSpace;
+	}
+
+	URI createSharedSpaceInternalApiUri(String template, Object... params) {
+		return URI.create(createBaseUri(SHARED_SPACE_INTERNAL_API_URI, sharedSpace).toString() + "/" + resolveTemplate(template, asMap(params)));
+	}
+
+	URI getEntityURI(String collection, Collection<String> conditions, Collection<String> fields, Long workspaceId, Integer offset, Integer limit, String orderBy) {
+		Map<String, Object> params = new HashMap<>();
+		StringBuilder template = new StringBuilder(collection + "?");
+
+		if (offset != null && limit != null) {
+			params.put("offset", offset);
+			params.put("limit", limit);
+			template.append("&" + "offset={offset}&limit={limit}");
+		}
+
+		if (conditions != null && !conditions.isEmpty()) {
+			StringBuilder expr = new StringBuilder();
+			for (String condition : conditions) {
+				if (expr.length() > 0) {
+					expr.append(";");
+				}
+				expr.append(condition);
+			}
+			params.put("query", "\"" + expr.toString() + "\"");
+			template.append("&" + "query={query}");
+		}
+
+		if (fields != null && !fields.isEmpty()) {
+			params.put("fields", StringUtils.join(fields, ","));
+			template.append("&" + "fields={fields}");
+		}
+
+		if (!StringUtils.isEmpty(orderBy)) {
+			params.put("order", orderBy);
+			template.append("&" + "order_by={order}");
+		}
+
+		if (workspaceId != null) {
+			return URI.create(createBaseUri(WORKSPACE_API_URI, sharedSpace, workspaceId).toString() + "/" + resolveTemplate(template.toString(), params));
+		} else {
+			return URI.create(createBaseUri(SHARED_SPACE_API_URI, sharedSpace).toString() + "/" + resolveTemplate(template.toString(), params));
+		}
+	}
+
+	private URI createBaseUri(String template, Object... params) {
+		return URI.create(location + "/" + resolveTemplate(template, asMap(params)));
+	}
+
+	static String resolveTemplate(String template, Map<String, ?> params) {
+		String result = template;
+		for (String param : params.keySet()) {
+			Object value = params.get(param);
+			result = result.replaceAll(Pattern.quote("{" + param + "}"), encodeParam(value == null ? "" : value.toString()));
+		}
+		return result;
+	}
+
+	static Map<String, Object> asMap(Object... params) {
+		Map<String, Object> map = new HashMap<>();
+		for (int i = 0; i < params.length; i++) {
+			map.put(String.valueOf(i), params[i]);
+		}
+		return map;
+	}
+
+	private static String encodeParam(String param) {
+		try {
+			return URLEncoder.encode(param, "UTF-8").replace("+", "%20");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Unsupported encoding used for URI parameter encoding.", e);
+		}
+	}
+}
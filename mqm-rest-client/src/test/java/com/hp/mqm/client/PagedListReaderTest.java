@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import com.hp.mqm.client.model.PagedList;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compares entities built by {@link PagedListReader} with the ones the former code path handed to the factories:
+ * the whole response parsed by <code>JSONObject.fromObject(String)</code> and every entity serialized and parsed again.
+ */
+public class PagedListReaderTest {
+
+	private static final AbstractMqmRestClient.EntityFactory<JSONObject> IDENTITY = new AbstractMqmRestClient.EntityFactory<JSONObject>() {
+		@Override
+		public JSONObject create(JSONObject entityObject) {
+			return entityObject;
+		}
+	};
+
+	@Test
+	public void testPlainValues() throws IOException {
+		assertSameAsLegacy("{\"id\":\"1001\",\"name\":\"release\",\"empty\":\"\",\"flag\":true,\"other\":false,\"missing\":null," +
+				"\"text\":\"quote \\\" backslash \\\\ unicode \\u00e9\",\"items\":[1,\"a\",null,true,{\"id\":\"2\"},[]]}");
+	}
+
+	@Test
+	public void testJsonLookingStrings() throws IOException {
+		assertSameAsLegacy("{\"id\":1,\"object\":\"{\\\"a\\\":1}\",\"array\":\"[1,2]\",\"nullText\":\"null\",\"broken\":\"[abc\"," +
+				"\"nested\":{\"inner\":\"{}\"},\"list\":[\"[]\",\"{\\\"b\\\":\\\"c\\\"}\",\"plain\"]}");
+	}
+
+	@Test
+	public void testFunctionLiterals() throws IOException {
+		assertSameAsLegacy("{\"id\":1,\"function\":\"function(a){ return a; }\",\"list\":[\"function(){}\",\"x\"]," +
+				"\"nested\":{\"f\":\"function (b) { return b; }\"}}");
+	}
+
+	@Test
+	public void testDuplicateKeys() throws IOException {
+		assertSameAsLegacy("{\"id\":1,\"a\":1,\"a\":2,\"b\":[1],\"b\":3,\"c\":{\"x\":1},\"c\":\"y\",\"d\":null,\"d\":4}");
+	}
+
+	@Test
+	public void testNumbers() throws IOException {
+		assertSameAsLegacy("{\"id\":1,\"int\":42,\"negative\":-7,\"zero\":0,\"negativeZero\":-0,\"long\":12345678901," +
+				"\"huge\":123456789012345678901234567890,\"double\":1.5,\"trailingZero\":1.50,\"wholeDouble\":2.0," +
+				"\"exponent\":1e3,\"smallExponent\":1E-7,\"fraction\":0.1,\"list\":[1.0,10,2.50,3e2]}");
+	}
+
+	@Test
+	public void testMultipleEntitiesAndTotalCount() throws IOException {
+		String json = "{\"data\":[{\"id\":1,\"v\":\"[1]\"},{\"id\":2,\"v\":2.0},{\"id\":3,\"v\":\"function(){}\"}],\"total_count\":10,\"exceeds_total_count\":false}";
+		PagedList<JSONObject> pagedList = PagedListReader.read(new ByteArrayInputStream(json.getBytes("UTF-8")), IDENTITY, 5);
+		Assert.assertEquals(10, pagedList.getTotalCount());
+		Assert.assertEquals(5, pagedList.getOffset());
+		assertSameEntities(legacyRead(json), pagedList.getItems());
+	}
+
+	private static void assertSameAsLegacy(String entityJson) throws IOException {
+		String json = "{\"total_count\":1,\"data\":[" + entityJson + "]}";
+		PagedList<JSONObject> pagedList = PagedListReader.read(new ByteArrayInputStream(json.getBytes("UTF-8")), IDENTITY, 0);
+		assertSameEntities(legacyRead(json), pagedList.getItems());
+	}
+
+	private static List<JSONObject> legacyRead(String json) {
+		JSONObject entities = JSONObject.fromObject(json);
+		List<JSONObject> items = new ArrayList<>();
+		for (JSONObject entityObject : AbstractMqmRestClient.getJSONObjectCollection(entities, "data")) {
+			items.add(JSONObject.fromObject(entityObject.toString()));
+		}
+		return items;
+	}
+
+	private static void assertSameEntities(List<JSONObject> expected, List<JSONObject> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameValue(expected.get(i), actual.get(i));
+		}
+	}
+
+	private static void assertSameValue(Object expected, Object actual) {
+		Assert.assertNotNull(actual);
+		Assert.assertEquals(String.valueOf(expected), expected.getClass(), actual.getClass());
+		if (expected instanceof JSONObject) {
+			JSONObject expectedObject = (JSONObject) expected;
+			JSONObject actualObject = (JSONObject) actual;
+			Assert.assertEquals(new ArrayList<Object>(expectedObject.keySet()), new ArrayList<Object>(actualObject.keySet()));
+			for (Iterator<?> keys = expectedObject.keys(); keys.hasNext(); ) {
+				String key = (String) keys.next();
+				assertSameValue(expectedObject.get(key), actualObject.get(key));
+			}
+		} else if (expected instanceof JSONArray) {
+			JSONArray expectedArray = (JSONArray) expected;
+			JSONArray actualArray = (JSONArray) actual;
+			Assert.assertEquals(expectedArray.size(), actualArray.size());
+			for (int i = 0; i < expectedArray.size(); i++) {
+				assertSameValue(expectedArray.get(i), actualArray.get(i));
+			}
+		} else {
+			Assert.assertEquals(expected, actual);
+		}
+	}
+}
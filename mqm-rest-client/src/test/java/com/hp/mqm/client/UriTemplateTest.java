@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Hewlett-Packard Development Company, L.P.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hp.mqm.client;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares URIs built through {@link UriTemplate} with the former regex based resolution of {@link LegacyUriResolver}.
+ */
+public class UriTemplateTest {
+
+	private static final String LOCATION = "http://octane.example.com:8080";
+	private static final String SHARED_SPACE = "1001";
+	private static final long WORKSPACE_ID = 1002;
+
+	private static MqmRestClientImpl client;
+	private static LegacyUriResolver legacy;
+
+	@BeforeClass
+	public static void initClass() {
+		client = new MqmRestClientImpl(new MqmConnectionConfig(LOCATION, SHARED_SPACE, "user", "password", "test"));
+		legacy = new LegacyUriResolver(LOCATION, SHARED_SPACE);
+	}
+
+	@AfterClass
+	public static void closeClass() throws IOException {
+		client.close();
+	}
+
+	@Test
+	public void testPositionalPlaceholders() {
+		assertSameExpansion("test-results/{0}", 12345L);
+		assertSameExpansion("analytics/ci/servers/{0}/jobs/{1}/tests-result-preflight", "server id", "job/name?&=#");
+		assertSameExpansion("a/{0}/b/{0}?x={1}", "value", 2);
+		assertSameExpansion("no/placeholders");
+		assertSameExpansion("");
+	}
+
+	@Test
+	public void testEncodedValues() {
+		assertSameExpansion("a/{0}", "space and + plus");
+		assertSameExpansion("a/{0}", "unicode é中");
+		assertSameExpansion("a/{0}", ".-*_~!'()");
+		assertSameExpansion("a/{0}", "");
+		assertSameExpansion("a/{0}/{1}", null, "b");
+	}
+
+	@Test
+	public void testValueLookingLikePlaceholder() {
+		assertSameExpansion("a/{0}/{1}", "{1}", "b");
+		assertSameExpansion("a/{0}", "{0}");
+	}
+
+	@Test
+	public void testNestedBraces() {
+		assertSameExpansion("a/{{0}}", "b");
+		assertSameExpansion("a/{{0}/{1}}", "b", "c");
+		assertSameExpansion("a/{x{0}}", "b");
+		assertSameExpansion("a/}{0}{", "b");
+	}
+
+	@Test
+	public void testUnresolvedPlaceholders() {
+		assertSameExpansion("a/{0}/{1}", "b");
+		assertSameExpansion("a/{name}/{0}", "b");
+		assertSameExpansion("a/{}/{0}", "b");
+		assertSameExpansion("a/{00}/{01}/{0}", "b");
+		assertSameExpansion("a/{0", "b");
+		assertSameExpansion("a/0}", "b");
+		assertSameExpansion("a/{0}/{12}", "b");
+	}
+
+	@Test
+	public void testNamedPlaceholders() {
+		Map<String, Object> params = new HashMap<>();
+		params.put("offset", 0);
+		params.put("limit", 100);
+		params.put("query", "\"name='a b'\"");
+		params.put("missing", null);
+		assertSameExpansion("releases?&offset={offset}&limit={limit}&query={query}", params);
+		assertSameExpansion("releases?&offset={offset}&fields={fields}", params);
+		assertSameExpansion("a/{missing}/{{limit}}/{offset", params);
+		assertSameExpansion("a/{offset}", Collections.<String, Object>emptyMap());
+	}
+
+	@Test
+	public void testSharedSpaceInternalApiUri() {
+		Assert.assertEquals(legacy.createSharedSpaceInternalApiUri(MqmRestClientImpl.URI_TEST_RESULT_STATUS, 12345L),
+				client.createSharedSpaceInternalApiUri(MqmRestClientImpl.URI_TEST_RESULT_STATUS, 12345L));
+		Assert.assertEquals(legacy.createSharedSpaceInternalApiUri("analytics/ci/servers/{0}/jobs/{1}", "server id", "job name"),
+				client.createSharedSpaceInternalApiUri("analytics/ci/servers/{0}/jobs/{1}", "server id", "job name"));
+	}
+
+	@Test
+	public void testEntityUri() {
+		List<String> conditions = Arrays.asList(QueryHelper.condition("name", "*Release 1*"), QueryHelper.condition("id", 1234));
+		List<String> fields = Arrays.asList("id", "name", "release");
+		for (Long workspaceId : Arrays.asList(WORKSPACE_ID, null)) {
+			// "collection?" and "collection?&offset=..." are kept as they were
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, null, null, workspaceId, null, null, null);
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, null, null, workspaceId, 0, 100, null);
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, null, null, workspaceId, 0, null, null);
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, Collections.<String>emptyList(), Collections.<String>emptyList(), workspaceId, 0, 100, "");
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, conditions, null, workspaceId, 0, 100, "name");
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, conditions, fields, workspaceId, 200, 100, "-name,id");
+			assertSameEntityUri(MqmRestClientImpl.URI_RELEASES, Collections.singletonList(QueryHelper.condition("name", "{0}")), fields, workspaceId, null, null, "order by");
+		}
+	}
+
+	private static void assertSameExpansion(String template, Object... params) {
+		StringBuilder uri = new StringBuilder();
+		UriTemplate.of(template).expand(uri, params);
+		Assert.assertEquals(template, LegacyUriResolver.resolveTemplate(template, LegacyUriResolver.asMap(params)), uri.toString());
+	}
+
+	private static void assertSameExpansion(String template, Map<String, ?> params) {
+		StringBuilder uri = new StringBuilder();
+		UriTemplate.of(template).expand(uri, params);
+		Assert.assertEquals(template, LegacyUriResolver.resolveTemplate(template, params), uri.toString());
+	}
+
+	private static void assertSameEntityUri(String collection, Collection<String> conditions, Collection<String> fields, Long workspaceId, Integer offset, Integer limit, String orderBy) {
+		Assert.assertEquals(legacy.getEntityURI(collection, conditions, fields, workspaceId, offset, limit, orderBy),
+				client.getEntityURI(collection, conditions, fields, workspaceId, offset, limit, orderBy));
+	}
+}